@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregates a range of {@link SessionChunk}s: halves are forked until one chunk is left,
+ * which is scanned straight from its mapping, and the partial results are merged on the way
+ * back up. Chunks of one segment are roughly equal in size, so the pool stays busy without
+ * tuning the split.
+ * <p>
+ * Records are decoded like the app does: heart rate and beats only count with
+ * {@link HeartRateStatus#HR_STATUS_FIND_HR}, a beat needs a clear IBI quality bit (see
+ * {@link HeartRateData#IBI_QUALITY_SHIFT}), and SpO2 only counts
+ * {@link SpO2Status#MEASUREMENT_COMPLETED} results. Successive differences are taken between
+ * valid beats at most {@value #MAX_BEAT_GAP_MILLIS} ms apart. A chunk picks up the beat chain
+ * from the sample before it, so the result does not depend on the chunk size; only pairs
+ * split across two segment files are not counted. Commit records are skipped and not counted.
+ */
+final class ChunkAggregateTask extends RecursiveTask<HourlyAggregates> {
+    private static final long serialVersionUID = 1L;
+
+    final static long MAX_BEAT_GAP_MILLIS = 5_000L;
+
+    private final List<SessionChunk> chunks;
+    private final int from;
+    private final int to;
+    private final ZoneRules zoneRules;
+
+    ChunkAggregateTask(List<SessionChunk> chunks, ZoneId zone) {
+        this(chunks, 0, chunks.size(), zone.getRules());
+    }
+
+    private ChunkAggregateTask(List<SessionChunk> chunks, int from, int to, ZoneRules zoneRules) {
+        this.chunks = chunks;
+        this.from = from;
+        this.to = to;
+        this.zoneRules = zoneRules;
+    }
+
+    @Override
+    protected HourlyAggregates compute() {
+        if (to - from <= 1) {
+            final HourlyAggregates aggregates = new HourlyAggregates();
+            if (to > from) {
+                try {
+                    aggregate(chunks.get(from), aggregates);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot read " + chunks.get(from), e);
+                }
+            }
+            return aggregates;
+        }
+        final int middle = (from + to) >>> 1;
+        final ChunkAggregateTask left = new ChunkAggregateTask(chunks, from, middle, zoneRules);
+        final ChunkAggregateTask right = new ChunkAggregateTask(chunks, middle, to, zoneRules);
+        left.fork();
+        final HourlyAggregates rightResult = right.compute();
+        return left.join().merge(rightResult);
+    }
+
+    private void aggregate(SessionChunk chunk, HourlyAggregates aggregates) throws IOException {
+        final ByteBuffer buffer = chunk.map();
+        final int end = buffer.position() + chunk.records * SessionLog.RECORD_SIZE;
+        // The current hour is cached, so the map and the zone rules are only consulted when a
+        // record crosses into another hour.
+        long hourStart = Long.MAX_VALUE;
+        long hourEnd = Long.MIN_VALUE;
+        HourlyAggregates.Stats stats = null;
+        long previousBeat = Long.MIN_VALUE;
+        int previousIbi = 0;
+        if (!chunk.isFirstInSegment()) {
+            int previous = buffer.position() - SessionLog.RECORD_SIZE;
+            // Frames hold at least one record, so a commit record is preceded by a sample.
+            if (buffer.get(previous + SessionLog.OFFSET_TYPE) == SessionLog.TYPE_COMMIT
+                    && previous >= SessionLog.RECORD_SIZE) {
+                previous -= SessionLog.RECORD_SIZE;
+            }
+            if (isValidBeat(buffer, previous)) {
+                previousBeat = buffer.getLong(previous + SessionLog.OFFSET_TIMESTAMP);
+                previousIbi = readIbi(buffer, previous);
+            }
+        }
+
+        int commits = 0;
+        int position = buffer.position();
+        for (; position < end; position += SessionLog.RECORD_SIZE) {
+            final byte type = buffer.get(position + SessionLog.OFFSET_TYPE);
+            if (type == 0) {
+                break; // Unused space after the last record of the segment.
+            }
+            if (type == SessionLog.TYPE_COMMIT) {
+                commits++;
+                continue;
+            }
+            final long timestamp = buffer.getLong(position + SessionLog.OFFSET_TIMESTAMP);
+            if (timestamp < hourStart || timestamp >= hourEnd) {
+                final long offset = zoneRules.getOffset(Instant.ofEpochMilli(timestamp)).getTotalSeconds() * 1000L;
+                final long localHour = Math.floorDiv(timestamp + offset, HourlyAggregates.HOUR_MILLIS);
+                hourStart = localHour * HourlyAggregates.HOUR_MILLIS - offset;
+                hourEnd = hourStart + HourlyAggregates.HOUR_MILLIS;
+                stats = aggregates.hour(localHour);
+            }
+            final int status = buffer.getShort(position + SessionLog.OFFSET_STATUS);
+            final int value = buffer.getShort(position + SessionLog.OFFSET_VALUE);
+            if (type == SessionLog.TYPE_HEART_RATE) {
+                if (status != HeartRateStatus.HR_STATUS_FIND_HR) {
+                    previousBeat = Long.MIN_VALUE;
+                    continue;
+                }
+                stats.addHeartRate(value);
+                if (!isValidBeat(buffer, position)) {
+                    previousBeat = Long.MIN_VALUE;
+                    continue;
+                }
+                final int ibi = readIbi(buffer, position);
+                stats.addBeat(ibi);
+                if (previousBeat != Long.MIN_VALUE && timestamp - previousBeat <= MAX_BEAT_GAP_MILLIS) {
+                    stats.addDiff(ibi - previousIbi);
+                }
+                previousBeat = timestamp;
+                previousIbi = ibi;
+            } else if (type == SessionLog.TYPE_SPO2 && status == SpO2Status.MEASUREMENT_COMPLETED) {
+                stats.addSpO2(value);
+            }
+        }
+        aggregates.records += (position - buffer.position()) / SessionLog.RECORD_SIZE - commits;
+    }
+
+    private static boolean isValidBeat(ByteBuffer buffer, int position) {
+        return buffer.get(position + SessionLog.OFFSET_TYPE) == SessionLog.TYPE_HEART_RATE
+                && buffer.getShort(position + SessionLog.OFFSET_STATUS) == HeartRateStatus.HR_STATUS_FIND_HR
+                && buffer.get(position + SessionLog.OFFSET_QUALITY) == 0
+                && readIbi(buffer, position) > 0;
+    }
+
+    private static int readIbi(ByteBuffer buffer, int position) {
+        return buffer.getShort(position + SessionLog.OFFSET_IBI) & HeartRateData.IBI_QUALITY_MASK;
+    }
+}
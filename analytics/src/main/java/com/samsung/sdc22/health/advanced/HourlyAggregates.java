@@ -0,0 +1,208 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Heart-rate, HRV and SpO2 sums per local hour. Only sums, extremes and counts are kept, so
+ * partial results of separate chunks {@link #merge(HourlyAggregates) merge} exactly, in any
+ * order, and days are rolled up from their hours.
+ * <p>
+ * Hours are numbered from the epoch in local time: {@code (timestamp + zone offset) / 1 h}.
+ */
+final class HourlyAggregates {
+    final static long HOUR_MILLIS = 3_600_000L;
+    private final static int NN50_THRESHOLD_MILLIS = 50;
+
+    private final Map<Long, Stats> hours = new HashMap<>();
+    long records;
+
+    Stats hour(long localHour) {
+        Stats stats = hours.get(localHour);
+        if (stats == null) {
+            stats = new Stats();
+            hours.put(localHour, stats);
+        }
+        return stats;
+    }
+
+    int size() {
+        return hours.size();
+    }
+
+    /**
+     * Adds {@code other} into this one and returns this.
+     */
+    HourlyAggregates merge(HourlyAggregates other) {
+        records += other.records;
+        for (Map.Entry<Long, Stats> entry : other.hours.entrySet()) {
+            final Stats stats = hours.get(entry.getKey());
+            if (stats == null) {
+                hours.put(entry.getKey(), entry.getValue());
+            } else {
+                stats.merge(entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    TreeMap<Long, Stats> byHour() {
+        return new TreeMap<>(hours);
+    }
+
+    /**
+     * Returns the stats per local day, keyed by days since the epoch.
+     */
+    TreeMap<Long, Stats> byDay() {
+        final TreeMap<Long, Stats> days = new TreeMap<>();
+        for (Map.Entry<Long, Stats> entry : hours.entrySet()) {
+            final long day = Math.floorDiv(entry.getKey(), 24L);
+            Stats stats = days.get(day);
+            if (stats == null) {
+                stats = new Stats();
+                days.put(day, stats);
+            }
+            stats.merge(entry.getValue());
+        }
+        return days;
+    }
+
+    /**
+     * Writes one CSV line per hour, or per day if {@code daily}. Values that are undefined for
+     * a period, such as HRV without consecutive valid beats, are left empty.
+     */
+    void writeCsv(PrintStream out, boolean daily) {
+        out.println("period,hr_samples,hr_mean,hr_min,hr_max,beats,sdnn_ms,rmssd_ms,pnn50,"
+                + "spo2_results,spo2_mean,spo2_min,spo2_max");
+        final TreeMap<Long, Stats> periods = daily ? byDay() : byHour();
+        for (Map.Entry<Long, Stats> entry : periods.entrySet()) {
+            final long startSeconds = entry.getKey() * (daily ? 24L : 1L) * (HOUR_MILLIS / 1000L);
+            final LocalDateTime start = LocalDateTime.ofEpochSecond(startSeconds, 0, ZoneOffset.UTC);
+            final String period = daily ? start.toLocalDate().toString() : start.toString();
+            final Stats s = entry.getValue();
+            out.println(period + ',' + s.hrCount + ',' + format(s.getMeanHr()) + ','
+                    + range(s.hrCount, s.hrMin, s.hrMax) + ',' + s.beatCount + ','
+                    + format(s.getSdnn()) + ',' + format(s.getRmssd()) + ',' + format(s.getPnn50()) + ','
+                    + s.spO2Count + ',' + format(s.getMeanSpO2()) + ',' + range(s.spO2Count, s.spO2Min, s.spO2Max));
+        }
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.US, "%.1f", value);
+    }
+
+    private static String range(long count, int min, int max) {
+        return count == 0 ? "," : min + "," + max;
+    }
+
+    static final class Stats {
+        long hrCount;
+        long hrSum;
+        int hrMin = Integer.MAX_VALUE;
+        int hrMax;
+        long beatCount;
+        long ibiSum;
+        long ibiSquares;
+        long diffCount;
+        long diffSquares;
+        long nn50;
+        long spO2Count;
+        long spO2Sum;
+        int spO2Min = Integer.MAX_VALUE;
+        int spO2Max;
+
+        void addHeartRate(int hr) {
+            hrCount++;
+            hrSum += hr;
+            hrMin = Math.min(hrMin, hr);
+            hrMax = Math.max(hrMax, hr);
+        }
+
+        void addBeat(int ibi) {
+            beatCount++;
+            ibiSum += ibi;
+            ibiSquares += (long) ibi * ibi;
+        }
+
+        void addDiff(int diff) {
+            diffCount++;
+            diffSquares += (long) diff * diff;
+            if (Math.abs(diff) > NN50_THRESHOLD_MILLIS) {
+                nn50++;
+            }
+        }
+
+        void addSpO2(int spO2) {
+            spO2Count++;
+            spO2Sum += spO2;
+            spO2Min = Math.min(spO2Min, spO2);
+            spO2Max = Math.max(spO2Max, spO2);
+        }
+
+        void merge(Stats other) {
+            hrCount += other.hrCount;
+            hrSum += other.hrSum;
+            hrMin = Math.min(hrMin, other.hrMin);
+            hrMax = Math.max(hrMax, other.hrMax);
+            beatCount += other.beatCount;
+            ibiSum += other.ibiSum;
+            ibiSquares += other.ibiSquares;
+            diffCount += other.diffCount;
+            diffSquares += other.diffSquares;
+            nn50 += other.nn50;
+            spO2Count += other.spO2Count;
+            spO2Sum += other.spO2Sum;
+            spO2Min = Math.min(spO2Min, other.spO2Min);
+            spO2Max = Math.max(spO2Max, other.spO2Max);
+        }
+
+        // Same definitions as HrvEngine.Window, NaN where it has no value.
+
+        double getMeanHr() {
+            return hrCount == 0 ? Double.NaN : (double) hrSum / hrCount;
+        }
+
+        double getSdnn() {
+            if (beatCount < 2) {
+                return Double.NaN;
+            }
+            // In double: across months of beats the exact long form would overflow.
+            final double numerator = (double) beatCount * ibiSquares - (double) ibiSum * ibiSum;
+            return Math.sqrt(Math.max(0, numerator) / ((double) beatCount * (beatCount - 1)));
+        }
+
+        double getRmssd() {
+            return diffCount == 0 ? Double.NaN : Math.sqrt((double) diffSquares / diffCount);
+        }
+
+        double getPnn50() {
+            return diffCount == 0 ? Double.NaN : 100.0 * nn50 / diffCount;
+        }
+
+        double getMeanSpO2() {
+            return spO2Count == 0 ? Double.NaN : (double) spO2Sum / spO2Count;
+        }
+    }
+}
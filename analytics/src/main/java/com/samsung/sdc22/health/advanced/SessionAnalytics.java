@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command-line summaries of recorded sessions: heart rate, HRV and SpO2 per day or per hour,
+ * as CSV on standard output.
+ * <pre>
+ * SessionAnalytics [--hourly] [--zone ZONE] [--threads N] [--chunk RECORDS] PATH...
+ * </pre>
+ * Each {@code PATH} is a session directory or a directory searched for sessions, such as the
+ * app's {@code files/sessions}. Segments are memory-mapped, cut into chunks of
+ * {@value #DEFAULT_CHUNK_RECORDS} records and aggregated on a fork-join pool with one worker
+ * per core, so throughput grows with the core count until storage is the limit.
+ */
+public class SessionAnalytics {
+    final static int DEFAULT_CHUNK_RECORDS = 16 * 1024;
+
+    private SessionAnalytics() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean hourly = false;
+        ZoneId zone = ZoneId.systemDefault();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkRecords = DEFAULT_CHUNK_RECORDS;
+        final List<File> roots = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--hourly":
+                        hourly = true;
+                        break;
+                    case "--zone":
+                        zone = ZoneId.of(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--chunk":
+                        chunkRecords = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        roots.add(new File(args[i]));
+                }
+            }
+        } catch (RuntimeException e) {
+            roots.clear();
+        }
+        if (roots.isEmpty()) {
+            System.err.println("usage: SessionAnalytics [--hourly] [--zone ZONE] [--threads N] [--chunk RECORDS] PATH...");
+            System.exit(2);
+        }
+
+        final List<File> sessions = findSessions(roots);
+        final List<SessionChunk> chunks = SessionChunk.split(sessions, chunkRecords);
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long started = System.nanoTime();
+        final HourlyAggregates aggregates;
+        try {
+            aggregates = analyze(chunks, zone, pool);
+        } finally {
+            pool.shutdown();
+        }
+        final double seconds = (System.nanoTime() - started) / 1e9;
+        aggregates.writeCsv(System.out, !hourly);
+        System.err.println(String.format(Locale.US, "%d sessions, %d chunks, %d records in %.3f s (%.1f M records/s, %d threads)",
+                sessions.size(), chunks.size(), aggregates.records, seconds, aggregates.records / seconds / 1e6, threads));
+    }
+
+    static HourlyAggregates analyze(List<SessionChunk> chunks, ZoneId zone, ForkJoinPool pool) {
+        return pool.invoke(new ChunkAggregateTask(chunks, zone));
+    }
+
+    /**
+     * Returns every directory under {@code roots} that holds session segments, in path order.
+     */
+    static List<File> findSessions(List<File> roots) {
+        final List<File> sessions = new ArrayList<>();
+        for (File root : roots) {
+            collectSessions(root, sessions);
+        }
+        return sessions;
+    }
+
+    private static void collectSessions(File directory, List<File> sessions) {
+        if (SessionLog.listSegments(directory).length > 0) {
+            sessions.add(directory);
+        }
+        final File[] children = directory.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            collectSessions(child, sessions);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of records inside one {@link SessionLog} segment, the unit of parallel work for
+ * {@link SessionAnalytics}. Records never straddle chunks, and a chunk never spans two
+ * segments or two sessions.
+ */
+final class SessionChunk {
+    final File segment;
+    final long offset;
+    final int records;
+
+    SessionChunk(File segment, long offset, int records) {
+        this.segment = segment;
+        this.offset = offset;
+        this.records = records;
+    }
+
+    /**
+     * Cuts the committed records of every segment of {@code sessionDirectories} into chunks of
+     * at most {@code chunkRecords} records. Each segment is mapped once to find the end of its
+     * last valid frame, so torn and uncommitted records of a crashed session are left out.
+     */
+    static List<SessionChunk> split(List<File> sessionDirectories, int chunkRecords) throws IOException {
+        if (chunkRecords < 1) {
+            throw new IllegalArgumentException("chunkRecords must be positive: " + chunkRecords);
+        }
+        final List<SessionChunk> chunks = new ArrayList<>();
+        for (File directory : sessionDirectories) {
+            for (File segment : SessionLog.listSegments(directory)) {
+                final long total = (committedEnd(segment) - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+                for (long first = 0; first < total; first += chunkRecords) {
+                    chunks.add(new SessionChunk(segment,
+                            SessionLog.HEADER_SIZE + first * SessionLog.RECORD_SIZE,
+                            (int) Math.min(chunkRecords, total - first)));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static int committedEnd(File segment) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r");
+             FileChannel channel = raf.getChannel()) {
+            final long size = channel.size();
+            if (size < SessionLog.HEADER_SIZE) {
+                return SessionLog.HEADER_SIZE;
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (!SessionLog.checkHeader(buffer, segment)) {
+                return SessionLog.HEADER_SIZE;
+            }
+            return SessionLog.findCommittedEnd(buffer, SessionLog.HEADER_SIZE,
+                    (int) Math.min(size, Integer.MAX_VALUE));
+        }
+    }
+
+    boolean isFirstInSegment() {
+        return offset == SessionLog.HEADER_SIZE;
+    }
+
+    /**
+     * Maps the chunk read-only, with up to two records before it so a reader can carry state
+     * across the cut even if a commit record precedes it. The first chunk of a segment covers
+     * the header instead, which is checked. Record 0 of the chunk is at
+     * {@code buffer.position()}.
+     */
+    ByteBuffer map() throws IOException {
+        final boolean first = isFirstInSegment();
+        final long start = first ? 0 : Math.max(SessionLog.HEADER_SIZE, offset - 2 * SessionLog.RECORD_SIZE);
+        final long length = (offset - start) + (long) records * SessionLog.RECORD_SIZE;
+        final ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (first && !SessionLog.checkHeader(buffer, segment)) {
+            throw new IOException("Session segment header lost: " + segment);
+        }
+        buffer.position((int) (offset - start));
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return segment + "@" + offset + "+" + records;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+public class SessionAnalyticsTest {
+    private final static int RECORDS_PER_SEGMENT = 64;
+    private final static int SEGMENT_SIZE = SessionLog.HEADER_SIZE + RECORDS_PER_SEGMENT * SessionLog.RECORD_SIZE;
+    // 2022-10-12T23:00:00Z
+    private final static long START_MILLIS = 1_665_615_600_000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldAggregateSessionsPerHourAndDay_P() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        try (SessionLog sessionLog = SessionLog.open(new File(root, "1"), SEGMENT_SIZE)) {
+            // Two beats in the last hour of the 12th, then one valid and one bad beat on the 13th.
+            sessionLog.appendHeartRate(START_MILLIS + 1_000, HeartRateStatus.HR_STATUS_FIND_HR, 60, 1000, 0);
+            sessionLog.appendHeartRate(START_MILLIS + 2_000, HeartRateStatus.HR_STATUS_FIND_HR, 62, 960, 0);
+            sessionLog.appendHeartRate(START_MILLIS + 3_600_000, HeartRateStatus.HR_STATUS_FIND_HR, 70, 850, 0);
+            sessionLog.appendHeartRate(START_MILLIS + 3_601_000, HeartRateStatus.HR_STATUS_FIND_HR, 72, 830, 1);
+            sessionLog.appendHeartRate(START_MILLIS + 3_602_000, HeartRateStatus.HR_STATUS_DETACHED, 0, 0, 0);
+        }
+        try (SessionLog sessionLog = SessionLog.open(new File(root, "2"), SEGMENT_SIZE)) {
+            sessionLog.appendSpO2(START_MILLIS + 3_700_000, SpO2Status.CALCULATING, 0);
+            sessionLog.appendSpO2(START_MILLIS + 3_730_000, SpO2Status.MEASUREMENT_COMPLETED, 97);
+        }
+        List<SessionChunk> chunks = SessionChunk.split(SessionAnalytics.findSessions(Arrays.asList(root)), 2);
+
+        //when
+        HourlyAggregates aggregates = SessionAnalytics.analyze(chunks, ZoneOffset.UTC, new ForkJoinPool(4));
+
+        //then
+        TreeMap<Long, HourlyAggregates.Stats> days = aggregates.byDay();
+        assertEquals(2, days.size());
+        HourlyAggregates.Stats first = days.firstEntry().getValue();
+        assertEquals(2, first.hrCount);
+        assertEquals(61.0, first.getMeanHr(), 1e-9);
+        assertEquals(2, first.beatCount);
+        assertEquals(40.0, first.getRmssd(), 1e-9);
+        assertEquals(0.0, first.getPnn50(), 1e-9);
+        HourlyAggregates.Stats second = days.lastEntry().getValue();
+        assertEquals(2, second.hrCount);
+        assertEquals(1, second.beatCount);
+        assertEquals(0, second.diffCount);
+        assertEquals(1, second.spO2Count);
+        assertEquals(97, second.spO2Max);
+    }
+
+    @Test
+    public void shouldGiveSameResultForAnyChunkSizeAndParallelism_P() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        for (int session = 0; session < 3; session++) {
+            try (SessionLog sessionLog = SessionLog.open(new File(root, String.valueOf(session)))) {
+                for (int i = 0; i < 5_000; i++) {
+                    // Mostly one beat a second, with a gap that breaks the chain every 50 beats.
+                    long timestamp = START_MILLIS + session * 86_400_000L + i * 1_000L + (i / 50) * 10_000L;
+                    int ibi = 700 + (i * 37 + session) % 300;
+                    sessionLog.appendHeartRate(timestamp, HeartRateStatus.HR_STATUS_FIND_HR, 60_000 / ibi, ibi, i % 11 == 0 ? 1 : 0);
+                    if (i % 100 == 0) {
+                        sessionLog.appendSpO2(timestamp, SpO2Status.MEASUREMENT_COMPLETED, 94 + i % 5);
+                    }
+                }
+            }
+        }
+        List<File> sessions = SessionAnalytics.findSessions(Arrays.asList(root));
+        ZoneId zone = ZoneId.of("Asia/Kolkata");
+
+        //when
+        String sequential = csv(SessionAnalytics.analyze(
+                SessionChunk.split(sessions, Integer.MAX_VALUE), zone, new ForkJoinPool(1)));
+        String parallel = csv(SessionAnalytics.analyze(
+                SessionChunk.split(sessions, 37), zone, new ForkJoinPool(4)));
+
+        //then
+        assertEquals(3, sessions.size());
+        assertEquals(sequential, parallel);
+    }
+
+    private static String csv(HourlyAggregates aggregates) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        aggregates.writeCsv(new PrintStream(bytes, true), false);
+        return bytes.toString();
+    }
+}
@@ -1 +1 @@
-/* * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved. * * Licensed under the Apache License, Version 2.0 (the "License"); * you may not use this file except in compliance with the License. * You may obtain a copy of the License at * * https://www.apache.org/licenses/LICENSE-2.0 * * Unless required by applicable law or agreed to in writing, software * distributed under the License is distributed on an "AS IS" BASIS, * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. * See the License for the specific language governing permissions and * limitations under the License. */package com.samsung.sdc22.health.advanced;import android.os.Handler;import android.util.Log;import com.samsung.android.service.health.tracking.HealthTracker;public class BaseListener {    private final static String APP_TAG = "BaseListener";    private Handler handler;    private HealthTracker healthTracker;    private boolean isHandlerRunning = false;    private HealthTracker.TrackerEventListener trackerEventListener = null;    public void setHealthTracker(HealthTracker tracker) {        healthTracker = tracker;    }    public void setHandler(Handler handler) {        this.handler = handler;    }    public void setHandlerRunning(boolean handlerRunning) {        isHandlerRunning = handlerRunning;    }    public void setTrackerEventListener(HealthTracker.TrackerEventListener tracker) {        trackerEventListener = tracker;    }    /*******************************************************************************************     * [Practice 3] Start health tracker by setting event listener     *  - set health tracker set event listener     -------------------------------------------------------------------------------------------     *  - (Hint) Replace TODO 3 with parts of code     *      set event listener on HealthTracker object using healthTracker.setEventListener()     *      use trackerEventListener object as parameter     ******************************************************************************************/    public void startTracker() {        Log.i(APP_TAG, "startTracker called ");        Log.d(APP_TAG, "healthTracker: " + healthTracker.toString());        Log.d(APP_TAG, "trackerEventListener: " + trackerEventListener.toString());        if (!isHandlerRunning) {            handler.post(() -> {                //"TODO 3"                setHandlerRunning(true);            });        }    }    /*******************************************************************************************     * [Practice 4] Stop health tracker by removing event listener     *  - unset health tracker set event listener     -------------------------------------------------------------------------------------------     *  - (Hint) Replace TODO 4 with parts of code     *      unset event listener on HealthTracker object using healthTracker.unsetEventListener()     ******************************************************************************************/    public void stopTracker() {        Log.i(APP_TAG, "stopTracker called ");        Log.d(APP_TAG, "healthTracker: " + healthTracker.toString());        Log.d(APP_TAG, "trackerEventListener: " + trackerEventListener.toString());        if (isHandlerRunning) {            //"TODO 4"            setHandlerRunning(false);            handler.removeCallbacksAndMessages(null);        }    }}
\ No newline at end of file
+/* * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved. * * Licensed under the Apache License, Version 2.0 (the "License"); * you may not use this file except in compliance with the License. * You may obtain a copy of the License at * * https://www.apache.org/licenses/LICENSE-2.0 * * Unless required by applicable law or agreed to in writing, software * distributed under the License is distributed on an "AS IS" BASIS, * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. * See the License for the specific language governing permissions and * limitations under the License. */package com.samsung.sdc22.health.advanced;import android.os.Handler;import android.util.Log;import com.samsung.android.service.health.tracking.HealthTracker;import java.lang.reflect.InvocationTargetException;import java.lang.reflect.Method;import java.util.concurrent.CountDownLatch;import java.util.concurrent.TimeUnit;public class BaseListener {    private final static String APP_TAG = "BaseListener";    // HealthTracker.flush() only exists in newer SDK releases, so it is looked up once.    private final static Method FLUSH = findFlush();    private Handler handler;    private HealthTracker healthTracker;    private volatile boolean isHandlerRunning = false;    private HealthTracker.TrackerEventListener trackerEventListener = null;    private TrackerDataNotifier trackerDataNotifier = TrackerDataNotifier.getInstance();    public void setHealthTracker(HealthTracker tracker) {        healthTracker = tracker;    }    public void setHandler(Handler handler) {        this.handler = handler;    }    public void setHandlerRunning(boolean handlerRunning) {        isHandlerRunning = handlerRunning;    }    public void setTrackerEventListener(HealthTracker.TrackerEventListener tracker) {        trackerEventListener = tracker;    }    HealthTracker.TrackerEventListener getTrackerEventListener() {        return trackerEventListener;    }    public void setTrackerDataNotifier(TrackerDataNotifier notifier) {        trackerDataNotifier = notifier;    }    TrackerDataNotifier getTrackerDataNotifier() {        return trackerDataNotifier;    }    Handler getHandler() {        return handler;    }    /**     * Waits up to {@code timeoutMillis} until everything posted to the sensor thread before     * the call has run. Returns {@code false} on timeout or if the thread no longer runs.     */    boolean awaitSensorThread(long timeoutMillis) {        final CountDownLatch done = new CountDownLatch(1);        if (!handler.post(done::countDown)) {            return false;        }        try {            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);        } catch (InterruptedException e) {            Thread.currentThread().interrupt();            return false;        }    }    /**     * Asks the tracker to deliver the samples it has buffered, followed by     * {@code onFlushCompleted()}. Returns {@code false} if the SDK cannot flush, in which case     * no such callback will come.     */    boolean flushTracker() {        if (FLUSH == null || healthTracker == null) {            return false;        }        try {            FLUSH.invoke(healthTracker);            return true;        } catch (IllegalAccessException | InvocationTargetException e) {            Log.w(APP_TAG, "flush failed: " + e);            return false;        }    }    private static Method findFlush() {        try {            return HealthTracker.class.getMethod("flush");        } catch (NoSuchMethodException e) {            return null;        }    }    /**     * Called on the sensor thread right before the event listener is set, so subclasses can     * reset per-measurement state on the thread that will use it.     */    void onTrackerStarting() {    }    /*******************************************************************************************     * [Practice 3] Start health tracker by setting event listener     *  - set health tracker set event listener     -------------------------------------------------------------------------------------------     *  - (Hint) Replace TODO 3 with parts of code     *      set event listener on HealthTracker object using healthTracker.setEventListener()     *      use trackerEventListener object as parameter     ******************************************************************************************/    public void startTracker() {        Log.i(APP_TAG, "startTracker called ");        Log.d(APP_TAG, "healthTracker: " + healthTracker.toString());        Log.d(APP_TAG, "trackerEventListener: " + trackerEventListener.toString());        if (!isHandlerRunning) {            // Marked as running right away so a stopTracker() issued before the post runs            // still cancels it.            setHandlerRunning(true);            handler.post(() -> {                onTrackerStarting();                healthTracker.setEventListener(trackerEventListener);            });        }    }    /*******************************************************************************************     * [Practice 4] Stop health tracker by removing event listener     *  - unset health tracker set event listener     -------------------------------------------------------------------------------------------     *  - (Hint) Replace TODO 4 with parts of code     *      unset event listener on HealthTracker object using healthTracker.unsetEventListener()     ******************************************************************************************/    public void stopTracker() {        Log.i(APP_TAG, "stopTracker called ");        Log.d(APP_TAG, "healthTracker: " + healthTracker.toString());        Log.d(APP_TAG, "trackerEventListener: " + trackerEventListener.toString());        if (isHandlerRunning) {            setHandlerRunning(false);            handler.removeCallbacksAndMessages(null);            // Unset on the sensor thread like the set; if its looper already quit, do it here.            if (!handler.post(healthTracker::unsetEventListener)) {                healthTracker.unsetEventListener();            }        }    }}
\ No newline at end of file
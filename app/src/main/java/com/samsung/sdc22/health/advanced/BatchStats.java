@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for batched collection: how often the app woke up for a tracker delivery, how
+ * many samples each wakeup carried, how many were duplicates and how large the flushed
+ * batches were. Written on the sensor thread, read by {@link LatencyActivity}.
+ */
+public class BatchStats {
+    public final static BatchStats HEART_RATE = new BatchStats("hr");
+
+    private final String name;
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    // The log-linear buckets work for any non-negative value, here samples per flush.
+    final LatencyHistogram batchSizes;
+
+    BatchStats(String name) {
+        this.name = name;
+        batchSizes = new LatencyHistogram(name + ".batch-size");
+    }
+
+    /**
+     * A tracker delivery of {@code samples} data points woke the app up.
+     */
+    void onDelivery(int samples) {
+        deliveries.incrementAndGet();
+        received.addAndGet(samples);
+    }
+
+    void onDuplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    /**
+     * A batch of {@code samples} de-duplicated samples went to the observers.
+     */
+    void onFlush(int samples) {
+        batchSizes.record(samples);
+    }
+
+    public long getDeliveryCount() {
+        return deliveries.get();
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    public long getFlushCount() {
+        return batchSizes.getTotalCount();
+    }
+
+    public double getSamplesPerDelivery() {
+        final long count = deliveries.get();
+        return count == 0 ? 0 : (double) received.get() / count;
+    }
+
+    public void reset() {
+        deliveries.set(0);
+        received.set(0);
+        duplicates.set(0);
+        batchSizes.reset();
+    }
+
+    /**
+     * Appends a one-line summary: wakeups and samples per wakeup, duplicates, then the flush
+     * count with the mean, median and largest batch.
+     */
+    public void appendSummary(StringBuilder out) {
+        out.append(String.format(Locale.US,
+                "%-20s wakeups=%d samples/wakeup=%.1f dup=%d flushes=%d mean=%.1f p50=%d max=%d%n",
+                name + ".batches", getDeliveryCount(), getSamplesPerDelivery(), getDuplicateCount(),
+                getFlushCount(), batchSizes.getMeanNanos(), batchSizes.getValueAtPercentile(50),
+                batchSizes.getMaxNanos()));
+    }
+}
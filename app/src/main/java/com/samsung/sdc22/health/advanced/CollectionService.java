@@ -0,0 +1,426 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.os.Binder;
+import android.os.IBinder;
+import android.util.Log;
+
+import com.samsung.android.service.health.tracking.HealthTrackerException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Foreground service that owns continuous heart-rate collection: the connection to the
+ * Health Tracking Service, the tracker listeners, the session recording and a
+ * {@link HeartRateHistory} of the latest samples. It keeps collecting with no activity on
+ * screen and is stopped from its notification.
+ * <p>
+ * Activities bind to it and {@link #attach(TrackerDataObserver, ConnectionObserver) attach}
+ * as viewers. A viewer first gets the recent history replayed from memory, then the live
+ * samples, so coming back to the app shows a heart rate right away instead of restarting the
+ * tracker. With no viewer attached, heart rate is collected in flushed batches.
+ * <p>
+ * Long-term history is kept in {@link HeartRateRollups}, saved when the service stops and
+ * restored when it starts again, and heart-rate variability in
+ * {@link HrvEngine#COLLECTION}. Recorded sessions are shipped to the phone by a
+ * {@link SyncEngine} while the service runs.
+ */
+public class CollectionService extends Service {
+    private final static String APP_TAG = "CollectionService";
+    public final static String ACTION_STOP = "com.samsung.sdc22.health.advanced.action.STOP_COLLECTION";
+    /**
+     * Whether samples are recorded to a {@link SessionLog}; {@code true} by default.
+     */
+    public final static String EXTRA_PERSIST = "com.samsung.sdc22.health.advanced.extra.PERSIST";
+    private final static String CHANNEL_ID = "collection";
+    private final static int NOTIFICATION_ID = 1;
+    private final static String SESSIONS_DIRECTORY = "sessions";
+    private final static String ROLLUPS_FILE = "rollups.bin";
+    private final static int SESSION_QUEUE_CAPACITY = 256;
+    private final static long BACKGROUND_FLUSH_INTERVAL_MILLIS = HeartRateListener.DEFAULT_FLUSH_INTERVAL_MILLIS;
+    // How long stopping waits for the last batch to reach the observers.
+    private final static long HAND_OVER_TIMEOUT_MILLIS = 2_000L;
+
+    private final IBinder binder = new LocalBinder();
+    private final TrackerDataNotifier notifier = TrackerDataNotifier.getInstance();
+    private final HeartRateHistory history = new HeartRateHistory();
+    private final HeartRateRollups rollups = new HeartRateRollups();
+    private final Object lock = new Object();
+    // Guarded by lock. Connection results are kept to replay them to late viewers.
+    private final List<TrackerDataObserver> viewers = new ArrayList<>();
+    private final List<ConnectionObserver> connectionObservers = new ArrayList<>();
+    private final List<Integer> connectionResults = new ArrayList<>();
+    private HealthTrackerException connectionError = null;
+    private boolean connected = false;
+
+    private ConnectionManager connectionManager;
+    private volatile HeartRateListener heartRateListener = null;
+    private volatile SpO2Listener spO2Listener = null;
+    // Main thread only.
+    private SessionLog sessionLog = null;
+    private SessionRecorder sessionRecorder = null;
+    // Guarded by lock.
+    private ExecutorService exportExecutor = null;
+    private final List<SessionExporter> exporters = new ArrayList<>();
+    private WearableSyncTransport syncTransport = null;
+    private SyncEngine syncEngine = null;
+
+    private final ConnectionObserver connectionObserver = new ConnectionObserver() {
+        @Override
+        public void onConnectionResult(int stringResourceId) {
+            if (stringResourceId == R.string.ConnectedToHs) {
+                startTrackers();
+            }
+            final ConnectionObserver[] observers;
+            synchronized (lock) {
+                connectionResults.add(stringResourceId);
+                observers = connectionObservers.toArray(new ConnectionObserver[0]);
+            }
+            for (ConnectionObserver observer : observers) {
+                observer.onConnectionResult(stringResourceId);
+            }
+        }
+
+        @Override
+        public void onError(HealthTrackerException e) {
+            Log.e(APP_TAG, "Could not connect to Health Tracking Service: " + e.getMessage());
+            final ConnectionObserver[] observers;
+            synchronized (lock) {
+                connectionError = e;
+                observers = connectionObservers.toArray(new ConnectionObserver[0]);
+            }
+            for (ConnectionObserver observer : observers) {
+                observer.onError(e);
+            }
+            stopSelf();
+        }
+    };
+
+    public class LocalBinder extends Binder {
+        public CollectionService getService() {
+            return CollectionService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startForeground(NOTIFICATION_ID, createNotification());
+        restoreRollups();
+        notifier.addObserver(rollups, TrackerDataNotifier.HEART_RATE);
+        notifier.addObserver(HrvEngine.COLLECTION, TrackerDataNotifier.HEART_RATE);
+        connectionManager = new ConnectionManager(connectionObserver);
+        connectionManager.connect(getApplicationContext());
+        syncTransport = new WearableSyncTransport(getApplicationContext());
+        syncEngine = new SyncEngine(new File(getFilesDir(), SESSIONS_DIRECTORY), syncTransport);
+        syncEngine.start(SyncEngine.DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            Log.i(APP_TAG, "Stopped from the notification");
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        // Restarted by the system after being killed, the intent is null: keep recording.
+        setPersistent(intent == null || intent.getBooleanExtra(EXTRA_PERSIST, true));
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        synchronized (lock) {
+            connected = false;
+            for (TrackerDataObserver viewer : viewers) {
+                notifier.removeObserver(viewer);
+            }
+            viewers.clear();
+            connectionObservers.clear();
+            for (SessionExporter exporter : exporters) {
+                exporter.cancel();
+            }
+            if (exportExecutor != null) {
+                exportExecutor.shutdown();
+            }
+        }
+        stopCollection();
+        saveRollups();
+        syncEngine.stop();
+        syncTransport.close();
+        if (connectionManager != null)
+            connectionManager.disconnect();
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        super.onDestroy();
+    }
+
+    /**
+     * Starts delivering tracker data to {@code viewer}: the remembered heart-rate history as
+     * one batch, then every live sample, in order and without gaps. {@code connectionObserver}
+     * hears about the connection, including results from before the call.
+     */
+    public void attach(TrackerDataObserver viewer, ConnectionObserver connectionObserver) {
+        final Integer[] results;
+        final HealthTrackerException error;
+        synchronized (lock) {
+            viewers.add(viewer);
+            connectionObservers.add(connectionObserver);
+            results = connectionResults.toArray(new Integer[0]);
+            error = connectionError;
+            if (connected) {
+                if (viewers.size() == 1) {
+                    heartRateListener.stopBatchedCollection();
+                }
+                attachOnSensorThread(viewer);
+            }
+        }
+        for (int result : results) {
+            connectionObserver.onConnectionResult(result);
+        }
+        if (error != null) {
+            connectionObserver.onError(error);
+        }
+    }
+
+    public void detach(TrackerDataObserver viewer, ConnectionObserver connectionObserver) {
+        synchronized (lock) {
+            viewers.remove(viewer);
+            connectionObservers.remove(connectionObserver);
+            notifier.removeObserver(viewer);
+            if (connected && viewers.isEmpty()) {
+                heartRateListener.startBatchedCollection(BACKGROUND_FLUSH_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * The SpO2 listener once connected, otherwise {@code null}. SpO2 is measured on demand,
+     * so the viewer starts and stops it.
+     */
+    public SpO2Listener getSpO2Listener() {
+        return spO2Listener;
+    }
+
+    public HeartRateRollups getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Directories of the recorded sessions, oldest first; the last one may still be written.
+     */
+    public File[] getSessionDirectories() {
+        final File[] sessions = new File(getFilesDir(), SESSIONS_DIRECTORY).listFiles(File::isDirectory);
+        if (sessions == null) {
+            return new File[0];
+        }
+        Arrays.sort(sessions);
+        return sessions;
+    }
+
+    /**
+     * Queues {@code exporter} on the export thread. Exports run one at a time and are
+     * cancelled when the service stops.
+     */
+    public Future<Long> export(SessionExporter exporter) {
+        synchronized (lock) {
+            if (exportExecutor == null) {
+                exportExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "SessionExport"));
+            }
+            exporters.add(exporter);
+            return exportExecutor.submit(() -> {
+                try {
+                    return exporter.call();
+                } finally {
+                    synchronized (lock) {
+                        exporters.remove(exporter);
+                    }
+                }
+            });
+        }
+    }
+
+    private void startTrackers() {
+        final SpO2Listener spo2Listener = new SpO2Listener();
+        final HeartRateListener hrListener = new HeartRateListener();
+        connectionManager.initSpO2(spo2Listener);
+        connectionManager.initHeartRate(hrListener);
+        spO2Listener = spo2Listener;
+        heartRateListener = hrListener;
+        notifier.addObserver(history, TrackerDataNotifier.HEART_RATE);
+        synchronized (lock) {
+            connected = true;
+            for (TrackerDataObserver viewer : viewers) {
+                attachOnSensorThread(viewer);
+            }
+            hrListener.startTracker();
+            if (viewers.isEmpty()) {
+                hrListener.startBatchedCollection(BACKGROUND_FLUSH_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Replays and registers on the sensor thread, between two deliveries, so the viewer
+     * neither misses nor repeats a sample. Skipped if the viewer detached in the meantime.
+     */
+    private void attachOnSensorThread(TrackerDataObserver viewer) {
+        heartRateListener.getHandler().post(() -> {
+            history.replayTo(viewer);
+            synchronized (lock) {
+                if (viewers.contains(viewer)) {
+                    notifier.addObserver(viewer);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the trackers and removes this service's observers and the session recording. The
+     * trackers hand their last batch over on the sensor threads, up to a flush interval of
+     * samples, so this waits for them and for the observers' mailboxes first.
+     */
+    void stopCollection() {
+        final HeartRateListener hrListener = heartRateListener;
+        if (hrListener != null)
+            hrListener.stopTracker();
+        final SpO2Listener spo2Listener = spO2Listener;
+        if (spo2Listener != null)
+            spo2Listener.stopTracker();
+        if (hrListener != null && !hrListener.awaitSensorThread(HAND_OVER_TIMEOUT_MILLIS)) {
+            Log.w(APP_TAG, "Heart rate sensor thread did not hand over its last batch");
+        }
+        if (spo2Listener != null && !spo2Listener.awaitSensorThread(HAND_OVER_TIMEOUT_MILLIS)) {
+            Log.w(APP_TAG, "SpO2 sensor thread did not hand over its last batch");
+        }
+        removeWhenDelivered(history);
+        removeWhenDelivered(rollups);
+        removeWhenDelivered(HrvEngine.COLLECTION);
+        setPersistent(false);
+    }
+
+    void setListeners(HeartRateListener hrListener, SpO2Listener spo2Listener) {
+        heartRateListener = hrListener;
+        spO2Listener = spo2Listener;
+    }
+
+    private void removeWhenDelivered(TrackerDataObserver observer) {
+        if (!notifier.awaitDelivered(observer, HAND_OVER_TIMEOUT_MILLIS)) {
+            Log.w(APP_TAG, "Removing " + observer.getClass().getSimpleName() + " with events still queued");
+        }
+        notifier.removeObserver(observer);
+    }
+
+    private void setPersistent(boolean persistent) {
+        if (persistent == (sessionLog != null)) {
+            return;
+        }
+        if (persistent) {
+            startSessionRecording();
+        } else {
+            removeWhenDelivered(sessionRecorder);
+            sessionRecorder = null;
+            sessionLog.close();
+            sessionLog = null;
+        }
+    }
+
+    private void restoreRollups() {
+        final File file = new File(getFilesDir(), ROLLUPS_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            rollups.readSnapshot(in);
+        } catch (IOException e) {
+            Log.e(APP_TAG, "Could not restore heart rate rollups: " + e.getMessage());
+        }
+    }
+
+    private void saveRollups() {
+        final File file = new File(getFilesDir(), ROLLUPS_FILE);
+        final File temporary = new File(getFilesDir(), ROLLUPS_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            rollups.writeSnapshot(out);
+        } catch (IOException e) {
+            Log.e(APP_TAG, "Could not save heart rate rollups: " + e.getMessage());
+            return;
+        }
+        // Replaced in one step, so a crash while saving keeps the previous snapshot.
+        if (!temporary.renameTo(file)) {
+            Log.e(APP_TAG, "Could not replace " + file);
+        }
+    }
+
+    private void startSessionRecording() {
+        final File directory = new File(new File(getFilesDir(), SESSIONS_DIRECTORY), String.valueOf(System.currentTimeMillis()));
+        try {
+            sessionLog = SessionLog.open(directory);
+        } catch (IOException e) {
+            Log.e(APP_TAG, "Could not open session log: " + e.getMessage());
+            return;
+        }
+        sessionRecorder = new SessionRecorder(sessionLog);
+        notifier.addObserver(sessionRecorder, TrackerDataNotifier.HEART_RATE | TrackerDataNotifier.SPO2,
+                DeliveryStrategy.lossless(SESSION_QUEUE_CAPACITY, DeliveryStrategy.DEFAULT_MAX_BLOCK_NANOS));
+    }
+
+    private Notification createNotification() {
+        final NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                getString(R.string.CollectionChannel), NotificationManager.IMPORTANCE_LOW));
+        final PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        final PendingIntent stop = PendingIntent.getService(this, 0,
+                new Intent(this, CollectionService.class).setAction(ACTION_STOP), PendingIntent.FLAG_IMMUTABLE);
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.CollectionTitle))
+                .setContentText(getString(R.string.CollectionText))
+                .setCategory(Notification.CATEGORY_WORKOUT)
+                .setContentIntent(open)
+                .setOngoing(true)
+                .addAction(new Notification.Action.Builder((Icon) null, getString(R.string.CollectionStop), stop).build())
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the group commits of {@link SessionLog}: records per committed frame, records
+ * and latency per fsync (from the first commit waiting for it until the data is on storage),
+ * records dropped by crash recovery and samples rejected because the next segment was not
+ * mapped in time. Frames and rejections are counted on the writer thread, fsyncs on the log's
+ * background thread; read by {@link LatencyActivity}.
+ */
+public class CommitStats {
+    public final static CommitStats SESSION = new CommitStats("session");
+
+    private final String name;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    // The log-linear buckets work for any non-negative value, here records per frame or fsync.
+    final LatencyHistogram frameSizes;
+    final LatencyHistogram syncSizes;
+    final LatencyHistogram syncLatency;
+
+    CommitStats(String name) {
+        this.name = name;
+        frameSizes = new LatencyHistogram(name + ".frame-size");
+        syncSizes = new LatencyHistogram(name + ".sync-size");
+        syncLatency = new LatencyHistogram(name + ".sync");
+    }
+
+    void onCommit(int records) {
+        frameSizes.record(records);
+    }
+
+    /**
+     * An fsync made {@code records} records durable, {@code nanos} after the first of them
+     * was committed.
+     */
+    void onSync(int records, long nanos) {
+        syncSizes.record(records);
+        syncLatency.record(nanos);
+    }
+
+    /**
+     * Recovery discarded {@code records} records after the last valid frame.
+     */
+    void onRecovery(int records) {
+        dropped.addAndGet(records);
+    }
+
+    /**
+     * An append was dropped because the next segment was not mapped yet or could not be.
+     */
+    void onRejected() {
+        rejected.incrementAndGet();
+    }
+
+    public long getCommitCount() {
+        return frameSizes.getTotalCount();
+    }
+
+    public long getSyncCount() {
+        return syncSizes.getTotalCount();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public void reset() {
+        dropped.set(0);
+        rejected.set(0);
+        frameSizes.reset();
+        syncSizes.reset();
+        syncLatency.reset();
+    }
+
+    /**
+     * Appends a one-line summary: commits with the mean frame size, fsyncs with the mean
+     * records per fsync, the median and largest fsync latency in ms, the dropped records and
+     * the rejected samples.
+     */
+    public void appendSummary(StringBuilder out) {
+        out.append(String.format(Locale.US,
+                "%-20s commits=%d frame=%.1f syncs=%d records/sync=%.1f p50=%.2fms max=%.2fms dropped=%d rejected=%d%n",
+                name + ".commits", getCommitCount(), frameSizes.getMeanNanos(), getSyncCount(),
+                syncSizes.getMeanNanos(), syncLatency.getValueAtPercentile(50) / 1e6,
+                syncLatency.getMaxNanos() / 1e6, getDroppedCount(), getRejectedCount()));
+    }
+}
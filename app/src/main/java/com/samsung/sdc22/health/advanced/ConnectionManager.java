@@ -18,7 +18,7 @@ package com.samsung.sdc22.health.advanced;
 
 import android.content.Context;
 import android.os.Handler;
-import android.os.Looper;
+import android.os.HandlerThread;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -29,11 +29,26 @@ import com.samsung.android.service.health.tracking.HealthTrackerException;
 import com.samsung.android.service.health.tracking.HealthTrackingService;
 import com.samsung.android.service.health.tracking.data.HealthTrackerType;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ConnectionManager {
     private final static String TAG = "Connection Manager";
+    private final static String SENSOR_THREAD_NAME = "SensorThread";
+
+    /**
+     * Where tracker start/stop calls and the resulting data callbacks run. Both options keep
+     * them off the main looper; {@link #PER_TRACKER} additionally keeps a busy heart-rate
+     * stream from delaying SpO2 callbacks and vice versa.
+     */
+    public enum SensorThreading {
+        SHARED,
+        PER_TRACKER
+    }
+
     private final ConnectionObserver connectionObserver;
+    private final SensorThreading sensorThreading;
+    private final List<HandlerThread> sensorThreads = new ArrayList<>();
     private HealthTrackingService healthTrackingService = null;
     private final ConnectionListener connectionListener = new ConnectionListener() {
         @Override
@@ -62,7 +77,12 @@ public class ConnectionManager {
     };
 
     ConnectionManager(ConnectionObserver observer) {
+        this(observer, SensorThreading.SHARED);
+    }
+
+    ConnectionManager(ConnectionObserver observer, SensorThreading threading) {
         connectionObserver = observer;
+        sensorThreading = threading;
     }
 
     public void connect(Context context) {
@@ -70,9 +90,20 @@ public class ConnectionManager {
         healthTrackingService.connectService();
     }
 
+    /**
+     * Disconnects from the service and shuts the sensor threads down. Messages already queued
+     * on them, such as the {@code unsetEventListener} posted by {@link BaseListener#stopTracker()},
+     * still run before the threads exit.
+     */
     public void disconnect() {
         if (healthTrackingService != null)
             healthTrackingService.disconnectService();
+        synchronized (sensorThreads) {
+            for (HandlerThread sensorThread : sensorThreads) {
+                sensorThread.quitSafely();
+            }
+            sensorThreads.clear();
+        }
     }
 
     /*******************************************************************************************
@@ -87,9 +118,9 @@ public class ConnectionManager {
      ******************************************************************************************/
 
     public void initSpO2(SpO2Listener spO2Listener) {
-        //"TODO 1 (1)"
-        //"TODO 1 (2)"
-        setHandlerForBaseListener(spO2Listener);
+        final HealthTracker spo2Tracker = healthTrackingService.getHealthTracker(HealthTrackerType.SPO2);
+        spO2Listener.setHealthTracker(spo2Tracker);
+        setHandlerForBaseListener(spO2Listener, HealthTrackerType.SPO2);
     }
 
     /*******************************************************************************************
@@ -104,13 +135,27 @@ public class ConnectionManager {
      ******************************************************************************************/
 
     public void initHeartRate(HeartRateListener heartRateListener) {
-        //"TODO 2 (1)"
-        //"TODO 2 (2)"
-        setHandlerForBaseListener(heartRateListener);
+        final HealthTracker heartRateTracker = healthTrackingService.getHealthTracker(HealthTrackerType.HEART_RATE);
+        heartRateListener.setHealthTracker(heartRateTracker);
+        setHandlerForBaseListener(heartRateListener, HealthTrackerType.HEART_RATE);
+    }
+
+    private void setHandlerForBaseListener(BaseListener baseListener, HealthTrackerType trackerType) {
+        baseListener.setHandler(new Handler(getSensorThread(trackerType).getLooper()));
     }
 
-    private void setHandlerForBaseListener(BaseListener baseListener) {
-        baseListener.setHandler(new Handler(Looper.getMainLooper()));
+    private HandlerThread getSensorThread(HealthTrackerType trackerType) {
+        synchronized (sensorThreads) {
+            if (sensorThreading == SensorThreading.SHARED && !sensorThreads.isEmpty()) {
+                return sensorThreads.get(0);
+            }
+            final String name = sensorThreading == SensorThreading.SHARED
+                    ? SENSOR_THREAD_NAME : SENSOR_THREAD_NAME + "-" + trackerType;
+            final HandlerThread sensorThread = new HandlerThread(name);
+            sensorThread.start();
+            sensorThreads.add(sensorThread);
+            return sensorThread;
+        }
     }
 
     private boolean isSpO2Available(@NonNull HealthTrackingService healthTrackingService) {
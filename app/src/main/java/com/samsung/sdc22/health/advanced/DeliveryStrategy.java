@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.Locale;
+
+/**
+ * How an {@link ObserverMailbox} behaves when its observer falls behind. Declared per
+ * subscription with {@link TrackerDataNotifier#addObserver(TrackerDataObserver, int, DeliveryStrategy)}
+ * or picked by the notifier when it isolates a slow observer.
+ */
+public final class DeliveryStrategy {
+    public enum Mode {
+        /** Make the producer wait for room, up to a bound, then drop the new event. */
+        LOSSLESS,
+        /** Discard the oldest queued event to make room. */
+        DROP_OLDEST,
+        /** Keep only the latest event of each kind; for consumers that only show current state. */
+        CONFLATE_LATEST,
+        /** Queue every n-th sample or batch and skip the rest; errors are always queued. */
+        SAMPLE
+    }
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final long DEFAULT_MAX_BLOCK_NANOS = 5_000_000L;
+
+    private final Mode mode;
+    private final int capacity;
+    private final long maxBlockNanos;
+    private final int sampleEvery;
+
+    private DeliveryStrategy(Mode mode, int capacity, long maxBlockNanos, int sampleEvery) {
+        if (capacity < 1 || capacity > 1 << 16) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        this.mode = mode;
+        this.capacity = capacity;
+        this.maxBlockNanos = maxBlockNanos;
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Queues up to {@code capacity} events; when full the producer waits up to
+     * {@code maxBlockNanos} for the observer to catch up before the event is dropped.
+     */
+    public static DeliveryStrategy lossless(int capacity, long maxBlockNanos) {
+        if (maxBlockNanos < 0) {
+            throw new IllegalArgumentException("maxBlockNanos must not be negative: " + maxBlockNanos);
+        }
+        return new DeliveryStrategy(Mode.LOSSLESS, capacity, maxBlockNanos, 1);
+    }
+
+    public static DeliveryStrategy dropOldest(int capacity) {
+        return new DeliveryStrategy(Mode.DROP_OLDEST, capacity, 0, 1);
+    }
+
+    public static DeliveryStrategy conflateLatest() {
+        return new DeliveryStrategy(Mode.CONFLATE_LATEST, ObserverMailbox.KIND_COUNT, 0, 1);
+    }
+
+    /**
+     * Queues every {@code n}-th event, dropping the oldest when {@code capacity} are pending.
+     */
+    public static DeliveryStrategy sampleEvery(int n, int capacity) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        return new DeliveryStrategy(Mode.SAMPLE, capacity, 0, n);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getMaxBlockNanos() {
+        return maxBlockNanos;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case LOSSLESS:
+                return String.format(Locale.US, "lossless(%d, %.1fms)", capacity, maxBlockNanos / 1e6);
+            case SAMPLE:
+                return "sample(1/" + sampleEvery + ", " + capacity + ")";
+            case CONFLATE_LATEST:
+                return "conflate";
+            default:
+                return "dropOldest(" + capacity + ")";
+        }
+    }
+}
@@ -36,10 +36,26 @@ public class DetailsActivity extends FragmentActivity {
     TextView txtHeartRateStatus;
     TextView txtIbi;
     TextView txtIbiStatus;
+    TextView txtRmssd;
+    // Latest sample, written by the tracker thread and read when a frame is rendered.
+    private volatile long latestHrData;
+    private final HeartRateData uiHrData = new HeartRateData();
+    private final HeartRateData renderedHrData = new HeartRateData();
+    private boolean rendered = false;
+    private int renderedRmssd = Integer.MIN_VALUE;
+    // Created with the activity, on the UI thread, and used from tracker callbacks.
+    private final FrameRenderer frameRenderer = new FrameRenderer(this::render);
     final TrackerDataObserver trackerDataObserver = new TrackerDataObserver() {
         @Override
         public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
-            DetailsActivity.this.runOnUiThread(() -> updateUi(hrData));
+            latestHrData = hrData.pack();
+            frameRenderer.requestFrame();
+        }
+
+        @Override
+        public void onHeartRateBatch(HeartRateBatch batch) {
+            // Only the newest sample is displayed, so a whole delivery is one frame request.
+            onHeartRateTrackerDataChanged(batch.get(batch.size() - 1));
         }
 
         @Override
@@ -65,6 +81,7 @@ public class DetailsActivity extends FragmentActivity {
         txtHeartRateStatus = binding.txtHeartRateStatus;
         txtIbi = binding.txtIbi;
         txtIbiStatus = binding.txtIbiStatus;
+        txtRmssd = binding.txtRmssd;
 
         Intent intent = getIntent();
         final int status = intent.getIntExtra(getString(R.string.ExtraHrStatus), HeartRateStatus.HR_STATUS_NONE);
@@ -73,37 +90,78 @@ public class DetailsActivity extends FragmentActivity {
         final int qIbi = intent.getIntExtra(getString(R.string.ExtraQualityIbi), 1);
 
         HeartRateData hrData = new HeartRateData(status, hr, ibi, qIbi);
+        latestHrData = hrData.pack();
         updateUi(hrData);
+        updateRmssd();
 
-        TrackerDataNotifier.getInstance().addObserver(trackerDataObserver);
+        TrackerDataNotifier.getInstance().addWeakObserver(trackerDataObserver,
+                TrackerDataNotifier.HEART_RATE | TrackerDataNotifier.ERROR);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         TrackerDataNotifier.getInstance().removeObserver(trackerDataObserver);
+        frameRenderer.release();
     }
 
-    private void updateUi(HeartRateData hrData) {
-        txtHeartRateStatus.setText(String.valueOf(hrData.status));
-        setStatus(hrData.status);
+    private void render(long frameTimeNanos) {
+        uiHrData.unpack(latestHrData);
+        updateUi(uiHrData);
+        updateRmssd();
+    }
 
-        if (hrData.status == HeartRateStatus.HR_STATUS_FIND_HR) {
-            txtHeartRate.setText(String.valueOf(hrData.hr));
-            txtHeartRateStatus.setTextColor(Color.WHITE);
+    /**
+     * Shows the RMSSD of the last minute, in whole ms, once it changes.
+     */
+    private void updateRmssd() {
+        final double rmssd = HrvEngine.COLLECTION.getRmssd(0);
+        final int value = Double.isNaN(rmssd) ? -1 : (int) Math.round(rmssd);
+        if (value == renderedRmssd) {
+            return;
+        }
+        txtRmssd.setText(value < 0 ? getString(R.string.RmssdDefaultValue) : String.valueOf(value));
+        renderedRmssd = value;
+    }
 
-            txtIbi.setText(String.valueOf(hrData.ibi));
-            txtIbiStatus.setText(String.valueOf(hrData.qIbi));
-            txtIbiStatus.setTextColor((hrData.qIbi == 0) ? Color.WHITE : Color.RED);
-            Log.d(APP_TAG, "HR : " + hrData.hr + " HR_IBI : " + hrData.ibi + "(" + hrData.qIbi + ") ");
+    /**
+     * Applies {@code hrData} to the views, touching only those whose value differs from what
+     * was last rendered.
+     */
+    private void updateUi(HeartRateData hrData) {
+        final boolean statusChanged = !rendered || hrData.status != renderedHrData.status;
+        if (statusChanged) {
+            txtHeartRateStatus.setText(String.valueOf(hrData.status));
+            setStatus(hrData.status);
+        }
 
-        } else {
+        if (hrData.status == HeartRateStatus.HR_STATUS_FIND_HR) {
+            if (statusChanged) {
+                txtHeartRateStatus.setTextColor(Color.WHITE);
+            }
+            if (statusChanged || hrData.hr != renderedHrData.hr) {
+                txtHeartRate.setText(String.valueOf(hrData.hr));
+            }
+            if (statusChanged || hrData.ibi != renderedHrData.ibi) {
+                txtIbi.setText(String.valueOf(hrData.ibi));
+            }
+            if (statusChanged || hrData.qIbi != renderedHrData.qIbi) {
+                txtIbiStatus.setText(String.valueOf(hrData.qIbi));
+                txtIbiStatus.setTextColor((hrData.qIbi == 0) ? Color.WHITE : Color.RED);
+            }
+            if (Log.isLoggable(APP_TAG, Log.DEBUG)) {
+                Log.d(APP_TAG, "HR : " + hrData.hr + " HR_IBI : " + hrData.ibi + "(" + hrData.qIbi + ") ");
+            }
+        } else if (statusChanged) {
             txtHeartRate.setText(getString(R.string.HeartRateDefaultValue));
             txtHeartRateStatus.setTextColor(Color.RED);
             txtIbi.setText(getString(R.string.IbiDefaultValue));
             txtIbiStatus.setText(getString(R.string.IbiStatusDefaultValue));
             txtIbiStatus.setTextColor(Color.RED);
         }
+
+        renderedHrData.set(hrData.status, hrData.hr, hrData.ibi, hrData.qIbi);
+        rendered = true;
     }
 
     private void setStatus(int status) {
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces view updates to at most one per display frame.
+ * <p>
+ * Producers (typically tracker callbacks on a sensor thread) store the latest view state in a
+ * field of their own and call {@link #requestFrame()}. Only the first request after a frame
+ * posts a {@link Choreographer} callback; further requests until that frame runs are free, so
+ * the UI thread sees one message per frame no matter how fast samples arrive.
+ * <p>
+ * Must be created on the UI thread; {@link #requestFrame()} may be called from any thread.
+ */
+public class FrameRenderer implements Choreographer.FrameCallback {
+
+    public interface Renderer {
+        /**
+         * Called on the UI thread with the frame time. Read the latest state and touch only
+         * the views whose content changed.
+         */
+        void render(long frameTimeNanos);
+    }
+
+    private final Choreographer choreographer;
+    private final Renderer renderer;
+    private final AtomicBoolean frameRequested = new AtomicBoolean(false);
+    private volatile boolean released = false;
+
+    public FrameRenderer(Renderer renderer) {
+        this.choreographer = Choreographer.getInstance();
+        this.renderer = renderer;
+    }
+
+    public void requestFrame() {
+        if (!released && frameRequested.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops rendering; pending frames are dropped and later requests are ignored.
+     */
+    public void release() {
+        released = true;
+        choreographer.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Cleared before rendering so a sample arriving mid-render schedules the next frame.
+        frameRequested.set(false);
+        if (!released) {
+            renderer.render(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.Arrays;
+
+/**
+ * Heart-rate samples delivered together, stored column-wise in primitive arrays.
+ * <p>
+ * Listeners reuse one batch per delivery, so observers must not keep a reference after
+ * the callback returns; use {@link #copyFrom(HeartRateBatch)} to retain a copy.
+ */
+public class HeartRateBatch {
+    private final static int INITIAL_CAPACITY = 16;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] statuses = new int[INITIAL_CAPACITY];
+    private int[] hrs = new int[INITIAL_CAPACITY];
+    private int[] ibis = new int[INITIAL_CAPACITY];
+    private int[] qIbis = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final HeartRateData sample = new HeartRateData();
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long timestamp, HeartRateData hrData) {
+        add(timestamp, hrData.status, hrData.hr, hrData.ibi, hrData.qIbi);
+    }
+
+    public void add(long timestamp, int status, int hr, int ibi, int qIbi) {
+        ensureCapacity(size + 1);
+        timestamps[size] = timestamp;
+        statuses[size] = status;
+        hrs[size] = hr;
+        ibis[size] = ibi;
+        qIbis[size] = qIbi;
+        size++;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[checkIndex(index)];
+    }
+
+    public int getStatus(int index) {
+        return statuses[checkIndex(index)];
+    }
+
+    public int getHr(int index) {
+        return hrs[checkIndex(index)];
+    }
+
+    public int getIbi(int index) {
+        return ibis[checkIndex(index)];
+    }
+
+    public int getQIbi(int index) {
+        return qIbis[checkIndex(index)];
+    }
+
+    /**
+     * Returns sample {@code index} in a {@link HeartRateData} owned by this batch. The same
+     * instance is returned on every call, so read it before asking for the next sample.
+     */
+    public HeartRateData get(int index) {
+        checkIndex(index);
+        sample.set(statuses[index], hrs[index], ibis[index], qIbis[index]);
+        return sample;
+    }
+
+    /**
+     * Sets the size to {@code newSize}, growing the columns if needed. Samples past the old
+     * size hold stale values until they are written through the column accessors.
+     */
+    void resize(int newSize) {
+        ensureCapacity(newSize);
+        size = newSize;
+    }
+
+    // Column accessors for bulk codecs; the arrays are replaced when the batch grows.
+
+    long[] timestampColumn() {
+        return timestamps;
+    }
+
+    int[] statusColumn() {
+        return statuses;
+    }
+
+    int[] hrColumn() {
+        return hrs;
+    }
+
+    int[] ibiColumn() {
+        return ibis;
+    }
+
+    int[] qIbiColumn() {
+        return qIbis;
+    }
+
+    public void copyFrom(HeartRateBatch other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, 0, other.size);
+        System.arraycopy(other.statuses, 0, statuses, 0, other.size);
+        System.arraycopy(other.hrs, 0, hrs, 0, other.size);
+        System.arraycopy(other.ibis, 0, ibis, 0, other.size);
+        System.arraycopy(other.qIbis, 0, qIbis, 0, other.size);
+        size = other.size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        statuses = Arrays.copyOf(statuses, newCapacity);
+        hrs = Arrays.copyOf(hrs, newCapacity);
+        ibis = Arrays.copyOf(ibis, newCapacity);
+        qIbis = Arrays.copyOf(qIbis, newCapacity);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+}
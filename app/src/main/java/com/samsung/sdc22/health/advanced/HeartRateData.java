@@ -40,4 +40,51 @@ public class HeartRateData {
     int getHrIbi() {
         return (qIbi << IBI_QUALITY_SHIFT) | ibi;
     }
+
+    void set(int status, int hr, int ibi, int qIbi) {
+        this.status = status;
+        this.hr = hr;
+        this.ibi = ibi;
+        this.qIbi = qIbi;
+    }
+
+    void setHrIbi(int hrIbi) {
+        qIbi = (hrIbi >> IBI_QUALITY_SHIFT) & IBI_MASK;
+        ibi = hrIbi & IBI_QUALITY_MASK;
+    }
+
+    HeartRateData copy() {
+        return new HeartRateData(status, hr, ibi, qIbi);
+    }
+
+    /**
+     * Packs the sample into a single long: status in the upper 32 bits, heart rate in the
+     * next 16 and the raw 16-bit IBI word (see {@link #getHrIbi()}) in the lowest 16.
+     * Lets a sample be handed across threads without copying the object.
+     */
+    long pack() {
+        return pack(status, hr, getHrIbi());
+    }
+
+    void unpack(long packed) {
+        status = unpackStatus(packed);
+        hr = unpackHr(packed);
+        setHrIbi(unpackHrIbi(packed));
+    }
+
+    static long pack(int status, int hr, int hrIbi) {
+        return ((long) status << 32) | ((long) (hr & 0xFFFF) << 16) | (hrIbi & 0xFFFF);
+    }
+
+    static int unpackStatus(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    static int unpackHr(long packed) {
+        return (int) ((packed >>> 16) & 0xFFFF);
+    }
+
+    static int unpackHrIbi(long packed) {
+        return (int) (packed & 0xFFFF);
+    }
 }
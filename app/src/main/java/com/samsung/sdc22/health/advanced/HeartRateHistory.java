@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * The most recent heart-rate samples, kept in memory so a viewer that attaches to
+ * {@link CollectionService} sees the last minutes right away instead of waiting for the
+ * tracker to find a heart rate again.
+ * <p>
+ * A fixed ring of timestamps and {@link HeartRateData#pack() packed} samples; the oldest
+ * sample is overwritten when it is full. Register it for {@link TrackerDataNotifier#HEART_RATE}
+ * without a mailbox and call {@link #replayTo(TrackerDataObserver)} on the sensor thread too,
+ * so recording and replay never overlap.
+ */
+public class HeartRateHistory implements TrackerDataObserver {
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    private final long[] timestamps;
+    private final long[] samples;
+    private final HeartRateBatch replayBatch = new HeartRateBatch();
+    private final HeartRateData replaySample = new HeartRateData();
+    private int next = 0;
+    private int size = 0;
+
+    public HeartRateHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HeartRateHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        timestamps = new long[capacity];
+        samples = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    @Override
+    public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        add(System.currentTimeMillis(), hrData.pack());
+    }
+
+    @Override
+    public void onHeartRateBatch(HeartRateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            final int hrIbi = (batch.getQIbi(i) << HeartRateData.IBI_QUALITY_SHIFT) | batch.getIbi(i);
+            add(batch.getTimestamp(i), HeartRateData.pack(batch.getStatus(i), batch.getHr(i), hrIbi));
+        }
+    }
+
+    @Override
+    public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+    }
+
+    @Override
+    public void onError(int errorResourceId) {
+    }
+
+    /**
+     * Hands every remembered sample, oldest first, to {@code viewer} as one batch. Does
+     * nothing if there is no history yet.
+     */
+    public void replayTo(TrackerDataObserver viewer) {
+        if (size == 0) {
+            return;
+        }
+        replayBatch.clear();
+        int index = size < samples.length ? 0 : next;
+        for (int i = 0; i < size; i++) {
+            replaySample.unpack(samples[index]);
+            replayBatch.add(timestamps[index], replaySample);
+            index = index + 1 == samples.length ? 0 : index + 1;
+        }
+        viewer.onHeartRateBatch(replayBatch);
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    private void add(long timestamp, long sample) {
+        timestamps[next] = timestamp;
+        samples[next] = sample;
+        next = next + 1 == samples.length ? 0 : next + 1;
+        if (size < samples.length) {
+            size++;
+        }
+    }
+}
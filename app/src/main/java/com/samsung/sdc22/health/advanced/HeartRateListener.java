@@ -26,21 +26,43 @@ import com.samsung.android.service.health.tracking.data.ValueKey;
 
 import java.util.List;
 
+/**
+ * Decodes heart-rate deliveries for the observers, either live, one notification per
+ * delivery, or batched: samples are collected on the sensor thread and handed to the
+ * observers in one batch each time the tracker is flushed.
+ */
 public class HeartRateListener extends BaseListener {
     private final static String APP_TAG = "HeartRateListener";
+    public final static long DEFAULT_FLUSH_INTERVAL_MILLIS = 5 * 60_000L;
+    // Generous for re-deliveries around a flush, which repeat a few samples at most.
+    final static int DEDUPLICATION_WINDOW = 256;
+    // Over three times the samples of a default flush interval; bounds the batch if a flush
+    // never completes.
+    final static int MAX_PENDING_SAMPLES = 1024;
+
+    // Decode targets reused for every delivery; only touched on the tracker callback thread.
+    private final HeartRateData hrData = new HeartRateData();
+    private final HeartRateBatch hrBatch = new HeartRateBatch();
+    private PipelineLatency pipelineLatency = PipelineLatency.HEART_RATE;
+    // Batched collection state, sensor thread only.
+    private final HeartRateBatch pendingBatch = new HeartRateBatch();
+    private final TimestampDeduplicator deduplicator = new TimestampDeduplicator(DEDUPLICATION_WINDOW);
+    private boolean batched = false;
+    private BatchStats batchStats = BatchStats.HEART_RATE;
+    private MeasurementScheduler scheduler = MeasurementScheduler.getInstance();
+    private volatile MeasurementScheduler.Task flushTicks = null;
 
     HeartRateListener() {
         HealthTracker.TrackerEventListener trackerEventListener = new HealthTracker.TrackerEventListener() {
             @Override
             public void onDataReceived(@NonNull List<DataPoint> list) {
-                for (DataPoint dataPoint : list) {
-                    readValuesFromDataPoint(dataPoint);
-                }
+                readValuesFromDataPoints(list);
             }
 
             @Override
             public void onFlushCompleted() {
                 Log.i(APP_TAG, " onFlushCompleted called");
+                deliverPendingBatch();
             }
 
             @Override
@@ -48,16 +70,91 @@ public class HeartRateListener extends BaseListener {
                 Log.e(APP_TAG, " onError called: " + trackerError);
                 setHandlerRunning(false);
                 if (trackerError == HealthTracker.TrackerError.PERMISSION_ERROR) {
-                    TrackerDataNotifier.getInstance().notifyError(R.string.NoPermission);
+                    getTrackerDataNotifier().notifyError(R.string.NoPermission);
                 }
                 if (trackerError == HealthTracker.TrackerError.SDK_POLICY_ERROR) {
-                    TrackerDataNotifier.getInstance().notifyError(R.string.SdkPolicyError);
+                    getTrackerDataNotifier().notifyError(R.string.SdkPolicyError);
                 }
             }
         };
         setTrackerEventListener(trackerEventListener);
     }
 
+    void setPipelineLatency(PipelineLatency pipelineLatency) {
+        this.pipelineLatency = pipelineLatency;
+    }
+
+    void setBatchStats(BatchStats batchStats) {
+        this.batchStats = batchStats;
+    }
+
+    void setScheduler(MeasurementScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Switches to batched collection: deliveries are collected without notifying anyone and
+     * the tracker is flushed every {@code flushIntervalMillis}, after which the observers get
+     * everything collected since the last flush as one {@link HeartRateBatch}. Samples the
+     * tracker delivers twice around a flush are dropped. A batch that reaches
+     * {@value #MAX_PENDING_SAMPLES} samples is handed over without waiting for the flush.
+     * <p>
+     * With an SDK that cannot flush, the tracker keeps streaming and the interval only batches
+     * the notifications.
+     */
+    public void startBatchedCollection(long flushIntervalMillis) {
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must be positive: " + flushIntervalMillis);
+        }
+        cancelFlushTicks();
+        getHandler().post(() -> {
+            if (!batched) {
+                batched = true;
+                deduplicator.clear();
+            }
+        });
+        flushTicks = scheduler.scheduleAtFixedRate(this::flush, flushIntervalMillis, flushIntervalMillis);
+    }
+
+    /**
+     * Hands over what was collected and goes back to live deliveries.
+     */
+    public void stopBatchedCollection() {
+        if (!cancelFlushTicks()) {
+            return;
+        }
+        getHandler().post(() -> {
+            flushTracker();
+            deliverPendingBatch();
+            batched = false;
+        });
+    }
+
+    /**
+     * Flushes the tracker now; with batched collection the observers get the batch once the
+     * tracker has delivered its buffer.
+     */
+    public void flush() {
+        getHandler().post(() -> {
+            if (!flushTracker()) {
+                deliverPendingBatch();
+            }
+        });
+    }
+
+    @Override
+    public void stopTracker() {
+        final boolean wasBatched = cancelFlushTicks();
+        super.stopTracker();
+        if (wasBatched) {
+            // Queued after the unset, so nothing collected before the stop is lost.
+            getHandler().post(() -> {
+                deliverPendingBatch();
+                batched = false;
+            });
+        }
+    }
+
     /*******************************************************************************************
      * [Practice 6] Read values from DataPoint object
      *  - Get heart rate status
@@ -76,14 +173,86 @@ public class HeartRateListener extends BaseListener {
      ******************************************************************************************/
 
     public void readValuesFromDataPoint(DataPoint dataPoint) {
-        HeartRateData hrData = new HeartRateData();
-        //"TODO 6 (1)"
-        //"TODO 6 (2)"
-        //"TODO 6 (3)"
-        //"TODO 6 (4)"
-        //"TODO 6 (5)"
-        TrackerDataNotifier.getInstance().notifyHeartRateTrackerObservers(hrData);
-        Log.d(APP_TAG, dataPoint.toString());
+        if (batched) {
+            batchStats.onDelivery(1);
+            collect(dataPoint);
+            return;
+        }
+        pipelineLatency.onIngress();
+        decode(dataPoint);
+        pipelineLatency.onSample(dataPoint.getTimestamp());
+        pipelineLatency.onDispatch();
+        getTrackerDataNotifier().notifyHeartRateTrackerObservers(hrData);
+    }
+
+    /**
+     * Decodes a whole delivery into the reusable {@link HeartRateBatch} and notifies the
+     * observers once, instead of once per sample.
+     */
+    public void readValuesFromDataPoints(List<DataPoint> dataPoints) {
+        if (dataPoints.isEmpty()) {
+            return;
+        }
+        if (batched) {
+            batchStats.onDelivery(dataPoints.size());
+            for (int i = 0; i < dataPoints.size(); i++) {
+                collect(dataPoints.get(i));
+            }
+            return;
+        }
+        pipelineLatency.onIngress();
+        hrBatch.clear();
+        for (int i = 0; i < dataPoints.size(); i++) {
+            final DataPoint dataPoint = dataPoints.get(i);
+            decode(dataPoint);
+            hrBatch.add(dataPoint.getTimestamp(), hrData);
+            pipelineLatency.onSample(dataPoint.getTimestamp());
+        }
+        pipelineLatency.onDispatch();
+        getTrackerDataNotifier().notifyHeartRateBatch(hrBatch);
+    }
+
+    private void collect(DataPoint dataPoint) {
+        final long timestamp = dataPoint.getTimestamp();
+        if (!deduplicator.accept(timestamp)) {
+            batchStats.onDuplicate();
+            return;
+        }
+        decode(dataPoint);
+        pendingBatch.add(timestamp, hrData);
+        if (pendingBatch.size() >= MAX_PENDING_SAMPLES) {
+            deliverPendingBatch();
+        }
+    }
+
+    private void deliverPendingBatch() {
+        final int size = pendingBatch.size();
+        if (size == 0) {
+            return;
+        }
+        batchStats.onFlush(size);
+        getTrackerDataNotifier().notifyHeartRateBatch(pendingBatch);
+        pendingBatch.clear();
+    }
+
+    private boolean cancelFlushTicks() {
+        final MeasurementScheduler.Task task = flushTicks;
+        flushTicks = null;
+        if (task == null) {
+            return false;
+        }
+        task.cancel();
+        return true;
+    }
+
+    private void decode(DataPoint dataPoint) {
+        hrData.status = dataPoint.getValue(ValueKey.HeartRateSet.STATUS);
+        hrData.hr = dataPoint.getValue(ValueKey.HeartRateSet.HEART_RATE);
+        final int hrIbi = dataPoint.getValue(ValueKey.HeartRateSet.HEART_RATE_IBI);
+        hrData.setHrIbi(hrIbi);
+        if (Log.isLoggable(APP_TAG, Log.DEBUG)) {
+            Log.d(APP_TAG, dataPoint.toString());
+        }
     }
 
 }
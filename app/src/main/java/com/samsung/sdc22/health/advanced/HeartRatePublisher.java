@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes every heart-rate sample, including each sample of a batch, as a
+ * {@link java.util.concurrent.Flow} stream.
+ * <p>
+ * Like {@link TrackerDataObserver#onHeartRateTrackerDataChanged(HeartRateData)}, the
+ * {@link HeartRateData} passed to {@code onNext} is reused for the subscriber's next sample;
+ * {@link HeartRateData#pack()} it to keep it.
+ */
+public class HeartRatePublisher extends TrackerPublisher<HeartRateData> {
+    private final TrackerDataObserver observer = new TrackerDataObserver() {
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            offer(hrData.pack());
+        }
+
+        @Override
+        public void onHeartRateBatch(HeartRateBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                offer(batch.get(i).pack());
+            }
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+            fail(errorResourceId);
+        }
+    };
+
+    /**
+     * Delivers on {@code executor}, for example the main executor of an activity, buffering
+     * up to {@link #DEFAULT_BUFFER_SIZE} samples per subscriber.
+     */
+    public HeartRatePublisher(Executor executor) {
+        this(TrackerDataNotifier.getInstance(), executor, DEFAULT_BUFFER_SIZE);
+    }
+
+    public HeartRatePublisher(TrackerDataNotifier notifier, Executor executor, int bufferSize) {
+        super(notifier, TrackerDataNotifier.HEART_RATE, executor, bufferSize);
+    }
+
+    @Override
+    TrackerDataObserver getObserver() {
+        return observer;
+    }
+
+    @Override
+    HeartRateData newScratch() {
+        return new HeartRateData();
+    }
+
+    @Override
+    HeartRateData element(long packed, HeartRateData scratch) {
+        scratch.unpack(packed);
+        return scratch;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Long-term heart-rate history as 1-second, 1-minute and 1-hour rollups, so a "last 30 days"
+ * chart reads a few hundred buckets instead of millions of samples. The last minutes of raw
+ * samples are kept by {@link HeartRateHistory}.
+ * <p>
+ * Each sample updates the open bucket of every tier in O(1): heart-rate min, max, mean and
+ * count (samples with {@link HeartRateStatus#HR_STATUS_FIND_HR} only), the number of beats
+ * with a valid IBI, and the time spent in each {@link HeartRateStatus}. The time between two
+ * samples, up to {@value #MAX_STATUS_GAP_MILLIS} ms, is credited to the earlier sample's
+ * status. Register it for {@link TrackerDataNotifier#HEART_RATE}; queries may come from any
+ * thread.
+ */
+public class HeartRateRollups implements TrackerDataObserver {
+    public final static long SECOND_MILLIS = 1_000L;
+    public final static long MINUTE_MILLIS = 60_000L;
+    public final static long HOUR_MILLIS = 3_600_000L;
+    final static int[] STATUSES = {
+            HeartRateStatus.HR_STATUS_NONE,
+            HeartRateStatus.HR_STATUS_FIND_HR,
+            HeartRateStatus.HR_STATUS_ATTACHED,
+            HeartRateStatus.HR_STATUS_DETECT_MOVE,
+            HeartRateStatus.HR_STATUS_DETACHED,
+            HeartRateStatus.HR_STATUS_LOW_RELIABILITY,
+            HeartRateStatus.HR_STATUS_VERY_LOW_RELIABILITY,
+            HeartRateStatus.HR_STATUS_NO_DATA_FLUSH};
+    final static int STATUS_COUNT = STATUSES.length;
+    // A longer silence is a gap in collection, not time spent in the last status.
+    final static int MAX_STATUS_GAP_MILLIS = 5_000;
+
+    final static int SNAPSHOT_MAGIC = 0x524C5550; // "RLUP"
+    final static int SNAPSHOT_VERSION = 1;
+
+    // Finest first: 2 hours of seconds, 7 days of minutes, 400 days of hours, about 1.7 MB.
+    private final RollupTier[] tiers = {
+            new RollupTier(SECOND_MILLIS, 2 * 3600),
+            new RollupTier(MINUTE_MILLIS, 7 * 24 * 60),
+            new RollupTier(HOUR_MILLIS, 400 * 24)};
+
+    // Guarded by this.
+    private long previousTimestamp = Long.MIN_VALUE;
+    private int previousStatusIndex = -1;
+    private long droppedCount = 0;
+
+    @Override
+    public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        add(System.currentTimeMillis(), hrData.status, hrData.hr, hrData.qIbi == 0 && hrData.ibi > 0);
+    }
+
+    @Override
+    public synchronized void onHeartRateBatch(HeartRateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            add(batch.getTimestamp(i), batch.getStatus(i), batch.getHr(i),
+                    batch.getQIbi(i) == 0 && batch.getIbi(i) > 0);
+        }
+    }
+
+    @Override
+    public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+    }
+
+    @Override
+    public void onError(int errorResourceId) {
+    }
+
+    public synchronized void add(long timestamp, int status, int hr, boolean validIbi) {
+        final boolean measured = status == HeartRateStatus.HR_STATUS_FIND_HR;
+        long elapsed = timestamp - previousTimestamp;
+        if (previousStatusIndex < 0 || elapsed < 0 || elapsed > MAX_STATUS_GAP_MILLIS) {
+            elapsed = 0;
+        }
+        boolean kept = false;
+        for (RollupTier tier : tiers) {
+            kept |= tier.add(timestamp, measured ? hr : 0, measured && validIbi, previousStatusIndex, (int) elapsed);
+        }
+        if (!kept) {
+            droppedCount++;
+        }
+        if (timestamp >= previousTimestamp) {
+            previousTimestamp = timestamp;
+            previousStatusIndex = statusIndex(status);
+        }
+    }
+
+    /**
+     * Fills {@code series} with the buckets overlapping [{@code from}, {@code to}) at the
+     * finest resolution that still reaches back to {@code from} and needs at most
+     * {@code maxPoints} buckets for the range, falling back to hours. Returns the resolution
+     * used.
+     */
+    public synchronized long query(long from, long to, int maxPoints, RollupSeries series) {
+        if (to <= from || maxPoints < 1) {
+            throw new IllegalArgumentException("empty range or point budget");
+        }
+        RollupTier chosen = tiers[tiers.length - 1];
+        for (RollupTier tier : tiers) {
+            if (tier.covers(from) && (to - from + tier.resolutionMillis - 1) / tier.resolutionMillis <= maxPoints) {
+                chosen = tier;
+                break;
+            }
+        }
+        chosen.query(from, to, series);
+        return chosen.resolutionMillis;
+    }
+
+    /**
+     * Samples older than every bucket kept, which were not counted anywhere.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Writes every tier: int magic, int version, int tier count, then each tier's resolution,
+     * bucket count and buckets.
+     */
+    public synchronized void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(tiers.length);
+        for (RollupTier tier : tiers) {
+            tier.writeTo(out);
+        }
+    }
+
+    /**
+     * Restores the tiers from a {@link #writeSnapshot(DataOutput)}, so history survives a
+     * restart of the collection service.
+     */
+    public synchronized void readSnapshot(DataInput in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION || in.readInt() != tiers.length) {
+            throw new IOException("Not a rollup snapshot");
+        }
+        for (RollupTier tier : tiers) {
+            tier.readFrom(in);
+        }
+        previousTimestamp = Long.MIN_VALUE;
+        previousStatusIndex = -1;
+    }
+
+    static int statusIndex(int status) {
+        for (int i = 0; i < STATUS_COUNT; i++) {
+            if (STATUSES[i] == status) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Incremental time-domain HRV over the IBI stream.
+ * <p>
+ * Beats are kept once in a primitive ring buffer and shared by all sliding windows. Each
+ * window holds a tail index plus running sums (IBI, IBI squared, successive differences), so
+ * adding a beat and evicting expired ones is O(1) amortised per window and allocates nothing.
+ * Beats whose IBI quality bit is set, or that are reported outside
+ * {@link HeartRateStatus#HR_STATUS_FIND_HR}, are skipped and break the chain of successive
+ * differences.
+ * <p>
+ * Feeding is synchronized on the engine, and so are {@link #getRmssd(int)} and
+ * {@link #getSdnn(int)}, which the UI thread may call; read a {@link Window} directly only on
+ * the thread that feeds the engine. {@link #COLLECTION} is fed by {@link CollectionService}
+ * and shown by {@link DetailsActivity}.
+ */
+public class HrvEngine implements TrackerDataObserver {
+    public final static long[] DEFAULT_WINDOWS_MILLIS = {60_000L, 5 * 60_000L, 15 * 60_000L};
+    // 15 minutes at 240 bpm, rounded up to a power of two.
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    public final static HrvEngine COLLECTION = new HrvEngine();
+
+    private final static int NO_DIFF = Integer.MIN_VALUE;
+    private final static int NN50_THRESHOLD_MILLIS = 50;
+
+    private final long[] timestamps;
+    private final int[] ibis;
+    private final int[] diffs;
+    private final int mask;
+    private final Window[] windows;
+
+    private long head = 0;
+    private int previousIbi = 0;
+    private boolean chained = false;
+
+    public HrvEngine() {
+        this(DEFAULT_WINDOWS_MILLIS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param windowsMillis sliding window lengths
+     * @param capacity      beats kept in the ring buffer, rounded up to a power of two; must
+     *                      cover the longest window at the highest expected heart rate
+     */
+    public HrvEngine(long[] windowsMillis, int capacity) {
+        if (capacity <= 1) {
+            throw new IllegalArgumentException("capacity must be > 1: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        timestamps = new long[size];
+        ibis = new int[size];
+        diffs = new int[size];
+        mask = size - 1;
+        windows = new Window[windowsMillis.length];
+        for (int i = 0; i < windowsMillis.length; i++) {
+            if (windowsMillis[i] <= 0) {
+                throw new IllegalArgumentException("window must be positive: " + windowsMillis[i]);
+            }
+            windows[i] = new Window(windowsMillis[i]);
+        }
+    }
+
+    public int getWindowCount() {
+        return windows.length;
+    }
+
+    public Window getWindow(int index) {
+        return windows[index];
+    }
+
+    /**
+     * {@link Window#getRmssd()} of window {@code index}, safe to call from any thread.
+     */
+    public synchronized double getRmssd(int index) {
+        return windows[index].getRmssd();
+    }
+
+    /**
+     * {@link Window#getSdnn()} of window {@code index}, safe to call from any thread.
+     */
+    public synchronized double getSdnn(int index) {
+        return windows[index].getSdnn();
+    }
+
+    /**
+     * Adds one beat and expires beats that fell out of each window. Beats must arrive in
+     * timestamp order; an invalid beat is not stored but still advances the windows.
+     *
+     * @param timestamp beat time in milliseconds
+     * @param ibi       inter-beat interval in milliseconds
+     * @param qIbi      IBI quality bit; anything but 0 marks the beat invalid
+     */
+    public synchronized void addBeat(long timestamp, int ibi, int qIbi) {
+        if (qIbi != 0 || ibi <= 0) {
+            skipBeat(timestamp);
+            return;
+        }
+
+        final long index = head;
+        final long overwritten = index - timestamps.length;
+        for (Window window : windows) {
+            if (window.tail == overwritten) {
+                evictTail(window);
+            }
+        }
+
+        final int slot = (int) (index & mask);
+        timestamps[slot] = timestamp;
+        ibis[slot] = ibi;
+        diffs[slot] = chained ? ibi - previousIbi : NO_DIFF;
+        head = index + 1;
+        previousIbi = ibi;
+        chained = true;
+
+        for (Window window : windows) {
+            // The difference only counts if the previous beat is still inside this window.
+            if (window.tail < index && diffs[slot] != NO_DIFF) {
+                window.addDiff(diffs[slot]);
+            }
+            window.addIbi(ibi);
+        }
+        expire(timestamp);
+    }
+
+    @Override
+    public synchronized void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        if (hrData.status == HeartRateStatus.HR_STATUS_FIND_HR) {
+            addBeat(System.currentTimeMillis(), hrData.ibi, hrData.qIbi);
+        } else {
+            skipBeat(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public synchronized void onHeartRateBatch(HeartRateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getStatus(i) == HeartRateStatus.HR_STATUS_FIND_HR) {
+                addBeat(batch.getTimestamp(i), batch.getIbi(i), batch.getQIbi(i));
+            } else {
+                skipBeat(batch.getTimestamp(i));
+            }
+        }
+    }
+
+    @Override
+    public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+    }
+
+    @Override
+    public void onError(int errorResourceId) {
+    }
+
+    private void skipBeat(long timestamp) {
+        chained = false;
+        expire(timestamp);
+    }
+
+    private void expire(long now) {
+        for (Window window : windows) {
+            final long expired = now - window.durationMillis;
+            while (window.tail < head && timestamps[(int) (window.tail & mask)] <= expired) {
+                evictTail(window);
+            }
+        }
+    }
+
+    private void evictTail(Window window) {
+        window.removeIbi(ibis[(int) (window.tail & mask)]);
+        window.tail++;
+        if (window.tail < head) {
+            final int diff = diffs[(int) (window.tail & mask)];
+            if (diff != NO_DIFF) {
+                window.removeDiff(diff);
+            }
+        }
+    }
+
+    /**
+     * Running statistics over the beats of the last {@link #getDurationMillis()} ms.
+     */
+    public static final class Window {
+        private final long durationMillis;
+        private long tail = 0;
+        private int beatCount = 0;
+        private long ibiSum = 0;
+        private long ibiSquareSum = 0;
+        private int diffCount = 0;
+        private long diffSquareSum = 0;
+        private int nn50Count = 0;
+
+        Window(long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public int getBeatCount() {
+            return beatCount;
+        }
+
+        /**
+         * Root mean square of successive differences in ms, or {@code NaN} without a pair of
+         * consecutive valid beats.
+         */
+        public double getRmssd() {
+            return diffCount == 0 ? Double.NaN : Math.sqrt((double) diffSquareSum / diffCount);
+        }
+
+        /**
+         * Sample standard deviation of the IBIs in ms, or {@code NaN} with fewer than two beats.
+         */
+        public double getSdnn() {
+            if (beatCount < 2) {
+                return Double.NaN;
+            }
+            // Exact in long: beatCount * ibiSquareSum stays below 2^63 for 2^15 ms IBIs.
+            final long numerator = beatCount * ibiSquareSum - ibiSum * ibiSum;
+            return Math.sqrt((double) numerator / ((long) beatCount * (beatCount - 1)));
+        }
+
+        /**
+         * Percentage of successive differences larger than 50 ms, or {@code NaN} without a pair
+         * of consecutive valid beats.
+         */
+        public double getPnn50() {
+            return diffCount == 0 ? Double.NaN : 100.0 * nn50Count / diffCount;
+        }
+
+        /**
+         * Mean heart rate in bpm derived from the mean IBI, or {@code NaN} without beats.
+         */
+        public double getMeanHr() {
+            return beatCount == 0 ? Double.NaN : 60_000.0 * beatCount / ibiSum;
+        }
+
+        private void addIbi(int ibi) {
+            beatCount++;
+            ibiSum += ibi;
+            ibiSquareSum += (long) ibi * ibi;
+        }
+
+        private void removeIbi(int ibi) {
+            beatCount--;
+            ibiSum -= ibi;
+            ibiSquareSum -= (long) ibi * ibi;
+        }
+
+        private void addDiff(int diff) {
+            diffCount++;
+            diffSquareSum += (long) diff * diff;
+            if (Math.abs(diff) > NN50_THRESHOLD_MILLIS) {
+                nn50Count++;
+            }
+        }
+
+        private void removeDiff(int diff) {
+            diffCount--;
+            diffSquareSum -= (long) diff * diff;
+            if (Math.abs(diff) > NN50_THRESHOLD_MILLIS) {
+                nn50Count--;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.fragment.app.FragmentActivity;
+
+import com.samsung.sdc22.health.advanced.databinding.ActivityLatencyBinding;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Debug screen with the {@link PipelineLatency} percentiles, the {@link BatchStats} of
+ * batched collection, the {@link CommitStats} of the session log and the per-observer
+ * dispatch counters of {@link TrackerDataNotifier}, refreshed every second. Opened by a long
+ * press on the heart rate details link of {@link MainActivity}.
+ */
+public class LatencyActivity extends FragmentActivity {
+
+    private final static String APP_TAG = "LatencyActivity";
+    private final static long REFRESH_INTERVAL_MILLIS = 1000;
+    private final static String DUMP_DIRECTORY = "latency";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final StringBuilder summary = new StringBuilder();
+    private TextView txtLatency;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            summary.setLength(0);
+            PipelineLatency.appendSummary(summary);
+            BatchStats.HEART_RATE.appendSummary(summary);
+            CommitStats.SESSION.appendSummary(summary);
+            TrackerDataNotifier.getInstance().appendStats(summary);
+            txtLatency.setText(summary);
+            handler.postDelayed(this, REFRESH_INTERVAL_MILLIS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        ActivityLatencyBinding binding = ActivityLatencyBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+        txtLatency = binding.txtLatency;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    public void onDump(View view) {
+        final File directory = new File(getFilesDir(), DUMP_DIRECTORY);
+        final String name = "latency-" + System.currentTimeMillis();
+        new Thread(() -> {
+            try {
+                dump(directory, name);
+                runOnUiThread(() -> Toast.makeText(getApplicationContext(),
+                        getString(R.string.LatencyDumped, directory.getPath()), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                Log.e(APP_TAG, "Could not write latency snapshot: " + e.getMessage());
+                runOnUiThread(() -> Toast.makeText(getApplicationContext(),
+                        R.string.LatencyDumpFailed, Toast.LENGTH_LONG).show());
+            }
+        }, "LatencyDump").start();
+    }
+
+    public void onReset(View view) {
+        PipelineLatency.HEART_RATE.reset();
+        PipelineLatency.SPO2.reset();
+        BatchStats.HEART_RATE.reset();
+        CommitStats.SESSION.reset();
+        handler.removeCallbacks(refresh);
+        handler.post(refresh);
+    }
+
+    static void dump(File directory, String name) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final StringBuilder text = new StringBuilder();
+        PipelineLatency.appendSummary(text);
+        BatchStats.HEART_RATE.appendSummary(text);
+        CommitStats.SESSION.appendSummary(text);
+        TrackerDataNotifier.getInstance().appendStats(text);
+        try (Writer writer = new FileWriter(new File(directory, name + ".txt"))) {
+            writer.append(text);
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(directory, name + ".bin")))) {
+            PipelineLatency.writeSnapshot(out);
+        }
+    }
+}
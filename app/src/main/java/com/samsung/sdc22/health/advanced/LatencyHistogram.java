@@ -0,0 +1,177 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory log-linear histogram of nanosecond latencies, in the spirit of HdrHistogram.
+ * <p>
+ * Values below {@value #SUB_BUCKETS} ns get one bucket each; every power of two above that is
+ * split into {@value #SUB_BUCKETS}/2 equal buckets, so any recorded value is reported within
+ * about 3% of its true value. Values above {@link #MAX_TRACKABLE_NANOS} land in the last
+ * bucket. {@link #record(long)} is two atomic adds and never allocates, so it can be
+ * called from the tracker and UI threads at the same time.
+ */
+public class LatencyHistogram {
+    final static int SUB_BUCKET_BITS = 6;
+    final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    public final static long MAX_TRACKABLE_NANOS = (1L << 36) - 1; // ~68.7 s
+    final static int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one latency; negative values (clock adjustments) count as zero.
+     */
+    public void record(long nanos) {
+        final long value = nanos < 0 ? 0 : nanos;
+        counts.incrementAndGet(bucketIndex(Math.min(value, MAX_TRACKABLE_NANOS)));
+        totalNanos.addAndGet(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Sums the buckets; counting on read keeps {@link #record(long)} to one increment.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        final long count = getTotalCount();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the {@code percentile}th value, or 0 if
+     * nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Appends a one-line summary: count, mean, p50/p90/p99/p99.9 and max in milliseconds.
+     */
+    public void appendSummary(StringBuilder out) {
+        out.append(String.format(Locale.US,
+                "%-20s n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f ms%n",
+                name, getTotalCount(), getMeanNanos() / 1e6,
+                getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6,
+                getValueAtPercentile(99) / 1e6, getValueAtPercentile(99.9) / 1e6, getMaxNanos() / 1e6));
+    }
+
+    /**
+     * Writes the histogram as: UTF name, int sub-bucket bits, long total count, long total
+     * nanos, long max, int non-empty buckets, then (int index, long count) per non-empty bucket.
+     * {@link #bucketLowerBound(int)} maps an index back to nanoseconds.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int nonEmpty = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts.get(i) != 0) {
+                nonEmpty++;
+            }
+        }
+        out.writeUTF(name);
+        out.writeInt(SUB_BUCKET_BITS);
+        out.writeLong(getTotalCount());
+        out.writeLong(totalNanos.get());
+        out.writeLong(maxNanos.get());
+        out.writeInt(nonEmpty);
+        for (int i = 0; i < BUCKET_COUNT && nonEmpty > 0; i++) {
+            final long count = counts.get(i);
+            if (count != 0) {
+                out.writeInt(i);
+                out.writeLong(count);
+                nonEmpty--;
+            }
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / HALF_SUB_BUCKETS - 1;
+        return (long) (index - shift * HALF_SUB_BUCKETS) << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / HALF_SUB_BUCKETS - 1;
+        return bucketLowerBound(index) + (1L << shift) - 1;
+    }
+}
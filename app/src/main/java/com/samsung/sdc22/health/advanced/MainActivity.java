@@ -20,11 +20,13 @@ import static android.content.pm.PackageManager.PERMISSION_DENIED;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.CountDownTimer;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -46,78 +48,53 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class MainActivity extends Activity {
 
     private final static String APP_TAG = "MainActivity";
-    private final static int MEASUREMENT_DURATION = 35000;
+    private final static int MEASUREMENT_DURATION = (int) SpO2Listener.MEASUREMENT_TIMEOUT_MILLIS;
     private final static int MEASUREMENT_TICK = 250;
+    private final static int NO_HEART_RATE = -1;
 
     private final AtomicBoolean isMeasurementRunning = new AtomicBoolean(false);
-    Thread uiUpdateThread = null;
-    private ConnectionManager connectionManager;
-    private HeartRateListener heartRateListener = null;
-    private SpO2Listener spO2Listener = null;
-    private boolean connected = false;
+    // Set while bound to the CollectionService, which owns the trackers.
+    private CollectionService collectionService = null;
+    private boolean bound = false;
+    private volatile SpO2Listener spO2Listener = null;
+    private volatile boolean connected = false;
     private boolean permissionGranted = false;
-    private int previousStatus = SpO2Status.INITIAL_STATUS;
-    private HeartRateData heartRateDataLast = new HeartRateData();
+    // Latest sample, written by the tracker thread and read when a frame is rendered.
+    private volatile long latestHrData = new HeartRateData().pack();
+    private int renderedHr = Integer.MIN_VALUE;
+    // Created with the activity, on the UI thread, and used from tracker callbacks.
+    private final FrameRenderer frameRenderer = new FrameRenderer(this::render);
     private TextView txtHeartRate;
     private TextView txtStatus;
     private TextView txtSpo2;
     private Button butStart;
     private CircularProgressIndicator measurementProgress = null;
-    final CountDownTimer countDownTimer = new CountDownTimer(MEASUREMENT_DURATION, MEASUREMENT_TICK) {
+    // Progress ring state, UI thread only. The ticks just request a frame; the ring is set
+    // from the elapsed time when the frame is rendered.
+    private MeasurementScheduler.Task progressTicks = null;
+    private long measurementStartNanos;
+    final TrackerDataObserver trackerDataObserver = new TrackerDataObserver() {
         @Override
-        public void onTick(long timeLeft) {
-            if (isMeasurementRunning.get()) {
-                runOnUiThread(() ->
-                        measurementProgress.setProgress(measurementProgress.getProgress() + 1, true));
-            } else
-                cancel();
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            latestHrData = hrData.pack();
+            frameRenderer.requestFrame();
         }
 
         @Override
-        public void onFinish() {
-            if (!isMeasurementRunning.get())
-                return;
-            Log.i(APP_TAG, "Failed measurement");
-            runOnUiThread(() ->
-            {
-                txtStatus.setText(R.string.MeasurementFailed);
-                txtStatus.invalidate();
-                txtSpo2.setText(R.string.SpO2DefaultValue);
-                txtSpo2.invalidate();
-                butStart.setText(R.string.StartLabel);
-                measurementProgress.setProgress(0);
-                measurementProgress.invalidate();
-            });
-            spO2Listener.stopTracker();
-            getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-            isMeasurementRunning.set(false);
-        }
-    };
-    final TrackerDataObserver trackerDataObserver = new TrackerDataObserver() {
-        @Override
-        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
-            MainActivity.this.runOnUiThread(() -> {
-                heartRateDataLast = hrData;
-                Log.i(APP_TAG, "HR Status: " + hrData.status);
-                if (hrData.status == HeartRateStatus.HR_STATUS_FIND_HR) {
-                    txtHeartRate.setText(String.valueOf(hrData.hr));
-                    Log.i(APP_TAG, "HR: " + hrData.hr);
-                } else {
-                    txtHeartRate.setText(getString(R.string.HeartRateDefaultValue));
-                }
-            });
+        public void onHeartRateBatch(HeartRateBatch batch) {
+            // Only the newest sample is displayed, so a whole delivery, or the history replayed
+            // on attach, is one frame request.
+            onHeartRateTrackerDataChanged(batch.get(batch.size() - 1));
         }
 
         @Override
         public void onSpO2TrackerDataChanged(int status, int spO2Value) {
-            if(status == previousStatus) {
-                return;
-            }
-            previousStatus = status;
+            // SpO2Listener only reports transitions, so every status here is a change.
             switch (status) {
                 case SpO2Status.CALCULATING:
                     Log.i(APP_TAG, "Calculating measurement");
                     runOnUiThread(() -> {
+                                PipelineLatency.SPO2.onUiApplied();
                                 txtStatus.setText(R.string.StatusCalculating);
                                 txtStatus.invalidate();
                             }
@@ -138,14 +115,32 @@ public class MainActivity extends Activity {
                     isMeasurementRunning.set(false);
                     spO2Listener.stopTracker();
                     runOnUiThread(() -> {
+                        PipelineLatency.SPO2.onUiApplied();
+                        stopProgressTicks();
                         txtStatus.setText(R.string.StatusCompleted);
                         txtStatus.invalidate();
                         txtSpo2.setText(String.valueOf(spO2Value));
                         txtSpo2.invalidate();
                         butStart.setText(R.string.StartLabel);
                         measurementProgress.setProgress(measurementProgress.getMax(), true);
+                        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+                    });
+                    break;
+                case SpO2Status.MEASUREMENT_TIMEOUT:
+                    Log.i(APP_TAG, "Failed measurement");
+                    isMeasurementRunning.set(false);
+                    spO2Listener.stopTracker();
+                    runOnUiThread(() -> {
+                        stopProgressTicks();
+                        txtStatus.setText(R.string.MeasurementFailed);
+                        txtStatus.invalidate();
+                        txtSpo2.setText(R.string.SpO2DefaultValue);
+                        txtSpo2.invalidate();
+                        butStart.setText(R.string.StartLabel);
+                        measurementProgress.setProgress(0);
+                        measurementProgress.invalidate();
+                        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
                     });
-                    getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
                     break;
             }
         }
@@ -159,23 +154,20 @@ public class MainActivity extends Activity {
     private final ConnectionObserver connectionObserver = new ConnectionObserver() {
         @Override
         public void onConnectionResult(int stringResourceId) {
-            runOnUiThread(() -> Toast.makeText(getApplicationContext(), getString(stringResourceId)
-                    , Toast.LENGTH_LONG).show());
+            // Results are replayed on every attach; only announce the connection once.
+            if (!connected || stringResourceId != R.string.ConnectedToHs) {
+                runOnUiThread(() -> Toast.makeText(getApplicationContext(), getString(stringResourceId)
+                        , Toast.LENGTH_LONG).show());
+            }
 
             if (stringResourceId != R.string.ConnectedToHs) {
                 finish();
             }
 
             connected = true;
-            TrackerDataNotifier.getInstance().addObserver(trackerDataObserver);
-
-            spO2Listener = new SpO2Listener();
-            heartRateListener = new HeartRateListener();
-
-            connectionManager.initSpO2(spO2Listener);
-            connectionManager.initHeartRate(heartRateListener);
-
-            heartRateListener.startTracker();
+            final CollectionService service = collectionService;
+            if (service != null)
+                spO2Listener = service.getSpO2Listener();
         }
 
         @Override
@@ -193,6 +185,18 @@ public class MainActivity extends Activity {
             finish();
         }
     };
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            collectionService = ((CollectionService.LocalBinder) service).getService();
+            collectionService.attach(trackerDataObserver, connectionObserver);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            collectionService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -207,36 +211,105 @@ public class MainActivity extends Activity {
         butStart = binding.butStart;
         measurementProgress = binding.progressBar;
         adjustProgressBar(measurementProgress);
+        binding.txtHeartRateDetails.setOnLongClickListener(v -> {
+            startActivity(new Intent(getApplicationContext(), LatencyActivity.class));
+            return true;
+        });
 
         if (ActivityCompat.checkSelfPermission(getApplicationContext(), getString(R.string.BodySensors)) == PackageManager.PERMISSION_DENIED)
             requestPermissions(new String[]{Manifest.permission.BODY_SENSORS}, 0);
         else {
             permissionGranted = true;
-            createConnectionManager();
+            startCollection();
         }
 
     }
 
+    /**
+     * Attaches to the collection service as a viewer while visible. Collection itself keeps
+     * running in the service when the activity goes away.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (permissionGranted)
+            bindCollection();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (bound) {
+            if (collectionService != null)
+                collectionService.detach(trackerDataObserver, connectionObserver);
+            unbindService(serviceConnection);
+            collectionService = null;
+            bound = false;
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (heartRateListener != null)
-            heartRateListener.stopTracker();
+        stopProgressTicks();
+        frameRenderer.release();
         if (spO2Listener != null)
             spO2Listener.stopTracker();
-        TrackerDataNotifier.getInstance().removeObserver(trackerDataObserver);
-        if (connectionManager != null) {
-            connectionManager.disconnect();
+    }
+
+    void startCollection() {
+        startForegroundService(new Intent(this, CollectionService.class));
+        bindCollection();
+    }
+
+    private void bindCollection() {
+        if (!bound) {
+            bound = bindService(new Intent(this, CollectionService.class), serviceConnection, BIND_AUTO_CREATE);
+        }
+    }
+
+    private void render(long frameTimeNanos) {
+        renderHeartRate();
+        renderProgress(frameTimeNanos);
+    }
+
+    private void renderHeartRate() {
+        PipelineLatency.HEART_RATE.onUiApplied();
+        final long hrData = latestHrData;
+        final int displayedHr = HeartRateData.unpackStatus(hrData) == HeartRateStatus.HR_STATUS_FIND_HR
+                ? HeartRateData.unpackHr(hrData) : NO_HEART_RATE;
+        if (displayedHr == renderedHr) {
+            return;
+        }
+        renderedHr = displayedHr;
+        Log.i(APP_TAG, "HR: " + displayedHr);
+        if (displayedHr == NO_HEART_RATE) {
+            txtHeartRate.setText(R.string.HeartRateDefaultValue);
+        } else {
+            txtHeartRate.setText(String.valueOf(displayedHr));
         }
     }
 
-    void createConnectionManager() {
-        try {
-            connectionManager = new ConnectionManager(connectionObserver);
-            connectionManager.connect(getApplicationContext());
+    /**
+     * Sets the progress ring from the time since the measurement started; frame times share
+     * the {@link System#nanoTime()} time base.
+     */
+    private void renderProgress(long frameTimeNanos) {
+        if (progressTicks == null) {
+            return;
+        }
+        final long elapsedMillis = Math.max(0, (frameTimeNanos - measurementStartNanos) / 1_000_000L);
+        final int max = measurementProgress.getMax();
+        final int progress = (int) Math.min(max, elapsedMillis * max / MEASUREMENT_DURATION);
+        if (progress != measurementProgress.getProgress()) {
+            measurementProgress.setProgress(progress, true);
+        }
+    }
 
-        } catch (Throwable t) {
-            Log.e(APP_TAG, t.getMessage());
+    private void stopProgressTicks() {
+        if (progressTicks != null) {
+            progressTicks.cancel();
+            progressTicks = null;
         }
     }
 
@@ -256,6 +329,8 @@ public class MainActivity extends Activity {
             return;
         }
 
+        final HeartRateData heartRateDataLast = new HeartRateData();
+        heartRateDataLast.unpack(latestHrData);
         Intent intent = new Intent(this, DetailsActivity.class);
         intent.putExtra(getString(R.string.ExtraHr), heartRateDataLast.hr);
         intent.putExtra(getString(R.string.ExtraHrStatus), heartRateDataLast.status);
@@ -270,18 +345,19 @@ public class MainActivity extends Activity {
         }
 
         if (!isMeasurementRunning.get()) {
-            previousStatus = SpO2Status.INITIAL_STATUS;
             butStart.setText(R.string.StopLabel);
             txtSpo2.setText(R.string.SpO2DefaultValue);
             measurementProgress.setProgress(0);
             getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
             spO2Listener.startTracker();
             isMeasurementRunning.set(true);
-            uiUpdateThread = new Thread(countDownTimer::start);
-            uiUpdateThread.start();
+            measurementStartNanos = System.nanoTime();
+            progressTicks = MeasurementScheduler.getInstance().scheduleAtFixedRate(frameRenderer::requestFrame,
+                    MEASUREMENT_TICK, MEASUREMENT_TICK);
         } else {
             butStart.setEnabled(false);
             isMeasurementRunning.set(false);
+            stopProgressTicks();
             getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
             spO2Listener.stopTracker();
             Handler progressHandler = new Handler(Looper.getMainLooper());
@@ -313,7 +389,7 @@ public class MainActivity extends Activity {
                 }
             }
             if (permissionGranted) {
-                createConnectionManager();
+                startCollection();
             }
         }
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
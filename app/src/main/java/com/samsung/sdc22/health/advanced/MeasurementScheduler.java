@@ -0,0 +1,256 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import android.util.Log;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Timers for every tracker: measurement timeouts, progress ticks and retries.
+ * <p>
+ * Tasks are kept in one queue ordered by their due time on a {@link Clock}. A single scheduler
+ * thread sleeps until the earliest one is due and runs it, so measurements cost a queue entry
+ * instead of a thread. Tasks run on that thread and must be short; post to a {@code Handler}
+ * for anything that belongs to the UI or a sensor thread.
+ * <p>
+ * Created without an executor, nothing runs on its own: tests move a virtual clock forward
+ * and drive the queue with {@link #runDueTasks()}.
+ */
+public class MeasurementScheduler {
+    private final static String TAG = "MeasurementScheduler";
+
+    private final Clock clock;
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+    private final PriorityQueue<Task> queue = new PriorityQueue<>(8, (a, b) -> {
+        final int byDue = Long.compare(a.dueNanos - b.dueNanos, 0);
+        return byDue != 0 ? byDue : Long.compare(a.sequence, b.sequence);
+    });
+
+    // Guarded by lock.
+    private long nextSequence = 0;
+    private ScheduledFuture<?> wakeUp = null;
+    private long wakeUpNanos;
+
+    private static class InstanceHolder {
+        static final MeasurementScheduler INSTANCE = new MeasurementScheduler(Clock.SYSTEM,
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    public static MeasurementScheduler getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @param executor wakes the scheduler when a task is due; {@code null} leaves that to
+     *                 {@link #runDueTasks()}.
+     */
+    MeasurementScheduler(Clock clock, ScheduledExecutorService executor) {
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public Task schedule(Runnable action, long delayMillis) {
+        return enqueue(new Task(action, 0), delayMillis);
+    }
+
+    /**
+     * Runs {@code action} every {@code periodMillis}. Ticks missed while the scheduler was
+     * late are skipped rather than run back to back.
+     */
+    public Task scheduleAtFixedRate(Runnable action, long initialDelayMillis, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive: " + periodMillis);
+        }
+        return enqueue(new Task(action, periodMillis * 1_000_000L), initialDelayMillis);
+    }
+
+    /**
+     * Calls {@code attempt} after {@code initialDelayMillis} and again, with the delay doubling
+     * up to {@code maxDelayMillis}, until it returns {@code true} or {@code maxAttempts} calls
+     * have failed.
+     */
+    public Task retry(BooleanSupplier attempt, int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1 || initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("invalid retry policy");
+        }
+        return enqueue(new RetryTask(attempt, maxAttempts, initialDelayMillis * 1_000_000L,
+                maxDelayMillis * 1_000_000L), initialDelayMillis);
+    }
+
+    /**
+     * Runs every task that is due on the clock, including ones that become due while this
+     * runs, and returns how many ran.
+     */
+    public int runDueTasks() {
+        int ran = 0;
+        while (true) {
+            final Task task;
+            final long now = clock.nanoTime();
+            synchronized (lock) {
+                task = queue.peek();
+                if (task == null || task.dueNanos - now > 0) {
+                    break;
+                }
+                queue.poll();
+            }
+            if (task.cancelled) {
+                continue;
+            }
+            ran++;
+            long next;
+            try {
+                next = task.run(now);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Task failed, not rescheduling: " + e);
+                next = -1;
+            }
+            if (next >= 0 && !task.cancelled) {
+                synchronized (lock) {
+                    task.dueNanos = next;
+                    queue.add(task);
+                }
+            }
+        }
+        armWakeUp();
+        return ran;
+    }
+
+    int getQueuedCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private Task enqueue(Task task, long delayMillis) {
+        synchronized (lock) {
+            task.dueNanos = clock.nanoTime() + Math.max(0, delayMillis) * 1_000_000L;
+            task.sequence = nextSequence++;
+            queue.add(task);
+        }
+        armWakeUp();
+        return task;
+    }
+
+    private void armWakeUp() {
+        if (executor == null) {
+            return;
+        }
+        synchronized (lock) {
+            Task head = queue.peek();
+            while (head != null && head.cancelled) {
+                queue.poll();
+                head = queue.peek();
+            }
+            if (head == null || (wakeUp != null && wakeUpNanos - head.dueNanos <= 0)) {
+                return;
+            }
+            if (wakeUp != null) {
+                wakeUp.cancel(false);
+            }
+            wakeUpNanos = head.dueNanos;
+            wakeUp = executor.schedule(this::onWakeUp, Math.max(0, head.dueNanos - clock.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void onWakeUp() {
+        synchronized (lock) {
+            wakeUp = null;
+        }
+        runDueTasks();
+    }
+
+    /**
+     * Handle to a scheduled action.
+     */
+    public static class Task {
+        private final Runnable action;
+        private final long periodNanos;
+        private volatile boolean cancelled = false;
+        long dueNanos;
+        long sequence;
+
+        Task(Runnable action, long periodNanos) {
+            this.action = action;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Keeps the task from running again. A run already in progress finishes.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Runs the action and returns when it is next due, or -1 if it is done.
+         */
+        long run(long now) {
+            action.run();
+            if (periodNanos == 0) {
+                return -1;
+            }
+            final long next = dueNanos + periodNanos;
+            return next - now > 0 ? next : now + periodNanos;
+        }
+    }
+
+    private static final class RetryTask extends Task {
+        private final BooleanSupplier attempt;
+        private final int maxAttempts;
+        private final long maxDelayNanos;
+        private long delayNanos;
+        private int attempts = 0;
+
+        RetryTask(BooleanSupplier attempt, int maxAttempts, long initialDelayNanos, long maxDelayNanos) {
+            super(null, 0);
+            this.attempt = attempt;
+            this.maxAttempts = maxAttempts;
+            this.delayNanos = initialDelayNanos;
+            this.maxDelayNanos = maxDelayNanos;
+        }
+
+        @Override
+        long run(long now) {
+            if (attempt.getAsBoolean() || ++attempts >= maxAttempts) {
+                return -1;
+            }
+            delayNanos = Math.min(delayNanos * 2, maxDelayNanos);
+            return now + delayNanos;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue plus worker thread that delivers tracker events to one observer off the
+ * sensor thread.
+ * <p>
+ * The queue is a lock-free ring with one sequence number per slot: producers claim a position
+ * with a CAS on the tail and publish it by advancing the slot's sequence, the worker takes it
+ * the same way from the head. Any number of sensor threads may post, so a flush burst on one
+ * tracker does not serialize behind another. Slots are pre-allocated and own their copies of
+ * the reused {@link HeartRateData} and batches, so posting copies values instead of
+ * allocating; the worker swaps a taken slot for a private spare before calling the observer.
+ * The capacity is rounded up to a power of two.
+ * <p>
+ * What happens when the observer falls behind is decided by the {@link DeliveryStrategy}.
+ * With {@link DeliveryStrategy.Mode#CONFLATE_LATEST} the latest event of each kind is kept
+ * aside and the ring only carries the order in which kinds became pending, so a burst of
+ * samples can never push out a pending error.
+ */
+public class ObserverMailbox {
+    static final int HEART_RATE_SAMPLE = 0;
+    static final int HEART_RATE_BATCH = 1;
+    static final int SPO2_SAMPLE = 2;
+    static final int SPO2_BATCH = 3;
+    static final int ERROR = 4;
+    static final int KIND_COUNT = 5;
+
+    // How long a blocked LOSSLESS producer sleeps between attempts.
+    private static final long PRODUCER_PARK_NANOS = 50_000L;
+
+    private final TrackerDataNotifier.Subscription subscription;
+    private final DeliveryStrategy strategy;
+    private final DeliveryStrategy.Mode mode;
+    private final Clock clock;
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    // CONFLATE_LATEST only: the pending event per kind and up to two recycled events per kind.
+    private final AtomicReferenceArray<Event> latest;
+    private final AtomicReferenceArray<Event> recycled;
+
+    private final AtomicLong sampled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+
+    private final Thread worker;
+    private volatile boolean workerParked = false;
+    // Set from before the worker takes an event until it has been delivered.
+    private volatile boolean workerBusy = false;
+    private volatile boolean closed = false;
+
+    ObserverMailbox(TrackerDataNotifier.Subscription subscription, DeliveryStrategy strategy, Clock clock) {
+        this.subscription = subscription;
+        this.strategy = strategy;
+        this.mode = strategy.getMode();
+        this.clock = clock;
+        final int capacity = Math.max(2, Integer.highestOneBit(strategy.getCapacity() - 1) << 1);
+        slots = new Event[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+        if (mode == DeliveryStrategy.Mode.CONFLATE_LATEST) {
+            latest = new AtomicReferenceArray<>(KIND_COUNT);
+            recycled = new AtomicReferenceArray<>(KIND_COUNT * 2);
+        } else {
+            latest = null;
+            recycled = null;
+        }
+        worker = new Thread(this::drain, "TrackerObserver-" + subscription.getName());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public DeliveryStrategy getStrategy() {
+        return strategy;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the events discarded because the observer fell behind: overwritten by a newer
+     * one, pushed out of a full ring, or given up on after blocking.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the events left out on purpose by {@link DeliveryStrategy.Mode#SAMPLE}.
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public int getQueuedCount() {
+        return (int) Math.max(0, enqueuePosition.get() - dequeuePosition.get());
+    }
+
+    /**
+     * Returns the deepest the queue has been since the mailbox was created.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    void postHeartRate(HeartRateData hrData) {
+        final Event event = begin(HEART_RATE_SAMPLE);
+        if (event != null) {
+            event.hrData = hrData.pack();
+            commit(event);
+        }
+    }
+
+    void postHeartRateBatch(HeartRateBatch batch) {
+        final Event event = begin(HEART_RATE_BATCH);
+        if (event != null) {
+            event.hrBatch.copyFrom(batch);
+            commit(event);
+        }
+    }
+
+    void postSpO2(int status, int spO2Value) {
+        final Event event = begin(SPO2_SAMPLE);
+        if (event != null) {
+            event.status = status;
+            event.value = spO2Value;
+            commit(event);
+        }
+    }
+
+    void postSpO2Batch(SpO2Batch batch) {
+        final Event event = begin(SPO2_BATCH);
+        if (event != null) {
+            event.spO2Batch.copyFrom(batch);
+            commit(event);
+        }
+    }
+
+    void postError(int errorResourceId) {
+        final Event event = begin(ERROR);
+        if (event != null) {
+            event.value = errorResourceId;
+            commit(event);
+        }
+    }
+
+    /**
+     * Waits up to {@code timeoutNanos} until every event posted so far has been delivered.
+     * Returns {@code false} on timeout or if the mailbox is closed first.
+     */
+    boolean awaitDrained(long timeoutNanos) {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        while (!isEmpty() || workerBusy) {
+            if (closed || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the worker; queued events are discarded and later posts are ignored.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Returns the event to fill for {@code kind}, or {@code null} if it is not going to be
+     * delivered. Must be followed by {@link #commit(Event)}.
+     */
+    private Event begin(int kind) {
+        if (closed) {
+            return null;
+        }
+        if (mode == DeliveryStrategy.Mode.SAMPLE && kind != ERROR
+                && sampled.getAndIncrement() % strategy.getSampleEvery() != 0) {
+            skipped.incrementAndGet();
+            return null;
+        }
+        if (mode == DeliveryStrategy.Mode.CONFLATE_LATEST) {
+            final Event event = obtain(kind);
+            event.kind = kind;
+            return event;
+        }
+        final long position = claim();
+        if (position < 0) {
+            return null;
+        }
+        final Event event = slots[(int) position & mask];
+        event.kind = kind;
+        event.position = position;
+        return event;
+    }
+
+    private void commit(Event event) {
+        if (mode != DeliveryStrategy.Mode.CONFLATE_LATEST) {
+            publish(event.position);
+            return;
+        }
+        final Event previous = latest.getAndSet(event.kind, event);
+        if (previous != null) {
+            // The worker has not taken the previous one yet, so its kind is already queued.
+            dropped.incrementAndGet();
+            recycle(previous);
+            return;
+        }
+        // At most one position per kind is ever pending, so this cannot run out of room.
+        final long position = claim();
+        if (position >= 0) {
+            slots[(int) position & mask].kind = event.kind;
+            publish(position);
+        }
+    }
+
+    /**
+     * Claims the next ring position, making room as the strategy says; -1 if the event has to
+     * be dropped.
+     */
+    private long claim() {
+        boolean waiting = false;
+        long deadline = 0;
+        while (true) {
+            final long position = tryClaim();
+            if (position >= 0) {
+                return position;
+            }
+            if (closed) {
+                return -1;
+            }
+            if (mode == DeliveryStrategy.Mode.LOSSLESS) {
+                final long now = System.nanoTime();
+                if (!waiting) {
+                    waiting = true;
+                    deadline = now + strategy.getMaxBlockNanos();
+                }
+                if (now - deadline >= 0) {
+                    dropped.incrementAndGet();
+                    return -1;
+                }
+                LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+            } else if (take(null) != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private long tryClaim() {
+        long position = enqueuePosition.get();
+        while (true) {
+            final long delta = sequences.get((int) position & mask) - position;
+            if (delta == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = enqueuePosition.get();
+            } else if (delta < 0) {
+                return -1;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    private void publish(long position) {
+        sequences.set((int) position & mask, position + 1);
+        if (workerParked) {
+            LockSupport.unpark(worker);
+        }
+        final int depth = (int) (position + 1 - dequeuePosition.get());
+        int max = highWaterMark.get();
+        while (depth > max && !highWaterMark.compareAndSet(max, depth)) {
+            max = highWaterMark.get();
+        }
+    }
+
+    /**
+     * Removes the oldest published event, putting {@code replacement} in its slot; the worker
+     * passes its spare, a producer making room passes {@code null} and keeps the slot's event
+     * in place. Returns {@code null} if nothing is published.
+     */
+    private Event take(Event replacement) {
+        long position = dequeuePosition.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long delta = sequences.get(index) - (position + 1);
+            if (delta == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    final Event event = slots[index];
+                    if (replacement != null) {
+                        slots[index] = replacement;
+                    }
+                    sequences.set(index, position + mask + 1);
+                    return event;
+                }
+                position = dequeuePosition.get();
+            } else if (delta < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        final long position = dequeuePosition.get();
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    private Event obtain(int kind) {
+        Event event = recycled.getAndSet(kind * 2, null);
+        if (event == null) {
+            event = recycled.getAndSet(kind * 2 + 1, null);
+        }
+        return event != null ? event : new Event();
+    }
+
+    private void recycle(Event event) {
+        if (!recycled.compareAndSet(event.kind * 2, null, event)) {
+            recycled.compareAndSet(event.kind * 2 + 1, null, event);
+        }
+    }
+
+    private void drain() {
+        Event spare = new Event();
+        final HeartRateData hrData = new HeartRateData();
+        while (!closed) {
+            workerBusy = true;
+            final Event taken = take(spare);
+            if (taken == null) {
+                workerBusy = false;
+                workerParked = true;
+                if (isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                workerParked = false;
+                if (Thread.interrupted()) {
+                    return;
+                }
+                continue;
+            }
+            // Ours until the next take, which puts it back into the ring.
+            spare = taken;
+            Event event = taken;
+            if (mode == DeliveryStrategy.Mode.CONFLATE_LATEST) {
+                event = latest.getAndSet(taken.kind, null);
+                if (event == null) {
+                    continue;
+                }
+            }
+            if (!deliver(event, hrData)) {
+                workerBusy = false;
+                return;
+            }
+            if (mode == DeliveryStrategy.Mode.CONFLATE_LATEST) {
+                recycle(event);
+            }
+            workerBusy = false;
+        }
+    }
+
+    private boolean deliver(Event event, HeartRateData hrData) {
+        final TrackerDataObserver observer = subscription.get();
+        if (observer == null) {
+            return false;
+        }
+        final long start = clock.nanoTime();
+        switch (event.kind) {
+            case HEART_RATE_SAMPLE:
+                hrData.unpack(event.hrData);
+                observer.onHeartRateTrackerDataChanged(hrData);
+                break;
+            case HEART_RATE_BATCH:
+                observer.onHeartRateBatch(event.hrBatch);
+                break;
+            case SPO2_SAMPLE:
+                observer.onSpO2TrackerDataChanged(event.status, event.value);
+                break;
+            case SPO2_BATCH:
+                observer.onSpO2Batch(event.spO2Batch);
+                break;
+            case ERROR:
+                observer.onError(event.value);
+                break;
+        }
+        subscription.recordCall(clock.nanoTime() - start);
+        return true;
+    }
+
+    private static final class Event {
+        int kind;
+        long position;
+        long hrData;
+        int status;
+        int value;
+        final HeartRateBatch hrBatch = new HeartRateBatch();
+        final SpO2Batch spO2Batch = new SpO2Batch();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Stage latencies of one signal on its way from the sensor to the screen:
+ * <pre>
+ * sensor  -> ingress   sample timestamp to onDataReceived, per sample (wall clock)
+ * ingress -> dispatch  decode time until the notifier is called, per delivery
+ * dispatch -> ui       notifier call until the UI applies the newest sample
+ * ingress -> ui        end to end within the app
+ * </pre>
+ * Ingress and dispatch are marked on the tracker thread, UI apply on the main thread. A UI
+ * apply is only recorded once per dispatched delivery, so redrawing the same sample does not
+ * skew the numbers and conflated deliveries are not counted twice.
+ */
+public class PipelineLatency {
+    public final static PipelineLatency HEART_RATE = new PipelineLatency("hr", Clock.SYSTEM);
+    public final static PipelineLatency SPO2 = new PipelineLatency("spo2", Clock.SYSTEM);
+
+    final static int SNAPSHOT_MAGIC = 0x4C41544E; // "LATN"
+    final static int SNAPSHOT_VERSION = 1;
+
+    final LatencyHistogram sensorToIngress;
+    final LatencyHistogram ingressToDispatch;
+    final LatencyHistogram dispatchToUi;
+    final LatencyHistogram ingressToUi;
+    private final Clock clock;
+    // Wall clock minus monotonic clock, so ingress needs one clock read. Taken once: NTP
+    // adjustments during a session only shift the sensor -> ingress stage.
+    private final long wallOffsetMillis;
+
+    // Tracker thread only.
+    private long ingressNanos;
+    private long ingressWallMillis;
+    // Published to the UI thread; the ingress time is written before the dispatch time.
+    private volatile long dispatchedIngressNanos;
+    private volatile long dispatchNanos;
+    // UI thread only.
+    private long appliedDispatchNanos;
+
+    PipelineLatency(String signal, Clock clock) {
+        this.clock = clock;
+        wallOffsetMillis = System.currentTimeMillis() - clock.nanoTime() / 1_000_000L;
+        sensorToIngress = new LatencyHistogram(signal + ".sensor-ingress");
+        ingressToDispatch = new LatencyHistogram(signal + ".ingress-dispatch");
+        dispatchToUi = new LatencyHistogram(signal + ".dispatch-ui");
+        ingressToUi = new LatencyHistogram(signal + ".ingress-ui");
+    }
+
+    public void onIngress() {
+        ingressNanos = clock.nanoTime();
+        ingressWallMillis = wallOffsetMillis + ingressNanos / 1_000_000L;
+    }
+
+    /**
+     * Records how long a sample stamped {@code timestampMillis} by the sensor took to arrive;
+     * call after {@link #onIngress()} for each sample of the delivery.
+     */
+    public void onSample(long timestampMillis) {
+        sensorToIngress.record((ingressWallMillis - timestampMillis) * 1_000_000L);
+    }
+
+    public void onDispatch() {
+        final long now = clock.nanoTime();
+        ingressToDispatch.record(now - ingressNanos);
+        dispatchedIngressNanos = ingressNanos;
+        dispatchNanos = now;
+    }
+
+    public void onUiApplied() {
+        final long dispatched = dispatchNanos;
+        if (dispatched == 0 || dispatched == appliedDispatchNanos) {
+            return;
+        }
+        appliedDispatchNanos = dispatched;
+        final long now = clock.nanoTime();
+        dispatchToUi.record(now - dispatched);
+        ingressToUi.record(now - dispatchedIngressNanos);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms()) {
+            histogram.reset();
+        }
+    }
+
+    LatencyHistogram[] histograms() {
+        return new LatencyHistogram[]{sensorToIngress, ingressToDispatch, dispatchToUi, ingressToUi};
+    }
+
+    /**
+     * Appends the summaries of every stage of every signal.
+     */
+    public static void appendSummary(StringBuilder out) {
+        for (PipelineLatency latency : new PipelineLatency[]{HEART_RATE, SPO2}) {
+            for (LatencyHistogram histogram : latency.histograms()) {
+                histogram.appendSummary(out);
+            }
+        }
+    }
+
+    /**
+     * Writes a binary snapshot of every stage of every signal: int magic, int version, long
+     * wall-clock time, int histogram count, then each {@link LatencyHistogram#writeTo(DataOutput)}.
+     */
+    public static void writeSnapshot(DataOutput out) throws IOException {
+        final PipelineLatency[] signals = {HEART_RATE, SPO2};
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(signals.length * 4);
+        for (PipelineLatency latency : signals) {
+            for (LatencyHistogram histogram : latency.histograms()) {
+                histogram.writeTo(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.Arrays;
+
+/**
+ * Result of a {@link HeartRateRollups} query: consecutive buckets of one resolution, oldest
+ * first, stored column-wise. Buckets without samples are not included. Reuse one instance
+ * across queries to avoid allocating.
+ */
+public class RollupSeries {
+    private final static int INITIAL_CAPACITY = 64;
+
+    private long resolutionMillis;
+    private int size = 0;
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int[] mins = new int[INITIAL_CAPACITY];
+    private int[] maxs = new int[INITIAL_CAPACITY];
+    private long[] sums = new long[INITIAL_CAPACITY];
+    private int[] validIbis = new int[INITIAL_CAPACITY];
+    private int[] statusMillis = new int[INITIAL_CAPACITY * HeartRateRollups.STATUS_COUNT];
+
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getStart(int index) {
+        return starts[checkIndex(index)];
+    }
+
+    /**
+     * Number of samples with a heart rate in the bucket.
+     */
+    public int getCount(int index) {
+        return counts[checkIndex(index)];
+    }
+
+    public int getMin(int index) {
+        return mins[checkIndex(index)];
+    }
+
+    public int getMax(int index) {
+        return maxs[checkIndex(index)];
+    }
+
+    /**
+     * Mean heart rate, or {@code NaN} if the bucket has no heart rate.
+     */
+    public double getMean(int index) {
+        checkIndex(index);
+        return counts[index] == 0 ? Double.NaN : (double) sums[index] / counts[index];
+    }
+
+    public int getValidIbiCount(int index) {
+        return validIbis[checkIndex(index)];
+    }
+
+    /**
+     * Milliseconds spent in {@code status}, one of the {@link HeartRateStatus} codes.
+     */
+    public int getStatusMillis(int index, int status) {
+        checkIndex(index);
+        final int statusIndex = HeartRateRollups.statusIndex(status);
+        return statusIndex < 0 ? 0 : statusMillis[index * HeartRateRollups.STATUS_COUNT + statusIndex];
+    }
+
+    void reset(long resolutionMillis) {
+        this.resolutionMillis = resolutionMillis;
+        size = 0;
+    }
+
+    void add(long start, int count, int min, int max, long sum, int validIbi, int[] status, int statusOffset) {
+        ensureCapacity(size + 1);
+        starts[size] = start;
+        counts[size] = count;
+        mins[size] = min;
+        maxs[size] = max;
+        sums[size] = sum;
+        validIbis[size] = validIbi;
+        System.arraycopy(status, statusOffset, statusMillis, size * HeartRateRollups.STATUS_COUNT,
+                HeartRateRollups.STATUS_COUNT);
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, starts.length * 2);
+        starts = Arrays.copyOf(starts, newCapacity);
+        counts = Arrays.copyOf(counts, newCapacity);
+        mins = Arrays.copyOf(mins, newCapacity);
+        maxs = Arrays.copyOf(maxs, newCapacity);
+        sums = Arrays.copyOf(sums, newCapacity);
+        validIbis = Arrays.copyOf(validIbis, newCapacity);
+        statusMillis = Arrays.copyOf(statusMillis, newCapacity * HeartRateRollups.STATUS_COUNT);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+}
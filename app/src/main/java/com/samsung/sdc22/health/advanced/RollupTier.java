@@ -0,0 +1,214 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One resolution of {@link HeartRateRollups}: a ring of fixed-width buckets stored
+ * column-wise, the newest one open for updates. When the ring is full, opening a bucket drops
+ * the oldest.
+ * <p>
+ * Not thread-safe; {@link HeartRateRollups} guards it.
+ */
+final class RollupTier {
+    final long resolutionMillis;
+    private final int capacity;
+    private final long[] starts;
+    private final int[] counts;
+    private final int[] mins;
+    private final int[] maxs;
+    private final long[] sums;
+    private final int[] validIbis;
+    // STATUS_COUNT entries per bucket.
+    private final int[] statusMillis;
+    // Sequence number of the next bucket; bucket s lives in slot s % capacity.
+    private long head = 0;
+    private boolean evicted = false;
+
+    RollupTier(long resolutionMillis, int capacity) {
+        this.resolutionMillis = resolutionMillis;
+        this.capacity = capacity;
+        starts = new long[capacity];
+        counts = new int[capacity];
+        mins = new int[capacity];
+        maxs = new int[capacity];
+        sums = new long[capacity];
+        validIbis = new int[capacity];
+        statusMillis = new int[capacity * HeartRateRollups.STATUS_COUNT];
+    }
+
+    int size() {
+        return (int) Math.min(head, capacity);
+    }
+
+    /**
+     * Whether the buckets still reach back to {@code timestamp}, or nothing was dropped yet.
+     */
+    boolean covers(long timestamp) {
+        return !evicted || starts[slot(head - size())] <= timestamp;
+    }
+
+    /**
+     * Adds a sample: {@code hr} counts towards min/max/mean if it is positive, and
+     * {@code elapsedMillis} of the previous sample's status is credited to this bucket.
+     * Returns {@code false} for a sample older than every bucket kept.
+     */
+    boolean add(long timestamp, int hr, boolean validIbi, int statusIndex, int elapsedMillis) {
+        final long start = Math.floorDiv(timestamp, resolutionMillis) * resolutionMillis;
+        final int slot;
+        if (head == 0 || start > starts[slot(head - 1)]) {
+            slot = open(start);
+        } else {
+            final long sequence = find(start);
+            if (sequence < 0) {
+                return false;
+            }
+            slot = slot(sequence);
+        }
+        if (hr > 0) {
+            if (counts[slot] == 0 || hr < mins[slot]) {
+                mins[slot] = hr;
+            }
+            if (hr > maxs[slot]) {
+                maxs[slot] = hr;
+            }
+            counts[slot]++;
+            sums[slot] += hr;
+        }
+        if (validIbi) {
+            validIbis[slot]++;
+        }
+        if (statusIndex >= 0) {
+            statusMillis[slot * HeartRateRollups.STATUS_COUNT + statusIndex] += elapsedMillis;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the buckets overlapping [{@code from}, {@code to}) into {@code series}.
+     */
+    void query(long from, long to, RollupSeries series) {
+        series.reset(resolutionMillis);
+        final long first = head - size();
+        // First bucket that ends after from.
+        long low = first;
+        long high = head;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (starts[slot(mid)] + resolutionMillis <= from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (long sequence = low; sequence < head; sequence++) {
+            final int slot = slot(sequence);
+            if (starts[slot] >= to) {
+                break;
+            }
+            series.add(starts[slot], counts[slot], mins[slot], maxs[slot], sums[slot], validIbis[slot],
+                    statusMillis, slot * HeartRateRollups.STATUS_COUNT);
+        }
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        final int size = size();
+        out.writeLong(resolutionMillis);
+        out.writeInt(size);
+        for (long sequence = head - size; sequence < head; sequence++) {
+            final int slot = slot(sequence);
+            out.writeLong(starts[slot]);
+            out.writeInt(counts[slot]);
+            out.writeInt(mins[slot]);
+            out.writeInt(maxs[slot]);
+            out.writeLong(sums[slot]);
+            out.writeInt(validIbis[slot]);
+            for (int i = 0; i < HeartRateRollups.STATUS_COUNT; i++) {
+                out.writeInt(statusMillis[slot * HeartRateRollups.STATUS_COUNT + i]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the buckets with ones written by {@link #writeTo(DataOutput)}; if there are
+     * more than fit, the newest are kept.
+     */
+    void readFrom(DataInput in) throws IOException {
+        if (in.readLong() != resolutionMillis) {
+            throw new IOException("Rollup resolution mismatch");
+        }
+        final int size = in.readInt();
+        head = 0;
+        evicted = false;
+        for (int i = 0; i < size; i++) {
+            final int slot = open(in.readLong());
+            counts[slot] = in.readInt();
+            mins[slot] = in.readInt();
+            maxs[slot] = in.readInt();
+            sums[slot] = in.readLong();
+            validIbis[slot] = in.readInt();
+            for (int j = 0; j < HeartRateRollups.STATUS_COUNT; j++) {
+                statusMillis[slot * HeartRateRollups.STATUS_COUNT + j] = in.readInt();
+            }
+        }
+    }
+
+    private int open(long start) {
+        if (head >= capacity) {
+            evicted = true;
+        }
+        final int slot = slot(head++);
+        starts[slot] = start;
+        counts[slot] = 0;
+        mins[slot] = 0;
+        maxs[slot] = 0;
+        sums[slot] = 0;
+        validIbis[slot] = 0;
+        Arrays.fill(statusMillis, slot * HeartRateRollups.STATUS_COUNT,
+                (slot + 1) * HeartRateRollups.STATUS_COUNT, 0);
+        return slot;
+    }
+
+    /**
+     * Returns the sequence of the bucket starting at {@code start}, or -1 if none is kept.
+     */
+    private long find(long start) {
+        long low = head - size();
+        long high = head - 1;
+        while (low <= high) {
+            final long mid = (low + high) >>> 1;
+            final long midStart = starts[slot(mid)];
+            if (midStart < start) {
+                low = mid + 1;
+            } else if (midStart > start) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
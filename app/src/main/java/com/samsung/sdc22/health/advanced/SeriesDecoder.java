@@ -0,0 +1,166 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Decodes blocks written by {@link SeriesEncoder} straight into the columns of a
+ * {@link HeartRateBatch}. Like the encoder it keeps no state between blocks, so a stream of
+ * blocks is read by calling {@link #decode(byte[], int, HeartRateBatch)} with the returned
+ * offset until the input is exhausted, reusing one batch throughout.
+ */
+public class SeriesDecoder {
+    private byte[] in;
+    private int position;
+
+    /**
+     * Replaces the contents of {@code out} with the block at {@code offset} and returns the
+     * offset just past it.
+     */
+    public int decode(byte[] in, int offset, HeartRateBatch out) {
+        this.in = in;
+        this.position = offset;
+        final int count = readVarInt();
+        out.resize(count);
+        if (count > 0) {
+            readTimestamps(out.timestampColumn(), count);
+            readStatuses(out.statusColumn(), count);
+            readQualities(out.qIbiColumn(), count);
+            readDeltas(out.hrColumn(), count);
+            readDeltas(out.ibiColumn(), count);
+        }
+        this.in = null;
+        return position;
+    }
+
+    private void readTimestamps(long[] timestamps, int count) {
+        long timestamp = unZigZag(readVarLong());
+        timestamps[0] = timestamp;
+        if (count == 1) {
+            return;
+        }
+        long delta = unZigZag(readVarLong());
+        timestamp += delta;
+        timestamps[1] = timestamp;
+        int i = 2;
+        while (i < count) {
+            final long deltaOfDelta = unZigZag(readVarLong());
+            delta += deltaOfDelta;
+            timestamp += delta;
+            timestamps[i++] = timestamp;
+            if (deltaOfDelta == 0) {
+                final int end = checkRun(i, readVarInt(), count);
+                while (i < end) {
+                    timestamp += delta;
+                    timestamps[i++] = timestamp;
+                }
+            }
+        }
+    }
+
+    private void readStatuses(int[] statuses, int count) {
+        int i = 0;
+        while (i < count) {
+            final int status = unZigZag(readVarInt());
+            final int run = readVarInt();
+            if (run == 0) {
+                throw new IllegalArgumentException("Empty status run at " + position);
+            }
+            final int end = checkRun(i, run, count);
+            while (i < end) {
+                statuses[i++] = status;
+            }
+        }
+    }
+
+    private void readQualities(int[] qIbis, int count) {
+        for (int i = 0; i < count; i += 8) {
+            final int bits = in[position++];
+            final int n = Math.min(8, count - i);
+            for (int b = 0; b < n; b++) {
+                qIbis[i + b] = (bits >>> b) & HeartRateData.IBI_MASK;
+            }
+        }
+    }
+
+    private void readDeltas(int[] values, int count) {
+        int value = unZigZag(readVarInt());
+        values[0] = value;
+        int i = 1;
+        while (i < count) {
+            final int delta = unZigZag(readVarInt());
+            value += delta;
+            values[i++] = value;
+            if (delta == 0) {
+                final int end = checkRun(i, readVarInt(), count);
+                while (i < end) {
+                    values[i++] = value;
+                }
+            }
+        }
+    }
+
+    private int readVarInt() {
+        int b = in[position++];
+        if (b >= 0) {
+            return b;
+        }
+        int value = b & 0x7F;
+        int shift = 7;
+        do {
+            if (shift > 28) {
+                throw new IllegalArgumentException("Malformed varint at " + position);
+            }
+            b = in[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private long readVarLong() {
+        long b = in[position++];
+        if (b >= 0) {
+            return b;
+        }
+        long value = b & 0x7F;
+        int shift = 7;
+        do {
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed varlong at " + position);
+            }
+            b = in[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int checkRun(int index, int run, int count) {
+        if (run < 0 || run > count - index) {
+            throw new IllegalArgumentException("Run of " + run + " overflows block of " + count);
+        }
+        return index + run;
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Encodes {@link HeartRateBatch}es into compact, self-contained column blocks.
+ * <p>
+ * A block is laid out as:
+ * <pre>
+ * varint   sample count
+ * varlong  first timestamp, first delta, then delta-of-delta per sample  (zig-zag, zero runs)
+ * varint   status as (value, run length) pairs                           (zig-zag)
+ * bytes    IBI quality, one bit per sample
+ * varint   first HR, then HR deltas                                      (zig-zag, zero runs)
+ * varint   first IBI, then IBI deltas                                    (zig-zag, zero runs)
+ * </pre>
+ * "Zero runs" means a zero value is followed by the number of further zeros, so a steady
+ * heart rate or a perfectly regular sampling interval costs almost nothing. The encoder holds
+ * no state between blocks and writes into a caller-owned array, so one instance and one output
+ * buffer can be reused for a whole session. Decode with {@link SeriesDecoder}.
+ * <p>
+ * {@link SessionExporter#FORMAT_SERIES} writes recorded sessions as a sequence of these blocks.
+ */
+public class SeriesEncoder {
+    // Widest possible encoding per sample: timestamp 10, status pair 10, HR 5, IBI 5, quality 1.
+    private final static int MAX_BYTES_PER_SAMPLE = 31;
+    private final static int MAX_BLOCK_OVERHEAD = 16;
+
+    private byte[] out;
+    private int position;
+
+    /**
+     * Returns an output size that is always large enough for a block of {@code samples}.
+     */
+    public static int maxEncodedSize(int samples) {
+        return MAX_BLOCK_OVERHEAD + samples * MAX_BYTES_PER_SAMPLE;
+    }
+
+    public int encode(HeartRateBatch batch, byte[] out, int offset) {
+        return encode(batch, 0, batch.size(), out, offset);
+    }
+
+    /**
+     * Encodes samples {@code [from, from + count)} of {@code batch} into {@code out} starting at
+     * {@code offset} and returns the offset just past the block.
+     */
+    public int encode(HeartRateBatch batch, int from, int count, byte[] out, int offset) {
+        if (from < 0 || count < 0 || from + count > batch.size()) {
+            throw new IndexOutOfBoundsException("from: " + from + ", count: " + count + ", size: " + batch.size());
+        }
+        this.out = out;
+        this.position = offset;
+        writeVarInt(count);
+        if (count > 0) {
+            writeTimestamps(batch.timestampColumn(), from, count);
+            writeStatuses(batch.statusColumn(), from, count);
+            writeQualities(batch.qIbiColumn(), from, count);
+            writeDeltas(batch.hrColumn(), from, count);
+            writeDeltas(batch.ibiColumn(), from, count);
+        }
+        this.out = null;
+        return position;
+    }
+
+    private void writeTimestamps(long[] timestamps, int from, int count) {
+        writeVarLong(zigZag(timestamps[from]));
+        if (count == 1) {
+            return;
+        }
+        long previousDelta = timestamps[from + 1] - timestamps[from];
+        writeVarLong(zigZag(previousDelta));
+        final int end = from + count;
+        int i = from + 2;
+        while (i < end) {
+            final long delta = timestamps[i] - timestamps[i - 1];
+            final long deltaOfDelta = delta - previousDelta;
+            previousDelta = delta;
+            i++;
+            writeVarLong(zigZag(deltaOfDelta));
+            if (deltaOfDelta == 0) {
+                int run = 0;
+                while (i < end && timestamps[i] - timestamps[i - 1] == previousDelta) {
+                    run++;
+                    i++;
+                }
+                writeVarInt(run);
+            }
+        }
+    }
+
+    private void writeStatuses(int[] statuses, int from, int count) {
+        final int end = from + count;
+        int i = from;
+        while (i < end) {
+            final int status = statuses[i];
+            int run = 1;
+            while (i + run < end && statuses[i + run] == status) {
+                run++;
+            }
+            writeVarInt(zigZag(status));
+            writeVarInt(run);
+            i += run;
+        }
+    }
+
+    private void writeQualities(int[] qIbis, int from, int count) {
+        for (int i = 0; i < count; i += 8) {
+            int bits = 0;
+            final int n = Math.min(8, count - i);
+            for (int b = 0; b < n; b++) {
+                bits |= (qIbis[from + i + b] & HeartRateData.IBI_MASK) << b;
+            }
+            out[position++] = (byte) bits;
+        }
+    }
+
+    private void writeDeltas(int[] values, int from, int count) {
+        writeVarInt(zigZag(values[from]));
+        final int end = from + count;
+        int i = from + 1;
+        while (i < end) {
+            final int delta = values[i] - values[i - 1];
+            i++;
+            writeVarInt(zigZag(delta));
+            if (delta == 0) {
+                int run = 0;
+                while (i < end && values[i] == values[i - 1]) {
+                    run++;
+                    i++;
+                }
+                writeVarInt(run);
+            }
+        }
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Forward-only, zero-copy reader over the segments of a {@link SessionLog}.
+ * <p>
+ * Segments are mapped read-only one at a time and the getters read straight from the mapping,
+ * so scanning a multi-hour session keeps nothing but the current segment mapping around. A
+ * segment is read up to its last frame whose CRC matches, so a session that crashed and was
+ * never reopened reads the same as after {@link SessionLog#open(File)} recovered it.
+ * <pre>
+ * try (SessionCursor cursor = SessionCursor.open(directory)) {
+ *     while (cursor.next()) {
+ *         if (cursor.getType() == SessionLog.TYPE_HEART_RATE) { ... }
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * A range cursor ({@link #open(File, long, long, SessionIndex.BlockFilter)}) only visits the
+ * records between two timestamps: it skips blocks whose {@link SessionIndex} entry does not
+ * overlap the range or that the filter rejects without mapping them, and reads the records
+ * appended after the last indexed block linearly. Records need not be in timestamp order, so
+ * the whole session is always considered.
+ */
+public class SessionCursor implements Closeable {
+    private final File[] segments;
+    // Packed (segment index, end offset) of the last record visible to this cursor.
+    private final long end;
+    private final long from;
+    private final long to;
+    private final SessionIndex.BlockFilter filter;
+    // Null once the indexed blocks are done or when reading everything.
+    private SessionIndex index;
+    private int nextBlock;
+
+    private int segmentOrdinal = -1;
+    private int segmentIndex = -1;
+    private MappedByteBuffer buffer;
+    private int segmentLimit;
+    private int limit;
+    private int position;
+
+    SessionCursor(File[] segments, long end) {
+        this(segments, end, null, Long.MIN_VALUE, Long.MAX_VALUE, SessionIndex.ALL_BLOCKS);
+    }
+
+    SessionCursor(File[] segments, long end, SessionIndex index, long from, long to,
+                  SessionIndex.BlockFilter filter) {
+        this.segments = segments;
+        this.end = end;
+        this.index = index;
+        this.from = from;
+        this.to = to;
+        this.filter = filter;
+        nextBlock = index != null ? index.seek(from) : 0;
+    }
+
+    /**
+     * Opens a cursor over a session directory that is not being written.
+     */
+    public static SessionCursor open(File directory) {
+        return new SessionCursor(SessionLog.listSegments(directory), Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens a cursor over the records of a session that is not being written whose timestamps
+     * lie in {@code [from, to]}, skipping indexed blocks rejected by {@code filter}.
+     */
+    public static SessionCursor open(File directory, long from, long to, SessionIndex.BlockFilter filter)
+            throws IOException {
+        return new SessionCursor(SessionLog.listSegments(directory), Long.MAX_VALUE,
+                SessionIndex.load(directory), from, to, filter);
+    }
+
+    /**
+     * Moves to the next sample record, skipping commit records; returns {@code false} once
+     * every record has been read.
+     */
+    public boolean next() throws IOException {
+        while (advance()) {
+            if (getType() == SessionLog.TYPE_COMMIT) {
+                continue;
+            }
+            final long timestamp = getTimestamp();
+            if (timestamp >= from && timestamp <= to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getTimestamp() {
+        return buffer.getLong(position + SessionLog.OFFSET_TIMESTAMP);
+    }
+
+    public byte getType() {
+        return buffer.get(position + SessionLog.OFFSET_TYPE);
+    }
+
+    public int getQuality() {
+        return buffer.get(position + SessionLog.OFFSET_QUALITY);
+    }
+
+    public int getStatus() {
+        return buffer.getShort(position + SessionLog.OFFSET_STATUS);
+    }
+
+    /**
+     * Heart rate for {@link SessionLog#TYPE_HEART_RATE} records, SpO2 for
+     * {@link SessionLog#TYPE_SPO2} records.
+     */
+    public int getValue() {
+        return buffer.getShort(position + SessionLog.OFFSET_VALUE);
+    }
+
+    public int getIbi() {
+        return buffer.getShort(position + SessionLog.OFFSET_IBI) & HeartRateData.IBI_QUALITY_MASK;
+    }
+
+    /**
+     * Index of the segment holding the current record.
+     */
+    int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    /**
+     * Offset of the current record in its segment.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        index = null;
+        segmentOrdinal = segments.length;
+    }
+
+    private boolean advance() throws IOException {
+        if (buffer != null && position + SessionLog.RECORD_SIZE < limit) {
+            position += SessionLog.RECORD_SIZE;
+            return true;
+        }
+        if (index != null) {
+            return advanceBlock();
+        }
+        while (++segmentOrdinal < segments.length) {
+            if (mapSegment(segmentOrdinal) && limit > SessionLog.HEADER_SIZE) {
+                position = SessionLog.HEADER_SIZE;
+                return true;
+            }
+        }
+        buffer = null;
+        return false;
+    }
+
+    private boolean advanceBlock() throws IOException {
+        while (nextBlock < index.size()) {
+            final int block = nextBlock++;
+            if (index.getMinTimestamp(block) > to || index.getMaxTimestamp(block) < from
+                    || !filter.test(index, block) || !mapSegmentIndex(index.getSegment(block))) {
+                continue;
+            }
+            position = index.getPosition(block);
+            limit = Math.min(segmentLimit, position + index.getCount(block) * SessionLog.RECORD_SIZE);
+            if (position < limit) {
+                return true;
+            }
+        }
+        // Continue linearly with the records after the last indexed block.
+        final long tail = index.end();
+        index = null;
+        buffer = null;
+        if (tail != 0 && mapSegmentIndex((int) (tail >>> 32))) {
+            limit = segmentLimit;
+            position = (int) tail - SessionLog.RECORD_SIZE;
+        }
+        return advance();
+    }
+
+    private boolean mapSegmentIndex(int wanted) throws IOException {
+        if (buffer != null && segmentIndex == wanted) {
+            return true;
+        }
+        // Segments are numbered consecutively from the first one.
+        final int ordinal = segments.length > 0 ? wanted - SessionLog.parseSegmentIndex(segments[0]) : -1;
+        if (ordinal < 0 || ordinal >= segments.length) {
+            buffer = null;
+            return false;
+        }
+        segmentOrdinal = ordinal;
+        if (!mapSegment(ordinal)) {
+            buffer = null;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean mapSegment(int ordinal) throws IOException {
+        final File file = segments[ordinal];
+        final int index = SessionLog.parseSegmentIndex(file);
+        final int endSegment = (int) (end >>> 32);
+        if (index > endSegment) {
+            return false;
+        }
+        final MappedByteBuffer mapping;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            final long size = channel.size();
+            if (size < SessionLog.HEADER_SIZE) {
+                return false;
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        if (!SessionLog.checkHeader(mapping, file)) {
+            return false;
+        }
+        buffer = mapping;
+        segmentLimit = index == endSegment ? (int) end
+                : SessionLog.findCommittedEnd(buffer, SessionLog.HEADER_SIZE, buffer.capacity());
+        limit = segmentLimit;
+        segmentIndex = index;
+        return true;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Exports a stored session to a file, as a background job: submit it to an executor, follow
+ * it through {@link ProgressListener} or {@link #getProgress()} and stop it with
+ * {@link #cancel()}, which deletes the partial file.
+ * <p>
+ * {@link #FORMAT_CSV} writes one row per sample with the status codes of
+ * {@link HeartRateStatus} and {@link SpO2Status} rendered as names:
+ * <pre>
+ * timestamp,type,status,value,ibi,ibi_quality
+ * 1665532800000,HR,HR_STATUS_FIND_HR,72,833,0
+ * 1665532805000,SPO2,MEASUREMENT_COMPLETED,97,,
+ * </pre>
+ * Rows are formatted straight from the segment mapping into one reusable direct buffer, so
+ * nothing is allocated per row and memory use does not depend on the session length.
+ * <p>
+ * {@link #FORMAT_BINARY} is a {@value #BINARY_HEADER_SIZE}-byte header (int magic, short
+ * version, short record size, long record count, little endian) followed by the records of
+ * every segment in the {@link SessionLog} layout, commit records included so a reader can
+ * check the frames. The records are copied file to file with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} and never
+ * pass through the Java heap.
+ * <p>
+ * {@link #FORMAT_SERIES} keeps only the heart-rate samples and compresses them with
+ * {@link SeriesEncoder}, several times smaller than {@link #FORMAT_BINARY}: a
+ * {@value #SERIES_HEADER_SIZE}-byte header (int magic, short version, short most samples per
+ * block, long sample count, little endian) followed by blocks of up to
+ * {@value #CHUNK_RECORDS} samples, each an int byte length and the encoded block. Read them
+ * back with {@link SeriesDecoder}.
+ * <p>
+ * Export sessions that are no longer written.
+ */
+public class SessionExporter implements Callable<Long> {
+    public final static int FORMAT_CSV = 0;
+    public final static int FORMAT_BINARY = 1;
+    public final static int FORMAT_SERIES = 2;
+
+    public final static int BINARY_HEADER_SIZE = 16;
+    final static int BINARY_MAGIC = 0x58454853; // "SHEX" in little endian
+    final static short BINARY_VERSION = 1;
+    public final static int SERIES_HEADER_SIZE = 16;
+    final static int SERIES_MAGIC = 0x52534853; // "SHSR" in little endian
+    final static short SERIES_VERSION = 1;
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+    // Longest row: 20-digit timestamp, the longest status name and three 6-character numbers.
+    private final static int MAX_ROW_SIZE = 128;
+    // Progress and cancellation are checked after every chunk of records.
+    private final static int CHUNK_RECORDS = 4096;
+
+    private final static byte[] CSV_HEADER = bytes("timestamp,type,status,value,ibi,ibi_quality\n");
+    private final static byte[] TYPE_HEART_RATE = bytes("HR");
+    private final static byte[] TYPE_SPO2 = bytes("SPO2");
+    private final static byte[] HR_STATUS_NONE = bytes("HR_STATUS_NONE");
+    private final static byte[] HR_STATUS_FIND_HR = bytes("HR_STATUS_FIND_HR");
+    private final static byte[] HR_STATUS_ATTACHED = bytes("HR_STATUS_ATTACHED");
+    private final static byte[] HR_STATUS_DETECT_MOVE = bytes("HR_STATUS_DETECT_MOVE");
+    private final static byte[] HR_STATUS_DETACHED = bytes("HR_STATUS_DETACHED");
+    private final static byte[] HR_STATUS_LOW_RELIABILITY = bytes("HR_STATUS_LOW_RELIABILITY");
+    private final static byte[] HR_STATUS_VERY_LOW_RELIABILITY = bytes("HR_STATUS_VERY_LOW_RELIABILITY");
+    private final static byte[] HR_STATUS_NO_DATA_FLUSH = bytes("HR_STATUS_NO_DATA_FLUSH");
+    private final static byte[] LOW_SIGNAL = bytes("LOW_SIGNAL");
+    private final static byte[] DEVICE_MOVING = bytes("DEVICE_MOVING");
+    private final static byte[] INITIAL_STATUS = bytes("INITIAL_STATUS");
+    private final static byte[] CALCULATING = bytes("CALCULATING");
+    private final static byte[] MEASUREMENT_COMPLETED = bytes("MEASUREMENT_COMPLETED");
+    private final static byte[] MEASUREMENT_TIMEOUT = bytes("MEASUREMENT_TIMEOUT");
+
+    /**
+     * Hears about an export on the thread running it, after every chunk of records and once
+     * more when it is done. {@code totalRecords} counts record slots in the segment files, so
+     * it can be higher than the records actually exported.
+     */
+    public interface ProgressListener {
+        void onProgress(long records, long totalRecords);
+    }
+
+    private final File sessionDirectory;
+    private final File output;
+    private final int format;
+    private ProgressListener progressListener = null;
+    private volatile boolean cancelled = false;
+    private volatile long progress = 0;
+    private volatile long total = 0;
+
+    public SessionExporter(File sessionDirectory, File output, int format) {
+        if (format != FORMAT_CSV && format != FORMAT_BINARY && format != FORMAT_SERIES) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        this.sessionDirectory = sessionDirectory;
+        this.output = output;
+        this.format = format;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Makes a running export stop after the current chunk and delete its output.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Record slots handled so far, out of {@link #getTotal()}.
+     */
+    public long getProgress() {
+        return progress;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Runs the export and returns the number of records written: samples for
+     * {@link #FORMAT_CSV}, samples and commit records for {@link #FORMAT_BINARY}, heart-rate
+     * samples for {@link #FORMAT_SERIES}.
+     *
+     * @throws CancellationException if {@link #cancel()} was called
+     */
+    @Override
+    public Long call() throws IOException {
+        if (cancelled) {
+            throw new CancellationException("Export of " + sessionDirectory + " cancelled");
+        }
+        final File[] segments = SessionLog.listSegments(sessionDirectory);
+        long slots = 0;
+        for (File segment : segments) {
+            slots += Math.max(0, segment.length() - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+        }
+        total = slots;
+        boolean done = false;
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw");
+             FileChannel out = raf.getChannel()) {
+            out.truncate(0);
+            final long records;
+            if (format == FORMAT_CSV) {
+                records = writeCsv(segments, out);
+            } else if (format == FORMAT_BINARY) {
+                records = writeBinary(segments, out);
+            } else {
+                records = writeSeries(segments, out);
+            }
+            progress = total;
+            if (progressListener != null) {
+                progressListener.onProgress(progress, total);
+            }
+            done = true;
+            return records;
+        } finally {
+            if (!done && !output.delete()) {
+                output.deleteOnExit();
+            }
+        }
+    }
+
+    private long writeCsv(File[] segments, FileChannel out) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.put(CSV_HEADER);
+        long records = 0;
+        long slotsBefore = 0;
+        int lastSegment = -1;
+        try (SessionCursor cursor = new SessionCursor(segments, Long.MAX_VALUE)) {
+            while (cursor.next()) {
+                if (buffer.remaining() < MAX_ROW_SIZE) {
+                    drain(buffer, out);
+                }
+                writeRow(cursor, buffer);
+                if (++records % CHUNK_RECORDS == 0) {
+                    if (cursor.getSegmentIndex() != lastSegment) {
+                        slotsBefore = slotsBefore(segments, cursor.getSegmentIndex());
+                        lastSegment = cursor.getSegmentIndex();
+                    }
+                    onChunk(slotsBefore + (cursor.getPosition() - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE);
+                }
+            }
+        }
+        drain(buffer, out);
+        return records;
+    }
+
+    private long writeBinary(File[] segments, FileChannel out) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(BINARY_MAGIC).putShort(BINARY_VERSION).putShort((short) SessionLog.RECORD_SIZE).putLong(0L);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+        long records = 0;
+        long slotsBefore = 0;
+        for (File segment : segments) {
+            try (RandomAccessFile raf = new RandomAccessFile(segment, "r");
+                 FileChannel in = raf.getChannel()) {
+                final long size = in.size();
+                if (size < SessionLog.HEADER_SIZE) {
+                    continue;
+                }
+                final MappedByteBuffer mapping = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mapping.order(ByteOrder.LITTLE_ENDIAN);
+                if (!SessionLog.checkHeader(mapping, segment)) {
+                    slotsBefore += (size - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+                    continue;
+                }
+                final long end = SessionLog.findCommittedEnd(mapping, SessionLog.HEADER_SIZE,
+                        (int) Math.min(size, Integer.MAX_VALUE));
+                for (long position = SessionLog.HEADER_SIZE; position < end; ) {
+                    final long length = Math.min(end - position, (long) CHUNK_RECORDS * SessionLog.RECORD_SIZE);
+                    final long transferred = in.transferTo(position, length, out);
+                    if (transferred <= 0) {
+                        throw new IOException("Could not copy " + segment);
+                    }
+                    position += transferred;
+                    onChunk(slotsBefore + (position - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE);
+                }
+                records += (end - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+                slotsBefore += (size - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+            }
+        }
+        header.clear();
+        header.putLong(8, records);
+        out.write(header, 0);
+        return records;
+    }
+
+    private long writeSeries(File[] segments, FileChannel out) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(SERIES_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SERIES_MAGIC).putShort(SERIES_VERSION).putShort((short) CHUNK_RECORDS).putLong(0L);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+        final SeriesEncoder encoder = new SeriesEncoder();
+        final HeartRateBatch batch = new HeartRateBatch();
+        final ByteBuffer block = ByteBuffer.allocate(4 + SeriesEncoder.maxEncodedSize(CHUNK_RECORDS))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long samples = 0;
+        try (SessionCursor cursor = new SessionCursor(segments, Long.MAX_VALUE)) {
+            while (cursor.next()) {
+                if (cursor.getType() != SessionLog.TYPE_HEART_RATE) {
+                    continue;
+                }
+                batch.add(cursor.getTimestamp(), cursor.getStatus(), cursor.getValue(), cursor.getIbi(),
+                        cursor.getQuality());
+                if (batch.size() == CHUNK_RECORDS) {
+                    samples += writeSeriesBlock(encoder, batch, block, out);
+                    onChunk(slotsBefore(segments, cursor.getSegmentIndex())
+                            + (cursor.getPosition() - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE);
+                }
+            }
+        }
+        if (batch.size() > 0) {
+            samples += writeSeriesBlock(encoder, batch, block, out);
+        }
+        header.clear();
+        header.putLong(8, samples);
+        out.write(header, 0);
+        return samples;
+    }
+
+    /**
+     * Writes {@code batch} as one length-prefixed block, clears it and returns its size.
+     */
+    private static int writeSeriesBlock(SeriesEncoder encoder, HeartRateBatch batch, ByteBuffer block,
+                                        FileChannel out) throws IOException {
+        final int end = encoder.encode(batch, block.array(), 4);
+        block.clear();
+        block.putInt(0, end - 4);
+        block.limit(end);
+        while (block.hasRemaining()) {
+            out.write(block);
+        }
+        final int samples = batch.size();
+        batch.clear();
+        return samples;
+    }
+
+    private void onChunk(long slots) {
+        if (cancelled) {
+            throw new CancellationException("Export of " + sessionDirectory + " cancelled");
+        }
+        progress = slots;
+        if (progressListener != null) {
+            progressListener.onProgress(slots, total);
+        }
+    }
+
+    private static long slotsBefore(File[] segments, int segmentIndex) {
+        long slots = 0;
+        for (File segment : segments) {
+            if (SessionLog.parseSegmentIndex(segment) >= segmentIndex) {
+                break;
+            }
+            slots += Math.max(0, segment.length() - SessionLog.HEADER_SIZE) / SessionLog.RECORD_SIZE;
+        }
+        return slots;
+    }
+
+    private static void writeRow(SessionCursor cursor, ByteBuffer buffer) {
+        final boolean heartRate = cursor.getType() == SessionLog.TYPE_HEART_RATE;
+        putLong(buffer, cursor.getTimestamp());
+        buffer.put((byte) ',');
+        buffer.put(heartRate ? TYPE_HEART_RATE : TYPE_SPO2);
+        buffer.put((byte) ',');
+        final int status = cursor.getStatus();
+        final byte[] name = heartRate ? heartRateStatusName(status) : spO2StatusName(status);
+        if (name != null) {
+            buffer.put(name);
+        } else {
+            putLong(buffer, status);
+        }
+        buffer.put((byte) ',');
+        putLong(buffer, cursor.getValue());
+        buffer.put((byte) ',');
+        if (heartRate) {
+            putLong(buffer, cursor.getIbi());
+            buffer.put((byte) ',');
+            putLong(buffer, cursor.getQuality());
+        } else {
+            buffer.put((byte) ',');
+        }
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Writes {@code value} in decimal without going through a {@link String}.
+     */
+    static void putLong(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put(bytes(Long.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[] heartRateStatusName(int status) {
+        switch (status) {
+            case HeartRateStatus.HR_STATUS_NONE:
+                return HR_STATUS_NONE;
+            case HeartRateStatus.HR_STATUS_FIND_HR:
+                return HR_STATUS_FIND_HR;
+            case HeartRateStatus.HR_STATUS_ATTACHED:
+                return HR_STATUS_ATTACHED;
+            case HeartRateStatus.HR_STATUS_DETECT_MOVE:
+                return HR_STATUS_DETECT_MOVE;
+            case HeartRateStatus.HR_STATUS_DETACHED:
+                return HR_STATUS_DETACHED;
+            case HeartRateStatus.HR_STATUS_LOW_RELIABILITY:
+                return HR_STATUS_LOW_RELIABILITY;
+            case HeartRateStatus.HR_STATUS_VERY_LOW_RELIABILITY:
+                return HR_STATUS_VERY_LOW_RELIABILITY;
+            case HeartRateStatus.HR_STATUS_NO_DATA_FLUSH:
+                return HR_STATUS_NO_DATA_FLUSH;
+            default:
+                return null;
+        }
+    }
+
+    private static byte[] spO2StatusName(int status) {
+        switch (status) {
+            case SpO2Status.LOW_SIGNAL:
+                return LOW_SIGNAL;
+            case SpO2Status.DEVICE_MOVING:
+                return DEVICE_MOVING;
+            case SpO2Status.INITIAL_STATUS:
+                return INITIAL_STATUS;
+            case SpO2Status.CALCULATING:
+                return CALCULATING;
+            case SpO2Status.MEASUREMENT_COMPLETED:
+                return MEASUREMENT_COMPLETED;
+            case SpO2Status.MEASUREMENT_TIMEOUT:
+                return MEASUREMENT_TIMEOUT;
+            default:
+                return null;
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sparse index over the records of a {@link SessionLog}, stored next to its segments.
+ * <p>
+ * Records are grouped into blocks of up to {@value #BLOCK_RECORDS} consecutive record slots of
+ * one segment, and each block gets a {@value #ENTRY_SIZE}-byte entry (little endian):
+ * <pre>
+ *  0  long  earliest timestamp in the block (ms)
+ *  8  long  latest timestamp in the block (ms)
+ * 16  int   segment index
+ * 20  int   offset of the first record in the segment
+ * 24  short record slots, from the first record to the last sample record
+ * 26  short lowest heart rate ({@link HeartRateStatus#HR_STATUS_FIND_HR} records only)
+ * 28  short highest heart rate
+ * 30  byte  flags ({@link #FLAG_HEART_RATE}, {@link #FLAG_SPO2})
+ * </pre>
+ * An entry is written once its block is complete, so the records after the last entry are
+ * read linearly. Records are not appended in timestamp order: {@link SessionRecorder} writes
+ * flushed batches with their older sensor timestamps after live samples, and SpO2 records
+ * are interleaved with heart-rate ones. Range reads therefore check every entry for overlap
+ * with the range and never stop early. They start at {@link #seek(long)}, a binary search
+ * over the running maximum of the latest timestamps, which never decreases.
+ * <p>
+ * The index can always be rebuilt from the segments; {@link SessionLog#open(File, int)} adds
+ * entries that are missing and drops those that point past the last record.
+ */
+public class SessionIndex {
+    public final static int BLOCK_RECORDS = 256;
+    public final static int HEADER_SIZE = 8;
+    public final static int ENTRY_SIZE = 32;
+
+    public final static int FLAG_HEART_RATE = 1;
+    public final static int FLAG_SPO2 = 2;
+
+    final static int MAGIC = 0x58494853; // "SHIX" in little endian
+    // Version 1 stored the first timestamp of each block instead of the earliest one.
+    final static short VERSION = 2;
+    final static String FILE_NAME = "session.idx";
+
+    final static int OFFSET_MIN_TIMESTAMP = 0;
+    final static int OFFSET_MAX_TIMESTAMP = 8;
+    final static int OFFSET_SEGMENT = 16;
+    final static int OFFSET_POSITION = 20;
+    final static int OFFSET_COUNT = 24;
+    final static int OFFSET_MIN_HR = 26;
+    final static int OFFSET_MAX_HR = 28;
+    final static int OFFSET_FLAGS = 30;
+
+    /**
+     * Decides from its index entry whether a block may hold records worth reading. Blocks
+     * that pass are read in full, so the caller still checks every record.
+     */
+    public interface BlockFilter {
+        boolean test(SessionIndex index, int block);
+    }
+
+    public final static BlockFilter ALL_BLOCKS = (index, block) -> true;
+
+    final static BlockFilter NO_BLOCKS = (index, block) -> false;
+
+    private final static SessionIndex EMPTY = new SessionIndex(0);
+
+    private final long[] minTimestamps;
+    private final long[] maxTimestamps;
+    // Latest timestamp of the block and every block before it.
+    private final long[] runningMaxTimestamps;
+    private final int[] segments;
+    private final int[] positions;
+    private final int[] counts;
+    private final int[] minHrs;
+    private final int[] maxHrs;
+    private final int[] flags;
+    private int size = 0;
+
+    private SessionIndex(int capacity) {
+        minTimestamps = new long[capacity];
+        maxTimestamps = new long[capacity];
+        runningMaxTimestamps = new long[capacity];
+        segments = new int[capacity];
+        positions = new int[capacity];
+        counts = new int[capacity];
+        minHrs = new int[capacity];
+        maxHrs = new int[capacity];
+        flags = new int[capacity];
+    }
+
+    /**
+     * Reads the index of the session stored in {@code directory}. A missing index, or one
+     * written in another format, reads as empty: every record is then in the linear tail.
+     */
+    public static SessionIndex load(File directory) throws IOException {
+        final File file = new File(directory, FILE_NAME);
+        if (file.length() < HEADER_SIZE) {
+            return EMPTY;
+        }
+        final ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole file; entries are small and few.
+            }
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (!hasHeader(buffer)) {
+            return EMPTY;
+        }
+        final int entries = (buffer.position() - HEADER_SIZE) / ENTRY_SIZE;
+        final SessionIndex index = new SessionIndex(entries);
+        for (int i = 0; i < entries; i++) {
+            final int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            index.minTimestamps[i] = buffer.getLong(entry + OFFSET_MIN_TIMESTAMP);
+            index.maxTimestamps[i] = buffer.getLong(entry + OFFSET_MAX_TIMESTAMP);
+            index.segments[i] = buffer.getInt(entry + OFFSET_SEGMENT);
+            index.positions[i] = buffer.getInt(entry + OFFSET_POSITION);
+            index.counts[i] = buffer.getShort(entry + OFFSET_COUNT) & 0xFFFF;
+            index.minHrs[i] = buffer.getShort(entry + OFFSET_MIN_HR);
+            index.maxHrs[i] = buffer.getShort(entry + OFFSET_MAX_HR);
+            index.flags[i] = buffer.get(entry + OFFSET_FLAGS);
+            index.runningMaxTimestamps[i] = i == 0 ? index.maxTimestamps[i]
+                    : Math.max(index.runningMaxTimestamps[i - 1], index.maxTimestamps[i]);
+        }
+        index.size = entries;
+        return index;
+    }
+
+    public static BlockFilter heartRateAbove(int hr) {
+        return (index, block) -> index.getMaxHr(block) > hr;
+    }
+
+    public static BlockFilter heartRateBelow(int hr) {
+        return (index, block) -> index.getMinHr(block) < hr;
+    }
+
+    public static BlockFilter withSpO2() {
+        return (index, block) -> (index.getFlags(block) & FLAG_SPO2) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the first block holding a record at or after {@code timestamp}, or
+     * {@link #size()} if there is none. Later blocks may still hold earlier records.
+     */
+    public int seek(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (runningMaxTimestamps[middle] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public long getMinTimestamp(int block) {
+        return minTimestamps[checkBlock(block)];
+    }
+
+    public long getMaxTimestamp(int block) {
+        return maxTimestamps[checkBlock(block)];
+    }
+
+    public int getSegment(int block) {
+        return segments[checkBlock(block)];
+    }
+
+    public int getPosition(int block) {
+        return positions[checkBlock(block)];
+    }
+
+    public int getCount(int block) {
+        return counts[checkBlock(block)];
+    }
+
+    /**
+     * Lowest heart rate found in the block, {@link Short#MAX_VALUE} if it has none.
+     */
+    public int getMinHr(int block) {
+        return minHrs[checkBlock(block)];
+    }
+
+    /**
+     * Highest heart rate found in the block, {@link Short#MIN_VALUE} if it has none.
+     */
+    public int getMaxHr(int block) {
+        return maxHrs[checkBlock(block)];
+    }
+
+    public int getFlags(int block) {
+        return flags[checkBlock(block)];
+    }
+
+    /**
+     * Packed (segment index, offset) just past the last indexed record, 0 if nothing is
+     * indexed.
+     */
+    long end() {
+        if (size == 0) {
+            return 0;
+        }
+        final int last = size - 1;
+        return ((long) segments[last] << 32) | (positions[last] + counts[last] * SessionLog.RECORD_SIZE);
+    }
+
+    /**
+     * Drops the entries of blocks that end past the packed position {@code end}.
+     */
+    SessionIndex truncate(long end) {
+        while (size > 0 && end() > end) {
+            size--;
+        }
+        return this;
+    }
+
+    static File indexFile(File directory) {
+        return new File(directory, FILE_NAME);
+    }
+
+    private static boolean hasHeader(ByteBuffer buffer) {
+        return buffer.getInt(0) == MAGIC && buffer.getShort(4) == VERSION && buffer.getShort(6) == ENTRY_SIZE;
+    }
+
+    private int checkBlock(int block) {
+        if (block < 0 || block >= size) {
+            throw new IndexOutOfBoundsException("Block: " + block + ", size: " + size);
+        }
+        return block;
+    }
+
+    /**
+     * Accumulates the current block from appended records and queues its entry once the block
+     * fills up or the log moves to another segment. Blocks are built on the log's writer thread;
+     * the entries are written by {@link #flush()}, which {@link SessionLog} calls on its
+     * background thread, so appending never waits for the file. If more than
+     * {@value #PENDING_ENTRIES} entries pile up, or a write fails, the index stops growing for
+     * the rest of the run; readers then scan the records after its last entry.
+     */
+    static final class Writer implements Closeable {
+        final static int PENDING_ENTRIES = 256;
+
+        private final FileChannel channel;
+        // Completed entries not written yet, guarded by itself; swapped into the write buffer.
+        private final ByteBuffer pending =
+                ByteBuffer.allocate(PENDING_ENTRIES * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer writing = ByteBuffer.allocate(PENDING_ENTRIES * ENTRY_SIZE);
+        private final Object flushLock = new Object();
+        private long written;
+        private volatile boolean stopped = false;
+
+        // Open block, writer thread only.
+        private int segment;
+        private int position;
+        private int count = 0;
+        private long minTimestamp;
+        private long maxTimestamp;
+        private int minHr;
+        private int maxHr;
+        private int flags;
+
+        /**
+         * Opens the index file of {@code directory} for appending after its first
+         * {@code entries} entries, discarding anything written after them.
+         */
+        Writer(File directory, int entries) throws IOException {
+            final RandomAccessFile raf = new RandomAccessFile(indexFile(directory), "rw");
+            channel = raf.getChannel();
+            try {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putShort(VERSION).putShort((short) ENTRY_SIZE).flip();
+                channel.write(header, 0);
+                channel.truncate(HEADER_SIZE + (long) entries * ENTRY_SIZE);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            this.written = entries;
+        }
+
+        void add(int segment, int position, long timestamp, byte type, int status, int value) {
+            if (stopped) {
+                return;
+            }
+            // Blocks are counted in slots, so commit records between samples stay inside them.
+            if (count > 0 && (segment != this.segment
+                    || position - this.position >= BLOCK_RECORDS * SessionLog.RECORD_SIZE)) {
+                stageEntry();
+            }
+            if (count == 0) {
+                this.segment = segment;
+                this.position = position;
+                minTimestamp = timestamp;
+                maxTimestamp = timestamp;
+                minHr = Short.MAX_VALUE;
+                maxHr = Short.MIN_VALUE;
+                flags = 0;
+            }
+            count = (position - this.position) / SessionLog.RECORD_SIZE + 1;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            if (type == SessionLog.TYPE_SPO2) {
+                flags |= FLAG_SPO2;
+            } else if (type == SessionLog.TYPE_HEART_RATE && status == HeartRateStatus.HR_STATUS_FIND_HR) {
+                flags |= FLAG_HEART_RATE;
+                minHr = Math.min(minHr, value);
+                maxHr = Math.max(maxHr, value);
+            }
+        }
+
+        /**
+         * Returns true once half of the pending entries are used.
+         */
+        boolean needsFlush() {
+            synchronized (pending) {
+                return pending.position() >= pending.capacity() / 2;
+            }
+        }
+
+        /**
+         * Writes the completed entries; safe to call from any thread.
+         */
+        void flush() throws IOException {
+            synchronized (flushLock) {
+                synchronized (pending) {
+                    pending.flip();
+                    writing.clear();
+                    writing.put(pending);
+                    pending.clear();
+                }
+                writing.flip();
+                final int entries = writing.remaining() / ENTRY_SIZE;
+                try {
+                    while (writing.hasRemaining()) {
+                        channel.write(writing, HEADER_SIZE + written * ENTRY_SIZE + writing.position());
+                    }
+                } catch (IOException e) {
+                    stopped = true;
+                    throw e;
+                }
+                written += entries;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!stopped) {
+                    flush();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void stageEntry() {
+            synchronized (pending) {
+                if (pending.remaining() < ENTRY_SIZE) {
+                    stopped = true;
+                    return;
+                }
+                final int entry = pending.position();
+                pending.putLong(entry + OFFSET_MIN_TIMESTAMP, minTimestamp)
+                        .putLong(entry + OFFSET_MAX_TIMESTAMP, maxTimestamp)
+                        .putInt(entry + OFFSET_SEGMENT, segment)
+                        .putInt(entry + OFFSET_POSITION, position)
+                        .putShort(entry + OFFSET_COUNT, (short) count)
+                        .putShort(entry + OFFSET_MIN_HR, (short) minHr)
+                        .putShort(entry + OFFSET_MAX_HR, (short) maxHr)
+                        .put(entry + OFFSET_FLAGS, (byte) flags);
+                pending.position(entry + ENTRY_SIZE);
+            }
+            count = 0;
+        }
+    }
+}
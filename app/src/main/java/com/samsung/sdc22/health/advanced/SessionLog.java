@@ -0,0 +1,613 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of tracker samples for one session, stored as fixed-width binary records
+ * in memory-mapped segment files.
+ * <p>
+ * Each segment starts with a {@value #HEADER_SIZE}-byte header followed by
+ * {@value #RECORD_SIZE}-byte records (little endian):
+ * <pre>
+ *  0  long  timestamp (ms)
+ *  8  byte  type ({@link #TYPE_HEART_RATE} or {@link #TYPE_SPO2}, 0 marks unused space)
+ *  9  byte  IBI quality bit
+ * 10  short status
+ * 12  short value (heart rate or SpO2)
+ * 14  short IBI (ms)
+ * </pre>
+ * Records are framed by {@link #TYPE_COMMIT} records, which carry the timestamp of the record
+ * before them, the number of records in the frame as an unsigned short at offset 10 and the
+ * CRC32 of those records at offset 12. A frame is committed once it holds
+ * {@code commitRecords} records, once its first record is {@code commitIntervalMillis} old,
+ * when the segment fills up and on {@link #close()}; frames never span segments. Committed
+ * frames, including those of segments that were rolled over, are forced to storage on a
+ * background thread, so one fsync covers every frame committed while the previous one ran.
+ * On {@link #open(File)} the newest segment is cut after its last frame whose CRC matches,
+ * dropping torn and uncommitted records.
+ * <p>
+ * Appending is a handful of stores into the mapped buffer, a CRC update and an index update
+ * in memory; it allocates nothing per record and never waits for I/O. The next segment is
+ * mapped on a background thread once the current one is half full. If it is not ready when
+ * the current one fills up, or mapping it failed, the sample is dropped and counted by
+ * {@link CommitStats#getRejectedCount()} rather than stalling the tracker thread; mapping is
+ * retried with the next sample. Not safe for concurrent appends: use one writer thread
+ * (normally the tracker thread). Samples appended after {@link #close()} are dropped, so a
+ * late tracker callback racing with shutdown is harmless.
+ * <p>
+ * Each completed block of records is also summarized in a {@link SessionIndex} next to the
+ * segments, which range cursors use to seek and to skip blocks. Its entries are written out
+ * by the background fsync and on {@link #close()}.
+ */
+public class SessionLog implements Closeable {
+    public final static int HEADER_SIZE = 16;
+    public final static int RECORD_SIZE = 16;
+    public final static int DEFAULT_SEGMENT_SIZE = 1 << 20;
+    public final static int DEFAULT_COMMIT_RECORDS = 512;
+    public final static long DEFAULT_COMMIT_INTERVAL_MILLIS = 2000;
+
+    public final static byte TYPE_HEART_RATE = 1;
+    public final static byte TYPE_SPO2 = 2;
+    public final static byte TYPE_COMMIT = 3;
+
+    final static int MAGIC = 0x4C534853; // "SHSL" in little endian
+    final static short VERSION = 2;
+    // Segments written before commit frames; still readable, never appended to.
+    final static short VERSION_UNFRAMED = 1;
+    final static String SEGMENT_SUFFIX = ".seg";
+
+    final static int OFFSET_TIMESTAMP = 0;
+    final static int OFFSET_TYPE = 8;
+    final static int OFFSET_QUALITY = 9;
+    final static int OFFSET_STATUS = 10;
+    final static int OFFSET_VALUE = 12;
+    final static int OFFSET_IBI = 14;
+    final static int OFFSET_FRAME_RECORDS = 10;
+    final static int OFFSET_FRAME_CRC = 12;
+    // Rolled segments waiting for the background fsync.
+    final static int ROLLED_SEGMENTS = 4;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int commitRecords;
+    private final long commitIntervalNanos;
+    private final Clock clock;
+    private final CommitStats commitStats;
+    // Forces committed frames, writes index entries and runs the commit timer.
+    private final ScheduledExecutorService background;
+    // Maps the next segment; the background thread unless a test maps inline.
+    private final Executor mapper;
+    private final Runnable syncTask = this::syncInBackground;
+
+    private MappedByteBuffer segment;
+    // The active segment as seen by the background fsync.
+    private volatile MappedByteBuffer syncSegment;
+    private final ArrayBlockingQueue<MappedByteBuffer> rolledSegments = new ArrayBlockingQueue<>(ROLLED_SEGMENTS);
+    // Duplicate of the segment that feeds record bytes to the frame CRC.
+    private ByteBuffer frameView;
+    private int segmentIndex;
+    private int writePosition;
+    private FutureTask<MappedByteBuffer> nextSegment = null;
+    // Stops by itself once writing fails; the index is rebuilt the next time the log is opened.
+    private SessionIndex.Writer indexWriter;
+    // Read by cursors on other threads to bound the active segment.
+    private volatile long published;
+    private volatile boolean closed = false;
+
+    private final CRC32 frameCrc = new CRC32();
+    private int frameRecords = 0;
+    private long frameStartNanos;
+    private long lastTimestamp;
+
+    private final AtomicBoolean syncQueued = new AtomicBoolean();
+    private final AtomicInteger unsyncedRecords = new AtomicInteger();
+    private final AtomicLong unsyncedSinceNanos = new AtomicLong();
+
+    private SessionLog(File directory, int segmentSize, int commitRecords, long commitIntervalMillis,
+                       Clock clock, CommitStats commitStats, Executor mapper) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitRecords = commitRecords;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.clock = clock;
+        this.commitStats = commitStats;
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "SessionLogMapper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mapper = mapper != null ? mapper : background;
+    }
+
+    public static SessionLog open(File directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static SessionLog open(File directory, int segmentSize) throws IOException {
+        return open(directory, segmentSize, DEFAULT_COMMIT_RECORDS, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the session stored in {@code directory}, creating it if needed. The newest segment
+     * is recovered up to its last valid frame and appends continue after it; index entries
+     * missing for earlier records are written first.
+     *
+     * @param commitRecords        records after which a frame is committed, at most 65535
+     * @param commitIntervalMillis age of the first record after which a frame is committed
+     */
+    public static SessionLog open(File directory, int segmentSize, int commitRecords, long commitIntervalMillis)
+            throws IOException {
+        return open(directory, segmentSize, commitRecords, commitIntervalMillis, Clock.SYSTEM, CommitStats.SESSION);
+    }
+
+    static SessionLog open(File directory, int segmentSize, int commitRecords, long commitIntervalMillis,
+                           Clock clock, CommitStats commitStats) throws IOException {
+        return open(directory, segmentSize, commitRecords, commitIntervalMillis, clock, commitStats, null);
+    }
+
+    /**
+     * @param mapper runs the mapping of the next segment, the background thread if null
+     */
+    static SessionLog open(File directory, int segmentSize, int commitRecords, long commitIntervalMillis,
+                           Clock clock, CommitStats commitStats, Executor mapper) throws IOException {
+        if (segmentSize < HEADER_SIZE + 2 * RECORD_SIZE || (segmentSize - HEADER_SIZE) % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("segmentSize must hold at least two whole records: " + segmentSize);
+        }
+        if (commitRecords < 1 || commitRecords > 0xFFFF) {
+            throw new IllegalArgumentException("commitRecords must be in [1, 65535]: " + commitRecords);
+        }
+        if (commitIntervalMillis <= 0) {
+            throw new IllegalArgumentException("commitIntervalMillis must be positive: " + commitIntervalMillis);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create session directory " + directory);
+        }
+        final SessionLog log = new SessionLog(directory, segmentSize, commitRecords, commitIntervalMillis,
+                clock, commitStats, mapper);
+        final File[] segments = listSegments(directory);
+        try {
+            if (segments.length == 0) {
+                log.startSegment(0, mapSegment(log.segmentFile(0), segmentSize));
+            } else {
+                int lastOrdinal = segments.length - 1;
+                MappedByteBuffer buffer = mapSegment(segments[lastOrdinal], segmentSize);
+                // The next segment is mapped ahead of time, so a crash can leave it empty after
+                // the one that needs recovering.
+                while (lastOrdinal > 0 && buffer.get(HEADER_SIZE + OFFSET_TYPE) == 0) {
+                    buffer = mapSegment(segments[--lastOrdinal], segmentSize);
+                }
+                final File last = segments[lastOrdinal];
+                if (buffer.getShort(4) == VERSION_UNFRAMED) {
+                    log.startSegment(parseSegmentIndex(last) + 1,
+                            mapSegment(log.segmentFile(parseSegmentIndex(last) + 1), segmentSize));
+                } else {
+                    log.startSegment(parseSegmentIndex(last), buffer);
+                    log.writePosition = recover(buffer, segmentSize, commitStats);
+                }
+            }
+            log.published = log.position();
+            log.openIndex();
+        } catch (IOException e) {
+            log.background.shutdownNow();
+            throw e;
+        }
+        log.background.scheduleWithFixedDelay(log::commitIfDue, commitIntervalMillis, commitIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        return log;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void appendHeartRate(long timestamp, int status, int hr, int ibi, int qIbi) {
+        append(timestamp, TYPE_HEART_RATE, qIbi, status, hr, ibi);
+    }
+
+    public void appendSpO2(long timestamp, int status, int spO2Value) {
+        append(timestamp, TYPE_SPO2, 0, status, spO2Value, 0);
+    }
+
+    /**
+     * Returns a cursor over every record appended so far, including the active segment.
+     */
+    public SessionCursor cursor() throws IOException {
+        return new SessionCursor(listSegments(directory), published);
+    }
+
+    /**
+     * Returns a cursor over the records appended so far with timestamps in {@code [from, to]},
+     * skipping indexed blocks rejected by {@code filter}.
+     */
+    public SessionCursor cursor(long from, long to, SessionIndex.BlockFilter filter) throws IOException {
+        final long end = published;
+        return new SessionCursor(listSegments(directory), end, SessionIndex.load(directory).truncate(end),
+                from, to, filter);
+    }
+
+    /**
+     * Commits the open frame and forces the active segment to storage before returning.
+     */
+    public synchronized void force() {
+        if (closed) {
+            return;
+        }
+        commit();
+        sync();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        commit();
+        closed = true;
+        // Not shutdownNow(): interrupting an index write would close the index file.
+        background.shutdown();
+        sync();
+        closeIndex();
+    }
+
+    private synchronized void append(long timestamp, byte type, int quality, int status, int value, int ibi) {
+        if (closed) {
+            return;
+        }
+        // Keep a slot free for the commit record that closes the frame.
+        if (writePosition + 2 * RECORD_SIZE > segmentSize) {
+            commit();
+            if (!roll()) {
+                commitStats.onRejected();
+                return;
+            }
+        }
+        final MappedByteBuffer buffer = segment;
+        final int position = writePosition;
+        buffer.putLong(position + OFFSET_TIMESTAMP, timestamp);
+        buffer.put(position + OFFSET_QUALITY, (byte) quality);
+        buffer.putShort(position + OFFSET_STATUS, (short) status);
+        buffer.putShort(position + OFFSET_VALUE, (short) value);
+        buffer.putShort(position + OFFSET_IBI, (short) ibi);
+        // Written last: a non-zero type marks the record as complete.
+        buffer.put(position + OFFSET_TYPE, type);
+        writePosition = position + RECORD_SIZE;
+        published = position();
+        indexWriter.add(segmentIndex, position, timestamp, type, status, value);
+
+        frameView.limit(writePosition);
+        frameView.position(position);
+        frameCrc.update(frameView);
+        if (frameRecords++ == 0) {
+            frameStartNanos = clock.nanoTime();
+        }
+        lastTimestamp = timestamp;
+        if (frameRecords >= commitRecords || clock.nanoTime() - frameStartNanos >= commitIntervalNanos) {
+            commit();
+        }
+
+        if (nextSegment == null && writePosition > segmentSize / 2) {
+            mapNextSegment();
+        }
+    }
+
+    /**
+     * Commits the open frame if its first record is older than the commit interval. Runs on the
+     * background thread, so a frame left open when the appends stop is still committed.
+     */
+    synchronized void commitIfDue() {
+        if (!closed && frameRecords > 0 && clock.nanoTime() - frameStartNanos >= commitIntervalNanos) {
+            commit();
+        }
+    }
+
+    private void commit() {
+        if (frameRecords == 0) {
+            return;
+        }
+        final MappedByteBuffer buffer = segment;
+        final int position = writePosition;
+        buffer.putLong(position + OFFSET_TIMESTAMP, lastTimestamp);
+        buffer.put(position + OFFSET_QUALITY, (byte) 0);
+        buffer.putShort(position + OFFSET_FRAME_RECORDS, (short) frameRecords);
+        buffer.putInt(position + OFFSET_FRAME_CRC, (int) frameCrc.getValue());
+        buffer.put(position + OFFSET_TYPE, TYPE_COMMIT);
+        writePosition = position + RECORD_SIZE;
+        published = position();
+        commitStats.onCommit(frameRecords);
+
+        unsyncedSinceNanos.compareAndSet(0, frameStartNanos);
+        unsyncedRecords.addAndGet(frameRecords);
+        frameRecords = 0;
+        frameCrc.reset();
+        requestSync();
+    }
+
+    private void requestSync() {
+        if (!closed && syncQueued.compareAndSet(false, true)) {
+            background.execute(syncTask);
+        }
+    }
+
+    private void syncInBackground() {
+        syncQueued.set(false);
+        sync();
+        try {
+            indexWriter.flush();
+        } catch (IOException ignored) {
+            // The writer stops; the index is rebuilt on the next open.
+        }
+    }
+
+    /**
+     * Forces the rolled segments and the active one, and credits every frame committed so far
+     * to this fsync. A frame committed while the fsync runs is credited to it too, but is
+     * synced again by the next one.
+     */
+    private void sync() {
+        final int records = unsyncedRecords.getAndSet(0);
+        final long since = unsyncedSinceNanos.getAndSet(0);
+        MappedByteBuffer rolled;
+        while ((rolled = rolledSegments.poll()) != null) {
+            rolled.force();
+        }
+        syncSegment.force();
+        if (records > 0) {
+            commitStats.onSync(records, clock.nanoTime() - since);
+        }
+    }
+
+    private void openIndex() throws IOException {
+        final SessionIndex index = SessionIndex.load(directory).truncate(published);
+        indexWriter = new SessionIndex.Writer(directory, index.size());
+        // Catch up with the records after the last entry: the open block of the previous run,
+        // or the whole session if it was written without an index.
+        try (SessionCursor tail = new SessionCursor(listSegments(directory), published, index,
+                Long.MIN_VALUE, Long.MAX_VALUE, SessionIndex.NO_BLOCKS)) {
+            while (tail.next()) {
+                indexWriter.add(tail.getSegmentIndex(), tail.getPosition(), tail.getTimestamp(), tail.getType(),
+                        tail.getStatus(), tail.getValue());
+                if (indexWriter.needsFlush()) {
+                    indexWriter.flush();
+                }
+            }
+            indexWriter.flush();
+        } catch (IOException e) {
+            closeIndex();
+            throw e;
+        }
+    }
+
+    private void closeIndex() {
+        try {
+            indexWriter.close();
+        } catch (IOException ignored) {
+            // A broken index is rebuilt on the next open.
+        }
+    }
+
+    private void mapNextSegment() {
+        final File file = segmentFile(segmentIndex + 1);
+        final int size = segmentSize;
+        nextSegment = new FutureTask<>(() -> mapSegment(file, size));
+        mapper.execute(nextSegment);
+    }
+
+    /**
+     * Switches to the next segment if it has been mapped, handing the full one to the
+     * background fsync. Returns false, without waiting, if the mapping is still running or
+     * failed; a failed mapping is resubmitted.
+     */
+    private boolean roll() {
+        if (nextSegment == null) {
+            mapNextSegment();
+        }
+        if (!nextSegment.isDone()) {
+            return false;
+        }
+        final MappedByteBuffer next;
+        try {
+            next = nextSegment.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            nextSegment = null;
+            return false;
+        }
+        nextSegment = null;
+        // Only when several tiny segments fill up before one fsync runs.
+        if (!rolledSegments.offer(segment)) {
+            segment.force();
+        }
+        startSegment(segmentIndex + 1, next);
+        requestSync();
+        return true;
+    }
+
+    private void startSegment(int index, MappedByteBuffer buffer) {
+        segment = buffer;
+        syncSegment = buffer;
+        frameView = buffer.duplicate();
+        segmentIndex = index;
+        writePosition = HEADER_SIZE;
+    }
+
+    private long position() {
+        return ((long) segmentIndex << 32) | writePosition;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format(Locale.US, "%08d", index) + SEGMENT_SUFFIX);
+    }
+
+    static File[] listSegments(File directory) {
+        final File[] segments = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    static int parseSegmentIndex(File segment) {
+        final String name = segment.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Maps a segment, creating it or starting it over if its header was never written.
+     */
+    static MappedByteBuffer mapSegment(File file, int segmentSize) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            boolean existed = channel.size() >= HEADER_SIZE;
+            if (existed) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                // A segment mapped ahead is only forced once it is rolled into, so a crash can
+                // leave it at full length with its header page lost; nothing in it was synced.
+                if (isUnwritten(header)) {
+                    channel.truncate(0);
+                    existed = false;
+                }
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (existed) {
+                checkHeader(buffer, file);
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putShort(6, (short) RECORD_SIZE);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Returns {@code false} if the header was never written, which readers treat as an empty
+     * segment, and throws if it is not a session segment header.
+     */
+    static boolean checkHeader(ByteBuffer buffer, File file) throws IOException {
+        if (isUnwritten(buffer)) {
+            return false;
+        }
+        final short version = buffer.getShort(4);
+        if (buffer.getInt(0) != MAGIC || (version != VERSION && version != VERSION_UNFRAMED)
+                || buffer.getShort(6) != RECORD_SIZE) {
+            throw new IOException("Not a session segment: " + file);
+        }
+        return true;
+    }
+
+    private static boolean isUnwritten(ByteBuffer header) {
+        return header.getLong(0) == 0 && header.getLong(8) == 0;
+    }
+
+    /**
+     * Returns the offset of the first unused record slot, which may be inside a torn or
+     * uncommitted frame.
+     */
+    static int findEnd(ByteBuffer buffer, int limit) {
+        int position = HEADER_SIZE;
+        while (position + RECORD_SIZE <= limit && buffer.get(position + OFFSET_TYPE) != 0) {
+            position += RECORD_SIZE;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the offset just past the last frame, starting from the frame boundary
+     * {@code from}, whose record count and CRC match, without touching the segment. Segments
+     * written before commit frames count as committed up to their first unused slot.
+     */
+    static int findCommittedEnd(ByteBuffer buffer, int from, int limit) {
+        if (buffer.getShort(4) == VERSION_UNFRAMED) {
+            return Math.max(from, findEnd(buffer, limit));
+        }
+        final ByteBuffer view = buffer.duplicate();
+        final CRC32 crc = new CRC32();
+        int committed = from;
+        int records = 0;
+        for (int position = from; position + RECORD_SIZE <= limit; position += RECORD_SIZE) {
+            final byte type = buffer.get(position + OFFSET_TYPE);
+            if (type == 0) {
+                break;
+            }
+            if (type == TYPE_COMMIT) {
+                if ((buffer.getShort(position + OFFSET_FRAME_RECORDS) & 0xFFFF) != records
+                        || buffer.getInt(position + OFFSET_FRAME_CRC) != (int) crc.getValue()) {
+                    break;
+                }
+                committed = position + RECORD_SIZE;
+                records = 0;
+                crc.reset();
+            } else {
+                view.limit(position + RECORD_SIZE);
+                view.position(position);
+                crc.update(view);
+                records++;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Clears every record after the last valid frame (see {@link #findCommittedEnd}), including
+     * stale records that a reordered page write may have left further on. Returns the offset
+     * just past that frame.
+     */
+    static int recover(MappedByteBuffer buffer, int limit, CommitStats commitStats) {
+        final int committed = findCommittedEnd(buffer, HEADER_SIZE, limit);
+        int dropped = 0;
+        for (int position = committed; position + RECORD_SIZE <= limit; position += RECORD_SIZE) {
+            if (buffer.get(position + OFFSET_TYPE) != 0) {
+                buffer.putLong(position, 0L);
+                buffer.putLong(position + 8, 0L);
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            buffer.force();
+            commitStats.onRecovery(dropped);
+        }
+        return committed;
+    }
+}
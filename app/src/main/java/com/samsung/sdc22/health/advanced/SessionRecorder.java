@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Writes every heart-rate and SpO2 sample delivered by {@link TrackerDataNotifier} into a
+ * {@link SessionLog}. Register it for {@link TrackerDataNotifier#HEART_RATE} and
+ * {@link TrackerDataNotifier#SPO2} behind a lossless {@link DeliveryStrategy}, so log appends
+ * stay off the sensor thread and all come from the one mailbox worker, as {@link SessionLog}
+ * requires.
+ */
+public class SessionRecorder implements TrackerDataObserver {
+    private final SessionLog sessionLog;
+
+    public SessionRecorder(SessionLog sessionLog) {
+        this.sessionLog = sessionLog;
+    }
+
+    @Override
+    public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        sessionLog.appendHeartRate(System.currentTimeMillis(), hrData.status, hrData.hr, hrData.ibi, hrData.qIbi);
+    }
+
+    @Override
+    public void onHeartRateBatch(HeartRateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            sessionLog.appendHeartRate(batch.getTimestamp(i), batch.getStatus(i), batch.getHr(i),
+                    batch.getIbi(i), batch.getQIbi(i));
+        }
+    }
+
+    @Override
+    public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        sessionLog.appendSpO2(System.currentTimeMillis(), status, spO2Value);
+    }
+
+    @Override
+    public void onSpO2Batch(SpO2Batch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            sessionLog.appendSpO2(batch.getTimestamp(i), batch.getStatus(i), batch.getSpO2Value(i));
+        }
+    }
+
+    @Override
+    public void onError(int errorResourceId) {
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import com.samsung.android.service.health.tracking.HealthTracker;
+import com.samsung.android.service.health.tracking.data.DataPoint;
+import com.samsung.android.service.health.tracking.data.ValueKey;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plays a recorded {@link SessionLog} back into the {@link HealthTracker.TrackerEventListener}s
+ * of a {@link HeartRateListener} and a {@link SpO2Listener}, as if the samples came from the
+ * tracking service.
+ * <p>
+ * Consecutive records of one type whose timestamps fall within the batch window are delivered
+ * as one {@code List<DataPoint>}, at the (scaled) time of the last record in the batch. The
+ * data points and lists are pooled: listeners decode a delivery before returning, so once the
+ * pools have grown to the largest batch the only allocation per sample is boxing.
+ * {@link DataPoint#getValue(ValueKey)} returns objects, so every value outside the
+ * {@link Integer#valueOf(int)} cache (-128 to 127) is boxed when a listener reads it. In
+ * practice that means the IBI word of every heart-rate record and heart rates above 127.
+ * <p>
+ * {@link #replay(SessionCursor)} runs on the calling thread; call it from the sensor thread to
+ * reproduce the threading of a live session.
+ */
+public class SessionReplayer {
+    public final static double REAL_TIME = 1.0;
+    public final static double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+    public final static long DEFAULT_BATCH_WINDOW_MILLIS = 1000;
+
+    private final HealthTracker.TrackerEventListener heartRateEventListener;
+    private final HealthTracker.TrackerEventListener spO2EventListener;
+    private final Clock clock;
+
+    private double speed = REAL_TIME;
+    private long batchWindowMillis = DEFAULT_BATCH_WINDOW_MILLIS;
+    private volatile boolean stopped = false;
+
+    private final List<ReplayedDataPoint> pool = new ArrayList<>();
+    private final List<DataPoint> batch = new ArrayList<>();
+
+    /**
+     * Either listener may be {@code null}, in which case records of that type are skipped.
+     */
+    public SessionReplayer(HeartRateListener heartRateListener, SpO2Listener spO2Listener, Clock clock) {
+        this.heartRateEventListener = heartRateListener != null ? heartRateListener.getTrackerEventListener() : null;
+        this.spO2EventListener = spO2Listener != null ? spO2Listener.getTrackerEventListener() : null;
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the playback speed as a multiple of real time, e.g. {@code 100} replays an hour in
+     * 36 seconds. {@link #AS_FAST_AS_POSSIBLE} never waits.
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        if (batchWindowMillis < 0) {
+            throw new IllegalArgumentException("batchWindowMillis must not be negative: " + batchWindowMillis);
+        }
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * Makes a running {@link #replay(SessionCursor)} return after the current batch.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Delivers every record of {@code cursor} and returns the number of records delivered.
+     */
+    public long replay(SessionCursor cursor) throws IOException, InterruptedException {
+        stopped = false;
+        long delivered = 0;
+        long startNanos = 0;
+        long firstTimestamp = 0;
+        boolean hasRecord = cursor.next();
+        while (hasRecord && !stopped) {
+            final byte type = cursor.getType();
+            final long batchStart = cursor.getTimestamp();
+            long batchEnd = batchStart;
+            batch.clear();
+            do {
+                batchEnd = cursor.getTimestamp();
+                batch.add(obtain(batch.size()).set(cursor));
+                hasRecord = cursor.next();
+            } while (hasRecord && cursor.getType() == type && cursor.getTimestamp() - batchStart <= batchWindowMillis);
+
+            final HealthTracker.TrackerEventListener listener = type == SessionLog.TYPE_HEART_RATE
+                    ? heartRateEventListener : type == SessionLog.TYPE_SPO2 ? spO2EventListener : null;
+            if (listener == null) {
+                continue;
+            }
+            if (delivered == 0) {
+                startNanos = clock.nanoTime();
+                firstTimestamp = batchEnd;
+            } else if (speed != AS_FAST_AS_POSSIBLE) {
+                final long dueNanos = startNanos + (long) ((batchEnd - firstTimestamp) * 1_000_000.0 / speed);
+                final long waitNanos = dueNanos - clock.nanoTime();
+                if (waitNanos > 0) {
+                    clock.sleepNanos(waitNanos);
+                }
+            }
+            listener.onDataReceived(batch);
+            delivered += batch.size();
+        }
+        batch.clear();
+        return delivered;
+    }
+
+    private ReplayedDataPoint obtain(int index) {
+        if (index == pool.size()) {
+            pool.add(new ReplayedDataPoint());
+        }
+        return pool.get(index);
+    }
+
+    /**
+     * Mutable data point answering from the current record instead of a value map.
+     */
+    private static final class ReplayedDataPoint extends DataPoint {
+        private long timestamp;
+        private int status;
+        private int value;
+        private int hrIbi;
+
+        ReplayedDataPoint() {
+            super(Collections.emptyMap());
+        }
+
+        ReplayedDataPoint set(SessionCursor cursor) {
+            timestamp = cursor.getTimestamp();
+            status = cursor.getStatus();
+            value = cursor.getValue();
+            hrIbi = (cursor.getQuality() & HeartRateData.IBI_MASK) << HeartRateData.IBI_QUALITY_SHIFT | cursor.getIbi();
+            return this;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getValue(ValueKey<T> key) {
+            if (key == ValueKey.HeartRateSet.STATUS || key == ValueKey.SpO2Set.STATUS) {
+                return (T) Integer.valueOf(status);
+            }
+            if (key == ValueKey.HeartRateSet.HEART_RATE || key == ValueKey.SpO2Set.SPO2) {
+                return (T) Integer.valueOf(value);
+            }
+            if (key == ValueKey.HeartRateSet.HEART_RATE_IBI) {
+                return (T) Integer.valueOf(hrIbi);
+            }
+            throw new IllegalArgumentException("Not recorded: " + key);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.Arrays;
+
+/**
+ * SpO2 samples delivered together, stored column-wise in primitive arrays. Reused by the
+ * listener between deliveries, like {@link HeartRateBatch}.
+ */
+public class SpO2Batch {
+    private final static int INITIAL_CAPACITY = 8;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] statuses = new int[INITIAL_CAPACITY];
+    private int[] spO2Values = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long timestamp, int status, int spO2Value) {
+        ensureCapacity(size + 1);
+        timestamps[size] = timestamp;
+        statuses[size] = status;
+        spO2Values[size] = spO2Value;
+        size++;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[checkIndex(index)];
+    }
+
+    public int getStatus(int index) {
+        return statuses[checkIndex(index)];
+    }
+
+    public int getSpO2Value(int index) {
+        return spO2Values[checkIndex(index)];
+    }
+
+    public void copyFrom(SpO2Batch other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, 0, other.size);
+        System.arraycopy(other.statuses, 0, statuses, 0, other.size);
+        System.arraycopy(other.spO2Values, 0, spO2Values, 0, other.size);
+        size = other.size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        statuses = Arrays.copyOf(statuses, newCapacity);
+        spO2Values = Arrays.copyOf(spO2Values, newCapacity);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+}
@@ -26,16 +26,30 @@ import com.samsung.android.service.health.tracking.data.ValueKey;
 
 import java.util.List;
 
+/**
+ * Decodes SpO2 deliveries and runs them through a {@link SpO2Measurement}, so observers only
+ * hear about status transitions, ending with {@link SpO2Status#MEASUREMENT_COMPLETED} or
+ * {@link SpO2Status#MEASUREMENT_TIMEOUT}. The measurement, and its timeout check, live on the
+ * sensor thread.
+ */
 public class SpO2Listener extends BaseListener {
     private final static String APP_TAG = "SpO2Listener";
+    public final static long MEASUREMENT_TIMEOUT_MILLIS = 35_000L;
+
+    // Reused for every delivery; only touched on the tracker callback thread.
+    private final SpO2Batch spO2Batch = new SpO2Batch();
+    private final SpO2Measurement measurement = new SpO2Measurement(MEASUREMENT_TIMEOUT_MILLIS);
+    private final Runnable timeoutCheck = this::checkMeasurementTimeout;
+    private PipelineLatency pipelineLatency = PipelineLatency.SPO2;
+    private MeasurementScheduler scheduler = MeasurementScheduler.getInstance();
+    private Clock clock = scheduler.getClock();
+    private volatile MeasurementScheduler.Task timeoutTask = null;
 
     SpO2Listener() {
         HealthTracker.TrackerEventListener trackerEventListener = new HealthTracker.TrackerEventListener() {
             @Override
             public void onDataReceived(@NonNull List<DataPoint> list) {
-                for (DataPoint data : list) {
-                    updateSpo2(data);
-                }
+                updateSpo2(list);
             }
 
             @Override
@@ -48,16 +62,42 @@ public class SpO2Listener extends BaseListener {
                 Log.e(APP_TAG, " onError called: " + trackerError);
                 setHandlerRunning(false);
                 if (trackerError == HealthTracker.TrackerError.PERMISSION_ERROR) {
-                    TrackerDataNotifier.getInstance().notifyError(R.string.NoPermission);
+                    getTrackerDataNotifier().notifyError(R.string.NoPermission);
                 }
                 if (trackerError == HealthTracker.TrackerError.SDK_POLICY_ERROR) {
-                    TrackerDataNotifier.getInstance().notifyError(R.string.SdkPolicyError);
+                    getTrackerDataNotifier().notifyError(R.string.SdkPolicyError);
                 }
             }
         };
         setTrackerEventListener(trackerEventListener);
     }
 
+    void setPipelineLatency(PipelineLatency pipelineLatency) {
+        this.pipelineLatency = pipelineLatency;
+    }
+
+    /**
+     * Uses {@code scheduler} for the measurement timeout and its clock for the deadline.
+     */
+    void setScheduler(MeasurementScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.clock = scheduler.getClock();
+    }
+
+    @Override
+    void onTrackerStarting() {
+        measurement.start(clock.nanoTime());
+        cancelTimeout();
+        // The scheduler only wakes us up; the check runs on the sensor thread with the measurement.
+        timeoutTask = scheduler.schedule(() -> getHandler().post(timeoutCheck), MEASUREMENT_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public void stopTracker() {
+        cancelTimeout();
+        super.stopTracker();
+    }
+
     /*******************************************************************************************
      * [Practice 5] Read values from DataPoint object
      *  - Get blood oxygen level status
@@ -71,14 +111,81 @@ public class SpO2Listener extends BaseListener {
      ******************************************************************************************/
 
     public void updateSpo2(DataPoint dataPoint) {
+        pipelineLatency.onIngress();
+        final int status = readStatus(dataPoint);
+        pipelineLatency.onSample(dataPoint.getTimestamp());
+        if (checkMeasurementTimeout() || !measurement.onStatus(status, clock.nanoTime())) {
+            return;
+        }
+        pipelineLatency.onDispatch();
+        getTrackerDataNotifier().notifySpO2TrackerObservers(status, readSpo2Value(dataPoint, status));
+    }
+
+    /**
+     * Decodes the transitions in a whole delivery into the reusable {@link SpO2Batch} and
+     * notifies the observers once, or not at all if the status did not change.
+     */
+    public void updateSpo2(List<DataPoint> dataPoints) {
+        if (dataPoints.isEmpty()) {
+            return;
+        }
+        pipelineLatency.onIngress();
+        if (checkMeasurementTimeout()) {
+            return;
+        }
+        final long now = clock.nanoTime();
+        spO2Batch.clear();
+        for (int i = 0; i < dataPoints.size(); i++) {
+            final DataPoint dataPoint = dataPoints.get(i);
+            final int status = readStatus(dataPoint);
+            pipelineLatency.onSample(dataPoint.getTimestamp());
+            if (measurement.onStatus(status, now)) {
+                spO2Batch.add(dataPoint.getTimestamp(), status, readSpo2Value(dataPoint, status));
+            }
+        }
+        if (spO2Batch.size() == 0) {
+            return;
+        }
+        pipelineLatency.onDispatch();
+        getTrackerDataNotifier().notifySpO2Batch(spO2Batch);
+    }
+
+    /**
+     * Reports {@link SpO2Status#MEASUREMENT_TIMEOUT} if the running measurement is past its
+     * deadline. Runs on the sensor thread, from the delayed check and before each delivery.
+     */
+    boolean checkMeasurementTimeout() {
+        if (!measurement.checkTimeout(clock.nanoTime())) {
+            return false;
+        }
+        Log.i(APP_TAG, "Measurement timed out");
+        getTrackerDataNotifier().notifySpO2TrackerObservers(SpO2Status.MEASUREMENT_TIMEOUT, 0);
+        return true;
+    }
 
-        int status = SpO2Status.CALCULATING; //"TODO 5 (1)"
-        int spo2Value = 0;
+    int getMeasurementStatus() {
+        return measurement.getStatus();
+    }
 
-        //"TODO 5 (2)"
+    private void cancelTimeout() {
+        final MeasurementScheduler.Task task = timeoutTask;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private int readStatus(DataPoint dataPoint) {
+        if (Log.isLoggable(APP_TAG, Log.DEBUG)) {
+            Log.d(APP_TAG, dataPoint.toString());
+        }
+        return dataPoint.getValue(ValueKey.SpO2Set.STATUS);
+    }
 
-        TrackerDataNotifier.getInstance().notifySpO2TrackerObservers(status, spo2Value);
-        Log.d(APP_TAG, dataPoint.toString());
+    private int readSpo2Value(DataPoint dataPoint, int status) {
+        if (status == SpO2Status.MEASUREMENT_COMPLETED) {
+            return dataPoint.getValue(ValueKey.SpO2Set.SPO2);
+        }
+        return 0;
     }
 
 }
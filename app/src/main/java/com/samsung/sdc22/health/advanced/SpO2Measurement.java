@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Lifecycle of one SpO2 measurement, fed with the raw tracker statuses:
+ * <pre>
+ * INITIAL -> CALCULATING <-> DEVICE_MOVING / LOW_SIGNAL -> MEASUREMENT_COMPLETED
+ *                                                       \-> MEASUREMENT_TIMEOUT
+ * </pre>
+ * {@link #onStatus(int, long)} only reports a status when it differs from the current one, so
+ * the tracker repeating "calculating" every second reaches no observer. Completion and
+ * timeout are final until the next {@link #start(long)}. A measurement that was not started
+ * explicitly, such as a replayed session, starts with its first status.
+ * <p>
+ * Not thread-safe: {@link SpO2Listener} only uses it on the sensor thread.
+ */
+final class SpO2Measurement {
+    private final long timeoutNanos;
+
+    private int status = SpO2Status.INITIAL_STATUS;
+    private boolean finished = false;
+    private boolean started = false;
+    private long deadlineNanos;
+
+    SpO2Measurement(long timeoutMillis) {
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+    }
+
+    void start(long nowNanos) {
+        status = SpO2Status.INITIAL_STATUS;
+        finished = false;
+        started = true;
+        deadlineNanos = nowNanos + timeoutNanos;
+    }
+
+    /**
+     * Applies a status reported by the tracker; returns {@code true} if it is a transition
+     * that observers should see.
+     */
+    boolean onStatus(int newStatus, long nowNanos) {
+        if (!started) {
+            start(nowNanos);
+        }
+        if (finished || newStatus == status) {
+            return false;
+        }
+        status = newStatus;
+        finished = newStatus == SpO2Status.MEASUREMENT_COMPLETED;
+        return true;
+    }
+
+    /**
+     * Moves to {@link SpO2Status#MEASUREMENT_TIMEOUT} once the deadline has passed without a
+     * result; returns {@code true} on that transition.
+     */
+    boolean checkTimeout(long nowNanos) {
+        if (!started || finished || nowNanos - deadlineNanos < 0) {
+            return false;
+        }
+        status = SpO2Status.MEASUREMENT_TIMEOUT;
+        finished = true;
+        return true;
+    }
+
+    int getStatus() {
+        return status;
+    }
+}
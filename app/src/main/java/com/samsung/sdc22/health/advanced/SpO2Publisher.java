@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes every SpO2 update, including each entry of a batch, as a
+ * {@link java.util.concurrent.Flow} stream of {@link SpO2Reading}s.
+ */
+public class SpO2Publisher extends TrackerPublisher<SpO2Reading> {
+    private final TrackerDataObserver observer = new TrackerDataObserver() {
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+            offer(SpO2Reading.pack(status, spO2Value));
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+            fail(errorResourceId);
+        }
+    };
+
+    public SpO2Publisher(Executor executor) {
+        this(TrackerDataNotifier.getInstance(), executor, DEFAULT_BUFFER_SIZE);
+    }
+
+    public SpO2Publisher(TrackerDataNotifier notifier, Executor executor, int bufferSize) {
+        super(notifier, TrackerDataNotifier.SPO2, executor, bufferSize);
+    }
+
+    @Override
+    TrackerDataObserver getObserver() {
+        return observer;
+    }
+
+    @Override
+    SpO2Reading newScratch() {
+        return null;
+    }
+
+    @Override
+    SpO2Reading element(long packed, SpO2Reading scratch) {
+        return SpO2Reading.unpack(packed);
+    }
+}
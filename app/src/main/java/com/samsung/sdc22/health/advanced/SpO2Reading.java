@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * One SpO2 tracker update as published by {@link SpO2Publisher}. Immutable, so subscribers
+ * may keep it.
+ */
+public final class SpO2Reading {
+    private final int status;
+    private final int spO2Value;
+
+    public SpO2Reading(int status, int spO2Value) {
+        this.status = status;
+        this.spO2Value = spO2Value;
+    }
+
+    /**
+     * One of the {@link SpO2Status} codes.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * The measured value; only meaningful once the status is
+     * {@link SpO2Status#MEASUREMENT_COMPLETED}.
+     */
+    public int getSpO2Value() {
+        return spO2Value;
+    }
+
+    static long pack(int status, int spO2Value) {
+        return ((long) status << 32) | (spO2Value & 0xFFFFFFFFL);
+    }
+
+    static SpO2Reading unpack(long packed) {
+        return new SpO2Reading((int) (packed >> 32), (int) packed);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SpO2Reading)) {
+            return false;
+        }
+        final SpO2Reading other = (SpO2Reading) o;
+        return status == other.status && spO2Value == other.spO2Value;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * status + spO2Value;
+    }
+
+    @Override
+    public String toString() {
+        return "SpO2Reading{status=" + status + ", spO2Value=" + spO2Value + '}';
+    }
+}
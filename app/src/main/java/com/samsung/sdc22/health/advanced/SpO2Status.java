@@ -22,4 +22,6 @@ public class SpO2Status {
     public static final int INITIAL_STATUS = -1;
     public static final int CALCULATING = 0;
     public static final int MEASUREMENT_COMPLETED = 2;
+    /** Reported by {@link SpO2Listener}, not the tracker, when no result came in time. */
+    public static final int MEASUREMENT_TIMEOUT = -100;
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A range of raw {@link SessionLog} record slots of one session, as sent by
+ * {@link SyncEngine}. Encoded as a header (little endian) followed by the deflated records:
+ * <pre>
+ *  0  int   magic
+ *  4  short version
+ *  6  short record size
+ *  8  long  first slot, packed (segment index, offset)
+ * 16  long  end of the range, packed the same way
+ * 24  int   length of the records before compression
+ * 28  int   CRC32 of the records before compression
+ * 32  short length of the session name, followed by the name in UTF-8
+ * </pre>
+ * Before compression the records are shuffled into byte planes (byte 0 of every record, then
+ * byte 1, ...), which lines up the slowly changing timestamp and status bytes; deflate then
+ * compresses heart-rate sessions several times better than the plain records. A range never
+ * spans two segments.
+ */
+final class SyncChunk {
+    final static int MAGIC = 0x59534853; // "SHSY" in little endian
+    final static short VERSION = 1;
+    final static int HEADER_SIZE = 34;
+
+    final String session;
+    final long from;
+    final long to;
+    final byte[] records;
+    final int length;
+
+    SyncChunk(String session, long from, long to, byte[] records, int length) {
+        this.session = session;
+        this.from = from;
+        this.to = to;
+        this.records = records;
+        this.length = length;
+    }
+
+    /**
+     * Returns the encoded chunk; {@code deflater} is reset and can be reused.
+     */
+    byte[] encode(Deflater deflater) {
+        final byte[] name = session.getBytes(StandardCharsets.UTF_8);
+        final CRC32 crc = new CRC32();
+        crc.update(records, 0, length);
+        // Slot records barely grow when they do not compress, but keep room for the worst case.
+        byte[] message = new byte[HEADER_SIZE + name.length + length + length / 100 + 64];
+        final ByteBuffer header = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) SessionLog.RECORD_SIZE)
+                .putLong(from).putLong(to).putInt(length).putInt((int) crc.getValue())
+                .putShort((short) name.length).put(name);
+        int size = header.position();
+        deflater.reset();
+        deflater.setInput(shuffle(records, length, false), 0, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (size == message.length) {
+                message = Arrays.copyOf(message, message.length * 2);
+            }
+            size += deflater.deflate(message, size, message.length - size);
+        }
+        return Arrays.copyOf(message, size);
+    }
+
+    /**
+     * Decodes and verifies the first {@code size} bytes of {@code message}; {@code inflater}
+     * is reset and can be reused.
+     */
+    static SyncChunk decode(byte[] message, int size, Inflater inflater) throws IOException {
+        final ByteBuffer header = ByteBuffer.wrap(message, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        if (size < HEADER_SIZE || header.getInt() != MAGIC || header.getShort() != VERSION
+                || header.getShort() != SessionLog.RECORD_SIZE) {
+            throw new IOException("Not a sync chunk");
+        }
+        final long from = header.getLong();
+        final long to = header.getLong();
+        final int length = header.getInt();
+        final int crc = header.getInt();
+        final byte[] name = new byte[header.getShort()];
+        header.get(name);
+        final byte[] records = new byte[length];
+        inflater.reset();
+        inflater.setInput(message, header.position(), size - header.position());
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                final int count = inflater.inflate(records, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new IOException("Truncated sync chunk");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt sync chunk", e);
+        }
+        final byte[] unshuffled = shuffle(records, length, true);
+        final CRC32 check = new CRC32();
+        check.update(unshuffled, 0, length);
+        if ((int) check.getValue() != crc) {
+            throw new IOException("Sync chunk checksum mismatch");
+        }
+        return new SyncChunk(new String(name, StandardCharsets.UTF_8), from, to, unshuffled, length);
+    }
+
+    /**
+     * Moves byte {@code b} of record {@code r} to {@code b * records + r}, or back when
+     * {@code inverse} is set.
+     */
+    static byte[] shuffle(byte[] data, int length, boolean inverse) {
+        final int records = length / SessionLog.RECORD_SIZE;
+        final byte[] shuffled = new byte[length];
+        for (int record = 0; record < records; record++) {
+            for (int b = 0; b < SessionLog.RECORD_SIZE; b++) {
+                final int plain = record * SessionLog.RECORD_SIZE + b;
+                final int plane = b * records + record;
+                if (inverse) {
+                    shuffled[plain] = data[plane];
+                } else {
+                    shuffled[plane] = data[plain];
+                }
+            }
+        }
+        return shuffled;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Ships recorded sessions to the phone through a {@link SyncTransport}.
+ * <p>
+ * Each session is sent as raw record slots, commit records included, in deflated chunks of
+ * up to {@value #MAX_CHUNK_RECORDS} slots that never span two segments. Only committed frames
+ * are sent, so crash recovery can never take back a record the phone already has. After every
+ * acknowledged chunk the position is saved to a {@value #STATE_FILE} file in the session
+ * directory, so an acknowledged range is not sent again, even after a restart; a chunk whose
+ * acknowledgement got lost is sent once more and recognized by the phone as a duplicate.
+ * <p>
+ * The radio is the expensive part on a watch, so {@link #start(long)} syncs everything
+ * pending in one burst every {@link #DEFAULT_SYNC_INTERVAL_MILLIS} rather than trickling
+ * samples: an hour of 1 Hz heart rate is about 58 KB of slots and one message. Failures are
+ * retried with exponential backoff, from {@link #INITIAL_BACKOFF_MILLIS} up to
+ * {@link #MAX_BACKOFF_MILLIS}.
+ */
+public class SyncEngine {
+    private final static String APP_TAG = "SyncEngine";
+    // 128 KB of slots; heart-rate records deflate well below the message size limit.
+    public final static int MAX_CHUNK_RECORDS = 8192;
+    // Message payloads of the Wearable Data Layer are limited to 100 KB.
+    final static int MAX_MESSAGE_SIZE = 96 * 1024;
+    public final static long DEFAULT_SYNC_INTERVAL_MILLIS = 30 * 60_000L;
+    public final static long INITIAL_BACKOFF_MILLIS = 10_000L;
+    public final static long MAX_BACKOFF_MILLIS = 30 * 60_000L;
+    final static String STATE_FILE = "sync.state";
+    private final static int STATE_MAGIC = 0x53594E43;
+
+    private final File sessionsDirectory;
+    private final SyncTransport transport;
+    // Guards the deflater and the record buffer: one sync at a time.
+    private final Object syncLock = new Object();
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final byte[] records = new byte[MAX_CHUNK_RECORDS * SessionLog.RECORD_SIZE];
+
+    private volatile ScheduledExecutorService scheduler = null;
+    private long intervalMillis;
+    private int failures = 0;
+
+    public SyncEngine(File sessionsDirectory, SyncTransport transport) {
+        this.sessionsDirectory = sessionsDirectory;
+        this.transport = transport;
+    }
+
+    /**
+     * Syncs now and then every {@code intervalMillis} on a background thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        this.intervalMillis = intervalMillis;
+        failures = 0;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "SessionSync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::syncScheduled);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Sends every committed record the phone does not have yet, session by session, and
+     * returns the number of record slots sent. A session that fails does not hold up the
+     * ones after it; the first failure is thrown once every session has been tried.
+     */
+    public long syncAll() throws IOException {
+        final File[] sessions = sessionsDirectory.listFiles(File::isDirectory);
+        if (sessions == null) {
+            return 0;
+        }
+        Arrays.sort(sessions);
+        long sent = 0;
+        IOException failure = null;
+        synchronized (syncLock) {
+            for (File session : sessions) {
+                try {
+                    sent += syncSession(session);
+                } catch (IOException e) {
+                    Log.w(APP_TAG, "Could not sync " + session.getName() + ": " + e.getMessage());
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return sent;
+    }
+
+    /**
+     * Delay before retry number {@code failures}: doubles from {@link #INITIAL_BACKOFF_MILLIS}
+     * up to {@link #MAX_BACKOFF_MILLIS}.
+     */
+    static long backoffMillis(int failures) {
+        final int doublings = Math.min(Math.max(failures - 1, 0), 20);
+        return Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << doublings);
+    }
+
+    private void syncScheduled() {
+        long delay;
+        try {
+            final long sent = syncAll();
+            failures = 0;
+            delay = intervalMillis;
+            if (sent > 0) {
+                Log.i(APP_TAG, "Synced " + sent + " records");
+            }
+        } catch (IOException e) {
+            delay = backoffMillis(++failures);
+            Log.w(APP_TAG, "Sync failed, retrying in " + delay + " ms: " + e.getMessage());
+        }
+        final ScheduledExecutorService current = scheduler;
+        if (current != null && !current.isShutdown()) {
+            current.schedule(this::syncScheduled, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long syncSession(File directory) throws IOException {
+        final File[] segments = SessionLog.listSegments(directory);
+        final long position = readPosition(directory);
+        int ordinal = 0;
+        while (ordinal < segments.length && SessionLog.parseSegmentIndex(segments[ordinal]) < (int) (position >>> 32)) {
+            ordinal++;
+        }
+        if (ordinal == segments.length) {
+            return 0;
+        }
+        int offset = position != 0 && SessionLog.parseSegmentIndex(segments[ordinal]) == (int) (position >>> 32)
+                ? (int) position : SessionLog.HEADER_SIZE;
+        long sent = 0;
+        while (true) {
+            final File segment = segments[ordinal];
+            final int synced = syncSegment(directory, segment, offset);
+            sent += (synced - offset) / SessionLog.RECORD_SIZE;
+            offset = synced;
+            if (ordinal + 1 == segments.length) {
+                return sent;
+            }
+            // The next segment is created while this one is still being written, but only
+            // written to once this one is full. Look at it first, then at what was committed
+            // here while the chunks were sent.
+            final boolean rolled = committedEnd(segments[ordinal + 1], SessionLog.HEADER_SIZE) > SessionLog.HEADER_SIZE;
+            if (committedEnd(segment, offset) > offset) {
+                continue;
+            }
+            if (!rolled) {
+                return sent;
+            }
+            ordinal++;
+            offset = SessionLog.HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Sends the committed records of {@code segment} from {@code offset} on and returns the
+     * offset up to which the phone has them.
+     */
+    private int syncSegment(File directory, File segment, int offset) throws IOException {
+        final int index = SessionLog.parseSegmentIndex(segment);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r");
+             FileChannel channel = raf.getChannel()) {
+            final long size = channel.size();
+            if (size < SessionLog.HEADER_SIZE) {
+                return offset;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (!SessionLog.checkHeader(buffer, segment)) {
+                return offset;
+            }
+            final int end = SessionLog.findCommittedEnd(buffer, offset, (int) Math.min(size, Integer.MAX_VALUE));
+            while (offset < end) {
+                int length = Math.min(end - offset, records.length);
+                byte[] message;
+                while (true) {
+                    buffer.position(offset);
+                    buffer.get(records, 0, length);
+                    message = new SyncChunk(directory.getName(), pack(index, offset),
+                            pack(index, offset + length), records, length).encode(deflater);
+                    if (message.length <= MAX_MESSAGE_SIZE || length == SessionLog.RECORD_SIZE) {
+                        break;
+                    }
+                    length = Math.max(SessionLog.RECORD_SIZE, length / 2 / SessionLog.RECORD_SIZE * SessionLog.RECORD_SIZE);
+                }
+                final long to = pack(index, offset + length);
+                final long acknowledged = transport.send(message, message.length);
+                if (acknowledged < to) {
+                    throw new IOException("Phone holds " + directory.getName() + " only up to " + acknowledged);
+                }
+                offset += length;
+                writePosition(directory, to);
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Returns the offset just past the last valid frame of {@code segment} from {@code from}.
+     */
+    private static int committedEnd(File segment, int from) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r");
+             FileChannel channel = raf.getChannel()) {
+            final long size = channel.size();
+            if (size < SessionLog.HEADER_SIZE) {
+                return from;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (!SessionLog.checkHeader(buffer, segment)) {
+                return from;
+            }
+            return SessionLog.findCommittedEnd(buffer, from, (int) Math.min(size, Integer.MAX_VALUE));
+        }
+    }
+
+    static long pack(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    /**
+     * Returns the saved position of {@code directory}, or 0 if nothing was acknowledged yet.
+     */
+    static long readPosition(File directory) {
+        final File file = new File(directory, STATE_FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == STATE_MAGIC ? in.readLong() : 0;
+        } catch (IOException e) {
+            Log.w(APP_TAG, "Unreadable sync state of " + directory + ", starting over: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static void writePosition(File directory, long position) throws IOException {
+        final File file = new File(directory, STATE_FILE);
+        final File temporary = new File(directory, STATE_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeInt(STATE_MAGIC);
+            out.writeLong(position);
+            out.flush();
+            stream.getFD().sync();
+        }
+        // Replaced in one step, so a crash keeps either the old or the new position.
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
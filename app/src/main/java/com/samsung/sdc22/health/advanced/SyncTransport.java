@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.IOException;
+
+/**
+ * Carries {@link SyncEngine} chunks to the phone. Implementations block until the phone has
+ * stored a chunk, so a returned acknowledgement means the range is safe on the other side.
+ */
+public interface SyncTransport {
+    /**
+     * Sends the first {@code length} bytes of an encoded chunk and returns the position up to
+     * which the phone now holds the chunk's session.
+     *
+     * @throws IOException if the phone cannot be reached or did not acknowledge in time
+     */
+    long send(byte[] message, int length) throws IOException;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Drops samples the tracker delivers twice, which happens around flush boundaries when a
+ * batch is cut and part of it is delivered again with the next one.
+ * <p>
+ * Remembers the last {@code capacity} accepted timestamps. A timestamp newer than all of them
+ * is accepted without a lookup, one equal to a remembered timestamp is a duplicate, and one
+ * older than everything remembered is assumed to have been delivered already. Memory stays
+ * fixed however long collection runs.
+ * <p>
+ * Not thread-safe: {@link HeartRateListener} only uses it on the sensor thread.
+ */
+final class TimestampDeduplicator {
+    private final long[] window;
+    private int next = 0;
+    private int size = 0;
+    private long newest = Long.MIN_VALUE;
+
+    TimestampDeduplicator(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        window = new long[capacity];
+    }
+
+    /**
+     * Returns {@code true} and remembers {@code timestamp} if it was not seen before.
+     */
+    boolean accept(long timestamp) {
+        if (size == 0 || timestamp > newest) {
+            newest = timestamp;
+            remember(timestamp);
+            return true;
+        }
+        if (size == window.length && timestamp < window[next]) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (window[i] == timestamp) {
+                return false;
+            }
+        }
+        remember(timestamp);
+        return true;
+    }
+
+    void clear() {
+        next = 0;
+        size = 0;
+        newest = Long.MIN_VALUE;
+    }
+
+    private void remember(long timestamp) {
+        window[next] = timestamp;
+        next = next + 1 == window.length ? 0 : next + 1;
+        if (size < window.length) {
+            size++;
+        }
+    }
+}
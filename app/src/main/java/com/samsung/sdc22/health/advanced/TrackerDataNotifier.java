@@ -16,38 +16,581 @@
 
 package com.samsung.sdc22.health.advanced;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Fans tracker events out to registered {@link TrackerDataObserver}s.
+ * <p>
+ * Subscriptions are kept in one copy-on-write array per event kind, so an observer only
+ * receives the kinds it asked for. Registration takes a lock and publishes a new array;
+ * dispatch is a single volatile read followed by an indexed loop, so it never blocks on
+ * registration and allocates nothing.
+ * <p>
+ * Each dispatch is timed as a whole. One delivery in {@value #PROFILE_EVERY} is profiled
+ * per observer, and so is every delivery after one that went over the latency budget;
+ * profiling chains one clock read from the end of a call to the next (a mailbox post in
+ * between is charged to the following observer). An observer that is over budget for several
+ * profiled deliveries in a row is moved onto its own {@link ObserverMailbox}, so it can no
+ * longer hold up the sensor thread or the observers after it.
+ * <p>
+ * An observer can also declare how it wants to be fed when it subscribes, with
+ * {@link #addObserver(TrackerDataObserver, int, DeliveryStrategy)}: lossless with bounded
+ * blocking for recorders, conflated to the latest value for UI consumers, or sampled for
+ * low-priority analytics. Its mailbox then exists from the first event on.
+ */
 public class TrackerDataNotifier {
-    private static TrackerDataNotifier instance;
+    public static final int HEART_RATE = 1;
+    public static final int SPO2 = 1 << 1;
+    public static final int ERROR = 1 << 2;
+    public static final int ALL = HEART_RATE | SPO2 | ERROR;
+
+    public static final long DEFAULT_LATENCY_BUDGET_NANOS = 2_000_000L;
+    public static final int DEFAULT_STRIKES_BEFORE_ISOLATION = 3;
+    static final int PROFILE_EVERY = 16;
+
+    private static final Subscription[] EMPTY = new Subscription[0];
+
+    private final Object lock = new Object();
+    private final Clock clock;
+    private final AtomicLong migrations = new AtomicLong();
 
-    private final List<TrackerDataObserver> observers = new ArrayList<>();
+    private volatile long latencyBudgetNanos = DEFAULT_LATENCY_BUDGET_NANOS;
+    private volatile int strikesBeforeIsolation = DEFAULT_STRIKES_BEFORE_ISOLATION;
+    private volatile DeliveryStrategy isolationStrategy = DeliveryStrategy.dropOldest(DeliveryStrategy.DEFAULT_CAPACITY);
+
+    // Profiling schedule, shared by the sensor threads when each tracker has its own.
+    private final AtomicInteger dispatches = new AtomicInteger();
+    private final AtomicBoolean profileNext = new AtomicBoolean();
+
+    private volatile Subscription[] heartRateSubscriptions = EMPTY;
+    private volatile Subscription[] spO2Subscriptions = EMPTY;
+    private volatile Subscription[] errorSubscriptions = EMPTY;
+
+    private static class InstanceHolder {
+        static final TrackerDataNotifier INSTANCE = new TrackerDataNotifier();
+    }
 
     public static TrackerDataNotifier getInstance() {
-        if (instance == null) {
-            instance = new TrackerDataNotifier();
+        return InstanceHolder.INSTANCE;
+    }
+
+    TrackerDataNotifier() {
+        this(Clock.SYSTEM);
+    }
+
+    TrackerDataNotifier(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets when observers are isolated automatically: after {@code strikes} consecutive calls
+     * slower than {@code budgetNanos}, into a mailbox with {@code strategy}. A budget of
+     * {@link Long#MAX_VALUE} turns automatic isolation off.
+     */
+    public void setIsolationPolicy(long budgetNanos, int strikes, DeliveryStrategy strategy) {
+        if (budgetNanos <= 0 || strikes < 1) {
+            throw new IllegalArgumentException("budget and strikes must be positive");
+        }
+        latencyBudgetNanos = budgetNanos;
+        strikesBeforeIsolation = strikes;
+        isolationStrategy = strategy;
+    }
+
+    /**
+     * Delivers events to an already registered {@code observer} through its own mailbox from
+     * now on. Does nothing if it is not registered or already isolated.
+     */
+    public void isolate(TrackerDataObserver observer, DeliveryStrategy strategy) {
+        synchronized (lock) {
+            final Subscription subscription = find(observer);
+            if (subscription != null) {
+                isolateLocked(subscription, strategy);
+            }
         }
-        return instance;
     }
 
     public void addObserver(TrackerDataObserver observer) {
-        observers.add(observer);
+        addObserver(observer, ALL);
+    }
+
+    /**
+     * Registers {@code observer} for the event kinds in {@code kinds}, a mask of
+     * {@link #HEART_RATE}, {@link #SPO2} and {@link #ERROR}.
+     */
+    public void addObserver(TrackerDataObserver observer, int kinds) {
+        subscribe(new Subscription(observer, false), kinds, null);
+    }
+
+    /**
+     * Registers {@code observer} for {@code kinds} behind its own mailbox, so it is called on
+     * a worker thread and fed according to {@code strategy}. An observer that is already
+     * registered keeps the mailbox it has.
+     */
+    public void addObserver(TrackerDataObserver observer, int kinds, DeliveryStrategy strategy) {
+        if (strategy == null) {
+            throw new NullPointerException("strategy == null");
+        }
+        subscribe(new Subscription(observer, false), kinds, strategy);
+    }
+
+    /**
+     * Same as {@link #addObserver(TrackerDataObserver, int)}, but the notifier only holds a
+     * weak reference. Once the observer is collected its subscription is dropped on the next
+     * dispatch, so an activity that never reaches {@code onDestroy} does not leak.
+     */
+    public void addWeakObserver(TrackerDataObserver observer, int kinds) {
+        subscribe(new Subscription(observer, true), kinds, null);
     }
 
     public void removeObserver(TrackerDataObserver observer) {
-        observers.remove(observer);
+        synchronized (lock) {
+            final Subscription removed = find(observer);
+            heartRateSubscriptions = without(heartRateSubscriptions, observer);
+            spO2Subscriptions = without(spO2Subscriptions, observer);
+            errorSubscriptions = without(errorSubscriptions, observer);
+            if (removed != null) {
+                removed.close();
+            }
+        }
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} until the mailbox of {@code observer}, if it has one,
+     * has delivered everything posted to it, so removing the observer next loses nothing.
+     * Returns {@code false} on timeout.
+     */
+    public boolean awaitDelivered(TrackerDataObserver observer, long timeoutMillis) {
+        final Subscription subscription;
+        synchronized (lock) {
+            subscription = find(observer);
+        }
+        final ObserverMailbox mailbox = subscription != null ? subscription.mailbox : null;
+        return mailbox == null || mailbox.awaitDrained(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
     }
 
     public void notifyHeartRateTrackerObservers(HeartRateData hrData) {
-        observers.forEach(observer -> observer.onHeartRateTrackerDataChanged(hrData));
+        final Subscription[] subscriptions = heartRateSubscriptions;
+        boolean stale = false;
+        final boolean profiling = beginDispatch();
+        long start = clock.nanoTime();
+        for (int i = 0; i < subscriptions.length; i++) {
+            final Subscription subscription = subscriptions[i];
+            final TrackerDataObserver observer = subscription.get();
+            if (observer == null) {
+                stale = true;
+                continue;
+            }
+            final ObserverMailbox mailbox = subscription.mailbox;
+            if (mailbox != null) {
+                mailbox.postHeartRate(hrData);
+                continue;
+            }
+            observer.onHeartRateTrackerDataChanged(hrData);
+            if (profiling) {
+                final long end = clock.nanoTime();
+                track(subscription, end - start);
+                start = end;
+            }
+        }
+        if (!profiling) {
+            endDispatch(clock.nanoTime() - start);
+        }
+        if (stale) {
+            purgeCollected();
+        }
     }
 
     public void notifySpO2TrackerObservers(int status, int spO2Value) {
-        observers.forEach(observer -> observer.onSpO2TrackerDataChanged(status, spO2Value));
+        final Subscription[] subscriptions = spO2Subscriptions;
+        boolean stale = false;
+        final boolean profiling = beginDispatch();
+        long start = clock.nanoTime();
+        for (int i = 0; i < subscriptions.length; i++) {
+            final Subscription subscription = subscriptions[i];
+            final TrackerDataObserver observer = subscription.get();
+            if (observer == null) {
+                stale = true;
+                continue;
+            }
+            final ObserverMailbox mailbox = subscription.mailbox;
+            if (mailbox != null) {
+                mailbox.postSpO2(status, spO2Value);
+                continue;
+            }
+            observer.onSpO2TrackerDataChanged(status, spO2Value);
+            if (profiling) {
+                final long end = clock.nanoTime();
+                track(subscription, end - start);
+                start = end;
+            }
+        }
+        if (!profiling) {
+            endDispatch(clock.nanoTime() - start);
+        }
+        if (stale) {
+            purgeCollected();
+        }
+    }
+
+    public void notifyHeartRateBatch(HeartRateBatch batch) {
+        final Subscription[] subscriptions = heartRateSubscriptions;
+        boolean stale = false;
+        final boolean profiling = beginDispatch();
+        long start = clock.nanoTime();
+        for (int i = 0; i < subscriptions.length; i++) {
+            final Subscription subscription = subscriptions[i];
+            final TrackerDataObserver observer = subscription.get();
+            if (observer == null) {
+                stale = true;
+                continue;
+            }
+            final ObserverMailbox mailbox = subscription.mailbox;
+            if (mailbox != null) {
+                mailbox.postHeartRateBatch(batch);
+                continue;
+            }
+            observer.onHeartRateBatch(batch);
+            if (profiling) {
+                final long end = clock.nanoTime();
+                track(subscription, end - start);
+                start = end;
+            }
+        }
+        if (!profiling) {
+            endDispatch(clock.nanoTime() - start);
+        }
+        if (stale) {
+            purgeCollected();
+        }
+    }
+
+    public void notifySpO2Batch(SpO2Batch batch) {
+        final Subscription[] subscriptions = spO2Subscriptions;
+        boolean stale = false;
+        final boolean profiling = beginDispatch();
+        long start = clock.nanoTime();
+        for (int i = 0; i < subscriptions.length; i++) {
+            final Subscription subscription = subscriptions[i];
+            final TrackerDataObserver observer = subscription.get();
+            if (observer == null) {
+                stale = true;
+                continue;
+            }
+            final ObserverMailbox mailbox = subscription.mailbox;
+            if (mailbox != null) {
+                mailbox.postSpO2Batch(batch);
+                continue;
+            }
+            observer.onSpO2Batch(batch);
+            if (profiling) {
+                final long end = clock.nanoTime();
+                track(subscription, end - start);
+                start = end;
+            }
+        }
+        if (!profiling) {
+            endDispatch(clock.nanoTime() - start);
+        }
+        if (stale) {
+            purgeCollected();
+        }
     }
 
     public void notifyError(int errorResourceId) {
-        observers.forEach(observer -> observer.onError(errorResourceId));
+        final Subscription[] subscriptions = errorSubscriptions;
+        boolean stale = false;
+        final boolean profiling = beginDispatch();
+        long start = clock.nanoTime();
+        for (int i = 0; i < subscriptions.length; i++) {
+            final Subscription subscription = subscriptions[i];
+            final TrackerDataObserver observer = subscription.get();
+            if (observer == null) {
+                stale = true;
+                continue;
+            }
+            final ObserverMailbox mailbox = subscription.mailbox;
+            if (mailbox != null) {
+                mailbox.postError(errorResourceId);
+                continue;
+            }
+            observer.onError(errorResourceId);
+            if (profiling) {
+                final long end = clock.nanoTime();
+                track(subscription, end - start);
+                start = end;
+            }
+        }
+        if (!profiling) {
+            endDispatch(clock.nanoTime() - start);
+        }
+        if (stale) {
+            purgeCollected();
+        }
+    }
+
+    /**
+     * Returns how many observers were isolated automatically for going over budget.
+     */
+    public long getMigrationCount() {
+        return migrations.get();
+    }
+
+    /**
+     * Returns the events dropped by the mailboxes of the current observers.
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (Subscription subscription : allSubscriptions()) {
+            final ObserverMailbox mailbox = subscription.mailbox;
+            if (mailbox != null) {
+                dropped += mailbox.getDroppedCount();
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Appends one line of call timing and mailbox counters per observer: queue depth against
+     * capacity, high-water mark, drops and sampled-out events. Timings of inline observers are
+     * sampled from the profiled deliveries.
+     */
+    public void appendStats(StringBuilder out) {
+        out.append(String.format(Locale.US, "observers migrated=%d dropped=%d%n", getMigrationCount(), getDroppedCount()));
+        for (Subscription subscription : allSubscriptions()) {
+            final ObserverMailbox mailbox = subscription.mailbox;
+            out.append(String.format(Locale.US, "%-20s timed=%d mean=%.1fus max=%.1fus ",
+                    subscription.getName(), subscription.calls.get(), subscription.getMeanNanos() / 1e3,
+                    subscription.maxNanos.get() / 1e3));
+            if (mailbox == null) {
+                out.append("inline").append(String.format(Locale.US, "%n"));
+            } else {
+                out.append(String.format(Locale.US, "%s depth=%d/%d hwm=%d dropped=%d skipped=%d%n",
+                        mailbox.getStrategy(), mailbox.getQueuedCount(), mailbox.getCapacity(),
+                        mailbox.getHighWaterMark(), mailbox.getDroppedCount(), mailbox.getSkippedCount()));
+            }
+        }
+    }
+
+    /**
+     * Returns the mailbox {@code observer} is isolated in, or {@code null} if it is called
+     * on the dispatching thread.
+     */
+    ObserverMailbox getMailbox(TrackerDataObserver observer) {
+        synchronized (lock) {
+            final Subscription subscription = find(observer);
+            return subscription != null ? subscription.mailbox : null;
+        }
+    }
+
+    int getObserverCount(int kind) {
+        switch (kind) {
+            case HEART_RATE:
+                return heartRateSubscriptions.length;
+            case SPO2:
+                return spO2Subscriptions.length;
+            case ERROR:
+                return errorSubscriptions.length;
+            default:
+                throw new IllegalArgumentException("Unknown event kind: " + kind);
+        }
+    }
+
+    private void subscribe(Subscription subscription, int kinds, DeliveryStrategy strategy) {
+        if (subscription.get() == null) {
+            throw new NullPointerException("observer == null");
+        }
+        synchronized (lock) {
+            // One subscription per observer, so its timing and mailbox cover every kind.
+            final Subscription existing = find(subscription.get());
+            if (existing != null) {
+                subscription = existing;
+            }
+            if ((kinds & HEART_RATE) != 0) {
+                heartRateSubscriptions = with(heartRateSubscriptions, subscription);
+            }
+            if ((kinds & SPO2) != 0) {
+                spO2Subscriptions = with(spO2Subscriptions, subscription);
+            }
+            if ((kinds & ERROR) != 0) {
+                errorSubscriptions = with(errorSubscriptions, subscription);
+            }
+            if (strategy != null) {
+                isolateLocked(subscription, strategy);
+            }
+        }
+    }
+
+    private boolean beginDispatch() {
+        // Reads first, so the common case does not write the shared flag.
+        if (profileNext.get() && profileNext.compareAndSet(true, false)) {
+            return true;
+        }
+        return dispatches.incrementAndGet() % PROFILE_EVERY == 0;
+    }
+
+    private void endDispatch(long nanos) {
+        if (nanos > latencyBudgetNanos) {
+            profileNext.set(true);
+        }
+    }
+
+    private void track(Subscription subscription, long nanos) {
+        subscription.recordCall(nanos);
+        if (nanos <= latencyBudgetNanos) {
+            subscription.strikes.set(0);
+            return;
+        }
+        profileNext.set(true);
+        if (subscription.strikes.incrementAndGet() >= strikesBeforeIsolation) {
+            synchronized (lock) {
+                if (find(subscription.get()) == subscription && isolateLocked(subscription, isolationStrategy)) {
+                    migrations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private boolean isolateLocked(Subscription subscription, DeliveryStrategy strategy) {
+        if (subscription.mailbox != null) {
+            return false;
+        }
+        subscription.mailbox = new ObserverMailbox(subscription, strategy, clock);
+        return true;
+    }
+
+    private Subscription find(TrackerDataObserver observer) {
+        if (observer == null) {
+            return null;
+        }
+        for (Subscription subscription : allSubscriptions()) {
+            if (subscription.get() == observer) {
+                return subscription;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every subscription once, whatever kinds it is registered for.
+     */
+    private Subscription[] allSubscriptions() {
+        final Subscription[] heartRate = heartRateSubscriptions;
+        final Subscription[] spO2 = spO2Subscriptions;
+        final Subscription[] error = errorSubscriptions;
+        Subscription[] all = heartRate;
+        for (Subscription subscription : spO2) {
+            all = with(all, subscription);
+        }
+        for (Subscription subscription : error) {
+            all = with(all, subscription);
+        }
+        return all;
+    }
+
+    private void purgeCollected() {
+        synchronized (lock) {
+            for (Subscription subscription : allSubscriptions()) {
+                if (subscription.get() == null) {
+                    subscription.close();
+                }
+            }
+            heartRateSubscriptions = without(heartRateSubscriptions, null);
+            spO2Subscriptions = without(spO2Subscriptions, null);
+            errorSubscriptions = without(errorSubscriptions, null);
+        }
+    }
+
+    private static Subscription[] with(Subscription[] subscriptions, Subscription subscription) {
+        for (Subscription existing : subscriptions) {
+            if (existing.get() == subscription.get()) {
+                return subscriptions;
+            }
+        }
+        final Subscription[] copy = new Subscription[subscriptions.length + 1];
+        System.arraycopy(subscriptions, 0, copy, 0, subscriptions.length);
+        copy[subscriptions.length] = subscription;
+        return copy;
+    }
+
+    /**
+     * Returns {@code subscriptions} without the entries for {@code observer}; a {@code null}
+     * observer removes the entries whose referent has been collected.
+     */
+    private static Subscription[] without(Subscription[] subscriptions, TrackerDataObserver observer) {
+        int kept = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.get() != observer) {
+                kept++;
+            }
+        }
+        if (kept == subscriptions.length) {
+            return subscriptions;
+        }
+        if (kept == 0) {
+            return EMPTY;
+        }
+        final Subscription[] copy = new Subscription[kept];
+        int i = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.get() != observer) {
+                copy[i++] = subscription;
+            }
+        }
+        return copy;
+    }
+
+    static final class Subscription {
+        private final TrackerDataObserver strongRef;
+        private final WeakReference<TrackerDataObserver> weakRef;
+        private final String name;
+
+        // Profiled calls only, see the class comment.
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        // Consecutive over-budget profiled calls, from whichever sensor thread dispatched them.
+        final AtomicInteger strikes = new AtomicInteger();
+        volatile ObserverMailbox mailbox;
+
+        Subscription(TrackerDataObserver observer, boolean weak) {
+            strongRef = weak ? null : observer;
+            weakRef = weak ? new WeakReference<>(observer) : null;
+            final String className = observer == null ? "null" : observer.getClass().getName();
+            name = className.substring(className.lastIndexOf('.') + 1);
+        }
+
+        TrackerDataObserver get() {
+            return weakRef == null ? strongRef : weakRef.get();
+        }
+
+        String getName() {
+            return name;
+        }
+
+        double getMeanNanos() {
+            final long count = calls.get();
+            return count == 0 ? 0 : (double) totalNanos.get() / count;
+        }
+
+        void recordCall(long nanos) {
+            calls.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        void close() {
+            final ObserverMailbox current = mailbox;
+            if (current != null) {
+                current.close();
+            }
+        }
     }
 }
@@ -17,9 +17,34 @@
 package com.samsung.sdc22.health.advanced;
 
 public interface TrackerDataObserver {
+    /**
+     * {@code hrData} is reused by the listener for the next sample. Copy the fields (or
+     * {@link HeartRateData#pack()} them) before handing them to another thread.
+     */
     void onHeartRateTrackerDataChanged(HeartRateData hrData);
 
     void onSpO2TrackerDataChanged(int status, int spO2Value);
 
     void onError(int errorResourceId);
+
+    /**
+     * Receives every sample of one tracker delivery at once. The default implementation
+     * forwards each sample to {@link #onHeartRateTrackerDataChanged(HeartRateData)};
+     * override it to handle the delivery in a single pass (for example one UI post).
+     */
+    default void onHeartRateBatch(HeartRateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            onHeartRateTrackerDataChanged(batch.get(i));
+        }
+    }
+
+    /**
+     * Batch counterpart of {@link #onSpO2TrackerDataChanged(int, int)}, with the same
+     * per-sample default.
+     */
+    default void onSpO2Batch(SpO2Batch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            onSpO2TrackerDataChanged(batch.getStatus(i), batch.getSpO2Value(i));
+        }
+    }
 }
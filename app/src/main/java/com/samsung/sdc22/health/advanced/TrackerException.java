@@ -0,0 +1,38 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * A tracker error delivered to {@link java.util.concurrent.Flow.Subscriber#onError(Throwable)}
+ * by the tracker publishers. Carries the same string resource as
+ * {@link TrackerDataObserver#onError(int)}.
+ */
+public class TrackerException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int errorResourceId;
+
+    public TrackerException(int errorResourceId) {
+        super("Tracker error, resource 0x" + Integer.toHexString(errorResourceId));
+        this.errorResourceId = errorResourceId;
+    }
+
+    public int getErrorResourceId() {
+        return errorResourceId;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Operators for the tracker {@link Flow} streams. Each one runs on the thread that delivers
+ * the upstream signals and keeps demand in step: elements it filters out are requested again,
+ * and {@code request(n)} windows become {@code n * size} upstream.
+ * <p>
+ * The heart-rate stream reuses its {@link HeartRateData}, so operators that compare or hold on
+ * to elements take a key or a copy function instead of keeping references.
+ */
+public final class TrackerFlows {
+    private TrackerFlows() {
+    }
+
+    /**
+     * Passes an element only if its {@code key} differs from the previous element's, for
+     * example {@code distinctUntilChanged(spO2, SpO2Reading::getStatus)} to react to status
+     * changes only. The first element always passes.
+     */
+    public static <T> Flow.Publisher<T> distinctUntilChanged(Flow.Publisher<T> source, ToLongFunction<? super T> key) {
+        return subscriber -> source.subscribe(new Operator<T, T>(subscriber) {
+            private boolean first = true;
+            private long previous;
+
+            @Override
+            public void onNext(T item) {
+                final long current = key.applyAsLong(item);
+                if (!first && current == previous) {
+                    upstream.request(1);
+                    return;
+                }
+                first = false;
+                previous = current;
+                downstream.onNext(item);
+            }
+        });
+    }
+
+    /**
+     * Passes at most one element per {@code periodMillis}: the first one of each period,
+     * measured on {@code clock} from the previous element that was passed.
+     */
+    public static <T> Flow.Publisher<T> sample(Flow.Publisher<T> source, long periodMillis, Clock clock) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive: " + periodMillis);
+        }
+        final long periodNanos = periodMillis * 1_000_000L;
+        return subscriber -> source.subscribe(new Operator<T, T>(subscriber) {
+            private boolean first = true;
+            private long lastPassed;
+
+            @Override
+            public void onNext(T item) {
+                final long now = clock.nanoTime();
+                if (!first && now - lastPassed < periodNanos) {
+                    upstream.request(1);
+                    return;
+                }
+                first = false;
+                lastPassed = now;
+                downstream.onNext(item);
+            }
+        });
+    }
+
+    public static <T> Flow.Publisher<T> sample(Flow.Publisher<T> source, long periodMillis) {
+        return sample(source, periodMillis, Clock.SYSTEM);
+    }
+
+    /**
+     * Groups consecutive elements into lists of {@code size}, copying each with {@code copy}
+     * ({@code HeartRateData::copy} for heart rates, {@link UnaryOperator#identity()} for
+     * immutable elements). A partial last window is emitted on completion.
+     */
+    public static <T> Flow.Publisher<List<T>> window(Flow.Publisher<T> source, int size, UnaryOperator<T> copy) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        return subscriber -> source.subscribe(new Operator<T, List<T>>(subscriber) {
+            private List<T> current = new ArrayList<>(size);
+
+            @Override
+            public void request(long n) {
+                upstream.request(n > 0 && n >= Long.MAX_VALUE / size ? Long.MAX_VALUE : n * size);
+            }
+
+            @Override
+            public void onNext(T item) {
+                current.add(copy.apply(item));
+                if (current.size() == size) {
+                    final List<T> full = current;
+                    current = new ArrayList<>(size);
+                    downstream.onNext(full);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                if (!current.isEmpty()) {
+                    downstream.onNext(current);
+                    current = null;
+                }
+                downstream.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Subscriber to the upstream and subscription for the downstream; forwards everything
+     * except {@link #onNext(Object)}.
+     */
+    private abstract static class Operator<T, R> implements Flow.Subscriber<T>, Flow.Subscription {
+        final Flow.Subscriber<? super R> downstream;
+        Flow.Subscription upstream;
+
+        Operator(Flow.Subscriber<? super R> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+    }
+}
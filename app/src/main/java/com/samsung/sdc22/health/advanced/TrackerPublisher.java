@@ -0,0 +1,299 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} side of {@link TrackerDataNotifier}, shared by
+ * {@link HeartRatePublisher} and {@link SpO2Publisher}.
+ * <p>
+ * The publisher registers one inline observer with the notifier while it has subscribers.
+ * Each subscription buffers the samples its subscriber has not asked for yet, packed into
+ * longs, and hands them out on the subscriber's {@link Executor} as {@code request(n)} allows;
+ * the sensor thread only copies a long and never waits for a subscriber. When a buffer is full
+ * the oldest sample is dropped, so a buffer size of one conflates to the latest sample.
+ * Tracker errors end every subscription with a {@link TrackerException}.
+ */
+abstract class TrackerPublisher<T> implements Flow.Publisher<T> {
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+
+    private final TrackerDataNotifier notifier;
+    private final int kinds;
+    private final Executor executor;
+    private final int bufferSize;
+    private final Object lock = new Object();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Replaced, never modified, so the sensor thread can walk it without the lock.
+    private volatile List<PacketSubscription<T>> subscriptions = Collections.emptyList();
+    private boolean closed = false;
+
+    TrackerPublisher(TrackerDataNotifier notifier, int kinds, Executor executor, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.notifier = notifier;
+        this.kinds = kinds | TrackerDataNotifier.ERROR;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * The observer registered with the notifier while there are subscribers; it calls
+     * {@link #offer(long)} and {@link #fail(int)}.
+     */
+    abstract TrackerDataObserver getObserver();
+
+    /**
+     * Returns the per-subscription object {@link #element(long, Object)} may reuse, or
+     * {@code null}.
+     */
+    abstract T newScratch();
+
+    abstract T element(long packed, T scratch);
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber == null");
+        }
+        final PacketSubscription<T> subscription = new PacketSubscription<>(this, subscriber);
+        synchronized (lock) {
+            if (closed) {
+                subscription.complete();
+            } else {
+                if (subscriptions.isEmpty()) {
+                    notifier.addObserver(getObserver(), kinds);
+                }
+                final List<PacketSubscription<T>> copy = new ArrayList<>(subscriptions.size() + 1);
+                copy.addAll(subscriptions);
+                copy.add(subscription);
+                subscriptions = copy;
+            }
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Completes every subscription once its buffered samples are delivered and stops
+     * listening to the notifier. Later subscribers are completed right away.
+     */
+    public void close() {
+        final List<PacketSubscription<T>> current;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = subscriptions;
+            subscriptions = Collections.emptyList();
+            notifier.removeObserver(getObserver());
+        }
+        for (PacketSubscription<T> subscription : current) {
+            subscription.complete();
+            subscription.schedule();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Returns the samples dropped because a subscriber's buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    void offer(long packed) {
+        final List<PacketSubscription<T>> current = subscriptions;
+        for (int i = 0, size = current.size(); i < size; i++) {
+            current.get(i).offer(packed);
+        }
+    }
+
+    void fail(int errorResourceId) {
+        final List<PacketSubscription<T>> current = subscriptions;
+        if (current.isEmpty()) {
+            return;
+        }
+        final TrackerException error = new TrackerException(errorResourceId);
+        for (PacketSubscription<T> subscription : current) {
+            subscription.fail(error);
+        }
+    }
+
+    private void remove(PacketSubscription<T> subscription) {
+        synchronized (lock) {
+            final List<PacketSubscription<T>> current = subscriptions;
+            if (!current.contains(subscription)) {
+                return;
+            }
+            if (current.size() == 1) {
+                subscriptions = Collections.emptyList();
+                notifier.removeObserver(getObserver());
+                return;
+            }
+            final List<PacketSubscription<T>> copy = new ArrayList<>(current);
+            copy.remove(subscription);
+            subscriptions = copy;
+        }
+    }
+
+    /**
+     * One subscriber's buffer and demand. Signals are emitted by {@link #drain()}, which the
+     * work-in-progress counter keeps to one thread at a time, so they are never concurrent.
+     */
+    private static final class PacketSubscription<T> implements Flow.Subscription {
+        private final TrackerPublisher<T> publisher;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final long[] buffer;
+        private final T scratch;
+
+        // Guarded by this.
+        private int head = 0;
+        private int size = 0;
+        private long demand = 0;
+        private boolean done = false;
+        private Throwable error = null;
+
+        // Only touched by the draining thread.
+        private boolean subscribed = false;
+        // Set once cancelled or after the terminal signal.
+        private volatile boolean terminated = false;
+
+        PacketSubscription(TrackerPublisher<T> publisher, Flow.Subscriber<? super T> subscriber) {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+            buffer = new long[publisher.bufferSize];
+            scratch = publisher.newScratch();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    if (!done) {
+                        done = true;
+                        error = new IllegalArgumentException("request must be positive: " + n);
+                    }
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            terminated = true;
+            publisher.remove(this);
+        }
+
+        void offer(long packed) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (size == buffer.length) {
+                    head = (head + 1) % buffer.length;
+                    size--;
+                    publisher.dropped.incrementAndGet();
+                }
+                buffer[(head + size) % buffer.length] = packed;
+                size++;
+            }
+            schedule();
+        }
+
+        void fail(Throwable throwable) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                error = throwable;
+            }
+            schedule();
+        }
+
+        synchronized void complete() {
+            done = true;
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                publisher.executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                while (!terminated) {
+                    long packed = 0;
+                    Throwable failure = null;
+                    boolean finished = false;
+                    synchronized (this) {
+                        if (error != null) {
+                            // Errors cut ahead of buffered samples.
+                            failure = error;
+                            size = 0;
+                        } else if (size == 0 && done) {
+                            finished = true;
+                        } else if (size == 0 || demand == 0) {
+                            break;
+                        } else {
+                            packed = buffer[head];
+                            head = (head + 1) % buffer.length;
+                            size--;
+                            if (demand != Long.MAX_VALUE) {
+                                demand--;
+                            }
+                        }
+                    }
+                    if (failure != null || finished) {
+                        terminated = true;
+                        publisher.remove(this);
+                        if (failure != null) {
+                            subscriber.onError(failure);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                        break;
+                    }
+                    subscriber.onNext(publisher.element(packed, scratch));
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
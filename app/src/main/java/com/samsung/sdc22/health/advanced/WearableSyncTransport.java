@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import android.content.Context;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.gms.wearable.MessageClient;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link SyncTransport} over the Wearable Data Layer {@link MessageClient}.
+ * <p>
+ * A chunk goes to the connected phone on {@link #PATH_CHUNK}, prefixed with a request number
+ * (long, little endian). The phone app answers on {@link #PATH_ACK} with the same request
+ * number followed by the position it holds the session up to, once the chunk is stored.
+ */
+public class WearableSyncTransport implements SyncTransport, MessageClient.OnMessageReceivedListener, Closeable {
+    public final static String PATH_CHUNK = "/heart-rate/sync/chunk";
+    public final static String PATH_ACK = "/heart-rate/sync/ack";
+    final static long TIMEOUT_MILLIS = 30_000L;
+    private final static int REQUEST_SIZE = 8;
+    private final static int ACK_SIZE = 16;
+
+    private final MessageClient messageClient;
+    private final NodeClient nodeClient;
+    private final Object lock = new Object();
+    // Guarded by lock.
+    private long nextRequest = 0;
+    private long awaitedRequest = -1;
+    private long acknowledged = -1;
+
+    public WearableSyncTransport(Context context) {
+        messageClient = Wearable.getMessageClient(context);
+        nodeClient = Wearable.getNodeClient(context);
+        messageClient.addListener(this);
+    }
+
+    @Override
+    public long send(byte[] message, int length) throws IOException {
+        final String phone = findPhone();
+        final long request;
+        synchronized (lock) {
+            request = ++nextRequest;
+            awaitedRequest = request;
+            acknowledged = -1;
+        }
+        final byte[] data = new byte[REQUEST_SIZE + length];
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putLong(request).put(message, 0, length);
+        await(messageClient.sendMessage(phone, PATH_CHUNK, data));
+        synchronized (lock) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+            try {
+                while (acknowledged < 0) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IOException("No acknowledgement for sync request " + request);
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for sync request " + request);
+            } finally {
+                awaitedRequest = -1;
+            }
+            return acknowledged;
+        }
+    }
+
+    @Override
+    public void onMessageReceived(MessageEvent event) {
+        final byte[] data = event.getData();
+        if (!PATH_ACK.equals(event.getPath()) || data == null || data.length < ACK_SIZE) {
+            return;
+        }
+        final ByteBuffer ack = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        final long request = ack.getLong();
+        final long position = ack.getLong();
+        synchronized (lock) {
+            // Late answers to requests that already timed out are ignored.
+            if (request == awaitedRequest) {
+                acknowledged = position;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        messageClient.removeListener(this);
+    }
+
+    /**
+     * Returns the connected phone, preferring one that is directly connected.
+     */
+    private String findPhone() throws IOException {
+        final List<Node> nodes = await(nodeClient.getConnectedNodes());
+        Node phone = null;
+        for (Node node : nodes) {
+            if (phone == null || (node.isNearby() && !phone.isNearby())) {
+                phone = node;
+            }
+        }
+        if (phone == null) {
+            throw new IOException("No phone connected");
+        }
+        return phone.getId();
+    }
+
+    private static <T> T await(Task<T> task) throws IOException {
+        try {
+            return Tasks.await(task, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Data Layer call failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during a Data Layer call");
+        }
+    }
+}
@@ -17,8 +17,11 @@
 package com.samsung.sdc22.health.advanced;
 
 
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,8 +37,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 @RunWith(MockitoJUnitRunner.class)
 public class BaseListenerTest {
+    private final static long CALLER_BUDGET_MILLIS = 100;
 
     @Rule
     public ExpectedException expectedException;
@@ -114,6 +123,61 @@ public class BaseListenerTest {
         verify(handler, never()).removeCallbacksAndMessages(any());
     }
 
+    @Test
+    public void shouldNotBlockCallingThreadWhenStartTracker_P() throws InterruptedException {
+        //given
+        ExecutorService sensorThread = Executors.newSingleThreadExecutor();
+        CountDownLatch trackerReleased = new CountDownLatch(1);
+        baseListener.setHandler(handler);
+        baseListener.setHealthTracker(healthTracker);
+        baseListener.setTrackerEventListener(trackerEventListener);
+        baseListener.setHandlerRunning(false);
+        postTo(sensorThread);
+        doAnswer(invocation -> {
+            trackerReleased.await(2, TimeUnit.SECONDS);
+            return null;
+        }).when(healthTracker).setEventListener(any());
+
+        //when
+        long started = System.nanoTime();
+        baseListener.startTracker();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        trackerReleased.countDown();
+
+        //then
+        assertTrue("startTracker took " + elapsedMillis + " ms", elapsedMillis < CALLER_BUDGET_MILLIS);
+        verify(healthTracker, timeout(1000)).setEventListener(trackerEventListener);
+        sensorThread.shutdown();
+    }
+
+    @Test
+    public void shouldNotBlockCallingThreadWhenStopTracker_P() throws InterruptedException {
+        //given
+        ExecutorService sensorThread = Executors.newSingleThreadExecutor();
+        CountDownLatch trackerReleased = new CountDownLatch(1);
+        baseListener.setHandler(handler);
+        baseListener.setHealthTracker(healthTracker);
+        baseListener.setTrackerEventListener(trackerEventListener);
+        baseListener.setHandlerRunning(true);
+        postTo(sensorThread);
+        doAnswer(invocation -> {
+            trackerReleased.await(2, TimeUnit.SECONDS);
+            return null;
+        }).when(healthTracker).unsetEventListener();
+
+        //when
+        long started = System.nanoTime();
+        baseListener.stopTracker();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        trackerReleased.countDown();
+
+        //then
+        assertTrue("stopTracker took " + elapsedMillis + " ms", elapsedMillis < CALLER_BUDGET_MILLIS);
+        verify(healthTracker, timeout(1000)).unsetEventListener();
+        verify(handler).removeCallbacksAndMessages(any());
+        sensorThread.shutdown();
+    }
+
     @Test(expected = NullPointerException.class)
     public void shouldThrowNullPointerExceptionWhenHealthTrackerIsSetToNull_N() {
         //given
@@ -127,4 +191,11 @@ public class BaseListenerTest {
         baseListener.startTracker();
 
     }
+
+    private void postTo(ExecutorService sensorThread) {
+        when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+            sensorThread.execute(invocation.getArgument(0, Runnable.class));
+            return true;
+        });
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+
+import com.samsung.android.service.health.tracking.HealthTracker;
+import com.samsung.android.service.health.tracking.data.DataPoint;
+import com.samsung.android.service.health.tracking.data.Value;
+import com.samsung.android.service.health.tracking.data.ValueKey;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CollectionServiceTest {
+    private final static int SAMPLES = 50;
+
+    @Mock
+    Handler handler;
+
+    @Mock
+    HealthTracker healthTracker;
+
+    private final ExecutorService sensorThread = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        sensorThread.shutdownNow();
+    }
+
+    @Test
+    public void shouldHandOverPendingBatchWhenStopped_P() {
+        //given
+        CollectionService service = new CollectionService();
+        TrackerDataNotifier.getInstance().addObserver(service.getRollups(), TrackerDataNotifier.HEART_RATE);
+        HeartRateListener hrListener = new HeartRateListener();
+        hrListener.setHandler(handler);
+        hrListener.setHealthTracker(healthTracker);
+        hrListener.setHandlerRunning(true);
+        hrListener.setScheduler(new MeasurementScheduler(new ManualClock(), null));
+        hrListener.setBatchStats(new BatchStats("test"));
+        when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+            sensorThread.execute(invocation.getArgument(0, Runnable.class));
+            return true;
+        });
+        service.setListeners(hrListener, null);
+        hrListener.startBatchedCollection(HeartRateListener.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            dataPoints.add(createDataPoint(i * 1000L, 70));
+        }
+        // Still being delivered when the service stops.
+        handler.post(() -> {
+            sleep(200);
+            hrListener.readValuesFromDataPoints(dataPoints);
+        });
+
+        //when
+        service.stopCollection();
+
+        //then
+        RollupSeries series = new RollupSeries();
+        service.getRollups().query(0, HeartRateRollups.MINUTE_MILLIS, 1, series);
+        assertEquals(1, series.size());
+        assertEquals(SAMPLES, series.getCount(0));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static DataPoint createDataPoint(long timestamp, int hr) {
+        Map<ValueKey, Value> values = new HashMap<>();
+        values.put(ValueKey.HeartRateSet.STATUS, new Value<>(HeartRateStatus.HR_STATUS_FIND_HR));
+        values.put(ValueKey.HeartRateSet.HEART_RATE, new Value<>(hr));
+        values.put(ValueKey.HeartRateSet.HEART_RATE_IBI, new Value<>(800));
+        DataPoint dataPoint = spy(new DataPoint(values));
+        doReturn(timestamp).when(dataPoint).getTimestamp();
+        return dataPoint;
+    }
+}
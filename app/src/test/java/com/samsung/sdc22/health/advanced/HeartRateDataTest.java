@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HeartRateDataTest {
+
+    @Test
+    public void shouldRestoreAllFieldsFromPackedValue_P() {
+        //given
+        HeartRateData hrData = new HeartRateData(HeartRateStatus.HR_STATUS_NO_DATA_FLUSH, 187, HeartRateData.IBI_QUALITY_MASK, 1);
+        HeartRateData restored = new HeartRateData();
+
+        //when
+        restored.unpack(hrData.pack());
+
+        //then
+        assertEquals(hrData.status, restored.status);
+        assertEquals(hrData.hr, restored.hr);
+        assertEquals(hrData.ibi, restored.ibi);
+        assertEquals(hrData.qIbi, restored.qIbi);
+    }
+
+    @Test
+    public void shouldSplitIbiAndQualityFromHrIbi_P() {
+        //given
+        HeartRateData hrData = new HeartRateData();
+
+        //when
+        hrData.setHrIbi((1 << HeartRateData.IBI_QUALITY_SHIFT) | 812);
+
+        //then
+        assertEquals(812, hrData.ibi);
+        assertEquals(1, hrData.qIbi);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HeartRateHistoryTest {
+
+    @Mock
+    TrackerDataObserver viewer;
+
+    @Test
+    public void shouldReplayLatestWindowOldestFirst_P() {
+        //given
+        HeartRateHistory history = new HeartRateHistory(3);
+        HeartRateBatch delivery = new HeartRateBatch();
+        for (int i = 0; i < 5; i++) {
+            delivery.add(1_000L * i, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i, 800 + i, i & 1);
+        }
+        history.onHeartRateBatch(delivery);
+        RecordingViewer recordingViewer = new RecordingViewer();
+
+        //when
+        history.replayTo(recordingViewer);
+
+        //then
+        assertEquals(3, history.size());
+        HeartRateBatch replayed = recordingViewer.replayed;
+        assertEquals(3, replayed.size());
+        assertEquals(2_000L, replayed.getTimestamp(0));
+        assertEquals(62, replayed.getHr(0));
+        assertEquals(4_000L, replayed.getTimestamp(2));
+        assertEquals(64, replayed.getHr(2));
+        assertEquals(804, replayed.getIbi(2));
+        assertEquals(0, replayed.getQIbi(2));
+        assertEquals(1, replayed.getQIbi(1));
+    }
+
+    @Test
+    public void shouldNotReplayEmptyHistory_N() {
+        //given
+        HeartRateHistory history = new HeartRateHistory();
+
+        //when
+        history.replayTo(viewer);
+
+        //then
+        verify(viewer, never()).onHeartRateBatch(any(HeartRateBatch.class));
+    }
+
+    private static class RecordingViewer implements TrackerDataObserver {
+        final HeartRateBatch replayed = new HeartRateBatch();
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        }
+
+        @Override
+        public void onHeartRateBatch(HeartRateBatch batch) {
+            replayed.copyFrom(batch);
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+        }
+    }
+}
@@ -18,8 +18,17 @@ package com.samsung.sdc22.health.advanced;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
 
 import com.samsung.android.service.health.tracking.data.DataPoint;
 import com.samsung.android.service.health.tracking.data.Value;
@@ -27,19 +36,31 @@ import com.samsung.android.service.health.tracking.data.ValueKey;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HeartRateListenerTest {
+    private final static int WARM_UP_SAMPLES = 50_000;
+    private final static int MEASURED_SAMPLES = 100_000;
+    // Headroom for the allocation counter itself; one HeartRateData per sample would be ~3 MB.
+    private final static long ALLOCATION_BUDGET_BYTES = 16 * 1024;
 
     @Mock
     TrackerDataObserver trackerDataObserver;
 
+    @Mock
+    Handler handler;
+
     @InjectMocks
     HeartRateListener heartRateListener;
 
@@ -73,4 +94,191 @@ public class HeartRateListenerTest {
         TrackerDataNotifier.getInstance().removeObserver(trackerDataObserver);
 
     }
+
+    @Test
+    public void shouldNotifyOnceForWholeDelivery_P() {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        heartRateListener.setTrackerDataNotifier(notifier);
+        List<DataPoint> dataPoints = Arrays.asList(
+                createDataPoint(HeartRateStatus.HR_STATUS_FIND_HR, 71, 845),
+                createDataPoint(HeartRateStatus.HR_STATUS_FIND_HR, 73, 822 | (1 << HeartRateData.IBI_QUALITY_SHIFT)),
+                createDataPoint(HeartRateStatus.HR_STATUS_DETACHED, 0, 0));
+        ArgumentCaptor<HeartRateBatch> captor = ArgumentCaptor.forClass(HeartRateBatch.class);
+
+        //when
+        heartRateListener.readValuesFromDataPoints(dataPoints);
+
+        //then
+        verify(trackerDataObserver, times(1)).onHeartRateBatch(captor.capture());
+        verify(trackerDataObserver, never()).onHeartRateTrackerDataChanged(any(HeartRateData.class));
+        HeartRateBatch batch = captor.getValue();
+        assertEquals(3, batch.size());
+        assertEquals(71, batch.getHr(0));
+        assertEquals(845, batch.getIbi(0));
+        assertEquals(0, batch.getQIbi(0));
+        assertEquals(822, batch.getIbi(1));
+        assertEquals(1, batch.getQIbi(1));
+        assertEquals(HeartRateStatus.HR_STATUS_DETACHED, batch.getStatus(2));
+    }
+
+    @Test
+    public void shouldNotAllocatePerSampleWhenReadingValues_P() {
+        //given
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        CountingObserver countingObserver = new CountingObserver();
+        DataPoint dataPoint = createDataPoint(HeartRateStatus.HR_STATUS_FIND_HR, 100, 189 | (1 << HeartRateData.IBI_QUALITY_SHIFT));
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(countingObserver, TrackerDataNotifier.HEART_RATE);
+        heartRateListener.setTrackerDataNotifier(notifier);
+
+        //when
+        for (int i = 0; i < WARM_UP_SAMPLES; i++) {
+            heartRateListener.readValuesFromDataPoint(dataPoint);
+        }
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_SAMPLES; i++) {
+            heartRateListener.readValuesFromDataPoint(dataPoint);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        //then
+        assertEquals(WARM_UP_SAMPLES + MEASURED_SAMPLES, countingObserver.samples);
+        assertEquals(189, countingObserver.lastIbi);
+        assertTrue("allocated " + allocated + " bytes for " + MEASURED_SAMPLES + " samples",
+                allocated < ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    public void shouldNotifyOncePerFlushWhenBatched_P() {
+        //given
+        ManualClock clock = new ManualClock();
+        MeasurementScheduler scheduler = new MeasurementScheduler(clock, null);
+        BatchStats batchStats = new BatchStats("test");
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        runPostsInline();
+        heartRateListener.setTrackerDataNotifier(notifier);
+        heartRateListener.setScheduler(scheduler);
+        heartRateListener.setBatchStats(batchStats);
+        heartRateListener.startBatchedCollection(60_000);
+        HeartRateBatch batch = new HeartRateBatch();
+        doAnswer(invocation -> {
+            batch.copyFrom(invocation.getArgument(0));
+            return null;
+        }).when(trackerDataObserver).onHeartRateBatch(any(HeartRateBatch.class));
+
+        //when
+        heartRateListener.readValuesFromDataPoints(Arrays.asList(
+                createDataPoint(1_000, 70), createDataPoint(2_000, 71)));
+        heartRateListener.readValuesFromDataPoints(Arrays.asList(
+                createDataPoint(2_000, 71), createDataPoint(3_000, 72), createDataPoint(4_000, 73)));
+        verify(trackerDataObserver, never()).onHeartRateBatch(any(HeartRateBatch.class));
+        clock.advanceMillis(60_000);
+        int flushes = scheduler.runDueTasks();
+
+        //then
+        assertEquals(1, flushes);
+        verify(trackerDataObserver, times(1)).onHeartRateBatch(any(HeartRateBatch.class));
+        assertEquals(4, batch.size());
+        assertEquals(4_000, batch.getTimestamp(3));
+        assertEquals(73, batch.getHr(3));
+        assertEquals(2, batchStats.getDeliveryCount());
+        assertEquals(5, batchStats.getReceivedCount());
+        assertEquals(1, batchStats.getDuplicateCount());
+        assertEquals(1, batchStats.getFlushCount());
+    }
+
+    @Test
+    public void shouldHandOverCollectedSamplesWhenBatchingStops_P() {
+        //given
+        ManualClock clock = new ManualClock();
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        runPostsInline();
+        heartRateListener.setTrackerDataNotifier(notifier);
+        heartRateListener.setScheduler(new MeasurementScheduler(clock, null));
+        heartRateListener.setBatchStats(new BatchStats("test"));
+        heartRateListener.startBatchedCollection(60_000);
+        heartRateListener.readValuesFromDataPoints(Arrays.asList(createDataPoint(1_000, 70)));
+
+        //when
+        heartRateListener.stopBatchedCollection();
+        heartRateListener.readValuesFromDataPoints(Arrays.asList(createDataPoint(2_000, 71)));
+
+        //then
+        verify(trackerDataObserver, times(2)).onHeartRateBatch(any(HeartRateBatch.class));
+    }
+
+    @Test
+    public void shouldHandOverFullBatchWithoutFlush_N() {
+        //given
+        ManualClock clock = new ManualClock();
+        BatchStats batchStats = new BatchStats("test");
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        runPostsInline();
+        heartRateListener.setTrackerDataNotifier(notifier);
+        heartRateListener.setScheduler(new MeasurementScheduler(clock, null));
+        heartRateListener.setBatchStats(batchStats);
+        heartRateListener.startBatchedCollection(60_000);
+        AtomicLong timestamp = new AtomicLong();
+        DataPoint sample = spy(createDataPoint(HeartRateStatus.HR_STATUS_FIND_HR, 70, 800));
+        doAnswer(invocation -> timestamp.get()).when(sample).getTimestamp();
+
+        //when
+        // The tracker never completes a flush.
+        for (int i = 0; i <= HeartRateListener.MAX_PENDING_SAMPLES; i++) {
+            timestamp.set(i * 1000L);
+            heartRateListener.readValuesFromDataPoint(sample);
+        }
+
+        //then
+        verify(trackerDataObserver, times(1)).onHeartRateBatch(any(HeartRateBatch.class));
+        assertEquals(1, batchStats.getFlushCount());
+    }
+
+    private void runPostsInline() {
+        when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return true;
+        });
+    }
+
+    private static DataPoint createDataPoint(long timestamp, int hr) {
+        DataPoint dataPoint = spy(createDataPoint(HeartRateStatus.HR_STATUS_FIND_HR, hr, 800));
+        doReturn(timestamp).when(dataPoint).getTimestamp();
+        return dataPoint;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static DataPoint createDataPoint(int status, int hr, int hrIbi) {
+        Map<ValueKey, Value> values = new HashMap<>();
+        values.put(ValueKey.HeartRateSet.STATUS, new Value<>(status));
+        values.put(ValueKey.HeartRateSet.HEART_RATE, new Value<>(hr));
+        values.put(ValueKey.HeartRateSet.HEART_RATE_IBI, new Value<>(hrIbi));
+        return new DataPoint(values);
+    }
+
+    private static class CountingObserver implements TrackerDataObserver {
+        int samples;
+        int lastIbi;
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            samples++;
+            lastIbi = hrData.ibi;
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+        }
+    }
 }
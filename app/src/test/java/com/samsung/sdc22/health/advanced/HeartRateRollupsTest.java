@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class HeartRateRollupsTest {
+    // 2022-10-12T00:00:00Z
+    private final static long START_MILLIS = 1_665_532_800_000L;
+
+    private final HeartRateRollups rollups = new HeartRateRollups();
+    private final RollupSeries series = new RollupSeries();
+
+    @Test
+    public void shouldRollUpMinuteIncrementally_P() {
+        //given
+        for (int i = 0; i < 60; i++) {
+            rollups.add(START_MILLIS + i * 1_000L, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i % 10, i % 6 != 0);
+        }
+        for (int i = 60; i < 70; i++) {
+            rollups.add(START_MILLIS + i * 1_000L, HeartRateStatus.HR_STATUS_DETACHED, 0, false);
+        }
+
+        //when
+        long resolution = rollups.query(START_MILLIS, START_MILLIS + 120_000L, 2, series);
+
+        //then
+        assertEquals(HeartRateRollups.MINUTE_MILLIS, resolution);
+        assertEquals(2, series.size());
+        assertEquals(60, series.getCount(0));
+        assertEquals(60, series.getMin(0));
+        assertEquals(69, series.getMax(0));
+        assertEquals(64.5, series.getMean(0), 1e-9);
+        assertEquals(50, series.getValidIbiCount(0));
+        assertEquals(59_000, series.getStatusMillis(0, HeartRateStatus.HR_STATUS_FIND_HR));
+        assertEquals(0, series.getCount(1));
+        assertEquals(1_000, series.getStatusMillis(1, HeartRateStatus.HR_STATUS_FIND_HR));
+        assertEquals(9_000, series.getStatusMillis(1, HeartRateStatus.HR_STATUS_DETACHED));
+    }
+
+    @Test
+    public void shouldPickFinestResolutionWithinPointBudget_P() {
+        //given
+        for (int i = 0; i < 4 * 3600; i++) {
+            rollups.add(START_MILLIS + i * 1_000L, HeartRateStatus.HR_STATUS_FIND_HR, 70, true);
+        }
+        long end = START_MILLIS + 4 * 3600_000L;
+
+        //when
+        long lastMinutes = rollups.query(end - 600_000L, end, 1_000, series);
+        int lastMinutesSize = series.size();
+        long lastHours = rollups.query(end - 4 * 3600_000L, end, 500, series);
+        int lastHoursSize = series.size();
+        long lastMonth = rollups.query(end - 30 * 86_400_000L, end, 1_000, series);
+        int lastMonthSize = series.size();
+
+        //then
+        assertEquals(HeartRateRollups.SECOND_MILLIS, lastMinutes);
+        assertEquals(600, lastMinutesSize);
+        // Seconds only reach back two hours, so four hours come from minutes.
+        assertEquals(HeartRateRollups.MINUTE_MILLIS, lastHours);
+        assertEquals(240, lastHoursSize);
+        assertEquals(HeartRateRollups.HOUR_MILLIS, lastMonth);
+        assertEquals(4, lastMonthSize);
+        assertEquals(3600, series.getCount(0));
+    }
+
+    @Test
+    public void shouldRestoreSnapshot_P() throws IOException {
+        //given
+        for (int i = 0; i < 90; i++) {
+            rollups.add(START_MILLIS + i * 1_000L, HeartRateStatus.HR_STATUS_FIND_HR, 80, true);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        rollups.writeSnapshot(new DataOutputStream(bytes));
+        HeartRateRollups restored = new HeartRateRollups();
+
+        //when
+        restored.readSnapshot(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        restored.query(START_MILLIS, START_MILLIS + 120_000L, 2, series);
+
+        //then
+        assertEquals(2, series.size());
+        assertEquals(60, series.getCount(0));
+        assertEquals(30, series.getCount(1));
+        assertEquals(30_000, series.getStatusMillis(1, HeartRateStatus.HR_STATUS_FIND_HR));
+    }
+}
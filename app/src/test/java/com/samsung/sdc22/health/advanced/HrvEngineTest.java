@@ -0,0 +1,144 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class HrvEngineTest {
+    private final static double DELTA = 1e-9;
+    private final static long[] WINDOWS_MILLIS = {10_000L, 30_000L};
+
+    @Test
+    public void shouldMatchRecomputedStatisticsForEveryBeat_P() {
+        //given
+        HrvEngine hrvEngine = new HrvEngine(WINDOWS_MILLIS, 256);
+        List<long[]> accepted = new ArrayList<>();
+        Random random = new Random(42);
+        long timestamp = 0;
+        boolean chained = false;
+
+        for (int beat = 0; beat < 5_000; beat++) {
+            int ibi = 600 + random.nextInt(500);
+            int qIbi = random.nextInt(10) == 0 ? 1 : 0;
+            // Occasional sensor gap longer than every window.
+            timestamp += random.nextInt(200) == 0 ? 60_000 : ibi;
+
+            //when
+            hrvEngine.addBeat(timestamp, ibi, qIbi);
+
+            //then
+            if (qIbi == 0) {
+                accepted.add(new long[]{timestamp, ibi, chained ? 1 : 0});
+                chained = true;
+            } else {
+                chained = false;
+            }
+            for (int w = 0; w < WINDOWS_MILLIS.length; w++) {
+                assertWindowMatches(hrvEngine.getWindow(w), accepted, timestamp);
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepOnlyCapacityBeatsWhenWindowOutgrowsBuffer_P() {
+        //given
+        HrvEngine hrvEngine = new HrvEngine(new long[]{3_600_000L}, 64);
+
+        //when
+        for (int beat = 0; beat < 1_000; beat++) {
+            hrvEngine.addBeat(beat * 500L, 500 + (beat % 2) * 100, 0);
+        }
+
+        //then
+        HrvEngine.Window window = hrvEngine.getWindow(0);
+        assertEquals(64, window.getBeatCount());
+        assertEquals(100.0, window.getRmssd(), DELTA);
+        assertEquals(100.0, window.getPnn50(), DELTA);
+        assertEquals(60_000.0 / 550, window.getMeanHr(), DELTA);
+    }
+
+    @Test
+    public void shouldSkipBeatsOutsideFindHrStatus_N() {
+        //given
+        HrvEngine hrvEngine = new HrvEngine();
+        HeartRateBatch batch = new HeartRateBatch();
+        batch.add(1_000, HeartRateStatus.HR_STATUS_FIND_HR, 60, 1_000, 0);
+        batch.add(2_000, HeartRateStatus.HR_STATUS_DETACHED, 0, 700, 0);
+        batch.add(3_000, HeartRateStatus.HR_STATUS_FIND_HR, 61, 980, 0);
+
+        //when
+        hrvEngine.onHeartRateBatch(batch);
+
+        //then
+        HrvEngine.Window window = hrvEngine.getWindow(0);
+        assertEquals(2, window.getBeatCount());
+        assertTrue(Double.isNaN(window.getRmssd()));
+    }
+
+    private static void assertWindowMatches(HrvEngine.Window window, List<long[]> accepted, long now) {
+        long sum = 0;
+        int count = 0;
+        double squareDiffSum = 0;
+        int diffCount = 0;
+        int nn50 = 0;
+        List<Long> ibis = new ArrayList<>();
+        long previousIbi = -1;
+        for (long[] beat : accepted) {
+            if (beat[0] <= now - window.getDurationMillis()) {
+                continue;
+            }
+            if (previousIbi >= 0 && beat[2] == 1) {
+                long diff = beat[1] - previousIbi;
+                squareDiffSum += diff * diff;
+                diffCount++;
+                if (Math.abs(diff) > 50) {
+                    nn50++;
+                }
+            }
+            previousIbi = beat[1];
+            sum += beat[1];
+            count++;
+            ibis.add(beat[1]);
+        }
+
+        assertEquals(count, window.getBeatCount());
+        if (count == 0) {
+            return;
+        }
+        double mean = (double) sum / count;
+        assertEquals(60_000.0 / mean, window.getMeanHr(), DELTA);
+        if (count > 1) {
+            double variance = 0;
+            for (long ibi : ibis) {
+                variance += (ibi - mean) * (ibi - mean);
+            }
+            assertEquals(Math.sqrt(variance / (count - 1)), window.getSdnn(), 1e-6);
+        }
+        if (diffCount > 0) {
+            assertEquals(Math.sqrt(squareDiffSum / diffCount), window.getRmssd(), 1e-6);
+            assertEquals(100.0 * nn50 / diffCount, window.getPnn50(), DELTA);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest {
+    private final static double MAX_RELATIVE_ERROR = 1.0 / (LatencyHistogram.SUB_BUCKETS / 2);
+
+    @Test
+    public void shouldMapEveryValueIntoItsBucketBounds_P() {
+        //given
+        Random random = new Random(3);
+
+        for (int i = 0; i < 100_000; i++) {
+            //when
+            long value = random.nextLong() & LatencyHistogram.MAX_TRACKABLE_NANOS >>> random.nextInt(36);
+            int index = LatencyHistogram.bucketIndex(value);
+
+            //then
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            assertTrue(LatencyHistogram.bucketLowerBound(index) <= value);
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_NANOS));
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision_P() {
+        //given
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        Random random = new Random(5);
+        long[] values = new long[50_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            //when
+            long reported = histogram.getValueAtPercentile(percentile);
+
+            //then
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported <= exact * (1 + MAX_RELATIVE_ERROR) + 1);
+        }
+        assertEquals(values.length, histogram.getTotalCount());
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+    }
+
+    @Test
+    public void shouldClampOutOfRangeValues_N() {
+        //given
+        LatencyHistogram histogram = new LatencyHistogram("test");
+
+        //when
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        //then
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void shouldWriteNonEmptyBucketsToSnapshot_P() throws IOException {
+        //given
+        LatencyHistogram histogram = new LatencyHistogram("hr.dispatch-ui");
+        histogram.record(1_000);
+        histogram.record(1_000);
+        histogram.record(16_000_000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        //when
+        histogram.writeTo(new DataOutputStream(bytes));
+
+        //then
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("hr.dispatch-ui", in.readUTF());
+        assertEquals(LatencyHistogram.SUB_BUCKET_BITS, in.readInt());
+        assertEquals(3, in.readLong());
+        assertEquals(16_002_000, in.readLong());
+        assertEquals(16_000_000, in.readLong());
+        assertEquals(2, in.readInt());
+        assertEquals(LatencyHistogram.bucketIndex(1_000), in.readInt());
+        assertEquals(2, in.readLong());
+        assertEquals(LatencyHistogram.bucketIndex(16_000_000), in.readInt());
+        assertEquals(1, in.readLong());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void shouldRecordPipelineStagesOncePerDispatch_P() {
+        //given
+        ManualClock clock = new ManualClock();
+        PipelineLatency latency = new PipelineLatency("hr", clock);
+
+        //when
+        latency.onIngress();
+        clock.advanceNanos(2_000);
+        latency.onDispatch();
+        clock.advanceMillis(5);
+        latency.onUiApplied();
+        clock.advanceMillis(16);
+        latency.onUiApplied();
+
+        //then
+        assertEquals(1, latency.ingressToDispatch.getTotalCount());
+        assertEquals(2_000, latency.ingressToDispatch.getMaxNanos());
+        assertEquals(1, latency.dispatchToUi.getTotalCount());
+        assertEquals(5_000_000, latency.dispatchToUi.getMaxNanos());
+        assertEquals(5_002_000, latency.ingressToUi.getMaxNanos());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+
+/**
+ * In-process stand-in for the phone side of {@link SyncEngine}: decodes each chunk, appends
+ * it to the session when it continues it, and acknowledges the position it holds. Can drop
+ * chunks or acknowledgements to simulate a flaky link.
+ */
+class LoopbackSyncTransport implements SyncTransport {
+    private final Inflater inflater = new Inflater();
+    private final Map<String, ByteArrayOutputStream> sessions = new HashMap<>();
+    private final Map<String, Long> ends = new HashMap<>();
+
+    int messages = 0;
+    int duplicates = 0;
+    int bytesSent = 0;
+    // Chunks lost on the way to the phone, then acknowledgements lost on the way back.
+    int failSends = 0;
+    int loseAcks = 0;
+    // Runs before a chunk is received, so a test can write while a sync is under way.
+    Runnable onSend = null;
+
+    @Override
+    public long send(byte[] message, int length) throws IOException {
+        if (onSend != null) {
+            onSend.run();
+        }
+        if (failSends > 0) {
+            failSends--;
+            throw new IOException("Phone out of range");
+        }
+        messages++;
+        bytesSent += length;
+        final SyncChunk chunk = SyncChunk.decode(message, length, inflater);
+        final Long end = ends.get(chunk.session);
+        final boolean continues = end == null || end == chunk.from
+                || (int) (chunk.from >>> 32) > (int) (end >>> 32) && (int) chunk.from == SessionLog.HEADER_SIZE;
+        if (end != null && chunk.to <= end) {
+            duplicates++;
+        } else if (continues) {
+            sessions.computeIfAbsent(chunk.session, session -> new ByteArrayOutputStream())
+                    .write(chunk.records, 0, chunk.length);
+            ends.put(chunk.session, chunk.to);
+        }
+        if (loseAcks > 0) {
+            loseAcks--;
+            throw new IOException("Acknowledgement lost");
+        }
+        return ends.getOrDefault(chunk.session, 0L);
+    }
+
+    /**
+     * Record slots received for {@code session}, commit records included.
+     */
+    byte[] getRecords(String session) {
+        final ByteArrayOutputStream records = sessions.get(session);
+        return records != null ? records.toByteArray() : new byte[0];
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+/**
+ * Virtual {@link Clock} for tests: time only moves through {@link #advanceNanos(long)} or
+ * {@link #sleepNanos(long)}, which returns immediately.
+ */
+class ManualClock implements Clock {
+    private long nanos;
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public void sleepNanos(long nanos) {
+        advanceNanos(nanos);
+    }
+
+    void advanceNanos(long nanos) {
+        this.nanos += nanos;
+    }
+
+    void advanceMillis(long millis) {
+        advanceNanos(millis * 1_000_000L);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class MeasurementSchedulerTest {
+    private final ManualClock clock = new ManualClock();
+    private final MeasurementScheduler scheduler = new MeasurementScheduler(clock, null);
+
+    @Test
+    public void shouldRunTasksWhenDueOnVirtualClock_P() {
+        //given
+        List<String> ran = new ArrayList<>();
+        scheduler.schedule(() -> ran.add("timeout"), 35_000);
+        scheduler.schedule(() -> ran.add("first"), 100);
+        scheduler.schedule(() -> ran.add("second"), 100);
+
+        //when
+        int early = scheduler.runDueTasks();
+        clock.advanceMillis(100);
+        int atFirst = scheduler.runDueTasks();
+        clock.advanceMillis(35_000);
+        int atTimeout = scheduler.runDueTasks();
+
+        //then
+        assertEquals(0, early);
+        assertEquals(2, atFirst);
+        assertEquals(1, atTimeout);
+        assertEquals(Arrays.asList("first", "second", "timeout"), ran);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void shouldSkipMissedTicksOfFixedRateTask_P() {
+        //given
+        int[] ticks = new int[1];
+        MeasurementScheduler.Task task = scheduler.scheduleAtFixedRate(() -> ticks[0]++, 250, 250);
+
+        //when
+        for (int i = 0; i < 4; i++) {
+            clock.advanceMillis(250);
+            scheduler.runDueTasks();
+        }
+        clock.advanceMillis(10_000);
+        scheduler.runDueTasks();
+        clock.advanceMillis(250);
+        scheduler.runDueTasks();
+        task.cancel();
+        clock.advanceMillis(250);
+        scheduler.runDueTasks();
+
+        //then
+        assertEquals(6, ticks[0]);
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask_N() {
+        //given
+        int[] runs = new int[1];
+        MeasurementScheduler.Task task = scheduler.schedule(() -> runs[0]++, 100);
+
+        //when
+        task.cancel();
+        clock.advanceMillis(100);
+
+        //then
+        assertEquals(0, scheduler.runDueTasks());
+        assertEquals(0, runs[0]);
+        assertTrue(task.isCancelled());
+    }
+
+    @Test
+    public void shouldRetryWithDoublingDelayUntilSuccess_P() {
+        //given
+        List<Long> attempts = new ArrayList<>();
+        scheduler.retry(() -> {
+            attempts.add(clock.nanoTime() / 1_000_000L);
+            return attempts.size() == 4;
+        }, 10, 100, 300);
+
+        //when
+        for (int i = 0; i < 20; i++) {
+            clock.advanceMillis(50);
+            scheduler.runDueTasks();
+        }
+
+        //then
+        assertEquals(Arrays.asList(100L, 300L, 600L, 900L), attempts);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxAttempts_N() {
+        //given
+        int[] attempts = new int[1];
+        scheduler.retry(() -> ++attempts[0] < 0, 3, 100, 100);
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            clock.advanceMillis(100);
+            scheduler.runDueTasks();
+        }
+
+        //then
+        assertEquals(3, attempts[0]);
+    }
+
+    @Test
+    public void shouldWakeUpOnItsOwnWithExecutor_P() throws InterruptedException {
+        //given
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        MeasurementScheduler realScheduler = new MeasurementScheduler(Clock.SYSTEM, executor);
+        CountDownLatch done = new CountDownLatch(2);
+
+        //when
+        realScheduler.schedule(done::countDown, 50);
+        realScheduler.schedule(done::countDown, 10);
+
+        //then
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        executor.shutdownNow();
+    }
+}
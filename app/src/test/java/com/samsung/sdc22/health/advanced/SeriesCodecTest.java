@@ -0,0 +1,155 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SeriesCodecTest {
+    private final static int SESSION_SAMPLES = 8 * 3600;
+    private final static int BLOCK_SAMPLES = 1024;
+    private final static int RAW_RECORD_SIZE = SessionLog.RECORD_SIZE;
+
+    @Test
+    public void shouldRoundTripSession_P() {
+        //given
+        HeartRateBatch session = createSession(new Random(7), SESSION_SAMPLES);
+        byte[] buffer = new byte[SeriesEncoder.maxEncodedSize(BLOCK_SAMPLES) * (SESSION_SAMPLES / BLOCK_SAMPLES + 1)];
+        SeriesEncoder encoder = new SeriesEncoder();
+        SeriesDecoder decoder = new SeriesDecoder();
+
+        //when
+        int end = 0;
+        for (int from = 0; from < SESSION_SAMPLES; from += BLOCK_SAMPLES) {
+            end = encoder.encode(session, from, Math.min(BLOCK_SAMPLES, SESSION_SAMPLES - from), buffer, end);
+        }
+        HeartRateBatch decoded = new HeartRateBatch();
+        int offset = 0;
+        int sample = 0;
+        while (offset < end) {
+            offset = decoder.decode(buffer, offset, decoded);
+            for (int i = 0; i < decoded.size(); i++, sample++) {
+                assertSample(session, sample, decoded, i);
+            }
+        }
+
+        //then
+        assertEquals(end, offset);
+        assertEquals(SESSION_SAMPLES, sample);
+    }
+
+    @Test
+    public void shouldRoundTripExtremeValues_P() {
+        //given
+        HeartRateBatch batch = new HeartRateBatch();
+        batch.add(Long.MIN_VALUE, HeartRateStatus.HR_STATUS_NO_DATA_FLUSH, 0, 0, 1);
+        batch.add(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, HeartRateData.IBI_QUALITY_MASK, 0);
+        batch.add(0L, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, 1);
+        batch.add(0L, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, 1);
+        byte[] buffer = new byte[SeriesEncoder.maxEncodedSize(batch.size())];
+
+        //when
+        int end = new SeriesEncoder().encode(batch, buffer, 0);
+        HeartRateBatch decoded = new HeartRateBatch();
+        int offset = new SeriesDecoder().decode(buffer, 0, decoded);
+
+        //then
+        assertEquals(end, offset);
+        assertEquals(batch.size(), decoded.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertSample(batch, i, decoded, i);
+        }
+    }
+
+    @Test
+    public void shouldEncodeEmptyBlock_P() {
+        //given
+        byte[] buffer = new byte[SeriesEncoder.maxEncodedSize(0)];
+        HeartRateBatch decoded = new HeartRateBatch();
+        decoded.add(1L, HeartRateStatus.HR_STATUS_FIND_HR, 60, 1000, 0);
+
+        //when
+        int end = new SeriesEncoder().encode(new HeartRateBatch(), buffer, 0);
+        int offset = new SeriesDecoder().decode(buffer, 0, decoded);
+
+        //then
+        assertEquals(1, end);
+        assertEquals(end, offset);
+        assertEquals(0, decoded.size());
+    }
+
+    @Test
+    public void shouldCompressSessionAtLeastFiveTimes_P() {
+        //given
+        HeartRateBatch session = createSession(new Random(42), SESSION_SAMPLES);
+        byte[] buffer = new byte[SeriesEncoder.maxEncodedSize(BLOCK_SAMPLES)];
+        SeriesEncoder encoder = new SeriesEncoder();
+
+        //when
+        long encodedBytes = 0;
+        for (int from = 0; from < SESSION_SAMPLES; from += BLOCK_SAMPLES) {
+            encodedBytes += encoder.encode(session, from, Math.min(BLOCK_SAMPLES, SESSION_SAMPLES - from), buffer, 0);
+        }
+
+        //then
+        double ratio = (double) SESSION_SAMPLES * RAW_RECORD_SIZE / encodedBytes;
+        assertTrue("Compression ratio " + ratio, ratio >= 5.0);
+    }
+
+    /**
+     * Approximates a tracker session: one sample per second with a few milliseconds of
+     * delivery jitter, a slowly drifting heart rate, beat-to-beat IBI variation and
+     * occasional stretches of movement.
+     */
+    static HeartRateBatch createSession(Random random, int samples) {
+        HeartRateBatch session = new HeartRateBatch();
+        long timestamp = 1_660_000_000_000L;
+        int hr = 70;
+        int moving = 0;
+        for (int i = 0; i < samples; i++) {
+            timestamp += 1000 + random.nextInt(7) - 3;
+            if (random.nextInt(8) == 0) {
+                hr = Math.max(45, Math.min(160, hr + random.nextInt(3) - 1));
+            }
+            if (moving == 0 && random.nextInt(600) == 0) {
+                moving = 5 + random.nextInt(20);
+            }
+            int status = HeartRateStatus.HR_STATUS_FIND_HR;
+            if (moving > 0) {
+                moving--;
+                status = HeartRateStatus.HR_STATUS_DETECT_MOVE;
+            }
+            int ibi = 60_000 / hr + random.nextInt(41) - 20;
+            int qIbi = random.nextInt(50) == 0 ? 1 : 0;
+            session.add(timestamp, status, hr, ibi, qIbi);
+        }
+        return session;
+    }
+
+    private static void assertSample(HeartRateBatch expected, int expectedIndex, HeartRateBatch actual, int actualIndex) {
+        assertEquals(expected.getTimestamp(expectedIndex), actual.getTimestamp(actualIndex));
+        assertEquals(expected.getStatus(expectedIndex), actual.getStatus(actualIndex));
+        assertEquals(expected.getHr(expectedIndex), actual.getHr(actualIndex));
+        assertEquals(expected.getIbi(expectedIndex), actual.getIbi(actualIndex));
+        assertEquals(expected.getQIbi(expectedIndex), actual.getQIbi(actualIndex));
+    }
+}
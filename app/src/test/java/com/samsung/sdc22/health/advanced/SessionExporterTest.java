@@ -0,0 +1,203 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class SessionExporterTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldExportCsvWithStatusNames_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        try (SessionLog sessionLog = SessionLog.open(directory)) {
+            sessionLog.appendHeartRate(1665532800000L, HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+            sessionLog.appendHeartRate(1665532801000L, HeartRateStatus.HR_STATUS_DETACHED, 0, 0, 1);
+            sessionLog.appendSpO2(1665532805000L, SpO2Status.MEASUREMENT_COMPLETED, 97);
+            sessionLog.appendSpO2(1665532806000L, -7, 0);
+        }
+        File output = new File(temporaryFolder.getRoot(), "session.csv");
+
+        //when
+        long records = new SessionExporter(directory, output, SessionExporter.FORMAT_CSV).call();
+
+        //then
+        assertEquals(4, records);
+        List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.US_ASCII);
+        assertEquals(5, lines.size());
+        assertEquals("timestamp,type,status,value,ibi,ibi_quality", lines.get(0));
+        assertEquals("1665532800000,HR,HR_STATUS_FIND_HR,72,833,0", lines.get(1));
+        assertEquals("1665532801000,HR,HR_STATUS_DETACHED,0,0,1", lines.get(2));
+        assertEquals("1665532805000,SPO2,MEASUREMENT_COMPLETED,97,,", lines.get(3));
+        assertEquals("1665532806000,SPO2,-7,0,,", lines.get(4));
+    }
+
+    @Test
+    public void shouldExportBinaryRecordsOfEverySegment_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        int segmentSize = SessionLog.HEADER_SIZE + 100 * SessionLog.RECORD_SIZE;
+        try (SessionLog sessionLog = SessionLog.open(directory, segmentSize, SessionLog.DEFAULT_COMMIT_RECORDS,
+                SessionLog.DEFAULT_COMMIT_INTERVAL_MILLIS, Clock.SYSTEM, new CommitStats("test"), Runnable::run)) {
+            for (int i = 0; i < 250; i++) {
+                sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i % 40, 900, 0);
+            }
+        }
+        File output = new File(temporaryFolder.getRoot(), "session.bin");
+
+        //when
+        long records = new SessionExporter(directory, output, SessionExporter.FORMAT_BINARY).call();
+
+        //then
+        ByteBuffer exported = ByteBuffer.wrap(Files.readAllBytes(output.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(SessionExporter.BINARY_MAGIC, exported.getInt(0));
+        assertEquals(records, exported.getLong(8));
+        assertEquals(SessionExporter.BINARY_HEADER_SIZE + records * SessionLog.RECORD_SIZE, exported.capacity());
+        int samples = 0;
+        for (int i = 0; i < records; i++) {
+            int position = SessionExporter.BINARY_HEADER_SIZE + i * SessionLog.RECORD_SIZE;
+            if (exported.get(position + SessionLog.OFFSET_TYPE) == SessionLog.TYPE_HEART_RATE) {
+                assertEquals(samples * 1000L, exported.getLong(position + SessionLog.OFFSET_TIMESTAMP));
+                samples++;
+            } else {
+                assertEquals(SessionLog.TYPE_COMMIT, exported.get(position + SessionLog.OFFSET_TYPE));
+            }
+        }
+        assertEquals(250, samples);
+    }
+
+    @Test
+    public void shouldExportHeartRateSeriesInCompressedBlocks_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        int samples = 5000;
+        try (SessionLog sessionLog = SessionLog.open(directory)) {
+            for (int i = 0; i < samples; i++) {
+                sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i / 50 % 20,
+                        900 + i % 7, 0);
+                if (i % 10 == 9) {
+                    sessionLog.appendSpO2(i * 1000L + 500, SpO2Status.MEASUREMENT_COMPLETED, 97);
+                }
+            }
+        }
+        File output = new File(temporaryFolder.getRoot(), "session.series");
+
+        //when
+        long records = new SessionExporter(directory, output, SessionExporter.FORMAT_SERIES).call();
+
+        //then
+        assertEquals(samples, records);
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        ByteBuffer exported = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(SessionExporter.SERIES_MAGIC, exported.getInt(0));
+        assertEquals(samples, exported.getLong(8));
+        assertTrue(bytes.length * 5L < samples * SessionLog.RECORD_SIZE);
+        SeriesDecoder decoder = new SeriesDecoder();
+        HeartRateBatch batch = new HeartRateBatch();
+        int decoded = 0;
+        for (int offset = SessionExporter.SERIES_HEADER_SIZE; offset < bytes.length; ) {
+            int length = exported.getInt(offset);
+            assertEquals(offset + 4 + length, decoder.decode(bytes, offset + 4, batch));
+            for (int i = 0; i < batch.size(); i++, decoded++) {
+                assertEquals(decoded * 1000L, batch.getTimestamp(i));
+                assertEquals(60 + decoded / 50 % 20, batch.getHr(i));
+                assertEquals(900 + decoded % 7, batch.getIbi(i));
+            }
+            offset += 4 + length;
+        }
+        assertEquals(samples, decoded);
+    }
+
+    @Test
+    public void shouldExportOnlyVerifiedFramesOfCrashedSession_N() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        // Never closed or reopened. Slots: records 0-3, commit, records 4-7, commit, records 8-9
+        // uncommitted; then record 5 is torn.
+        SessionLog crashed = SessionLog.open(directory, SessionLog.DEFAULT_SEGMENT_SIZE, 4, 60_000L,
+                new ManualClock(), new CommitStats("test"));
+        for (int i = 0; i < 10; i++) {
+            crashed.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 70, 850, 0);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(SessionLog.listSegments(directory)[0], "rw")) {
+            file.seek(SessionLog.HEADER_SIZE + 6 * SessionLog.RECORD_SIZE + SessionLog.OFFSET_VALUE);
+            file.write(0x7F);
+        }
+        File csv = new File(temporaryFolder.getRoot(), "session.csv");
+        File binary = new File(temporaryFolder.getRoot(), "session.bin");
+
+        //when
+        long csvRecords = new SessionExporter(directory, csv, SessionExporter.FORMAT_CSV).call();
+        long binaryRecords = new SessionExporter(directory, binary, SessionExporter.FORMAT_BINARY).call();
+
+        //then
+        assertEquals(4, csvRecords);
+        List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.US_ASCII);
+        assertEquals(5, lines.size());
+        assertEquals("3000,HR,HR_STATUS_FIND_HR,70,850,0", lines.get(4));
+        assertEquals(5, binaryRecords);
+        assertEquals(SessionExporter.BINARY_HEADER_SIZE + 5 * SessionLog.RECORD_SIZE, binary.length());
+    }
+
+    @Test
+    public void shouldDeleteOutputWhenCancelled_N() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        try (SessionLog sessionLog = SessionLog.open(directory)) {
+            for (int i = 0; i < 20_000; i++) {
+                sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 70, 850, 0);
+            }
+        }
+        File output = new File(temporaryFolder.getRoot(), "session.csv");
+        SessionExporter exporter = new SessionExporter(directory, output, SessionExporter.FORMAT_CSV);
+        exporter.setProgressListener((records, totalRecords) -> exporter.cancel());
+
+        //when
+        try {
+            exporter.call();
+            fail("Export should have been cancelled");
+        } catch (CancellationException expected) {
+            // expected
+        }
+
+        //then
+        assertTrue(exporter.isCancelled());
+        assertTrue(exporter.getProgress() > 0);
+        assertTrue(exporter.getProgress() < exporter.getTotal());
+        assertFalse(output.exists());
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SessionIndexTest {
+    private final static int RECORDS_PER_SEGMENT = 1000;
+    // One more slot for the commit record closing each segment.
+    private final static int SEGMENT_SIZE = SessionLog.HEADER_SIZE + (RECORDS_PER_SEGMENT + 1) * SessionLog.RECORD_SIZE;
+    private final static int RECORDS = 3000;
+    private final static int SPIKE_FROM = 2100;
+    private final static int SPIKE_TO = 2120;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldIndexCompletedBlocksPerSegment_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+
+        //when
+        writeSession(directory, 0, RECORDS);
+        SessionIndex index = SessionIndex.load(directory);
+
+        //then
+        // 1000 records per segment make three full blocks and one of 232 records; the last
+        // block of the last segment is still open.
+        assertEquals(3 * 4 - 1, index.size());
+        assertEquals(1, index.getSegment(4));
+        assertEquals(SessionLog.HEADER_SIZE, index.getPosition(4));
+        assertEquals(232, index.getCount(3));
+        assertEquals(1000 * 1000L, index.getMinTimestamp(4));
+        assertEquals(1255 * 1000L, index.getMaxTimestamp(4));
+        assertEquals(4, index.seek(1100 * 1000L));
+        assertTrue((index.getFlags(0) & SessionIndex.FLAG_SPO2) != 0);
+    }
+
+    @Test
+    public void shouldReadOnlyRecordsInRange_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        writeSession(directory, 0, RECORDS);
+
+        //when
+        try (SessionCursor cursor = SessionCursor.open(directory, 1250 * 1000L, 2900 * 1000L,
+                SessionIndex.ALL_BLOCKS)) {
+
+            //then
+            for (int i = 1250; i <= 2900; i++) {
+                assertTrue(cursor.next());
+                assertEquals(i * 1000L, cursor.getTimestamp());
+            }
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void shouldSkipBlocksRejectedByFilter_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        writeSession(directory, 0, RECORDS);
+        int spikes = 0;
+        int records = 0;
+
+        //when
+        try (SessionCursor cursor = SessionCursor.open(directory, Long.MIN_VALUE, Long.MAX_VALUE,
+                SessionIndex.heartRateAbove(150))) {
+            while (cursor.next()) {
+                records++;
+                if (cursor.getType() == SessionLog.TYPE_HEART_RATE && cursor.getValue() > 150) {
+                    spikes++;
+                }
+            }
+        }
+
+        //then
+        // Only the block holding the spike and the unindexed tail are read.
+        assertEquals(SPIKE_TO - SPIKE_FROM - (SPIKE_TO - SPIKE_FROM) / 5, spikes);
+        assertEquals(SessionIndex.BLOCK_RECORDS + (RECORDS - 2768), records);
+    }
+
+    @Test
+    public void shouldRebuildIndexWhenReopened_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        writeSession(directory, 0, RECORDS);
+        SessionIndex written = SessionIndex.load(directory);
+        assertTrue(SessionIndex.indexFile(directory).delete());
+
+        //when
+        writeSession(directory, RECORDS, 0);
+        SessionIndex rebuilt = SessionIndex.load(directory);
+
+        //then
+        assertEquals(written.size(), rebuilt.size());
+        for (int block = 0; block < written.size(); block++) {
+            assertEquals(written.getSegment(block), rebuilt.getSegment(block));
+            assertEquals(written.getPosition(block), rebuilt.getPosition(block));
+            assertEquals(written.getCount(block), rebuilt.getCount(block));
+            assertEquals(written.getMinTimestamp(block), rebuilt.getMinTimestamp(block));
+            assertEquals(written.getMaxTimestamp(block), rebuilt.getMaxTimestamp(block));
+            assertEquals(written.getMinHr(block), rebuilt.getMinHr(block));
+            assertEquals(written.getMaxHr(block), rebuilt.getMaxHr(block));
+            assertEquals(written.getFlags(block), rebuilt.getFlags(block));
+        }
+    }
+
+    @Test
+    public void shouldReadOutOfOrderFlushedBatchInRange_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        // A batch flushed after live sample 599 carries sensor timestamps from 100 s to 103 s.
+        HeartRateBatch flushed = new HeartRateBatch();
+        for (int i = 0; i < 300; i++) {
+            flushed.add(100_000L + i * 10L, HeartRateStatus.HR_STATUS_FIND_HR, 120, 500, 0);
+        }
+        try (SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, RECORDS_PER_SEGMENT, 60_000L,
+                new ManualClock(), new CommitStats("test"), Runnable::run)) {
+            SessionRecorder recorder = new SessionRecorder(sessionLog);
+            appendLive(sessionLog, 0, 600);
+            recorder.onHeartRateBatch(flushed);
+            appendLive(sessionLog, 600, 600);
+        }
+        int live = 0;
+        int batched = 0;
+
+        //when
+        try (SessionCursor cursor = SessionCursor.open(directory, 100_000L, 103_000L, SessionIndex.ALL_BLOCKS)) {
+            while (cursor.next()) {
+                if (cursor.getValue() == 120) {
+                    batched++;
+                } else {
+                    live++;
+                }
+            }
+        }
+
+        //then
+        assertEquals(4, live);
+        assertEquals(300, batched);
+        SessionIndex index = SessionIndex.load(directory);
+        assertEquals(100_000L, index.getMinTimestamp(2));
+        assertEquals(599_000L, index.getMaxTimestamp(2));
+    }
+
+    @Test
+    public void shouldSeekFirstBlockReachingTimestampWhenOutOfOrder_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        // Blocks start at 1000 s, 0 s, 2000 s and 500 s.
+        long[] blockStarts = {1_000_000L, 0L, 2_000_000L, 500_000L};
+        try (SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, RECORDS_PER_SEGMENT, 60_000L,
+                new ManualClock(), new CommitStats("test"), Runnable::run)) {
+            for (long blockStart : blockStarts) {
+                for (int i = 0; i < SessionIndex.BLOCK_RECORDS; i++) {
+                    sessionLog.appendHeartRate(blockStart + i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 70, 800, 0);
+                }
+            }
+        }
+
+        //when
+        SessionIndex index = SessionIndex.load(directory);
+
+        //then
+        assertEquals(4, index.size());
+        assertEquals(0, index.seek(0L));
+        assertEquals(0, index.seek(1_255_000L));
+        assertEquals(2, index.seek(1_255_001L));
+        assertEquals(2, index.seek(2_255_000L));
+        assertEquals(4, index.seek(2_255_001L));
+        for (long timestamp = 0; timestamp <= 2_300_000L; timestamp += 5_000L) {
+            int expected = 0;
+            while (expected < index.size() && index.getMaxTimestamp(expected) < timestamp) {
+                expected++;
+            }
+            assertEquals(expected, index.seek(timestamp));
+        }
+    }
+
+    private static void appendLive(SessionLog sessionLog, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i % 40, 800, 0);
+        }
+    }
+
+    private static void writeSession(File directory, int from, int count) throws IOException {
+        // Frames are only committed when a segment fills up or the log is closed.
+        try (SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, RECORDS_PER_SEGMENT, 60_000L,
+                new ManualClock(), new CommitStats("test"), Runnable::run)) {
+            for (int i = from; i < from + count; i++) {
+                if (i % 5 == 4) {
+                    sessionLog.appendSpO2(i * 1000L, SpO2Status.MEASUREMENT_COMPLETED, 97);
+                } else {
+                    int hr = i >= SPIKE_FROM && i < SPIKE_TO ? 170 : 60 + i % 40;
+                    sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, hr, 800, 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class SessionLogTest {
+    private final static int RECORDS_PER_SEGMENT = 10;
+    private final static int SEGMENT_SIZE = SessionLog.HEADER_SIZE + RECORDS_PER_SEGMENT * SessionLog.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadBackRecordsAcrossRolledSegments_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        int records = 35;
+
+        //when
+        try (SessionLog sessionLog = open(directory)) {
+            appendSamples(sessionLog, 0, records);
+        }
+
+        //then
+        assertTrue(SessionLog.listSegments(directory).length >= 4);
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, records);
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void shouldContinueAfterLastRecordWhenReopened_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        try (SessionLog sessionLog = open(directory)) {
+            appendSamples(sessionLog, 0, 13);
+        }
+
+        //when
+        try (SessionLog sessionLog = open(directory)) {
+            appendSamples(sessionLog, 13, 12);
+        }
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 25);
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void shouldOnlyExposePublishedRecordsWhileWriting_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        try (SessionLog sessionLog = open(directory)) {
+            appendSamples(sessionLog, 0, 15);
+
+            //when
+            SessionCursor cursor = sessionLog.cursor();
+            appendSamples(sessionLog, 15, 5);
+
+            //then
+            assertRecords(cursor, 0, 15);
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void shouldRecordBatchesFromNotifier_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        HeartRateBatch hrBatch = new HeartRateBatch();
+        hrBatch.add(1000L, HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 1);
+        SpO2Batch spO2Batch = new SpO2Batch();
+        spO2Batch.add(2000L, SpO2Status.MEASUREMENT_COMPLETED, 97);
+
+        //when
+        try (SessionLog sessionLog = open(directory)) {
+            notifier.addObserver(new SessionRecorder(sessionLog), TrackerDataNotifier.HEART_RATE | TrackerDataNotifier.SPO2);
+            notifier.notifyHeartRateBatch(hrBatch);
+            notifier.notifySpO2Batch(spO2Batch);
+        }
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertTrue(cursor.next());
+            assertEquals(SessionLog.TYPE_HEART_RATE, cursor.getType());
+            assertEquals(1000L, cursor.getTimestamp());
+            assertEquals(72, cursor.getValue());
+            assertEquals(833, cursor.getIbi());
+            assertEquals(1, cursor.getQuality());
+            assertTrue(cursor.next());
+            assertEquals(SessionLog.TYPE_SPO2, cursor.getType());
+            assertEquals(2000L, cursor.getTimestamp());
+            assertEquals(SpO2Status.MEASUREMENT_COMPLETED, cursor.getStatus());
+            assertEquals(97, cursor.getValue());
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void shouldDropUncommittedRecordsOnRecovery_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        ManualClock clock = new ManualClock();
+        CommitStats stats = new CommitStats("test");
+        // Never closed, as if the process had been killed.
+        SessionLog crashed = SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, clock, stats, Runnable::run);
+        appendSamples(crashed, 0, 10);
+        clock.advanceMillis(60_000L);
+        crashed.commitIfDue();
+        appendSamples(crashed, 10, 3);
+
+        //when
+        SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, clock, stats, Runnable::run).close();
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 10);
+            assertFalse(cursor.next());
+        }
+        assertEquals(3, stats.getCommitCount());
+        assertEquals(3, stats.getDroppedCount());
+    }
+
+    @Test
+    public void shouldRecoverSegmentBeforeEmptyPremappedSegment_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        ManualClock clock = new ManualClock();
+        CommitStats stats = new CommitStats("test");
+        // Slots: records 0-3, commit, records 4-5 uncommitted; then the process dies with the
+        // next segment already mapped but still empty.
+        SessionLog crashed = SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, clock, stats, Runnable::run);
+        appendSamples(crashed, 0, 6);
+        SessionLog.mapSegment(new File(directory, "00000001" + SessionLog.SEGMENT_SUFFIX), SEGMENT_SIZE);
+
+        //when
+        SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, clock, stats, Runnable::run).close();
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 4);
+            assertFalse(cursor.next());
+        }
+        assertEquals(2, stats.getDroppedCount());
+    }
+
+    @Test
+    public void shouldRecoverSegmentBeforeZeroFilledSegment_P() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        ManualClock clock = new ManualClock();
+        CommitStats stats = new CommitStats("test");
+        // Slots: records 0-3, commit, records 4-5 uncommitted; then the process dies and the
+        // premapped next segment keeps its length but loses its header page.
+        SessionLog crashed = SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, clock, stats, Runnable::run);
+        appendSamples(crashed, 0, 6);
+        try (RandomAccessFile file = new RandomAccessFile(
+                new File(directory, "00000001" + SessionLog.SEGMENT_SUFFIX), "rw")) {
+            file.setLength(SEGMENT_SIZE);
+        }
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 4);
+            assertFalse(cursor.next());
+        }
+
+        //when
+        try (SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, clock, stats,
+                Runnable::run)) {
+            appendSamples(sessionLog, 4, 10);
+        }
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 14);
+            assertFalse(cursor.next());
+        }
+        assertEquals(2, stats.getDroppedCount());
+    }
+
+    @Test
+    public void shouldTruncateAtFrameWithBadChecksum_N() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        int segmentSize = SessionLog.HEADER_SIZE + 32 * SessionLog.RECORD_SIZE;
+        CommitStats stats = new CommitStats("test");
+        try (SessionLog sessionLog = SessionLog.open(directory, segmentSize, 4, 60_000L, new ManualClock(), stats, Runnable::run)) {
+            appendSamples(sessionLog, 0, 10);
+        }
+        // Slots: records 0-3, commit, records 4-7, commit, records 8-9, commit. Tear record 5.
+        try (RandomAccessFile file = new RandomAccessFile(SessionLog.listSegments(directory)[0], "rw")) {
+            file.seek(SessionLog.HEADER_SIZE + 6 * SessionLog.RECORD_SIZE + SessionLog.OFFSET_VALUE);
+            file.write(0x7F);
+        }
+
+        //when
+        SessionLog.open(directory, segmentSize, 4, 60_000L, new ManualClock(), stats, Runnable::run).close();
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 4);
+            assertFalse(cursor.next());
+        }
+        assertEquals(3, stats.getCommitCount());
+        assertEquals(8, stats.getDroppedCount());
+    }
+
+    @Test
+    public void shouldDropSamplesWhileNextSegmentIsNotMapped_N() throws IOException {
+        //given
+        File directory = temporaryFolder.newFolder("session");
+        CommitStats stats = new CommitStats("test");
+        // The mapping never runs, as if the background thread were stuck.
+        SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, 4, 60_000L, new ManualClock(), stats,
+                runnable -> { });
+
+        //when
+        // Slots: records 0-3, commit, records 4-7, commit; the segment is then full.
+        appendSamples(sessionLog, 0, 12);
+        sessionLog.close();
+
+        //then
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            assertRecords(cursor, 0, 8);
+            assertFalse(cursor.next());
+        }
+        assertEquals(1, SessionLog.listSegments(directory).length);
+        assertEquals(4, stats.getRejectedCount());
+    }
+
+    // Maps segments inline, so rolling over never has to drop a sample.
+    private static SessionLog open(File directory) throws IOException {
+        return SessionLog.open(directory, SEGMENT_SIZE, SessionLog.DEFAULT_COMMIT_RECORDS,
+                SessionLog.DEFAULT_COMMIT_INTERVAL_MILLIS, Clock.SYSTEM, new CommitStats("test"), Runnable::run);
+    }
+
+    private static void appendSamples(SessionLog sessionLog, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            if (i % 5 == 4) {
+                sessionLog.appendSpO2(i * 1000L, SpO2Status.MEASUREMENT_COMPLETED, 90 + i % 10);
+            } else {
+                sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i % 40, 700 + i, i & 1);
+            }
+        }
+    }
+
+    private static void assertRecords(SessionCursor cursor, int from, int count) throws IOException {
+        for (int i = from; i < from + count; i++) {
+            assertTrue(cursor.next());
+            assertEquals(i * 1000L, cursor.getTimestamp());
+            if (i % 5 == 4) {
+                assertEquals(SessionLog.TYPE_SPO2, cursor.getType());
+                assertEquals(90 + i % 10, cursor.getValue());
+            } else {
+                assertEquals(SessionLog.TYPE_HEART_RATE, cursor.getType());
+                assertEquals(HeartRateStatus.HR_STATUS_FIND_HR, cursor.getStatus());
+                assertEquals(60 + i % 40, cursor.getValue());
+                assertEquals(700 + i, cursor.getIbi());
+                assertEquals(i & 1, cursor.getQuality());
+            }
+        }
+    }
+}
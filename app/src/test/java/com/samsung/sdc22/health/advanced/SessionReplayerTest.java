@@ -0,0 +1,157 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class SessionReplayerTest {
+    private final static int HEART_RATE_SAMPLES = 3600;
+    private final static long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReplayHourAtHundredTimesSpeed_P() throws IOException, InterruptedException {
+        //given
+        File directory = recordSession();
+        ManualClock clock = new ManualClock();
+        ObserverRecorder observer = new ObserverRecorder();
+        SessionReplayer replayer = createReplayer(observer, clock);
+        replayer.setSpeed(100);
+
+        //when
+        long delivered;
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            delivered = replayer.replay(cursor);
+        }
+
+        //then
+        assertEquals(HEART_RATE_SAMPLES + 2, delivered);
+        assertEquals(HEART_RATE_SAMPLES, observer.heartRateSamples);
+        assertEquals(2, observer.spO2Samples);
+        // Paced from the first delivery (the batch ending at 1 s) to the last one (3599 s).
+        assertEquals(TimeUnit.SECONDS.toNanos(HEART_RATE_SAMPLES - 2) / 100, clock.nanoTime(), TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void shouldDeliverRecordedValuesInWindowedBatches_P() throws IOException, InterruptedException {
+        //given
+        File directory = recordSession();
+        ObserverRecorder observer = new ObserverRecorder();
+        SessionReplayer replayer = createReplayer(observer, new ManualClock());
+        replayer.setBatchWindowMillis(4 * SAMPLE_INTERVAL_MILLIS);
+        replayer.setSpeed(SessionReplayer.AS_FAST_AS_POSSIBLE);
+
+        //when
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            replayer.replay(cursor);
+        }
+
+        //then
+        // The SpO2 records after sample 1800 split one five-sample batch in two.
+        assertEquals(HEART_RATE_SAMPLES / 5 + 1, observer.heartRateBatches);
+        assertEquals(HEART_RATE_SAMPLES - 1 + 60, observer.lastHr);
+        assertEquals(HEART_RATE_SAMPLES - 1 + 700, observer.lastIbi);
+        assertEquals(1, observer.lastQIbi);
+        assertEquals(98, observer.lastSpO2);
+    }
+
+    @Test
+    public void shouldNotWaitWhenReplayingAsFastAsPossible_P() throws IOException, InterruptedException {
+        //given
+        File directory = recordSession();
+        ManualClock clock = new ManualClock();
+        SessionReplayer replayer = createReplayer(new ObserverRecorder(), clock);
+        replayer.setSpeed(SessionReplayer.AS_FAST_AS_POSSIBLE);
+
+        //when
+        try (SessionCursor cursor = SessionCursor.open(directory)) {
+            replayer.replay(cursor);
+        }
+
+        //then
+        assertEquals(0, clock.nanoTime());
+    }
+
+    private File recordSession() throws IOException {
+        File directory = temporaryFolder.newFolder("session");
+        try (SessionLog sessionLog = SessionLog.open(directory)) {
+            for (int i = 0; i < HEART_RATE_SAMPLES; i++) {
+                sessionLog.appendHeartRate(i * SAMPLE_INTERVAL_MILLIS, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i, 700 + i, i & 1);
+                if (i == HEART_RATE_SAMPLES / 2) {
+                    sessionLog.appendSpO2(i * SAMPLE_INTERVAL_MILLIS, SpO2Status.CALCULATING, 0);
+                    sessionLog.appendSpO2(i * SAMPLE_INTERVAL_MILLIS, SpO2Status.MEASUREMENT_COMPLETED, 98);
+                }
+            }
+        }
+        return directory;
+    }
+
+    private static SessionReplayer createReplayer(ObserverRecorder observer, Clock clock) {
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(observer);
+        HeartRateListener heartRateListener = new HeartRateListener();
+        heartRateListener.setTrackerDataNotifier(notifier);
+        SpO2Listener spO2Listener = new SpO2Listener();
+        spO2Listener.setTrackerDataNotifier(notifier);
+        return new SessionReplayer(heartRateListener, spO2Listener, clock);
+    }
+
+    private static class ObserverRecorder implements TrackerDataObserver {
+        int heartRateBatches;
+        int heartRateSamples;
+        int spO2Samples;
+        int lastHr;
+        int lastIbi;
+        int lastQIbi;
+        int lastSpO2;
+
+        @Override
+        public void onHeartRateBatch(HeartRateBatch batch) {
+            heartRateBatches++;
+            TrackerDataObserver.super.onHeartRateBatch(batch);
+        }
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            heartRateSamples++;
+            lastHr = hrData.hr;
+            lastIbi = hrData.ibi;
+            lastQIbi = hrData.qIbi;
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+            spO2Samples++;
+            lastSpO2 = spO2Value;
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+        }
+    }
+}
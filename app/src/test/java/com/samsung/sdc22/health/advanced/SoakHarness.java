@@ -0,0 +1,547 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+
+import com.samsung.android.service.health.tracking.data.DataPoint;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Drives {@link SyntheticDataPoints} through the real listeners, notifier and observer
+ * mailboxes for hours of simulated time, as fast as the host allows. Simulated time moves a
+ * {@link ManualClock}, so flush intervals and SpO2 timeouts fire as they would on the watch.
+ * <p>
+ * Three observers listen: one called inline that counts samples, a recorder behind a
+ * lossless mailbox that must end up with the same count, and a UI stand-in behind a
+ * conflating mailbox that marks {@link PipelineLatency#onUiApplied()}. After a warm-up the
+ * run is measured into a {@link Report}, which {@link Report#check(Budget)} holds against a
+ * {@link Budget}. Allocation is counted on the driving thread, the sensor thread of the app.
+ */
+class SoakHarness {
+    private final static long DRAIN_TIMEOUT_MILLIS = 10_000;
+
+    private final SyntheticDataPoints generator;
+    private final ManualClock clock = new ManualClock();
+    private final MeasurementScheduler scheduler = new MeasurementScheduler(clock, null);
+    private final TrackerDataNotifier notifier = new TrackerDataNotifier();
+    private final PipelineLatency latency = new PipelineLatency("soak", Clock.SYSTEM);
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram("soak.delivery");
+    private final Handler handler = mock(Handler.class);
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long warmUpMillis = 60_000;
+    private long flushIntervalMillis = 0;
+    private long clockMillis;
+
+    SoakHarness(SyntheticDataPoints generator) {
+        this.generator = generator;
+        clockMillis = generator.getTimestampMillis();
+        // The sensor thread is the driving thread.
+        when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, Runnable.class).run();
+            return true;
+        });
+    }
+
+    /**
+     * Simulated time run before measuring, so the JIT, pools and batch buffers settle.
+     */
+    void setWarmUpMillis(long warmUpMillis) {
+        this.warmUpMillis = warmUpMillis;
+    }
+
+    /**
+     * Runs heart rate with batched collection, flushed every {@code flushIntervalMillis} of
+     * simulated time, instead of live deliveries.
+     */
+    void setBatched(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Streams heart rate through a {@link HeartRateListener} for {@code durationMillis} of
+     * simulated time after the warm-up.
+     */
+    Report runHeartRate(long durationMillis) {
+        final HeartRateListener listener = new HeartRateListener();
+        final BatchStats batchStats = new BatchStats("soak");
+        listener.setHandler(handler);
+        listener.setTrackerDataNotifier(notifier);
+        listener.setScheduler(scheduler);
+        listener.setPipelineLatency(latency);
+        listener.setBatchStats(batchStats);
+        final Observers observers = new Observers(TrackerDataNotifier.HEART_RATE);
+        if (flushIntervalMillis > 0) {
+            listener.startBatchedCollection(flushIntervalMillis);
+        }
+
+        final Report report = new Report(flushIntervalMillis > 0 ? "hr batched" : "hr live");
+        final long warmUpEnd = generator.getTimestampMillis() + warmUpMillis;
+        final long end = warmUpEnd + durationMillis;
+        while (generator.getTimestampMillis() < end) {
+            if (!report.started && generator.getTimestampMillis() >= warmUpEnd) {
+                report.start();
+            }
+            final List<DataPoint> delivery = generator.nextHeartRateDelivery();
+            advanceClock();
+            final long started = System.nanoTime();
+            listener.readValuesFromDataPoints(delivery);
+            deliveryLatency.record(System.nanoTime() - started);
+            report.deliveries++;
+        }
+        report.stop();
+        if (flushIntervalMillis > 0) {
+            listener.stopBatchedCollection();
+        }
+        report.duplicates = batchStats.getDuplicateCount();
+        observers.finish(report);
+        return report;
+    }
+
+    /**
+     * Runs back-to-back SpO2 measurements through a {@link SpO2Listener} for
+     * {@code durationMillis} of simulated time after the warm-up.
+     */
+    Report runSpO2(long durationMillis) {
+        final SpO2Listener listener = new SpO2Listener();
+        listener.setHandler(handler);
+        listener.setTrackerDataNotifier(notifier);
+        listener.setScheduler(scheduler);
+        listener.setPipelineLatency(latency);
+        final Observers observers = new Observers(TrackerDataNotifier.SPO2);
+
+        final Report report = new Report("spo2");
+        final long warmUpEnd = generator.getTimestampMillis() + warmUpMillis;
+        final long end = warmUpEnd + durationMillis;
+        while (generator.getTimestampMillis() < end) {
+            if (!report.started && generator.getTimestampMillis() >= warmUpEnd) {
+                report.start();
+            }
+            generator.startSpO2Measurement();
+            listener.onTrackerStarting();
+            while (!isFinal(listener.getMeasurementStatus()) && generator.getTimestampMillis() < end) {
+                final List<DataPoint> delivery = generator.nextSpO2Delivery();
+                advanceClock();
+                final long started = System.nanoTime();
+                listener.updateSpo2(delivery);
+                deliveryLatency.record(System.nanoTime() - started);
+                report.deliveries++;
+            }
+        }
+        report.stop();
+        observers.finish(report);
+        return report;
+    }
+
+    private void advanceClock() {
+        final long now = generator.getTimestampMillis();
+        clock.advanceMillis(now - clockMillis);
+        clockMillis = now;
+        scheduler.runDueTasks();
+    }
+
+    private static boolean isFinal(int spO2Status) {
+        return spO2Status == SpO2Status.MEASUREMENT_COMPLETED || spO2Status == SpO2Status.MEASUREMENT_TIMEOUT;
+    }
+
+    /**
+     * The three observers of a run, registered for one event kind.
+     */
+    private class Observers {
+        final CountingObserver inline = new CountingObserver(false);
+        final CountingObserver recorder = new CountingObserver(false);
+        final CountingObserver ui = new CountingObserver(true);
+        final DeliveryStrategy recorderStrategy =
+                DeliveryStrategy.lossless(DeliveryStrategy.DEFAULT_CAPACITY, DeliveryStrategy.DEFAULT_MAX_BLOCK_NANOS);
+
+        Observers(int kind) {
+            notifier.addObserver(inline, kind);
+            notifier.addObserver(recorder, kind, recorderStrategy);
+            notifier.addObserver(ui, kind, DeliveryStrategy.conflateLatest());
+        }
+
+        /**
+         * Waits for the recorder to catch up, takes the queue depths and unsubscribes.
+         */
+        void finish(Report report) {
+            final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+            while (recorder.samples < inline.samples && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            report.observed = inline.samples;
+            report.recorded = recorder.samples;
+            report.completed = inline.completed;
+            report.timeouts = inline.timeouts;
+            report.recorderHighWaterMark = notifier.getMailbox(recorder).getHighWaterMark();
+            report.recorderCapacity = recorderStrategy.getCapacity();
+            report.uiHighWaterMark = notifier.getMailbox(ui).getHighWaterMark();
+            report.dropped = notifier.getDroppedCount();
+            report.migrations = notifier.getMigrationCount();
+            notifier.removeObserver(inline);
+            notifier.removeObserver(recorder);
+            notifier.removeObserver(ui);
+        }
+    }
+
+    /**
+     * Counts what reaches it; written by one thread, read once the run has drained.
+     */
+    private class CountingObserver implements TrackerDataObserver {
+        private final boolean ui;
+        volatile long samples;
+        volatile long completed;
+        volatile long timeouts;
+
+        CountingObserver(boolean ui) {
+            this.ui = ui;
+        }
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            samples++;
+            applied();
+        }
+
+        @Override
+        public void onHeartRateBatch(HeartRateBatch batch) {
+            samples += batch.size();
+            applied();
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+            samples++;
+            if (status == SpO2Status.MEASUREMENT_COMPLETED) {
+                completed++;
+            } else if (status == SpO2Status.MEASUREMENT_TIMEOUT) {
+                timeouts++;
+            }
+            applied();
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+        }
+
+        private void applied() {
+            if (ui) {
+                latency.onUiApplied();
+            }
+        }
+    }
+
+    /**
+     * Limits a {@link Report} must stay within; anything not set is not checked.
+     */
+    static class Budget {
+        double minSamplesPerSecond = 0;
+        double maxBytesPerSample = Double.MAX_VALUE;
+        long maxGcPauseMillis = Long.MAX_VALUE;
+        long maxDeliveryP99Nanos = Long.MAX_VALUE;
+        long maxDispatchToUiP99Nanos = Long.MAX_VALUE;
+        int maxRecorderDepth = Integer.MAX_VALUE;
+        long maxLostSamples = 0;
+        boolean wallClock = true;
+
+        Budget samplesPerSecond(double min) {
+            minSamplesPerSecond = min;
+            return this;
+        }
+
+        Budget bytesPerSample(double max) {
+            maxBytesPerSample = max;
+            return this;
+        }
+
+        Budget gcPauseMillis(long max) {
+            maxGcPauseMillis = max;
+            return this;
+        }
+
+        Budget deliveryP99Nanos(long max) {
+            maxDeliveryP99Nanos = max;
+            return this;
+        }
+
+        Budget dispatchToUiP99Nanos(long max) {
+            maxDispatchToUiP99Nanos = max;
+            return this;
+        }
+
+        Budget recorderDepth(int max) {
+            maxRecorderDepth = max;
+            return this;
+        }
+
+        Budget lostSamples(long max) {
+            maxLostSamples = max;
+            return this;
+        }
+
+        /**
+         * Whether the limits that depend on the machine are checked: throughput, GC pause
+         * and latency percentiles.
+         */
+        Budget wallClock(boolean checked) {
+            wallClock = checked;
+            return this;
+        }
+    }
+
+    /**
+     * Measurements of one run after its warm-up; the sample counts cover the whole run.
+     */
+    class Report {
+        final String name;
+        boolean started;
+        long samples;
+        long simulatedMillis;
+        long wallNanos;
+        long allocatedBytes;
+        long gcCount;
+        long gcMillis;
+        long maxGcPauseMillis;
+        long deliveries;
+        long duplicates;
+        long observed;
+        long recorded;
+        long completed;
+        long timeouts;
+        long dropped;
+        long migrations;
+        int recorderHighWaterMark;
+        int recorderCapacity;
+        int uiHighWaterMark;
+
+        private final GcPauses gcPauses = new GcPauses();
+        private final long threadId = Thread.currentThread().getId();
+        private long startSample;
+        private long startMillis;
+        private long startNanos;
+        private long startAllocated;
+        private long startGcCount;
+        private long startGcMillis;
+
+        Report(String name) {
+            this.name = name;
+        }
+
+        void start() {
+            started = true;
+            deliveries = 0;
+            latency.reset();
+            deliveryLatency.reset();
+            startSample = generator.getSampleCount();
+            startMillis = generator.getTimestampMillis();
+            startGcCount = totalGcCount();
+            startGcMillis = totalGcMillis();
+            gcPauses.register();
+            startAllocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            startNanos = System.nanoTime();
+        }
+
+        void stop() {
+            if (!started) {
+                start();
+            }
+            wallNanos = System.nanoTime() - startNanos;
+            allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startAllocated;
+            samples = generator.getSampleCount() - startSample;
+            simulatedMillis = generator.getTimestampMillis() - startMillis;
+            gcCount = totalGcCount() - startGcCount;
+            gcMillis = totalGcMillis() - startGcMillis;
+            maxGcPauseMillis = gcPauses.unregister();
+        }
+
+        double getSamplesPerSecond() {
+            return samples / (wallNanos / 1e9);
+        }
+
+        double getBytesPerSample() {
+            return samples == 0 ? 0 : (double) allocatedBytes / samples;
+        }
+
+        double getAllocationRate() {
+            return allocatedBytes / (wallNanos / 1e9);
+        }
+
+        /**
+         * Samples the recorder should have received but did not.
+         */
+        long getLostSamples() {
+            return observed - recorded;
+        }
+
+        LatencyHistogram getDeliveryLatency() {
+            return deliveryLatency;
+        }
+
+        LatencyHistogram getDispatchToUi() {
+            return latency.dispatchToUi;
+        }
+
+        void appendSummary(StringBuilder out) {
+            out.append(String.format(Locale.US,
+                    "%s: %d samples, %.1f h simulated in %.2f s (%.0fx), %.0f samples/s, %d deliveries%n",
+                    name, samples, simulatedMillis / 3_600_000.0, wallNanos / 1e9,
+                    simulatedMillis * 1e6 / wallNanos, getSamplesPerSecond(), deliveries));
+            out.append(String.format(Locale.US,
+                    "  alloc %.2f B/sample, %.1f KB/s; gc %d collections, %d ms, max pause %d ms%n",
+                    getBytesPerSample(), getAllocationRate() / 1024, gcCount, gcMillis, maxGcPauseMillis));
+            out.append(String.format(Locale.US,
+                    "  observed %d, recorded %d, duplicates dropped %d, spo2 completed %d timed out %d%n",
+                    observed, recorded, duplicates, completed, timeouts));
+            out.append(String.format(Locale.US,
+                    "  recorder hwm %d/%d, ui hwm %d, mailbox drops %d, isolated %d%n",
+                    recorderHighWaterMark, recorderCapacity, uiHighWaterMark, dropped, migrations));
+            deliveryLatency.appendSummary(out);
+            for (LatencyHistogram histogram : new LatencyHistogram[]{
+                    latency.ingressToDispatch, latency.dispatchToUi, latency.ingressToUi}) {
+                histogram.appendSummary(out);
+            }
+        }
+
+        /**
+         * Throws an {@link AssertionError} listing every limit of {@code budget} this run
+         * went over, followed by the summary.
+         */
+        void check(Budget budget) {
+            final StringBuilder violations = new StringBuilder();
+            if (budget.wallClock && getSamplesPerSecond() < budget.minSamplesPerSecond) {
+                violations.append(String.format(Locale.US, "throughput %.0f samples/s < %.0f%n",
+                        getSamplesPerSecond(), budget.minSamplesPerSecond));
+            }
+            if (getBytesPerSample() > budget.maxBytesPerSample) {
+                violations.append(String.format(Locale.US, "allocation %.2f B/sample > %.2f%n",
+                        getBytesPerSample(), budget.maxBytesPerSample));
+            }
+            if (budget.wallClock && maxGcPauseMillis > budget.maxGcPauseMillis) {
+                violations.append(String.format(Locale.US, "gc pause %d ms > %d%n",
+                        maxGcPauseMillis, budget.maxGcPauseMillis));
+            }
+            final long deliveryP99 = deliveryLatency.getValueAtPercentile(99);
+            if (budget.wallClock && deliveryP99 > budget.maxDeliveryP99Nanos) {
+                violations.append(String.format(Locale.US, "delivery p99 %d ns > %d%n",
+                        deliveryP99, budget.maxDeliveryP99Nanos));
+            }
+            final long uiP99 = latency.dispatchToUi.getValueAtPercentile(99);
+            if (budget.wallClock && uiP99 > budget.maxDispatchToUiP99Nanos) {
+                violations.append(String.format(Locale.US, "dispatch to ui p99 %d ns > %d%n",
+                        uiP99, budget.maxDispatchToUiP99Nanos));
+            }
+            if (recorderHighWaterMark > budget.maxRecorderDepth) {
+                violations.append(String.format(Locale.US, "recorder queue depth %d > %d%n",
+                        recorderHighWaterMark, budget.maxRecorderDepth));
+            }
+            if (getLostSamples() > budget.maxLostSamples) {
+                violations.append(String.format(Locale.US, "lost %d samples > %d%n",
+                        getLostSamples(), budget.maxLostSamples));
+            }
+            if (violations.length() > 0) {
+                violations.append(String.format(Locale.US, "--%n"));
+                appendSummary(violations);
+                throw new AssertionError(name + " over budget:" + String.format(Locale.US, "%n") + violations);
+            }
+        }
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Longest single collection while registered, from the collectors' notifications.
+     */
+    private static class GcPauses implements NotificationListener {
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private volatile long maxPauseMillis;
+
+        void register() {
+            maxPauseMillis = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (bean instanceof NotificationEmitter) {
+                    ((NotificationEmitter) bean).addNotificationListener(this, null, null);
+                    emitters.add((NotificationEmitter) bean);
+                }
+            }
+        }
+
+        long unregister() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException ignored) {
+                    // Already gone.
+                }
+            }
+            emitters.clear();
+            return maxPauseMillis;
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            final GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            // Concurrent cycles run next to the application; only stop-the-world collections pause it.
+            if (info.getGcName().contains("Concurrent") || info.getGcName().contains("Cycles")) {
+                return;
+            }
+            final long duration = info.getGcInfo().getDuration();
+            if (duration > maxPauseMillis) {
+                maxPauseMillis = duration;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.samsung.android.service.health.tracking.data.DataPoint;
+import com.samsung.android.service.health.tracking.data.ValueKey;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Soak runs of the tracker pipeline on synthetic streams. The simulated duration scales with
+ * the {@code soak.hours} system property (default 1). Throughput, GC pause and latency budgets
+ * depend on the machine, so they are only checked when {@code soak.timing} is set, e.g.
+ * {@code ./gradlew :app:testDebugUnitTest --tests '*SoakTest' -PsoakHours=24 -PsoakTiming=true}.
+ */
+public class SoakTest {
+    private final static long HOURS = Long.getLong("soak.hours", 1);
+    private final static boolean TIMING = Boolean.getBoolean("soak.timing");
+    private final static long HOUR_MILLIS = 3_600_000L;
+
+    @Test
+    public void shouldGenerateTransitionsBadQualityAndBursts_P() {
+        //given
+        SyntheticDataPoints generator = new SyntheticDataPoints(7, 1);
+        generator.setDeliverySize(1, 5);
+        generator.setBursts(0.01, 300);
+        generator.setRedeliveries(0.5, 8);
+        generator.setInterruptionsPerHour(6);
+        int badQuality = 0;
+        int maxDeliverySize = 0;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        //when
+        while (generator.getSampleCount() < 24 * 3600) {
+            List<DataPoint> delivery = generator.nextHeartRateDelivery();
+            maxDeliverySize = Math.max(maxDeliverySize, delivery.size());
+            for (DataPoint dataPoint : delivery) {
+                int hrIbi = dataPoint.getValue(ValueKey.HeartRateSet.HEART_RATE_IBI);
+                int hr = dataPoint.getValue(ValueKey.HeartRateSet.HEART_RATE);
+                int status = dataPoint.getValue(ValueKey.HeartRateSet.STATUS);
+                badQuality += hrIbi >> HeartRateData.IBI_QUALITY_SHIFT;
+                assertTrue(status == HeartRateStatus.HR_STATUS_DETACHED ? hr == 0 : hr >= 40 && hr <= 200);
+                lastTimestamp = Math.max(lastTimestamp, dataPoint.getTimestamp());
+            }
+        }
+
+        //then
+        assertTrue(generator.getHeartRateStatusCount(HeartRateStatus.HR_STATUS_DETACHED) > 0);
+        assertTrue(generator.getHeartRateStatusCount(HeartRateStatus.HR_STATUS_DETECT_MOVE) > 0);
+        assertTrue(generator.getHeartRateStatusCount(HeartRateStatus.HR_STATUS_LOW_RELIABILITY) > 0);
+        assertTrue(badQuality > 0);
+        assertTrue(generator.getBurstCount() > 0);
+        assertTrue(generator.getRedeliveredCount() > 0);
+        assertTrue(maxDeliverySize > 5);
+        assertEquals(generator.getTimestampMillis() - 1000, lastTimestamp);
+    }
+
+    @Test
+    public void shouldStayWithinBudgetWhenLiveAtOneKilohertz_P() {
+        //given
+        SyntheticDataPoints generator = new SyntheticDataPoints(1, 1000);
+        generator.setDeliverySize(10, 50);
+        generator.setBursts(0.001, 2000);
+        SoakHarness harness = new SoakHarness(generator);
+
+        //when
+        SoakHarness.Report report = harness.runHeartRate(HOURS * HOUR_MILLIS);
+
+        //then
+        assertEquals(generator.getSampleCount(), report.observed);
+        report.check(new SoakHarness.Budget().wallClock(TIMING)
+                .samplesPerSecond(100_000)
+                // Batch buffers growing for the largest bursts; a boxed value per sample is 16.
+                .bytesPerSample(4)
+                .gcPauseMillis(100)
+                .deliveryP99Nanos(1_000_000)
+                .dispatchToUiP99Nanos(5_000_000)
+                .lostSamples(0));
+    }
+
+    @Test
+    public void shouldStayWithinBudgetWhenBatchedAtOneHertz_P() {
+        //given
+        SyntheticDataPoints generator = new SyntheticDataPoints(2, 1);
+        generator.setDeliverySize(1, 1);
+        generator.setBursts(0.02, 120);
+        generator.setRedeliveries(0.5, 8);
+        SoakHarness harness = new SoakHarness(generator);
+        harness.setBatched(HeartRateListener.DEFAULT_FLUSH_INTERVAL_MILLIS);
+
+        //when
+        SoakHarness.Report report = harness.runHeartRate(8 * HOURS * HOUR_MILLIS);
+
+        //then
+        assertEquals(generator.getSampleCount(), report.observed);
+        assertEquals(generator.getRedeliveredCount(), report.duplicates);
+        report.check(new SoakHarness.Budget().wallClock(TIMING)
+                // Mostly the mocked Handler posting each flush.
+                .bytesPerSample(128)
+                .gcPauseMillis(100)
+                .deliveryP99Nanos(1_000_000)
+                .lostSamples(0));
+    }
+
+    @Test
+    public void shouldStayWithinBudgetForSpO2Measurements_P() {
+        //given
+        SyntheticDataPoints generator = new SyntheticDataPoints(3, 1);
+        generator.setDeliverySize(1, 3);
+        SoakHarness harness = new SoakHarness(generator);
+
+        //when
+        SoakHarness.Report report = harness.runSpO2(8 * HOURS * HOUR_MILLIS);
+
+        //then
+        assertTrue(report.completed > 0);
+        assertTrue(report.timeouts > 0);
+        // Each measurement schedules its timeout, which costs a few hundred bytes.
+        report.check(new SoakHarness.Budget().wallClock(TIMING)
+                .bytesPerSample(256)
+                .gcPauseMillis(100)
+                .deliveryP99Nanos(1_000_000)
+                .lostSamples(0));
+    }
+
+    @Test
+    public void shouldFailWhenOverBudget_N() {
+        //given
+        SyntheticDataPoints generator = new SyntheticDataPoints(4, 100);
+        SoakHarness harness = new SoakHarness(generator);
+        harness.setWarmUpMillis(0);
+        SoakHarness.Report report = harness.runHeartRate(60_000);
+
+        //when
+        try {
+            report.check(new SoakHarness.Budget().samplesPerSecond(Double.MAX_VALUE));
+            fail("Expected the throughput budget to fail");
+        } catch (AssertionError e) {
+            //then
+            assertTrue(e.getMessage(), e.getMessage().contains("throughput"));
+        }
+    }
+}
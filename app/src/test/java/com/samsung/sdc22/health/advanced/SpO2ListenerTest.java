@@ -19,8 +19,18 @@ package com.samsung.sdc22.health.advanced;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import android.os.Handler;
 
 import com.samsung.android.service.health.tracking.data.DataPoint;
 import com.samsung.android.service.health.tracking.data.Value;
@@ -29,10 +39,14 @@ import com.samsung.android.service.health.tracking.data.ValueKey;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -42,6 +56,9 @@ public class SpO2ListenerTest {
     @Mock
     TrackerDataObserver trackerDataObserver;
 
+    @Mock
+    Handler handler;
+
     @InjectMocks
     SpO2Listener spO2Listener;
 
@@ -102,4 +119,119 @@ public class SpO2ListenerTest {
         TrackerDataNotifier.getInstance().removeObserver(trackerDataObserver);
 
     }
+
+    @Test
+    public void shouldNotifyOnlyStatusTransitions_P() {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        spO2Listener.setTrackerDataNotifier(notifier);
+        int[] statuses = {SpO2Status.CALCULATING, SpO2Status.CALCULATING, SpO2Status.DEVICE_MOVING,
+                SpO2Status.CALCULATING, SpO2Status.CALCULATING, SpO2Status.MEASUREMENT_COMPLETED,
+                SpO2Status.MEASUREMENT_COMPLETED, SpO2Status.CALCULATING};
+
+        //when
+        for (int status : statuses) {
+            spO2Listener.updateSpo2(createDataPoint(status));
+        }
+
+        //then
+        InOrder inOrder = inOrder(trackerDataObserver);
+        inOrder.verify(trackerDataObserver).onSpO2TrackerDataChanged(SpO2Status.CALCULATING, 0);
+        inOrder.verify(trackerDataObserver).onSpO2TrackerDataChanged(SpO2Status.DEVICE_MOVING, 0);
+        inOrder.verify(trackerDataObserver).onSpO2TrackerDataChanged(SpO2Status.CALCULATING, 0);
+        inOrder.verify(trackerDataObserver).onSpO2TrackerDataChanged(SpO2Status.MEASUREMENT_COMPLETED, SPO2_VALUE);
+        verifyNoMoreInteractions(trackerDataObserver);
+    }
+
+    @Test
+    public void shouldBatchOnlyTransitionsOfOneDelivery_P() {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        List<Integer> delivered = new ArrayList<>();
+        doAnswer(invocation -> {
+            SpO2Batch batch = invocation.getArgument(0);
+            for (int i = 0; i < batch.size(); i++) {
+                delivered.add(batch.getStatus(i));
+            }
+            return null;
+        }).when(trackerDataObserver).onSpO2Batch(any());
+        notifier.addObserver(trackerDataObserver);
+        spO2Listener.setTrackerDataNotifier(notifier);
+
+        //when
+        spO2Listener.updateSpo2(Arrays.asList(createDataPoint(SpO2Status.CALCULATING),
+                createDataPoint(SpO2Status.CALCULATING), createDataPoint(SpO2Status.LOW_SIGNAL)));
+        spO2Listener.updateSpo2(Arrays.asList(createDataPoint(SpO2Status.LOW_SIGNAL),
+                createDataPoint(SpO2Status.LOW_SIGNAL)));
+
+        //then
+        assertEquals(Arrays.asList(SpO2Status.CALCULATING, SpO2Status.LOW_SIGNAL), delivered);
+        verify(trackerDataObserver, never()).onSpO2TrackerDataChanged(anyInt(), anyInt());
+    }
+
+    @Test
+    public void shouldTimeOutOnVirtualClock_N() {
+        //given
+        ManualClock clock = new ManualClock();
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        spO2Listener.setTrackerDataNotifier(notifier);
+        MeasurementScheduler scheduler = new MeasurementScheduler(clock, null);
+        spO2Listener.setScheduler(scheduler);
+        spO2Listener.onTrackerStarting();
+        spO2Listener.updateSpo2(createDataPoint(SpO2Status.CALCULATING));
+
+        //when
+        clock.advanceMillis(SpO2Listener.MEASUREMENT_TIMEOUT_MILLIS - 1);
+        boolean early = spO2Listener.checkMeasurementTimeout();
+        clock.advanceMillis(1);
+        int wokenUp = scheduler.runDueTasks();
+        boolean due = spO2Listener.checkMeasurementTimeout();
+        spO2Listener.updateSpo2(createDataPoint(SpO2Status.MEASUREMENT_COMPLETED));
+
+        //then
+        assertFalse(early);
+        assertEquals(1, wokenUp);
+        assertTrue(due);
+        assertFalse(spO2Listener.checkMeasurementTimeout());
+        assertEquals(SpO2Status.MEASUREMENT_TIMEOUT, spO2Listener.getMeasurementStatus());
+        verify(handler).post(any(Runnable.class));
+        verify(trackerDataObserver).onSpO2TrackerDataChanged(SpO2Status.MEASUREMENT_TIMEOUT, 0);
+        verify(trackerDataObserver, never()).onSpO2TrackerDataChanged(SpO2Status.MEASUREMENT_COMPLETED, SPO2_VALUE);
+    }
+
+    @Test
+    public void shouldStartOverWhenTrackerRestarts_P() {
+        //given
+        ManualClock clock = new ManualClock();
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        spO2Listener.setTrackerDataNotifier(notifier);
+        MeasurementScheduler scheduler = new MeasurementScheduler(clock, null);
+        spO2Listener.setScheduler(scheduler);
+        spO2Listener.onTrackerStarting();
+        spO2Listener.updateSpo2(createDataPoint(SpO2Status.MEASUREMENT_COMPLETED));
+
+        //when
+        clock.advanceMillis(SpO2Listener.MEASUREMENT_TIMEOUT_MILLIS * 2);
+        spO2Listener.onTrackerStarting();
+        spO2Listener.updateSpo2(createDataPoint(SpO2Status.MEASUREMENT_COMPLETED));
+
+        //then
+        assertFalse(spO2Listener.checkMeasurementTimeout());
+        clock.advanceMillis(SpO2Listener.MEASUREMENT_TIMEOUT_MILLIS);
+        // The first measurement's timeout was cancelled by the restart.
+        assertEquals(1, scheduler.runDueTasks());
+        verify(trackerDataObserver, times(2))
+                .onSpO2TrackerDataChanged(SpO2Status.MEASUREMENT_COMPLETED, SPO2_VALUE);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static DataPoint createDataPoint(int status) {
+        Map<ValueKey, Value> values = new HashMap<>();
+        values.put(ValueKey.SpO2Set.STATUS, new Value<>(status));
+        values.put(ValueKey.SpO2Set.SPO2, new Value<>(SPO2_VALUE));
+        return new DataPoint(values);
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class SyncEngineTest {
+    private final static int SEGMENT_SIZE = SessionLog.HEADER_SIZE + 20_000 * SessionLog.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final LoopbackSyncTransport phone = new LoopbackSyncTransport();
+
+    @Test
+    public void shouldShipSessionsAndResumeAfterRestart_P() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        writeSession(new File(root, "1"), 0, 30_000);
+        writeSession(new File(root, "2"), 30_000, 100);
+
+        //when
+        long sent = new SyncEngine(root, phone).syncAll();
+        int messages = phone.messages;
+        long resent = new SyncEngine(root, phone).syncAll();
+
+        //then
+        assertSamples(phone.getRecords("1"), 0, 30_000);
+        assertSamples(phone.getRecords("2"), 30_000, 100);
+        assertTrue(sent >= 30_100);
+        // 30k samples and their commit records make three chunks in the first segment and two
+        // in the second; the second session fits in one.
+        assertEquals(6, messages);
+        assertEquals(0, resent);
+        assertEquals(messages, phone.messages);
+        // An hour of 1 Hz heart rate is 3600 slots of 16 bytes before compression.
+        assertTrue(phone.bytesSent < 30_100 * SessionLog.RECORD_SIZE / 10);
+    }
+
+    @Test
+    public void shouldRetryWithoutResendingAcknowledgedRanges_P() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        writeSession(new File(root, "1"), 0, 30_000);
+        SyncEngine engine = new SyncEngine(root, phone);
+        phone.failSends = 1;
+
+        //when
+        syncExpectingFailure(engine);
+        phone.messages = 0;
+        phone.loseAcks = 1;
+        syncExpectingFailure(engine);
+        engine.syncAll();
+
+        //then
+        assertSamples(phone.getRecords("1"), 0, 30_000);
+        // Five chunks, plus the one whose acknowledgement was lost sent a second time.
+        assertEquals(6, phone.messages);
+        assertEquals(1, phone.duplicates);
+    }
+
+    @Test
+    public void shouldOnlyShipCommittedFrames_P() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        File directory = new File(root, "1");
+        SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, 100, 60_000L, new ManualClock(),
+                new CommitStats("test"));
+        appendSamples(sessionLog, 0, 150);
+        SyncEngine engine = new SyncEngine(root, phone);
+
+        //when
+        engine.syncAll();
+        byte[] whileWriting = phone.getRecords("1");
+        sessionLog.close();
+        engine.syncAll();
+
+        //then
+        assertSamples(whileWriting, 0, 100);
+        assertSamples(phone.getRecords("1"), 0, 150);
+    }
+
+    @Test
+    public void shouldShipRecordsCommittedWhileSending_P() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        int segmentSize = SessionLog.HEADER_SIZE + 200 * SessionLog.RECORD_SIZE;
+        // Past half of the first segment, so the next one already exists.
+        SessionLog sessionLog = SessionLog.open(new File(root, "1"), segmentSize, 10, 60_000L, new ManualClock(),
+                new CommitStats("test"), Runnable::run);
+        appendSamples(sessionLog, 0, 110);
+        SyncEngine engine = new SyncEngine(root, phone);
+        // Fills the first segment and rolls over while its first chunk is on the way.
+        phone.onSend = () -> {
+            phone.onSend = null;
+            appendSamples(sessionLog, 110, 200);
+        };
+
+        //when
+        engine.syncAll();
+        sessionLog.close();
+        engine.syncAll();
+
+        //then
+        assertSamples(phone.getRecords("1"), 0, 310);
+    }
+
+    @Test
+    public void shouldKeepSyncingOtherSessionsWhenOneFails_N() throws IOException {
+        //given
+        File root = temporaryFolder.newFolder("sessions");
+        File broken = new File(root, "1");
+        assertTrue(broken.mkdirs());
+        byte[] garbage = new byte[SessionLog.HEADER_SIZE + SessionLog.RECORD_SIZE];
+        Arrays.fill(garbage, (byte) 0x7F);
+        Files.write(new File(broken, "00000000" + SessionLog.SEGMENT_SUFFIX).toPath(), garbage);
+        writeSession(new File(root, "2"), 0, 100);
+        SyncEngine engine = new SyncEngine(root, phone);
+
+        //when
+        syncExpectingFailure(engine);
+
+        //then
+        assertEquals(0, phone.getRecords("1").length);
+        assertSamples(phone.getRecords("2"), 0, 100);
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyUpToLimit_P() {
+        //then
+        assertEquals(SyncEngine.INITIAL_BACKOFF_MILLIS, SyncEngine.backoffMillis(1));
+        assertEquals(2 * SyncEngine.INITIAL_BACKOFF_MILLIS, SyncEngine.backoffMillis(2));
+        assertEquals(8 * SyncEngine.INITIAL_BACKOFF_MILLIS, SyncEngine.backoffMillis(4));
+        assertEquals(SyncEngine.MAX_BACKOFF_MILLIS, SyncEngine.backoffMillis(100));
+    }
+
+    private static void syncExpectingFailure(SyncEngine engine) {
+        try {
+            engine.syncAll();
+            fail("Sync should have failed");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static void writeSession(File directory, int from, int count) throws IOException {
+        // Maps segments inline, so rolling over never has to drop a sample.
+        try (SessionLog sessionLog = SessionLog.open(directory, SEGMENT_SIZE, SessionLog.DEFAULT_COMMIT_RECORDS,
+                SessionLog.DEFAULT_COMMIT_INTERVAL_MILLIS, Clock.SYSTEM, new CommitStats("test"), Runnable::run)) {
+            appendSamples(sessionLog, from, count);
+        }
+    }
+
+    private static void appendSamples(SessionLog sessionLog, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            sessionLog.appendHeartRate(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 60 + i % 30, 800 + i % 200, 0);
+        }
+    }
+
+    private static void assertSamples(byte[] records, int from, int count) {
+        ByteBuffer buffer = ByteBuffer.wrap(records).order(ByteOrder.LITTLE_ENDIAN);
+        int sample = from;
+        for (int position = 0; position < records.length; position += SessionLog.RECORD_SIZE) {
+            if (buffer.get(position + SessionLog.OFFSET_TYPE) == SessionLog.TYPE_COMMIT) {
+                continue;
+            }
+            assertEquals(SessionLog.TYPE_HEART_RATE, buffer.get(position + SessionLog.OFFSET_TYPE));
+            assertEquals(sample * 1000L, buffer.getLong(position + SessionLog.OFFSET_TIMESTAMP));
+            assertEquals(60 + sample % 30, buffer.getShort(position + SessionLog.OFFSET_VALUE));
+            sample++;
+        }
+        assertEquals(from + count, sample);
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import com.samsung.android.service.health.tracking.data.DataPoint;
+import com.samsung.android.service.health.tracking.data.ValueKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded heart-rate and SpO2 streams shaped like a day on the wrist, for driving the real
+ * listeners at any rate from 1 Hz to 1 kHz:
+ * <ul>
+ * <li>heart rate drifting with activity, IBI following it with jitter and now and then a
+ * bad-quality bit; always bad while the status is not {@code HR_STATUS_FIND_HR}</li>
+ * <li>runs of {@code HR_STATUS_DETACHED}, {@code HR_STATUS_DETECT_MOVE} and
+ * {@code HR_STATUS_LOW_RELIABILITY}</li>
+ * <li>SpO2 measurements that calculate, get interrupted by {@code DEVICE_MOVING} and
+ * {@code LOW_SIGNAL}, and either complete or run into the listener's timeout</li>
+ * <li>deliveries of varying size, with bursts when the sensor hub hands over a backlog,
+ * optionally starting with samples that were already delivered</li>
+ * </ul>
+ * Durations are in seconds of simulated time, so the shape of the stream does not depend on
+ * the rate. The data points are pooled and refilled for every delivery, so the generator
+ * does not allocate once warmed up; they must not be kept past the next delivery.
+ */
+class SyntheticDataPoints {
+    // The IBI word is up to 16 bits; boxing through a table keeps getValue() allocation free.
+    private final static Integer[] BOXED = new Integer[1 << 16];
+    private final static int[] HR_INTERRUPTIONS = {
+            HeartRateStatus.HR_STATUS_DETACHED,
+            HeartRateStatus.HR_STATUS_DETECT_MOVE,
+            HeartRateStatus.HR_STATUS_LOW_RELIABILITY};
+    private final static int[] HR_INTERRUPTION_SECONDS = {120, 10, 30};
+    private final static int SPO2_INTERRUPTION_SECONDS = 4;
+    // Activity cycle the heart rate follows: rest, then a workout, roughly every 90 minutes.
+    private final static double ACTIVITY_PERIOD_SECONDS = 90 * 60;
+
+    static {
+        for (int i = 0; i < BOXED.length; i++) {
+            BOXED[i] = i;
+        }
+    }
+
+    private final Random random;
+    private final int rateHz;
+    private final long startMillis;
+
+    private int minDeliverySize = 1;
+    private int maxDeliverySize = 1;
+    private double burstProbability = 0;
+    private int maxBurstSize = 1;
+    private double redeliveryProbability = 0;
+    private int maxRedelivered = 0;
+    private double interruptionsPerSecond = 1.0 / 600;
+    private double badQualityProbability = 0.02;
+    private double spO2CompletionProbability = 0.8;
+
+    private final List<DataPoint> delivery = new ArrayList<>();
+    private Point[] pool = new Point[0];
+    private long sample = 0;
+    private long redelivered = 0;
+    private long bursts = 0;
+
+    private double hr = 65;
+    private int hrStatus = HeartRateStatus.HR_STATUS_FIND_HR;
+    private long hrStatusSamples = 0;
+    private final long[] hrStatusCounts = new long[HR_INTERRUPTIONS.length + 1];
+    // Last samples delivered, for re-delivering them at the start of a burst.
+    private long[] historyTimestamps = new long[0];
+    private int[] historyHrIbi = new int[0];
+    private int[] historyHr = new int[0];
+    private int[] historyStatus = new int[0];
+
+    private int spO2Status = SpO2Status.INITIAL_STATUS;
+    private long spO2StatusSamples = 0;
+    private long spO2RemainingSamples = 0;
+    private boolean spO2Completes = false;
+
+    SyntheticDataPoints(long seed, int rateHz) {
+        this(seed, rateHz, 1_650_000_000_000L);
+    }
+
+    SyntheticDataPoints(long seed, int rateHz, long startMillis) {
+        if (rateHz < 1 || rateHz > 1000) {
+            throw new IllegalArgumentException("rateHz must be within 1..1000: " + rateHz);
+        }
+        this.random = new Random(seed);
+        this.rateHz = rateHz;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Deliveries normally hold between {@code min} and {@code max} samples.
+     */
+    void setDeliverySize(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid delivery size: " + min + ".." + max);
+        }
+        minDeliverySize = min;
+        maxDeliverySize = max;
+    }
+
+    /**
+     * With {@code probability} a delivery is a backlog of up to {@code maxSize} samples.
+     */
+    void setBursts(double probability, int maxSize) {
+        burstProbability = probability;
+        maxBurstSize = Math.max(maxSize, maxDeliverySize);
+    }
+
+    /**
+     * With {@code probability} a burst starts by repeating up to {@code maxCount} samples of
+     * the previous delivery, as trackers do around a flush.
+     */
+    void setRedeliveries(double probability, int maxCount) {
+        redeliveryProbability = probability;
+        maxRedelivered = maxCount;
+        historyTimestamps = new long[maxCount];
+        historyHrIbi = new int[maxCount];
+        historyHr = new int[maxCount];
+        historyStatus = new int[maxCount];
+    }
+
+    /**
+     * Sets how often, on average, heart rate collection is interrupted by a non-measuring status.
+     */
+    void setInterruptionsPerHour(double perHour) {
+        interruptionsPerSecond = perHour / 3600;
+    }
+
+    void setBadQualityProbability(double probability) {
+        badQualityProbability = probability;
+    }
+
+    /**
+     * Sets the share of SpO2 measurements that produce a value; the others keep calculating
+     * until the listener times them out.
+     */
+    void setSpO2CompletionProbability(double probability) {
+        spO2CompletionProbability = probability;
+    }
+
+    int getRateHz() {
+        return rateHz;
+    }
+
+    /**
+     * Returns the timestamp of the next sample, which is the simulated time.
+     */
+    long getTimestampMillis() {
+        return timestampOf(sample);
+    }
+
+    /**
+     * Returns the distinct samples generated so far, not counting re-deliveries.
+     */
+    long getSampleCount() {
+        return sample;
+    }
+
+    long getRedeliveredCount() {
+        return redelivered;
+    }
+
+    long getBurstCount() {
+        return bursts;
+    }
+
+    /**
+     * Returns how many heart-rate samples carried {@code status}.
+     */
+    long getHeartRateStatusCount(int status) {
+        for (int i = 0; i < HR_INTERRUPTIONS.length; i++) {
+            if (HR_INTERRUPTIONS[i] == status) {
+                return hrStatusCounts[i + 1];
+            }
+        }
+        return status == HeartRateStatus.HR_STATUS_FIND_HR ? hrStatusCounts[0] : 0;
+    }
+
+    List<DataPoint> nextHeartRateDelivery() {
+        delivery.clear();
+        final int size = nextDeliverySize();
+        int repeated = 0;
+        if (size > maxDeliverySize && maxRedelivered > 0 && random.nextDouble() < redeliveryProbability) {
+            repeated = (int) Math.min(sample, 1 + random.nextInt(maxRedelivered));
+            for (int i = repeated; i > 0; i--) {
+                final int slot = (int) ((sample - i) % maxRedelivered);
+                point(delivery.size()).setHeartRate(historyTimestamps[slot], historyStatus[slot],
+                        historyHr[slot], historyHrIbi[slot]);
+                delivery.add(pool[delivery.size()]);
+            }
+            redelivered += repeated;
+        }
+        for (int i = repeated; i < size; i++) {
+            nextHeartRateSample(point(delivery.size()));
+            delivery.add(pool[delivery.size()]);
+        }
+        return delivery;
+    }
+
+    /**
+     * Starts a new SpO2 measurement; {@link #nextSpO2Delivery()} then follows it until the
+     * value is reported, or keeps calculating if this one is meant to time out.
+     */
+    void startSpO2Measurement() {
+        spO2Status = SpO2Status.CALCULATING;
+        spO2StatusSamples = Long.MAX_VALUE;
+        spO2Completes = random.nextDouble() < spO2CompletionProbability;
+        spO2RemainingSamples = seconds(12 + random.nextInt(12));
+    }
+
+    List<DataPoint> nextSpO2Delivery() {
+        delivery.clear();
+        final int size = nextDeliverySize();
+        for (int i = 0; i < size; i++) {
+            nextSpO2Sample(point(i));
+            delivery.add(pool[i]);
+        }
+        return delivery;
+    }
+
+    private int nextDeliverySize() {
+        if (burstProbability > 0 && random.nextDouble() < burstProbability) {
+            bursts++;
+            return maxDeliverySize + 1 + random.nextInt(Math.max(1, maxBurstSize - maxDeliverySize));
+        }
+        return minDeliverySize + random.nextInt(maxDeliverySize - minDeliverySize + 1);
+    }
+
+    private void nextHeartRateSample(Point point) {
+        final double seconds = (double) sample / rateHz;
+        advanceHeartRateStatus();
+        final double activity = Math.max(0, Math.sin(2 * Math.PI * seconds / ACTIVITY_PERIOD_SECONDS));
+        final double target = 62 + 90 * activity * activity;
+        hr += (target - hr) / (20.0 * rateHz) + random.nextGaussian() * 0.8 / Math.sqrt(rateHz);
+        hr = Math.max(40, Math.min(200, hr));
+
+        int hrValue = (int) Math.round(hr);
+        int hrIbi = 0;
+        if (hrStatus == HeartRateStatus.HR_STATUS_DETACHED) {
+            hrValue = 0;
+        } else {
+            final int ibi = (int) Math.max(1, Math.min(HeartRateData.IBI_QUALITY_MASK,
+                    Math.round(60_000 / hr + random.nextGaussian() * 15)));
+            final boolean bad = hrStatus != HeartRateStatus.HR_STATUS_FIND_HR
+                    || random.nextDouble() < badQualityProbability;
+            hrIbi = (bad ? 1 : 0) << HeartRateData.IBI_QUALITY_SHIFT | ibi;
+        }
+        final long timestamp = timestampOf(sample);
+        if (maxRedelivered > 0) {
+            final int slot = (int) (sample % maxRedelivered);
+            historyTimestamps[slot] = timestamp;
+            historyStatus[slot] = hrStatus;
+            historyHr[slot] = hrValue;
+            historyHrIbi[slot] = hrIbi;
+        }
+        point.setHeartRate(timestamp, hrStatus, hrValue, hrIbi);
+        sample++;
+    }
+
+    private void advanceHeartRateStatus() {
+        if (hrStatus != HeartRateStatus.HR_STATUS_FIND_HR) {
+            if (--hrStatusSamples <= 0) {
+                hrStatus = HeartRateStatus.HR_STATUS_FIND_HR;
+            }
+        } else if (random.nextDouble() < interruptionsPerSecond / rateHz) {
+            final int kind = random.nextInt(HR_INTERRUPTIONS.length);
+            hrStatus = HR_INTERRUPTIONS[kind];
+            hrStatusSamples = seconds(1 + random.nextInt(HR_INTERRUPTION_SECONDS[kind]));
+        }
+        for (int i = 0; i < HR_INTERRUPTIONS.length; i++) {
+            if (HR_INTERRUPTIONS[i] == hrStatus) {
+                hrStatusCounts[i + 1]++;
+                return;
+            }
+        }
+        hrStatusCounts[0]++;
+    }
+
+    private void nextSpO2Sample(Point point) {
+        if (spO2Status == SpO2Status.CALCULATING) {
+            if (random.nextDouble() < 0.05 / rateHz) {
+                spO2Status = random.nextBoolean() ? SpO2Status.DEVICE_MOVING : SpO2Status.LOW_SIGNAL;
+                spO2StatusSamples = seconds(1 + random.nextInt(SPO2_INTERRUPTION_SECONDS));
+            } else if (spO2Completes && --spO2RemainingSamples <= 0) {
+                spO2Status = SpO2Status.MEASUREMENT_COMPLETED;
+            }
+        } else if (spO2Status != SpO2Status.MEASUREMENT_COMPLETED && --spO2StatusSamples <= 0) {
+            spO2Status = SpO2Status.CALCULATING;
+        }
+        final int value = spO2Status == SpO2Status.MEASUREMENT_COMPLETED ? 94 + random.nextInt(6) : 0;
+        point.setSpO2(timestampOf(sample), spO2Status, value);
+        sample++;
+    }
+
+    private long seconds(int seconds) {
+        return (long) seconds * rateHz;
+    }
+
+    private long timestampOf(long sample) {
+        return startMillis + sample * 1000 / rateHz;
+    }
+
+    private Point point(int index) {
+        if (index >= pool.length) {
+            final Point[] grown = new Point[Math.max(index + 1, pool.length * 2)];
+            System.arraycopy(pool, 0, grown, 0, pool.length);
+            for (int i = pool.length; i < grown.length; i++) {
+                grown[i] = new Point();
+            }
+            pool = grown;
+        }
+        return pool[index];
+    }
+
+    private static Integer box(int value) {
+        return value >= 0 && value < BOXED.length ? BOXED[value] : Integer.valueOf(value);
+    }
+
+    /**
+     * Data point whose values are refilled in place instead of living in a map of boxed values.
+     */
+    private static class Point extends DataPoint {
+        private long timestamp;
+        private int status;
+        private int hr;
+        private int hrIbi;
+        private int spO2;
+
+        Point() {
+            super(Collections.emptyMap());
+        }
+
+        void setHeartRate(long timestamp, int status, int hr, int hrIbi) {
+            this.timestamp = timestamp;
+            this.status = status;
+            this.hr = hr;
+            this.hrIbi = hrIbi;
+        }
+
+        void setSpO2(long timestamp, int status, int spO2) {
+            this.timestamp = timestamp;
+            this.status = status;
+            this.spO2 = spO2;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getValue(ValueKey<T> key) {
+            if (key == ValueKey.HeartRateSet.STATUS || key == ValueKey.SpO2Set.STATUS) {
+                return (T) box(status);
+            }
+            if (key == ValueKey.HeartRateSet.HEART_RATE || key == ValueKey.SpO2Set.HEART_RATE) {
+                return (T) box(hr);
+            }
+            if (key == ValueKey.HeartRateSet.HEART_RATE_IBI) {
+                return (T) box(hrIbi);
+            }
+            if (key == ValueKey.SpO2Set.SPO2) {
+                return (T) box(spO2);
+            }
+            throw new IllegalArgumentException("Unexpected key " + key);
+        }
+    }
+}
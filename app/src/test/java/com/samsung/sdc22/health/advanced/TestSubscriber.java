@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * {@link Flow.Subscriber} that records what it receives, mapped through {@code recorder} so
+ * reused elements can be captured by value. Requests {@code initialRequest} on subscribe.
+ */
+class TestSubscriber<T, R> implements Flow.Subscriber<T> {
+    final List<R> items = new ArrayList<>();
+    private final Function<? super T, ? extends R> recorder;
+    private final long initialRequest;
+    Flow.Subscription subscription;
+    Throwable error;
+    boolean completed;
+
+    TestSubscriber(long initialRequest, Function<? super T, ? extends R> recorder) {
+        this.initialRequest = initialRequest;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (initialRequest > 0) {
+            subscription.request(initialRequest);
+        }
+    }
+
+    @Override
+    public void onNext(T item) {
+        items.add(recorder.apply(item));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+    }
+}
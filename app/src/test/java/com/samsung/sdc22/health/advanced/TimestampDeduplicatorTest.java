@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TimestampDeduplicatorTest {
+
+    @Test
+    public void shouldDropTimestampsSeenBefore_N() {
+        //given
+        TimestampDeduplicator deduplicator = new TimestampDeduplicator(4);
+        deduplicator.accept(1_000);
+        deduplicator.accept(2_000);
+        deduplicator.accept(3_000);
+
+        //when
+        boolean repeated = deduplicator.accept(2_000);
+        boolean newest = deduplicator.accept(3_000);
+
+        //then
+        assertFalse(repeated);
+        assertFalse(newest);
+    }
+
+    @Test
+    public void shouldAcceptLateSampleInsideWindow_P() {
+        //given
+        TimestampDeduplicator deduplicator = new TimestampDeduplicator(4);
+        deduplicator.accept(1_000);
+        deduplicator.accept(3_000);
+
+        //when
+        boolean late = deduplicator.accept(2_000);
+        boolean again = deduplicator.accept(2_000);
+
+        //then
+        assertTrue(late);
+        assertFalse(again);
+    }
+
+    @Test
+    public void shouldTreatTimestampsOlderThanWindowAsSeen_N() {
+        //given
+        TimestampDeduplicator deduplicator = new TimestampDeduplicator(2);
+        deduplicator.accept(1_000);
+        deduplicator.accept(2_000);
+        deduplicator.accept(3_000);
+
+        //when
+        boolean forgotten = deduplicator.accept(1_000);
+        deduplicator.clear();
+        boolean afterClear = deduplicator.accept(1_000);
+
+        //then
+        assertFalse(forgotten);
+        assertTrue(afterClear);
+    }
+}
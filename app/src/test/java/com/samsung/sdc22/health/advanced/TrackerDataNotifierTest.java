@@ -0,0 +1,455 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrackerDataNotifierTest {
+    private final static int MUTATOR_THREADS = 4;
+    private final static int MUTATIONS_PER_THREAD = 20_000;
+
+    @Mock
+    TrackerDataObserver trackerDataObserver;
+
+    @Test
+    public void shouldDeliverOnlySubscribedEventKinds_P() {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        HeartRateData hrData = new HeartRateData(HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+        notifier.addObserver(trackerDataObserver, TrackerDataNotifier.HEART_RATE);
+
+        //when
+        notifier.notifyHeartRateTrackerObservers(hrData);
+        notifier.notifySpO2TrackerObservers(SpO2Status.CALCULATING, 0);
+        notifier.notifyError(R.string.NoPermission);
+
+        //then
+        verify(trackerDataObserver).onHeartRateTrackerDataChanged(hrData);
+        verify(trackerDataObserver, never()).onSpO2TrackerDataChanged(anyInt(), anyInt());
+        verify(trackerDataObserver, never()).onError(anyInt());
+    }
+
+    @Test
+    public void shouldAdaptBatchToPerSampleCallbacksByDefault_P() {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        CountingObserver observer = new CountingObserver();
+        notifier.addObserver(observer);
+        HeartRateBatch batch = new HeartRateBatch();
+        for (int i = 0; i < 5; i++) {
+            batch.add(i * 1000L, HeartRateStatus.HR_STATUS_FIND_HR, 70 + i, 850, 0);
+        }
+
+        //when
+        notifier.notifyHeartRateBatch(batch);
+
+        //then
+        assertEquals(5, observer.heartRateEvents);
+    }
+
+    @Test
+    public void shouldNotDeliverAfterRemoveObserver_N() {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(trackerDataObserver);
+        notifier.removeObserver(trackerDataObserver);
+
+        //when
+        notifier.notifyHeartRateTrackerObservers(new HeartRateData());
+        notifier.notifySpO2TrackerObservers(SpO2Status.CALCULATING, 0);
+
+        //then
+        verify(trackerDataObserver, never()).onHeartRateTrackerDataChanged(any());
+        verify(trackerDataObserver, never()).onSpO2TrackerDataChanged(anyInt(), anyInt());
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.HEART_RATE));
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.SPO2));
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.ERROR));
+    }
+
+    @Test
+    public void shouldDropWeakObserverOnceCollected_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        WeakReference<TrackerDataObserver> reference = subscribeUnreachableObserver(notifier);
+
+        //when
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        notifier.notifyHeartRateTrackerObservers(new HeartRateData());
+
+        //then
+        assertNull(reference.get());
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.HEART_RATE));
+    }
+
+    @Test
+    public void shouldDispatchWhileObserversAreAddedAndRemovedConcurrently_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        CountingObserver permanent = new CountingObserver();
+        notifier.addObserver(permanent, TrackerDataNotifier.HEART_RATE);
+        HeartRateData hrData = new HeartRateData(HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+        AtomicBoolean mutating = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong dispatched = new AtomicLong();
+        CountDownLatch mutatorsDone = new CountDownLatch(MUTATOR_THREADS);
+
+        Thread dispatcher = new Thread(() -> {
+            try {
+                while (mutating.get()) {
+                    notifier.notifyHeartRateTrackerObservers(hrData);
+                    notifier.notifySpO2TrackerObservers(SpO2Status.CALCULATING, 0);
+                    dispatched.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        });
+
+        //when
+        dispatcher.start();
+        for (int t = 0; t < MUTATOR_THREADS; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < MUTATIONS_PER_THREAD; i++) {
+                        CountingObserver transientObserver = new CountingObserver();
+                        notifier.addObserver(transientObserver);
+                        notifier.removeObserver(transientObserver);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    mutatorsDone.countDown();
+                }
+            }).start();
+        }
+        assertTrue(mutatorsDone.await(60, TimeUnit.SECONDS));
+        mutating.set(false);
+        dispatcher.join();
+
+        //then
+        assertNull(failure.get());
+        assertEquals(dispatched.get(), permanent.heartRateEvents);
+        assertEquals(1, notifier.getObserverCount(TrackerDataNotifier.HEART_RATE));
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.SPO2));
+    }
+
+    @Test
+    public void shouldIsolateObserverThatKeepsExceedingBudget_P() throws InterruptedException {
+        //given
+        ManualClock clock = new ManualClock();
+        TrackerDataNotifier notifier = new TrackerDataNotifier(clock);
+        notifier.setIsolationPolicy(1_000_000, 3, DeliveryStrategy.dropOldest(16));
+        CountingObserver fast = new CountingObserver();
+        RecordingObserver slow = new RecordingObserver(clock, 5);
+        notifier.addObserver(slow, TrackerDataNotifier.HEART_RATE);
+        notifier.addObserver(fast, TrackerDataNotifier.HEART_RATE);
+        HeartRateData hrData = new HeartRateData(HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+
+        //when
+        // The first overrun turns on profiling, the next three are strikes against the slow observer.
+        for (int i = 0; i < 4; i++) {
+            notifier.notifyHeartRateTrackerObservers(hrData);
+        }
+        Thread dispatcher = Thread.currentThread();
+        notifier.notifyHeartRateTrackerObservers(hrData);
+
+        //then
+        assertNotNull(notifier.getMailbox(slow));
+        assertNull(notifier.getMailbox(fast));
+        assertEquals(1, notifier.getMigrationCount());
+        assertTrue(slow.awaitHeartRates(5));
+        assertNotSame(dispatcher, slow.lastThread);
+        assertEquals(5, fast.heartRateEvents);
+    }
+
+    @Test
+    public void shouldDropOldestWhenMailboxIsFull_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        GatedObserver observer = new GatedObserver();
+        notifier.addObserver(observer, TrackerDataNotifier.HEART_RATE);
+        notifier.isolate(observer, DeliveryStrategy.dropOldest(4));
+        HeartRateData hrData = new HeartRateData();
+        notifyHr(notifier, hrData, 0);
+        assertTrue(observer.entered.await(2, TimeUnit.SECONDS));
+
+        //when
+        for (int hr = 1; hr <= 7; hr++) {
+            notifyHr(notifier, hrData, hr);
+        }
+        observer.gate.countDown();
+
+        //then
+        assertTrue(observer.awaitHeartRates(5));
+        assertEquals(3, notifier.getDroppedCount());
+        assertEquals(Arrays.asList(0, 4, 5, 6, 7), observer.heartRates);
+    }
+
+    @Test
+    public void shouldConflateToLatestPerKind_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        GatedObserver observer = new GatedObserver();
+        notifier.addObserver(observer, TrackerDataNotifier.ALL, DeliveryStrategy.conflateLatest());
+        HeartRateData hrData = new HeartRateData();
+        notifyHr(notifier, hrData, 0);
+        assertTrue(observer.entered.await(2, TimeUnit.SECONDS));
+
+        //when
+        for (int hr = 1; hr <= 9; hr++) {
+            notifyHr(notifier, hrData, hr);
+        }
+        notifier.notifyError(R.string.NoPermission);
+        observer.gate.countDown();
+
+        //then
+        assertTrue(observer.awaitHeartRates(2));
+        assertTrue(observer.awaitErrors(1));
+        assertEquals(8, notifier.getDroppedCount());
+        assertEquals(Arrays.asList(0, 9), observer.heartRates);
+    }
+
+    @Test
+    public void shouldBlockProducerUntilLosslessMailboxHasRoom_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        GatedObserver observer = new GatedObserver();
+        notifier.addObserver(observer, TrackerDataNotifier.HEART_RATE, DeliveryStrategy.lossless(4, 5_000_000_000L));
+        notifyHr(notifier, new HeartRateData(), 0);
+        assertTrue(observer.entered.await(2, TimeUnit.SECONDS));
+        Thread producer = new Thread(() -> {
+            HeartRateData hrData = new HeartRateData();
+            for (int hr = 1; hr <= 8; hr++) {
+                notifyHr(notifier, hrData, hr);
+            }
+        });
+
+        //when
+        producer.start();
+        Thread.sleep(50);
+        observer.gate.countDown();
+        producer.join(2000);
+
+        //then
+        assertTrue(observer.awaitHeartRates(9));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8), observer.heartRates);
+        assertEquals(0, notifier.getDroppedCount());
+        assertEquals(4, notifier.getMailbox(observer).getHighWaterMark());
+    }
+
+    @Test
+    public void shouldDropWhenLosslessMailboxStaysFull_N() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        GatedObserver observer = new GatedObserver();
+        notifier.addObserver(observer, TrackerDataNotifier.HEART_RATE, DeliveryStrategy.lossless(2, 10_000_000L));
+        HeartRateData hrData = new HeartRateData();
+        notifyHr(notifier, hrData, 0);
+        assertTrue(observer.entered.await(2, TimeUnit.SECONDS));
+
+        //when
+        for (int hr = 1; hr <= 3; hr++) {
+            notifyHr(notifier, hrData, hr);
+        }
+        observer.gate.countDown();
+
+        //then
+        assertTrue(observer.awaitHeartRates(3));
+        assertEquals(1, notifier.getDroppedCount());
+        assertEquals(Arrays.asList(0, 1, 2), observer.heartRates);
+    }
+
+    @Test
+    public void shouldDeliverQueuedEventsBeforeRemoval_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        GatedObserver observer = new GatedObserver();
+        notifier.addObserver(observer, TrackerDataNotifier.HEART_RATE, DeliveryStrategy.lossless(8, 10_000_000L));
+        HeartRateData hrData = new HeartRateData();
+        notifyHr(notifier, hrData, 0);
+        assertTrue(observer.entered.await(2, TimeUnit.SECONDS));
+        for (int hr = 1; hr <= 3; hr++) {
+            notifyHr(notifier, hrData, hr);
+        }
+
+        //when
+        boolean deliveredWhileGated = notifier.awaitDelivered(observer, 50);
+        observer.gate.countDown();
+        boolean delivered = notifier.awaitDelivered(observer, 2000);
+        notifier.removeObserver(observer);
+
+        //then
+        assertFalse(deliveredWhileGated);
+        assertTrue(delivered);
+        assertEquals(Arrays.asList(0, 1, 2, 3), observer.heartRates);
+    }
+
+    @Test
+    public void shouldDeliverEveryNthSampleAndAllErrors_P() throws InterruptedException {
+        //given
+        TrackerDataNotifier notifier = new TrackerDataNotifier();
+        RecordingObserver observer = new RecordingObserver(null, 0);
+        notifier.addObserver(observer, TrackerDataNotifier.ALL, DeliveryStrategy.sampleEvery(3, 16));
+        HeartRateData hrData = new HeartRateData();
+
+        //when
+        for (int hr = 0; hr < 9; hr++) {
+            notifyHr(notifier, hrData, hr);
+        }
+        notifier.notifyError(R.string.NoPermission);
+
+        //then
+        assertTrue(observer.awaitErrors(1));
+        assertEquals(Arrays.asList(0, 3, 6), observer.heartRates);
+        ObserverMailbox mailbox = notifier.getMailbox(observer);
+        assertEquals(6, mailbox.getSkippedCount());
+        assertEquals(0, mailbox.getDroppedCount());
+        assertEquals(0, notifier.getMigrationCount());
+    }
+
+    private static void notifyHr(TrackerDataNotifier notifier, HeartRateData hrData, int hr) {
+        hrData.set(HeartRateStatus.HR_STATUS_FIND_HR, hr, 800, 0);
+        notifier.notifyHeartRateTrackerObservers(hrData);
+    }
+
+    private static WeakReference<TrackerDataObserver> subscribeUnreachableObserver(TrackerDataNotifier notifier) {
+        TrackerDataObserver observer = new CountingObserver();
+        notifier.addWeakObserver(observer, TrackerDataNotifier.HEART_RATE);
+        assertEquals(1, notifier.getObserverCount(TrackerDataNotifier.HEART_RATE));
+        return new WeakReference<>(observer);
+    }
+
+    private static class RecordingObserver implements TrackerDataObserver {
+        final List<Integer> heartRates = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> errors = Collections.synchronizedList(new ArrayList<>());
+        private final ManualClock clock;
+        private final long callMillis;
+        volatile Thread lastThread;
+
+        RecordingObserver(ManualClock clock, long callMillis) {
+            this.clock = clock;
+            this.callMillis = callMillis;
+        }
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            if (clock != null) {
+                clock.advanceMillis(callMillis);
+            }
+            lastThread = Thread.currentThread();
+            heartRates.add(hrData.hr);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+            errors.add(errorResourceId);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        boolean awaitHeartRates(int count) throws InterruptedException {
+            return await(heartRates, count);
+        }
+
+        boolean awaitErrors(int count) throws InterruptedException {
+            return await(errors, count);
+        }
+
+        private synchronized boolean await(List<Integer> events, int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 2000;
+            while (events.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            return events.size() >= count;
+        }
+    }
+
+    private static class GatedObserver extends RecordingObserver {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        GatedObserver() {
+            super(null, 0);
+        }
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            entered.countDown();
+            try {
+                gate.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.onHeartRateTrackerDataChanged(hrData);
+        }
+    }
+
+    private static class CountingObserver implements TrackerDataObserver {
+        long heartRateEvents;
+
+        @Override
+        public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+            heartRateEvents++;
+        }
+
+        @Override
+        public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        }
+
+        @Override
+        public void onError(int errorResourceId) {
+        }
+    }
+}
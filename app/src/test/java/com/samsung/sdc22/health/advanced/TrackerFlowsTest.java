@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
+
+public class TrackerFlowsTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    private final TrackerDataNotifier notifier = new TrackerDataNotifier();
+
+    @Test
+    public void shouldPassOnlyStatusChanges_P() {
+        //given
+        SpO2Publisher publisher = new SpO2Publisher(notifier, DIRECT, 16);
+        TestSubscriber<SpO2Reading, Integer> subscriber = new TestSubscriber<>(3, SpO2Reading::getStatus);
+        TrackerFlows.distinctUntilChanged(publisher, SpO2Reading::getStatus).subscribe(subscriber);
+
+        //when
+        int[] statuses = {SpO2Status.CALCULATING, SpO2Status.CALCULATING, SpO2Status.DEVICE_MOVING,
+                SpO2Status.DEVICE_MOVING, SpO2Status.DEVICE_MOVING, SpO2Status.CALCULATING, SpO2Status.LOW_SIGNAL};
+        for (int status : statuses) {
+            notifier.notifySpO2TrackerObservers(status, 0);
+        }
+
+        //then
+        // Three requested, so the filtered duplicates must not have used up the demand.
+        assertEquals(Arrays.asList(SpO2Status.CALCULATING, SpO2Status.DEVICE_MOVING, SpO2Status.CALCULATING),
+                subscriber.items);
+    }
+
+    @Test
+    public void shouldSampleFirstElementOfEachPeriod_P() {
+        //given
+        ManualClock clock = new ManualClock();
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> subscriber = new TestSubscriber<>(Long.MAX_VALUE, data -> data.hr);
+        TrackerFlows.sample(publisher, 1000, clock).subscribe(subscriber);
+        HeartRateData hrData = new HeartRateData();
+
+        //when
+        for (int hr = 60; hr < 70; hr++) {
+            hrData.set(HeartRateStatus.HR_STATUS_FIND_HR, hr, 800, 0);
+            notifier.notifyHeartRateTrackerObservers(hrData);
+            clock.advanceMillis(400);
+        }
+
+        //then
+        assertEquals(Arrays.asList(60, 63, 66, 69), subscriber.items);
+    }
+
+    @Test
+    public void shouldGroupIntoWindowsAndFlushRemainderOnComplete_P() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<List<HeartRateData>, List<HeartRateData>> subscriber = new TestSubscriber<>(1, UnaryOperator.identity());
+        TrackerFlows.window(publisher, 3, HeartRateData::copy).subscribe(subscriber);
+        HeartRateData hrData = new HeartRateData();
+
+        //when
+        for (int hr = 60; hr < 67; hr++) {
+            hrData.set(HeartRateStatus.HR_STATUS_FIND_HR, hr, 800, 0);
+            notifier.notifyHeartRateTrackerObservers(hrData);
+        }
+        assertEquals(1, subscriber.items.size());
+        subscriber.subscription.request(5);
+        publisher.close();
+
+        //then
+        assertEquals(3, subscriber.items.size());
+        assertEquals(Arrays.asList(60, 61, 62), hrs(subscriber.items.get(0)));
+        assertEquals(Arrays.asList(63, 64, 65), hrs(subscriber.items.get(1)));
+        assertEquals(Arrays.asList(66), hrs(subscriber.items.get(2)));
+        assertTrue(subscriber.completed);
+    }
+
+    private static List<Integer> hrs(List<HeartRateData> window) {
+        Integer[] hrs = new Integer[window.size()];
+        for (int i = 0; i < hrs.length; i++) {
+            hrs[i] = window.get(i).hr;
+        }
+        return Arrays.asList(hrs);
+    }
+}
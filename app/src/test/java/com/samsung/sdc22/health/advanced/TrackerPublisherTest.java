@@ -0,0 +1,171 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+public class TrackerPublisherTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    private final TrackerDataNotifier notifier = new TrackerDataNotifier();
+    private final HeartRateData hrData = new HeartRateData();
+
+    @Test
+    public void shouldDeliverOnlyWhatWasRequested_P() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> subscriber = new TestSubscriber<>(2, data -> data.hr);
+        publisher.subscribe(subscriber);
+
+        //when
+        for (int hr = 60; hr < 65; hr++) {
+            notifyHr(hr);
+        }
+
+        //then
+        assertEquals(Arrays.asList(60, 61), subscriber.items);
+        subscriber.subscription.request(10);
+        assertEquals(Arrays.asList(60, 61, 62, 63, 64), subscriber.items);
+        assertEquals(0, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void shouldFlattenBatchesIntoSamples_P() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> subscriber = new TestSubscriber<>(Long.MAX_VALUE, data -> data.ibi);
+        publisher.subscribe(subscriber);
+        HeartRateBatch batch = new HeartRateBatch();
+        batch.add(1, HeartRateStatus.HR_STATUS_FIND_HR, 70, 850, 0);
+        batch.add(2, HeartRateStatus.HR_STATUS_FIND_HR, 71, 845, 0);
+
+        //when
+        notifier.notifyHeartRateBatch(batch);
+
+        //then
+        assertEquals(Arrays.asList(850, 845), subscriber.items);
+    }
+
+    @Test
+    public void shouldConflateToLatestWithBufferOfOne_P() {
+        //given
+        SpO2Publisher publisher = new SpO2Publisher(notifier, DIRECT, 1);
+        TestSubscriber<SpO2Reading, SpO2Reading> subscriber = new TestSubscriber<>(0, reading -> reading);
+        publisher.subscribe(subscriber);
+
+        //when
+        notifier.notifySpO2TrackerObservers(SpO2Status.CALCULATING, 0);
+        notifier.notifySpO2TrackerObservers(SpO2Status.DEVICE_MOVING, 0);
+        notifier.notifySpO2TrackerObservers(SpO2Status.MEASUREMENT_COMPLETED, 97);
+        subscriber.subscription.request(1);
+
+        //then
+        assertEquals(Collections.singletonList(new SpO2Reading(SpO2Status.MEASUREMENT_COMPLETED, 97)), subscriber.items);
+        assertEquals(2, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void shouldEndWithTrackerExceptionOnError_N() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> subscriber = new TestSubscriber<>(Long.MAX_VALUE, data -> data.hr);
+        publisher.subscribe(subscriber);
+
+        //when
+        notifyHr(70);
+        notifier.notifyError(R.string.NoPermission);
+        notifyHr(71);
+
+        //then
+        assertEquals(Collections.singletonList(70), subscriber.items);
+        assertTrue(subscriber.error instanceof TrackerException);
+        assertEquals(R.string.NoPermission, ((TrackerException) subscriber.error).getErrorResourceId());
+        assertEquals(0, publisher.getSubscriberCount());
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.HEART_RATE));
+    }
+
+    @Test
+    public void shouldRejectNonPositiveRequest_N() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> subscriber = new TestSubscriber<>(0, data -> data.hr);
+        publisher.subscribe(subscriber);
+
+        //when
+        subscriber.subscription.request(0);
+
+        //then
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void shouldStopListeningWhenLastSubscriberCancels_P() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> first = new TestSubscriber<>(Long.MAX_VALUE, data -> data.hr);
+        TestSubscriber<HeartRateData, Integer> second = new TestSubscriber<>(Long.MAX_VALUE, data -> data.hr);
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+
+        //when
+        first.subscription.cancel();
+        notifyHr(70);
+        second.subscription.cancel();
+        notifyHr(71);
+
+        //then
+        assertEquals(Collections.emptyList(), first.items);
+        assertEquals(Collections.singletonList(70), second.items);
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.HEART_RATE));
+        assertEquals(0, notifier.getObserverCount(TrackerDataNotifier.ERROR));
+    }
+
+    @Test
+    public void shouldCompleteAfterBufferedSamplesOnClose_P() {
+        //given
+        HeartRatePublisher publisher = new HeartRatePublisher(notifier, DIRECT, 16);
+        TestSubscriber<HeartRateData, Integer> subscriber = new TestSubscriber<>(0, data -> data.hr);
+        publisher.subscribe(subscriber);
+        notifyHr(70);
+
+        //when
+        publisher.close();
+
+        //then
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(1);
+        assertEquals(Collections.singletonList(70), subscriber.items);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    private void notifyHr(int hr) {
+        hrData.set(HeartRateStatus.HR_STATUS_FIND_HR, hr, 800, 0);
+        notifier.notifyHeartRateTrackerObservers(hrData);
+    }
+}
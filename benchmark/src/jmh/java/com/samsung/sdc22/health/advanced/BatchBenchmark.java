@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import com.samsung.android.service.health.tracking.data.DataPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole deliveries of {@code size} data points, decoded as one batch versus one notification per
+ * sample. Scores are per delivery.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BatchBenchmark {
+    @Param({"1", "16", "128"})
+    public int size;
+
+    private HeartRateListener heartRateListener;
+    private SpO2Listener spO2Listener;
+    private List<DataPoint> heartRateDelivery;
+    private List<DataPoint> spO2Delivery;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        final TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(new BlackholeObserver(blackhole));
+        heartRateListener = new HeartRateListener();
+        heartRateListener.setTrackerDataNotifier(notifier);
+        spO2Listener = new SpO2Listener();
+        spO2Listener.setTrackerDataNotifier(notifier);
+        heartRateDelivery = DataPoints.heartRateDelivery(size);
+        spO2Delivery = DataPoints.spO2Delivery(size);
+    }
+
+    @Benchmark
+    public void heartRateBatch() {
+        heartRateListener.readValuesFromDataPoints(heartRateDelivery);
+    }
+
+    @Benchmark
+    public void heartRatePerSample() {
+        for (int i = 0; i < heartRateDelivery.size(); i++) {
+            heartRateListener.readValuesFromDataPoint(heartRateDelivery.get(i));
+        }
+    }
+
+    @Benchmark
+    public void spO2Batch() {
+        spO2Listener.updateSpo2(spO2Delivery);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Observer that hands every value to a {@link Blackhole}, so dispatch cannot be optimised away.
+ */
+class BlackholeObserver implements TrackerDataObserver {
+    private final Blackhole blackhole;
+
+    BlackholeObserver(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void onHeartRateTrackerDataChanged(HeartRateData hrData) {
+        blackhole.consume(hrData.hr);
+        blackhole.consume(hrData.ibi);
+    }
+
+    @Override
+    public void onHeartRateBatch(HeartRateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            blackhole.consume(batch.getHr(i));
+            blackhole.consume(batch.getIbi(i));
+        }
+    }
+
+    @Override
+    public void onSpO2TrackerDataChanged(int status, int spO2Value) {
+        blackhole.consume(spO2Value);
+    }
+
+    @Override
+    public void onSpO2Batch(SpO2Batch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            blackhole.consume(batch.getSpO2Value(i));
+        }
+    }
+
+    @Override
+    public void onError(int errorResourceId) {
+        blackhole.consume(errorResourceId);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import com.samsung.android.service.health.tracking.data.DataPoint;
+import com.samsung.android.service.health.tracking.data.Value;
+import com.samsung.android.service.health.tracking.data.ValueKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds data points the way the tracking service delivers them.
+ */
+final class DataPoints {
+    private DataPoints() {
+    }
+
+    static DataPoint heartRate(int status, int hr, int ibi, int qIbi) {
+        @SuppressWarnings("rawtypes")
+        Map<ValueKey, Value> values = new HashMap<>();
+        values.put(ValueKey.HeartRateSet.STATUS, new Value<>(status));
+        values.put(ValueKey.HeartRateSet.HEART_RATE, new Value<>(hr));
+        values.put(ValueKey.HeartRateSet.HEART_RATE_IBI, new Value<>(qIbi << HeartRateData.IBI_QUALITY_SHIFT | ibi));
+        return new DataPoint(values);
+    }
+
+    static DataPoint spO2(int status, int spO2Value) {
+        @SuppressWarnings("rawtypes")
+        Map<ValueKey, Value> values = new HashMap<>();
+        values.put(ValueKey.SpO2Set.STATUS, new Value<>(status));
+        values.put(ValueKey.SpO2Set.SPO2, new Value<>(spO2Value));
+        return new DataPoint(values);
+    }
+
+    static List<DataPoint> heartRateDelivery(int size) {
+        final List<DataPoint> dataPoints = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            dataPoints.add(heartRate(HeartRateStatus.HR_STATUS_FIND_HR, 60 + i % 40, 700 + i % 300, i & 1));
+        }
+        return dataPoints;
+    }
+
+    static List<DataPoint> spO2Delivery(int size) {
+        final List<DataPoint> dataPoints = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            dataPoints.add(spO2(i == size - 1 ? SpO2Status.MEASUREMENT_COMPLETED : SpO2Status.CALCULATING, 97));
+        }
+        return dataPoints;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import com.samsung.android.service.health.tracking.data.DataPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample decode paths: one {@link DataPoint} through each listener to a single observer,
+ * and the bare IBI bit unpacking.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+    private HeartRateListener heartRateListener;
+    private SpO2Listener spO2Listener;
+    private DataPoint heartRateDataPoint;
+    private DataPoint spO2DataPoint;
+    private final HeartRateData hrData = new HeartRateData();
+    private int hrIbi = 1 << HeartRateData.IBI_QUALITY_SHIFT | 812;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        final TrackerDataNotifier notifier = new TrackerDataNotifier();
+        notifier.addObserver(new BlackholeObserver(blackhole));
+        heartRateListener = new HeartRateListener();
+        heartRateListener.setTrackerDataNotifier(notifier);
+        spO2Listener = new SpO2Listener();
+        spO2Listener.setTrackerDataNotifier(notifier);
+        heartRateDataPoint = DataPoints.heartRate(HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+        spO2DataPoint = DataPoints.spO2(SpO2Status.MEASUREMENT_COMPLETED, 97);
+    }
+
+    @Benchmark
+    public void heartRateReadValuesFromDataPoint() {
+        heartRateListener.readValuesFromDataPoint(heartRateDataPoint);
+    }
+
+    @Benchmark
+    public void spO2UpdateSpo2() {
+        spO2Listener.updateSpo2(spO2DataPoint);
+    }
+
+    @Benchmark
+    public int unpackHrIbi() {
+        hrData.setHrIbi(hrIbi++);
+        return hrData.ibi + hrData.qIbi;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TrackerDataNotifier} fan-out to 1..N observers, alone and while another thread keeps
+ * subscribing and unsubscribing.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    @Param({"1", "4", "16"})
+    public int observers;
+
+    private TrackerDataNotifier notifier;
+    private HeartRateData hrData;
+    private TrackerDataObserver churnObserver;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        notifier = new TrackerDataNotifier();
+        for (int i = 0; i < observers; i++) {
+            notifier.addObserver(new BlackholeObserver(blackhole), TrackerDataNotifier.HEART_RATE);
+        }
+        hrData = new HeartRateData(HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+        churnObserver = new BlackholeObserver(blackhole);
+    }
+
+    @Benchmark
+    @Group("quiet")
+    public void dispatch() {
+        notifier.notifyHeartRateTrackerObservers(hrData);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void dispatchUnderChurn() {
+        notifier.notifyHeartRateTrackerObservers(hrData);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void subscribeUnsubscribe() {
+        notifier.addObserver(churnObserver, TrackerDataNotifier.HEART_RATE);
+        notifier.removeObserver(churnObserver);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.samsung.sdc22.health.advanced;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost on the sensor thread of handing a sample to an observer behind an {@link ObserverMailbox},
+ * per {@link DeliveryStrategy}. The lossless case is paced by the worker draining the ring.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MailboxBenchmark {
+    @Param({"lossless", "dropOldest", "conflate", "sample"})
+    public String strategy;
+
+    private TrackerDataNotifier notifier;
+    private TrackerDataObserver observer;
+    private HeartRateData hrData;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        notifier = new TrackerDataNotifier();
+        observer = new BlackholeObserver(blackhole);
+        notifier.addObserver(observer, TrackerDataNotifier.HEART_RATE, strategy(strategy));
+        hrData = new HeartRateData(HeartRateStatus.HR_STATUS_FIND_HR, 72, 833, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        notifier.removeObserver(observer);
+    }
+
+    @Benchmark
+    public void post() {
+        notifier.notifyHeartRateTrackerObservers(hrData);
+    }
+
+    private static DeliveryStrategy strategy(String name) {
+        switch (name) {
+            case "lossless":
+                return DeliveryStrategy.lossless(DeliveryStrategy.DEFAULT_CAPACITY, Long.MAX_VALUE / 2);
+            case "dropOldest":
+                return DeliveryStrategy.dropOldest(DeliveryStrategy.DEFAULT_CAPACITY);
+            case "conflate":
+                return DeliveryStrategy.conflateLatest();
+            case "sample":
+                return DeliveryStrategy.sampleEvery(10, DeliveryStrategy.DEFAULT_CAPACITY);
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.samsung.sdc22.health.advanced;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SeriesEncoder} and {@link SeriesDecoder} throughput on a 1024-sample block of a
+ * realistic session, in samples per microsecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SeriesCodecBenchmark {
+    private final static int BLOCK_SAMPLES = 1024;
+
+    private final HeartRateBatch block = new HeartRateBatch();
+    private final HeartRateBatch decoded = new HeartRateBatch();
+    private final SeriesEncoder encoder = new SeriesEncoder();
+    private final SeriesDecoder decoder = new SeriesDecoder();
+    private final byte[] buffer = new byte[SeriesEncoder.maxEncodedSize(BLOCK_SAMPLES)];
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        long timestamp = 1_660_000_000_000L;
+        int hr = 70;
+        for (int i = 0; i < BLOCK_SAMPLES; i++) {
+            timestamp += 1000 + random.nextInt(7) - 3;
+            if (random.nextInt(8) == 0) {
+                hr = Math.max(45, Math.min(160, hr + random.nextInt(3) - 1));
+            }
+            block.add(timestamp, HeartRateStatus.HR_STATUS_FIND_HR, hr, 60_000 / hr + random.nextInt(41) - 20,
+                    random.nextInt(50) == 0 ? 1 : 0);
+        }
+        encoder.encode(block, buffer, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_SAMPLES)
+    public int encode() {
+        return encoder.encode(block, buffer, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_SAMPLES)
+    public int decode() {
+        decoder.decode(buffer, 0, decoded);
+        return decoded.size();
+    }
+}
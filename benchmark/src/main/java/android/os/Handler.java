@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 Samsung Electronics Co., Ltd. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Host JVM stand-in for {@code android.os.Handler} that runs posted work inline.
+ */
+public class Handler {
+    public boolean post(Runnable runnable) {
+        runnable.run();
+        return true;
+    }
+
+    /**
+     * Delayed work is dropped; no benchmark waits for a timeout.
+     */
+    public boolean postDelayed(Runnable runnable, long delayMillis) {
+        return true;
+    }
+
+    public void removeCallbacksAndMessages(Object token) {
+    }
+}